@@ -1,5 +1,6 @@
 package csight.main;
 
+import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collections;
@@ -21,7 +22,9 @@ import csight.invariants.EventuallyHappens;
 import csight.invariants.NeverFollowedBy;
 import csight.mc.MC;
 import csight.mc.MCResult;
+import csight.mc.MCResultCache;
 import csight.mc.MCcExample;
+import csight.mc.explicit.ExplicitStateMC;
 import csight.mc.mcscm.McScM;
 import csight.mc.parallelizer.InvariantTimeoutPair;
 import csight.mc.parallelizer.McScMParallelizer;
@@ -32,6 +35,7 @@ import csight.mc.parallelizer.ParallelizerTask.ParallelizerCommands;
 import csight.mc.spin.Spin;
 import csight.model.export.GraphExporter;
 import csight.model.fifosys.cfsm.CFSM;
+import csight.model.fifosys.cfsm.fsm.FSM;
 import csight.model.fifosys.gfsm.GFSM;
 import csight.model.fifosys.gfsm.GFSMPath;
 import csight.model.fifosys.gfsm.GFSMState;
@@ -149,6 +153,10 @@ public class CSightMain {
     // the McScM verify binary or Spin.
     private MC mc = null;
 
+    // Cache of model checking results, or null if results are not cached.
+    // Created in run().
+    private MCResultCache mcCache = null;
+
     // The channels associated with this CSight execution. These are parsed in
     // checkOptions().
     private List<ChannelId> channelIds = null;
@@ -208,7 +216,7 @@ public class CSightMain {
             throw new OptionException(err);
         }
 
-        if (optns.mcPath == null) {
+        if (optns.mcPath == null && !optns.mcType.equals("explicit")) {
             err = "Specify path of the McScM model checker to use for verification:\n\t"
                     + opts.getOptDesc("mcPath");
             throw new OptionException(err);
@@ -225,20 +233,38 @@ public class CSightMain {
             throw new OptionException(err);
         }
 
+        if (opts.mcCacheSize < 0) {
+            err = "Invalid model checking cache size: " + opts.mcCacheSize;
+            throw new OptionException(err);
+        }
+
         // Determine the model checker type.
         if (optns.mcType.equals("spin")) {
-            mc = new Spin(opts.mcPath);
             if (opts.spinChannelCapacity <= 0) {
                 err = "Invalid channel capacity for use with spin: "
                         + opts.spinChannelCapacity;
                 throw new OptionException(err);
             }
-            if (opts.runParallel) {
-                err = "Parallel model checking not supported for spin";
+            if (opts.runParallel && !opts.spinMultipleInvs) {
+                err = "Parallel model checking with spin requires spinMultipleInvs";
                 throw new OptionException(err);
             }
+            // Spin runs the verifications of the invariants of a model in
+            // parallel.
+            mc = new Spin(opts.mcPath, opts.runParallel ? opts.numParallel : 1);
         } else if (optns.mcType.equals("mcscm")) {
             mc = new McScM(opts.mcPath);
+        } else if (optns.mcType.equals("explicit")) {
+            if (opts.explicitChannelBound <= 0) {
+                err = "Invalid channel bound for use with the explicit model checker: "
+                        + opts.explicitChannelBound;
+                throw new OptionException(err);
+            }
+            // The explicit model checker runs in this JVM, and parallelizes
+            // the exploration of each model instead of running multiple
+            // checks at once.
+            mc = new ExplicitStateMC(opts.explicitChannelBound,
+                    opts.runParallel ? opts.numParallel : 1);
         } else {
             err = "Invalid model checker type '" + opts.mcType + "'";
             throw new OptionException(err);
@@ -435,18 +461,32 @@ public class CSightMain {
         // refine the model as needed until all invariants hold.
         // Check if model checking is to be done in parallel and use the
         // corresponding methods.
-        if (opts.runParallel) {
-            if (opts.mcType.equals("mcscm")) {
-                // Parallelization is currently only supported for McScM
-                checkInvsRefineGFSMParallel(dynInvs, pGraph);
+        if (opts.mcCacheSize > 0) {
+            mcCache = new MCResultCache(getMCConfig(), opts.mcCacheSize,
+                    opts.mcCacheFile == null ? null
+                            : new File(opts.mcCacheFile));
+        }
+        try {
+            if (opts.mcType.equals("explicit")) {
+                checkInvsRefineGFSM(dynInvs, pGraph);
+            } else if (opts.mcType.equals("spin") && opts.spinMultipleInvs) {
+                // Spin runs the invariants of a model in parallel if
+                // runParallel.
+                checkMultipleInvsRefineGFSM(dynInvs, pGraph);
+            } else if (opts.runParallel) {
+                if (opts.mcType.equals("mcscm")) {
+                    // Parallelization is currently only supported for McScM
+                    checkInvsRefineGFSMParallel(dynInvs, pGraph);
+                } else {
+                    throw new OptionException(
+                            "Parallel model checking is currently only supported for McScM");
+                }
             } else {
-                throw new OptionException(
-                        "Parallel model checking is currently only supported for McScM");
+                checkInvsRefineGFSM(dynInvs, pGraph);
             }
-        } else if (opts.mcType.equals("spin") && opts.spinMultipleInvs) {
-            checkMultipleInvsRefineGFSM(dynInvs, pGraph);
-        } else {
-            checkInvsRefineGFSM(dynInvs, pGraph);
+        } finally {
+            // Persist the results even if model checking failed.
+            saveMCCache();
         }
 
         // ///////////////////
@@ -705,7 +745,8 @@ public class CSightMain {
      * @throws Exception
      * @throws IOException
      * @throws InterruptedException
-     * @return The number of iteration of the model checking loop
+     * @return The number of model checks that were run, not counting
+     *         results that were reused from the model checking cache
      */
     public int checkInvsRefineGFSM(List<BinaryInvariant> invs, GFSM pGraph)
             throws Exception, IOException, InterruptedException {
@@ -775,69 +816,65 @@ public class CSightMain {
                 // Skip model checking if all partitions are singletons.
                 return mcCounter;
             }
-            mcCounter++;
 
             // Get the CFSM corresponding to the partition graph.
             CFSM cfsm = pGraph.getCFSM(opts.minimize);
 
-            String mcInputStr;
-            if (mc instanceof McScM) {
-                // Model check the CFSM using the McScM model checker.
-
-                // Augment the CFSM with synthetic states/events to check
-                // curInv (only fone for McScM).
-                cfsm.augmentWithInvTracing(curInv);
-
-                mcInputStr = cfsm.toScmString("checking_scm_"
-                        + curInv.getConnectorString());
-            } else if (mc instanceof Spin) {
-                List<BinaryInvariant> curInvs = Util.newList();
-                curInvs.add(curInv);
-                mcInputStr = cfsm.toPromelaString(curInvs,
-                        opts.spinChannelCapacity);
-
-            } else {
-                throw new RuntimeException(
-                        "Model checker is not properly specified.");
+            // Reuse the result of an earlier check of curInv in the same CFSM.
+            MCResultCache.Key cacheKey = null;
+            MCResult result = null;
+            if (mcCache != null) {
+                cacheKey = mcCache.getKey(cfsm, curInv);
+                result = mcCache.get(cacheKey, cfsm.getChannelIds());
             }
 
-            logger.info("*******************************************************");
-            logger.info("Checking ... " + curInv.toString() + ". Inv "
-                    + invsCounter + " / " + totalInvs
-                    + ", refinements so far: " + gfsmCounter + ". Timeout = "
-                    + curTimeout + ".");
-            logger.info("*******************************************************");
+            if (result != null) {
+                logger.info("Using the cached result of checking "
+                        + curInv.toString() + ".");
+            } else {
+                logger.info("*******************************************************");
+                logger.info("Checking ... " + curInv.toString() + ". Inv "
+                        + invsCounter + " / " + totalInvs
+                        + ", refinements so far: " + gfsmCounter
+                        + ". Timeout = " + curTimeout + ".");
+                logger.info("*******************************************************");
+
+                mcCounter++;
+                try {
+                    result = verifyInv(cfsm, curInv, curTimeout);
+                } catch (TimeoutException e) {
+                    // The model checker timed out. First, record the timed-out
+                    // invariant so that we are not stuck re-checking it.
+                    invsToSatisfy.remove(0);
+                    timedOutInvs.add(curInv);
 
-            try {
-                mc.verify(mcInputStr, curTimeout);
-            } catch (TimeoutException e) {
-                // The model checker timed out. First, record the timed-out
-                // invariant so that we are not stuck re-checking it.
-                invsToSatisfy.remove(0);
-                timedOutInvs.add(curInv);
+                    logger.info("Timed out in checking invariant: "
+                            + curInv.toString());
 
-                logger.info("Timed out in checking invariant: "
-                        + curInv.toString());
+                    // No invariants are left to try -- increase the timeout
+                    // value, unless we reached the timeout limit, in which
+                    // case we throw an exception.
+                    if (invsToSatisfy.isEmpty()) {
+                        curTimeout = reAddTimedOutInvs(invsToSatisfy,
+                                timedOutInvs, timeoutDelta, maxTimeout,
+                                curTimeout);
+                    }
 
-                // No invariants are left to try -- increase the timeout value,
-                // unless we reached the timeout limit, in which case we throw
-                // an exception.
-                if (invsToSatisfy.isEmpty()) {
-                    curTimeout = reAddTimedOutInvs(invsToSatisfy, timedOutInvs,
-                            timeoutDelta, maxTimeout, curTimeout);
+                    // Try the first invariant (perhaps again, but with a
+                    // higher timeout value).
+                    curInv = invsToSatisfy.get(0);
+                    continue;
+                } catch (InterruptedException e) {
+                    // The CSightMain Thread was interrupted. Stop model
+                    // checking and terminate with InterruptedException.
+                    throw new InterruptedException(
+                            "CSightMain was interrupted.");
                 }
 
-                // Try the first invariant (perhaps again, but with a higher
-                // timeout value).
-                curInv = invsToSatisfy.get(0);
-                continue;
-            } catch (InterruptedException e) {
-                // The CSightMain Thread was interrupted. Stop model checking
-                // and terminate with InterruptedException.
-                throw new InterruptedException("CSightMain was interrupted.");
+                if (mcCache != null) {
+                    mcCache.put(cacheKey, result);
+                }
             }
-
-            MCResult result = mc.getVerifyResult(cfsm.getChannelIds());
             logger.info(result.toRawString());
             logger.info(result.toString());
 
@@ -890,6 +927,75 @@ public class CSightMain {
         }
     }
 
+    /**
+     * Returns a string that identifies the model checker and the options that
+     * affect its results, so that cached results of other configurations are
+     * not reused.
+     */
+    private String getMCConfig() {
+        if (opts.mcType.equals("spin")) {
+            return "spin channelCapacity=" + opts.spinChannelCapacity;
+        } else if (opts.mcType.equals("explicit")) {
+            return "explicit channelBound=" + opts.explicitChannelBound;
+        }
+        return opts.mcType;
+    }
+
+    /**
+     * Logs the statistics of the model checking cache, and saves it if it is
+     * persisted.
+     */
+    private void saveMCCache() {
+        if (mcCache == null) {
+            return;
+        }
+        logger.info("Model checking cache: " + mcCache.getNumHits()
+                + " hits, " + mcCache.getNumMisses() + " misses.");
+        try {
+            mcCache.save();
+        } catch (IOException e) {
+            logger.warning("Could not save the model checking cache: "
+                    + e.getMessage());
+        }
+    }
+
+    /**
+     * Checks inv in cfsm with the model checker, and returns the result. Times
+     * out the model checker after timeoutSecs.
+     */
+    private MCResult verifyInv(CFSM cfsm, BinaryInvariant inv,
+            int timeoutSecs) throws Exception {
+        if (mc instanceof ExplicitStateMC) {
+            // The explicit model checker checks the CFSM directly, and does
+            // not need an input string.
+            ((ExplicitStateMC) mc).verify(cfsm, inv, timeoutSecs);
+            return mc.getVerifyResult(cfsm.getChannelIds());
+        }
+
+        String mcInputStr;
+        if (mc instanceof McScM) {
+            // Model check the CFSM using the McScM model checker.
+
+            // Augment the CFSM with synthetic states/events to check
+            // inv (only fone for McScM).
+            cfsm.augmentWithInvTracing(inv);
+
+            mcInputStr = cfsm.toScmString("checking_scm_"
+                    + inv.getConnectorString());
+        } else if (mc instanceof Spin) {
+            List<BinaryInvariant> invs = Util.newList();
+            invs.add(inv);
+            mcInputStr = cfsm.toPromelaString(invs, opts.spinChannelCapacity);
+
+        } else {
+            throw new RuntimeException(
+                    "Model checker is not properly specified.");
+        }
+
+        mc.verify(mcInputStr, timeoutSecs);
+        return mc.getVerifyResult(cfsm.getChannelIds());
+    }
+
     /**
      * Implements the (model check - refine loop). Check each invariant in
      * dynInvs in the pGraph model, and refine pGraph as needed until all
@@ -904,7 +1010,8 @@ public class CSightMain {
      * @throws Exception
      * @throws IOException
      * @throws InterruptedException
-     * @return The number of iteration of the model checking loop
+     * @return The number of model checks that were run, not counting
+     *         results that were reused from the model checking cache
      */
     public int checkInvsRefineGFSMParallel(List<BinaryInvariant> invs,
             GFSM pGraph) throws Exception, IOException, InterruptedException {
@@ -953,6 +1060,13 @@ public class CSightMain {
          * of times we've refined the gfsm.
          */
         AtomicInteger gfsmCounter = new AtomicInteger(0);
+        /**
+         * Counts the number of refinements that changed the CFSM. This is the
+         * refinement counter that McScMParallelizer tags results with, so that
+         * model checking processes keep running across refinements that do
+         * not change the CFSM that they check.
+         */
+        AtomicInteger modelCounter = new AtomicInteger(0);
         // This counts the number of times we've performed model checking on the
         // gfsm.
         int mcCounter = 0;
@@ -965,6 +1079,10 @@ public class CSightMain {
             return mcCounter;
         }
 
+        // Digests of the FSMs of the CFSM that is currently being checked.
+        List<String> modelDigests = getFSMDigests(pGraph
+                .getCFSM(opts.minimize));
+
         // Initialize the Parallelizer.
         // @see McScMParallelizer for taskChannel
         final BlockingQueue<ParallelizerTask> taskChannel = new LinkedBlockingQueue<ParallelizerTask>(
@@ -973,10 +1091,11 @@ public class CSightMain {
         final BlockingQueue<ParallelizerResult> resultsChannel = new LinkedBlockingQueue<ParallelizerResult>();
 
         Thread parallelizer = new Thread(new McScMParallelizer(
-                opts.numParallel, opts.mcPath, taskChannel, resultsChannel));
+                opts.numParallel, opts.mcPath, mcCache, taskChannel,
+                resultsChannel));
 
         parallelizer.start();
-        parallelizerStartK(invsToSatisfy, curInvs, pGraph, gfsmCounter.get(),
+        parallelizerStartK(invsToSatisfy, curInvs, pGraph, modelCounter.get(),
                 totalInvs, taskChannel);
 
         while (true) {
@@ -985,9 +1104,11 @@ public class CSightMain {
             assert maxTimedOutInvs.size() + satisfiedInvs.size()
                     + invsToSatisfy.size() + curInvs.size() == totalInvs;
 
-            ParallelizerResult result = waitForResult(gfsmCounter.get(),
+            ParallelizerResult result = waitForResult(modelCounter.get(),
                     resultsChannel);
-            mcCounter++;
+            if (!result.isCached()) {
+                mcCounter++;
+            }
 
             logger.info("Obtained result from parallelizer (refinement: "
                     + gfsmCounter + ")");
@@ -1008,7 +1129,7 @@ public class CSightMain {
 
             if (result.isTimeout()) {
                 processTimeOut(pGraph, invsToSatisfy, maxTimedOutInvs, curInvs,
-                        opts.timeoutDelta, opts.maxTimeout, gfsmCounter.get(),
+                        opts.timeoutDelta, opts.maxTimeout, modelCounter.get(),
                         taskChannel, resultPair);
 
                 // Continue to wait for next result.
@@ -1019,8 +1140,8 @@ public class CSightMain {
                 // Add the invariant back to beginning of queue checking to
                 // check again.
                 invsToSatisfy.add(0, resultPair);
-                parallelizerStartOne(invsToSatisfy, curInvs, pGraph, mcCounter,
-                        taskChannel);
+                parallelizerStartOne(invsToSatisfy, curInvs, pGraph,
+                        modelCounter.get(), taskChannel);
 
                 // Continue to wait for next result.
                 continue;
@@ -1045,7 +1166,8 @@ public class CSightMain {
             if (mcResult.modelIsSafe()) {
                 if (processSafeModelResult(pGraph, invsToSatisfy,
                         maxTimedOutInvs, satisfiedInvs, curInvs,
-                        gfsmCounter.get(), taskChannel, resultInv, invsCounter)) {
+                        modelCounter.get(), taskChannel, resultInv,
+                        invsCounter)) {
                     // Every invariant has been satisfied. We are done.
                     logger.info("Finished checking " + invsCounter + " / "
                             + totalInvs + " invariants.");
@@ -1058,8 +1180,8 @@ public class CSightMain {
 
             if (processUnsafeModelResult(pGraph, invsToSatisfy,
                     maxTimedOutInvs, curInvs, totalInvs, gfsmCounter,
-                    opts.outputPathPrefix, taskChannel, resultsChannel,
-                    resultPair, mcResult)) {
+                    modelCounter, modelDigests, opts.outputPathPrefix,
+                    taskChannel, resultsChannel, resultPair, mcResult)) {
                 parallelizer.interrupt();
                 return mcCounter;
             }
@@ -1069,12 +1191,21 @@ public class CSightMain {
     }
 
     /**
-     * Stops all model checking process and clears curInvs, then refines the
-     * GFSM model given an invariant that returned unsafe. All maxTimedOutInvs
-     * are added back to invsToSatisfy, and the gfsmCounter is updated. Then,
-     * restarts the model checking processes if the new model is not a singleton
-     * and returns false. If the model is a singleton, no more model checking is
-     * necessary, and returns true.
+     * Refines the GFSM model given an invariant that returned unsafe, and
+     * updates the gfsmCounter. The model checking processes keep running while
+     * the GFSM is refined. <br />
+     * <br />
+     * The check of an invariant depends on the FSMs of all processes (a bad
+     * state requires every process to be in an accept state). If the
+     * refinement changed none of the FSMs of the CFSM, then the running
+     * processes check the same CFSM as the refined model, and their results
+     * remain valid: they are kept running, and only the unsafe invariant is
+     * checked again. Otherwise, all model checking processes are stopped,
+     * curInvs is cleared, all curInvs and maxTimedOutInvs are added back to
+     * invsToSatisfy, and the modelCounter is updated. Then, restarts the model
+     * checking processes if the new model is not a singleton and returns
+     * false. If the model is a singleton, no more model checking is necessary,
+     * and returns true.
      * 
      * @param pGraph
      *            the model to check
@@ -1088,6 +1219,12 @@ public class CSightMain {
      *            the total number of invariants
      * @param gfsmCounter
      *            the refinement counter
+     * @param modelCounter
+     *            the number of refinements that changed the CFSM, which tags
+     *            the results of the parallelizer
+     * @param modelDigests
+     *            digests of the FSMs of the CFSM that is currently being
+     *            checked, updated if the refinement changes them
      * @param gfsmPrefixFilename
      * @param taskChannel
      * @param resultsChannel
@@ -1104,7 +1241,8 @@ public class CSightMain {
             List<InvariantTimeoutPair> invsToSatisfy,
             Set<InvariantTimeoutPair> maxTimedOutInvs,
             Set<InvariantTimeoutPair> curInvs, int totalInvs,
-            AtomicInteger gfsmCounter, String gfsmPrefixFilename,
+            AtomicInteger gfsmCounter, AtomicInteger modelCounter,
+            List<String> modelDigests, String gfsmPrefixFilename,
             final BlockingQueue<ParallelizerTask> taskChannel,
             final BlockingQueue<ParallelizerResult> resultsChannel,
             InvariantTimeoutPair resultPair, MCResult mcResult)
@@ -1112,24 +1250,55 @@ public class CSightMain {
         // Increment the number of refinements:
         gfsmCounter.addAndGet(1);
 
-        taskChannel.clear();
-        taskChannel.put(new ParallelizerTask(ParallelizerCommands.STOP_ALL,
-                null, gfsmCounter.get()));
-        resultsChannel.clear();
-
-        // Add the invariants that didn't return back to invariants to
-        // satisfy.
-        invsToSatisfy.addAll(0, curInvs);
-        // Add the unsatisfied invariant back to invariants to satisfy.
-        invsToSatisfy.add(0, resultPair);
-
         // Refine the pGraph in an attempt to eliminate the counter
         // example.
         refineCExample(pGraph, mcResult.getCExample());
 
+        // Add the unsatisfied invariant back to invariants to satisfy.
+        invsToSatisfy.add(0, resultPair);
+
         exportIntermediateModels(pGraph, invsToSatisfy.get(0).getInv(),
                 gfsmCounter.get(), gfsmPrefixFilename);
 
+        if (pGraph.isSingleton()) {
+            return true;
+        }
+
+        List<String> refinedDigests = getFSMDigests(pGraph
+                .getCFSM(opts.minimize));
+        if (refinedDigests.equals(modelDigests)) {
+            // The running processes check the refined model. Keep them
+            // running, and check the unsatisfied invariant again (in the slot
+            // that it used). The timed out invariants would time out again.
+            logger.info("Refinement did not change the CFSM, keeping "
+                    + curInvs.size() + " model checking processes running.");
+            parallelizerStartOne(invsToSatisfy, curInvs, pGraph,
+                    modelCounter.get(), taskChannel);
+            return false;
+        }
+
+        List<Integer> changedPids = Util.newList();
+        for (int pid = 0; pid < refinedDigests.size(); pid++) {
+            if (!refinedDigests.get(pid).equals(modelDigests.get(pid))) {
+                changedPids.add(pid);
+            }
+        }
+        logger.info("Refinement changed the FSMs of pids " + changedPids
+                + ", stopping all model checking processes.");
+        modelDigests.clear();
+        modelDigests.addAll(refinedDigests);
+
+        modelCounter.addAndGet(1);
+        taskChannel.clear();
+        taskChannel.put(new ParallelizerTask(ParallelizerCommands.STOP_ALL,
+                null, modelCounter.get()));
+        resultsChannel.clear();
+
+        // Add the invariants that didn't return back to invariants to
+        // satisfy, after the unsatisfied invariant.
+        invsToSatisfy.addAll(1, curInvs);
+        curInvs.clear();
+
         // Model changed through refinement. Therefore, forget any
         // invariants that might have timed out previously,
         // and add all of them back to invsToSatisfy.
@@ -1140,14 +1309,22 @@ public class CSightMain {
             maxTimedOutInvs.clear();
         }
 
-        if (pGraph.isSingleton()) {
-            return true;
-        }
-        parallelizerStartK(invsToSatisfy, curInvs, pGraph, gfsmCounter.get(),
+        parallelizerStartK(invsToSatisfy, curInvs, pGraph, modelCounter.get(),
                 totalInvs, taskChannel);
         return false;
     }
 
+    /**
+     * Returns the digests of the FSMs of cfsm, in pid order.
+     */
+    private static List<String> getFSMDigests(CFSM cfsm) {
+        List<String> digests = Util.newList();
+        for (FSM fsm : cfsm.getFSMs()) {
+            digests.add(MCResultCache.getDigest(fsm));
+        }
+        return digests;
+    }
+
     /**
      * Adds timeout invariants from parallel model checking back to
      * invsToSatisfy after increasing their timeout value. If the new timeout
@@ -1395,7 +1572,8 @@ public class CSightMain {
      * @throws Exception
      * @throws IOException
      * @throws InterruptedException
-     * @return The number of iteration of the model checking loop
+     * @return The number of model checks that were run, not counting
+     *         results that were reused from the model checking cache
      */
     public int checkMultipleInvsRefineGFSM(List<BinaryInvariant> invs,
             GFSM pGraph) throws Exception, IOException, InterruptedException {
@@ -1473,41 +1651,74 @@ public class CSightMain {
             // Get the CFSM corresponding to the partition graph.
             CFSM cfsm = pGraph.getCFSM(opts.minimize);
 
-            String mcInputStr;
-            mcInputStr = cfsm
-                    .toPromelaString(curInvs, opts.spinChannelCapacity);
-            spinMC.prepare(mcInputStr, 20);
-
-            logger.info("*******************************************************");
-            logger.info("Checking ... " + curInvs.size() + " invariants. Inv "
-                    + satisfiedInvs.size() + " / " + totalInvs + " satisfied"
-                    + ", refinements so far: " + gfsmCounter + ". Timeout = "
-                    + curTimeout + ". " + timedOutInvs.size()
-                    + " invariants are timed out.");
-            logger.info("*******************************************************");
+            // Results of curInvs, by index. Cached results are reused, and the
+            // remaining invariants are checked with Spin.
+            Map<Integer, MCResult> results = Util.newMap();
+            List<MCResultCache.Key> cacheKeys = Util.newList();
+            List<Integer> uncachedInvNums = Util.newList();
+            List<BinaryInvariant> uncachedInvs = Util.newList();
+            for (int i = 0; i < curInvs.size(); i++) {
+                MCResult result = null;
+                if (mcCache != null) {
+                    MCResultCache.Key cacheKey = mcCache.getKey(cfsm,
+                            curInvs.get(i));
+                    cacheKeys.add(cacheKey);
+                    result = mcCache.get(cacheKey, cfsm.getChannelIds());
+                }
+                if (result != null) {
+                    logger.info("Using the cached result of checking "
+                            + curInvs.get(i).toString() + ".");
+                    results.put(i, result);
+                } else {
+                    uncachedInvNums.add(i);
+                    uncachedInvs.add(curInvs.get(i));
+                }
+            }
 
-            for (int curInvNum = 0; curInvNum < curInvs.size(); curInvNum++) {
-                try {
-                    logger.info("Running Spin for invariant "
-                            + curInvs.get(curInvNum));
-                    modelCheckCounter++;
-                    spinMC.verify(mcInputStr, curTimeout, curInvNum);
-                } catch (TimeoutException e) {
-                    // The model checker timed out. First, record the timed-out
-                    // invariant so that we are not stuck re-checking it.
-                    BinaryInvariant timedOutInv = curInvs.get(curInvNum);
+            if (!uncachedInvs.isEmpty()) {
+                String mcInputStr;
+                mcInputStr = cfsm.toPromelaString(uncachedInvs,
+                        opts.spinChannelCapacity);
+                spinMC.prepare(mcInputStr, 20);
+
+                logger.info("*******************************************************");
+                logger.info("Checking ... " + uncachedInvs.size()
+                        + " invariants. Inv " + satisfiedInvs.size() + " / "
+                        + totalInvs + " satisfied" + ", refinements so far: "
+                        + gfsmCounter + ". Timeout = " + curTimeout + ". "
+                        + timedOutInvs.size() + " invariants are timed out.");
+                logger.info("*******************************************************");
+
+                // Run Spin for all of the invariants, in parallel if
+                // runParallel.
+                modelCheckCounter += uncachedInvs.size();
+                Set<Integer> timedOutInvNums = spinMC.verifyAll(
+                        uncachedInvs.size(), curTimeout);
+                for (int invNum : timedOutInvNums) {
+                    // The model checker timed out. Record the timed-out
+                    // invariant so that we are not stuck re-checking it, and
+                    // continue with the results of the rest of the
+                    // invariants.
+                    BinaryInvariant timedOutInv = uncachedInvs.get(invNum);
                     invsToSatisfy.remove(timedOutInv);
                     timedOutInvs.add(timedOutInv);
                     logger.info("Timed out in checking invariant: "
                             + timedOutInv.toString());
-                    // Stay in the loop.
-                    // Continue checking the rest of the invariants.
                 }
-            }
 
-            // Verify the results that didn't time out.
-            Map<Integer, MCResult> results = spinMC.getMultipleVerifyResults(
-                    cfsm.getChannelIds(), curInvs.size());
+                // Verify the results that didn't time out.
+                Map<Integer, MCResult> spinResults = spinMC
+                        .getMultipleVerifyResults(cfsm.getChannelIds(),
+                                uncachedInvs.size());
+                for (int invNum = 0; invNum < uncachedInvs.size(); invNum++) {
+                    int i = uncachedInvNums.get(invNum);
+                    MCResult result = spinResults.get(invNum);
+                    results.put(i, result);
+                    if (result != null && mcCache != null) {
+                        mcCache.put(cacheKeys.get(i), result);
+                    }
+                }
+            }
             logger.info(results.size() + " / " + curInvs.size()
                     + " results returned.");
             for (int i = 0; i < curInvs.size(); i++) {
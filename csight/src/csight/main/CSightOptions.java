@@ -166,15 +166,19 @@ public class CSightOptions extends Options {
     public String mcPath = null;
 
     @Option(
-            value = "Model checker type to use. Must be either 'spin' or 'mcscm'.")
+            value = "Model checker type to use. Must be one of 'spin', 'mcscm', or 'explicit' (the built-in bounded explicit-state model checker).")
     public String mcType = "mcscm";
 
+    @Option(
+            value = "Maximum number of messages in a channel when using the explicit model checker. Models are only checked up to this bound.")
+    public int explicitChannelBound = 8;
+
     @Option(
             value = "Default channel capacity to use when using the spin model checker.")
     public int spinChannelCapacity = 8;
 
     @Option(
-            value = "-p Run model checking processes in parallel. (Only available for McScM)")
+            value = "-p Run model checking processes in parallel. (Only available for McScM, and for Spin with spinMultipleInvs, which runs the verifications of the invariants of a model in parallel; the explicit model checker instead explores each model on multiple threads)")
     public boolean runParallel = true;
 
     @Option(
@@ -215,6 +219,17 @@ public class CSightOptions extends Options {
             aliases = { "-max-timeout" })
     public int maxTimeout = 60;
 
+    /**
+     * Model checking results are cached by the checked CFSM and invariant.
+     */
+    @Option(
+            value = "Maximum number of model checking results to cache, so that the same invariant is not checked twice in the same CFSM. 0 disables the cache.")
+    public int mcCacheSize = 1024;
+
+    @Option(
+            value = "File in which to persist cached model checking results, so that later runs (e.g., over the same logs) reuse them. Results are not persisted if unset.")
+    public String mcCacheFile = null;
+
     // end option group "Model Checking Options"
     // //////////////////////////////////////////////////
 
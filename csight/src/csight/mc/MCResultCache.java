@@ -0,0 +1,468 @@
+package csight.mc;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Logger;
+
+import csight.invariants.BinaryInvariant;
+import csight.model.fifosys.cfsm.CFSM;
+import csight.model.fifosys.cfsm.fsm.FSM;
+import csight.model.fifosys.cfsm.fsm.FSMState;
+import csight.util.Util;
+
+import synoptic.model.channelid.ChannelId;
+import synoptic.model.event.DistEventType;
+
+/**
+ * A bounded cache of model checking results, keyed by a canonical form of the
+ * checked CFSM, the checked invariant, and the configuration of the model
+ * checker. The refinement loops often check the same invariant in the same CFSM
+ * more than once (e.g., when a refinement did not change the minimized CFSM),
+ * and a cached result is returned without running the model checker. <br />
+ * <br />
+ * The canonical form of a CFSM numbers the states of each FSM in the order in
+ * which they are reached by a breadth-first traversal that follows transitions
+ * in event order, so that it does not depend on the ids of the states. Only
+ * the states that are reachable from the initial states are part of the
+ * canonical form. Two CFSMs with the same canonical form have the same
+ * executions, and so the same model checking results. <br />
+ * <br />
+ * The cache can be persisted to a file, so that repeated runs over the same
+ * logs reuse the results of earlier runs. Counter-examples are stored as
+ * indices into the events of the canonical form, and are mapped back to the
+ * events of the CFSM for which the cached result is returned. <br />
+ * <br />
+ * Instances are thread-safe.
+ */
+public class MCResultCache {
+    static Logger logger = Logger.getLogger("MCResultCache");
+
+    /** The first line of a persisted cache file. */
+    static final String fileHeader = "# CSight model checking result cache v1";
+
+    private static final Charset utf8 = Charset.forName("UTF-8");
+
+    private static final Comparator<FSMState> stateIdOrder = new Comparator<FSMState>() {
+        @Override
+        public int compare(FSMState s1, FSMState s2) {
+            return Integer.compare(s1.getStateId(), s2.getStateId());
+        }
+    };
+
+    /**
+     * The key of a result: a digest of the canonical form of the CFSM and the
+     * invariant, along with the events of the CFSM in canonical order (which
+     * is not part of the equality of keys).
+     */
+    public static class Key {
+        final String digest;
+        final List<DistEventType> events;
+
+        Key(String digest, List<DistEventType> events) {
+            this.digest = digest;
+            this.events = events;
+        }
+
+        @Override
+        public String toString() {
+            return digest;
+        }
+    }
+
+    /** A cached result: a verdict, and a counter-example if unsafe. */
+    private static class Entry {
+        final boolean isSafe;
+        final int[] cExample;
+
+        Entry(boolean isSafe, int[] cExample) {
+            this.isSafe = isSafe;
+            this.cExample = cExample;
+        }
+    }
+
+    /** A result returned from the cache. */
+    static class CachedMCResult extends MCResult {
+        CachedMCResult(List<String> lines, List<ChannelId> cids,
+                boolean isSafe, MCcExample cExample) {
+            super(lines, cids);
+            this.modelIsSafe = isSafe;
+            this.cExample = cExample;
+        }
+    }
+
+    // //////////////////////////////////////////////////////////////////
+
+    /**
+     * Identifies the model checker, and any of its options that affect the
+     * results (e.g., channel bounds).
+     */
+    private final String mcConfig;
+
+    /** The file in which the cache is persisted, or null. */
+    private final File file;
+
+    /** Entries in least recently used order. */
+    private final LinkedHashMap<String, Entry> entries;
+
+    private int numHits = 0;
+    private int numMisses = 0;
+
+    /**
+     * Creates a cache, and loads the results persisted in file if it exists.
+     *
+     * @param mcConfig
+     *            identifies the model checker configuration whose results are
+     *            cached
+     * @param maxEntries
+     *            maximum number of cached results, after which the least
+     *            recently used results are evicted
+     * @param file
+     *            the file in which to persist the cache, or null
+     * @throws IOException
+     *             if file exists and cannot be read
+     */
+    public MCResultCache(String mcConfig, final int maxEntries, File file)
+            throws IOException {
+        if (maxEntries < 1) {
+            throw new IllegalArgumentException(
+                    "Cache must hold at least one result");
+        }
+        this.mcConfig = mcConfig;
+        this.file = file;
+        this.entries = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(
+                    Map.Entry<String, Entry> eldest) {
+                return size() > maxEntries;
+            }
+        };
+        if (file != null && file.exists()) {
+            load();
+        }
+    }
+
+    /**
+     * Returns the key of the result of checking inv in cfsm. Must be called
+     * before the CFSM is augmented with invariant tracing.
+     */
+    public Key getKey(CFSM cfsm, BinaryInvariant inv) {
+        List<DistEventType> events = Util.newList();
+        Map<DistEventType, Integer> eventIds = Util.newMap();
+
+        StringBuilder sb = new StringBuilder();
+        appendString(sb, mcConfig);
+        appendString(sb, inv.getClass().getName());
+        appendString(sb, inv.getFirst().toString());
+        appendString(sb, inv.getSecond().toString());
+
+        List<ChannelId> cids = cfsm.getChannelIds();
+        sb.append(cids.size()).append(';');
+        for (ChannelId cid : cids) {
+            appendString(sb, cid.toString());
+        }
+
+        sb.append(cfsm.getNumProcesses()).append(';');
+        for (FSM fsm : cfsm.getFSMs()) {
+            appendFSM(sb, fsm, events, eventIds);
+        }
+
+        return new Key(digest(sb.toString()), events);
+    }
+
+    /**
+     * Returns a digest of the canonical form of fsm. FSMs with the same digest
+     * have the same executions.
+     */
+    public static String getDigest(FSM fsm) {
+        StringBuilder sb = new StringBuilder();
+        appendFSM(sb, fsm, new ArrayList<DistEventType>(),
+                new LinkedHashMap<DistEventType, Integer>());
+        return digest(sb.toString());
+    }
+
+    /**
+     * Appends the canonical form of fsm to sb: for each reachable state, in
+     * breadth-first order, its flags and its transitions as (event id, state
+     * number) pairs.
+     */
+    private static void appendFSM(StringBuilder sb, FSM fsm,
+            List<DistEventType> events, Map<DistEventType, Integer> eventIds) {
+        // FSMState.hashCode() is constant, so an identity map is used to look
+        // up state numbers.
+        Map<FSMState, Integer> numbers = new IdentityHashMap<FSMState, Integer>();
+        List<FSMState> states = Util.newList();
+
+        List<FSMState> inits = new ArrayList<FSMState>(fsm.getInitStates());
+        Collections.sort(inits, stateIdOrder);
+        sb.append('p').append(fsm.getPid()).append(';');
+        sb.append(inits.size()).append(';');
+        for (FSMState s : inits) {
+            sb.append(getNumber(s, numbers, states)).append(';');
+        }
+
+        for (int i = 0; i < states.size(); i++) {
+            FSMState s = states.get(i);
+            sb.append(s.isAccept() ? 'A' : 'a');
+            sb.append(s.isInitial() ? 'I' : 'i');
+
+            List<DistEventType> sEvents = new ArrayList<DistEventType>(
+                    s.getTransitioningEvents());
+            Collections.sort(sEvents);
+            for (DistEventType e : sEvents) {
+                Integer eId = eventIds.get(e);
+                if (eId == null) {
+                    eId = events.size();
+                    events.add(e);
+                    eventIds.put(e, eId);
+                    sb.append('e');
+                    appendString(sb, e.toString());
+                }
+                List<FSMState> nextStates = new ArrayList<FSMState>(
+                        s.getNextStates(e));
+                Collections.sort(nextStates, stateIdOrder);
+                for (FSMState next : nextStates) {
+                    sb.append(eId).append(',')
+                            .append(getNumber(next, numbers, states))
+                            .append(';');
+                }
+            }
+            sb.append('.');
+        }
+    }
+
+    private static int getNumber(FSMState s, Map<FSMState, Integer> numbers,
+            List<FSMState> states) {
+        Integer n = numbers.get(s);
+        if (n == null) {
+            n = states.size();
+            states.add(s);
+            numbers.put(s, n);
+        }
+        return n;
+    }
+
+    /** Appends a length-prefixed string, so that strings cannot run together. */
+    private static void appendString(StringBuilder sb, String s) {
+        sb.append(s.length()).append(':').append(s);
+    }
+
+    private static String digest(String s) {
+        MessageDigest md;
+        try {
+            md = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            // Every Java platform implements SHA-256.
+            throw new RuntimeException(e);
+        }
+        byte[] bytes = md.digest(s.getBytes(utf8));
+        StringBuilder sb = new StringBuilder();
+        for (byte b : bytes) {
+            sb.append(String.format("%02x", b));
+        }
+        return sb.toString();
+    }
+
+    // //////////////////////////////////////////////////////////////////
+
+    /**
+     * Returns the cached result for key, or null if there is none.
+     *
+     * @param cids
+     *            channel ids of the CFSM for which the result is returned
+     */
+    public synchronized MCResult get(Key key, List<ChannelId> cids) {
+        Entry entry = entries.get(key.digest);
+        if (entry == null || !isValid(entry, key)) {
+            numMisses++;
+            return null;
+        }
+        numHits++;
+
+        List<String> lines = Util.newList();
+        lines.add("Cached result " + key.digest + ".");
+        MCcExample cExample = null;
+        if (entry.isSafe) {
+            lines.add("Result: Model is safe.");
+        } else {
+            lines.add("Result: Model is unsafe.");
+            cExample = new MCcExample();
+            for (int eId : entry.cExample) {
+                cExample.addScmEventStrToPath(key.events.get(eId));
+            }
+        }
+        return new CachedMCResult(lines, cids, entry.isSafe, cExample);
+    }
+
+    /**
+     * Returns whether the counter-example of entry refers only to events of
+     * key, which may not be the case for a corrupt cache file.
+     */
+    private static boolean isValid(Entry entry, Key key) {
+        if (entry.isSafe) {
+            return true;
+        }
+        for (int eId : entry.cExample) {
+            if (eId < 0 || eId >= key.events.size()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Caches result for key. Results of unsafe models whose counter-examples
+     * contain events that are not in the CFSM are not cached.
+     */
+    public synchronized void put(Key key, MCResult result) {
+        int[] cExample = null;
+        if (!result.modelIsSafe()) {
+            if (result.getCExample() == null) {
+                return;
+            }
+            List<DistEventType> cExampleEvents = result.getCExample()
+                    .getEvents();
+            cExample = new int[cExampleEvents.size()];
+            for (int i = 0; i < cExample.length; i++) {
+                cExample[i] = key.events.indexOf(cExampleEvents.get(i));
+                if (cExample[i] < 0) {
+                    logger.fine("Not caching a counter-example with an unknown event: "
+                            + cExampleEvents.get(i));
+                    return;
+                }
+            }
+        }
+        entries.put(key.digest, new Entry(result.modelIsSafe(), cExample));
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public synchronized int getNumHits() {
+        return numHits;
+    }
+
+    public synchronized int getNumMisses() {
+        return numMisses;
+    }
+
+    // //////////////////////////////////////////////////////////////////
+
+    /**
+     * Loads the entries in file. Lines that cannot be parsed are skipped.
+     */
+    private void load() throws IOException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(
+                new FileInputStream(file), utf8));
+        try {
+            String line = reader.readLine();
+            if (line == null || !line.equals(fileHeader)) {
+                logger.warning("Ignoring model checking cache file with an unknown format: "
+                        + file);
+                return;
+            }
+            while ((line = reader.readLine()) != null) {
+                parseEntry(line);
+            }
+        } finally {
+            reader.close();
+        }
+        logger.info("Loaded " + entries.size()
+                + " cached model checking results from " + file);
+    }
+
+    /**
+     * Parses and adds an entry of the form "digest safe" or
+     * "digest unsafe [eventId,...]".
+     */
+    private void parseEntry(String line) {
+        String[] parts = line.split(" ");
+        try {
+            if (parts.length == 2 && parts[1].equals("safe")) {
+                entries.put(parts[0], new Entry(true, null));
+                return;
+            }
+            if ((parts.length == 2 || parts.length == 3)
+                    && parts[1].equals("unsafe")) {
+                int[] cExample = new int[0];
+                if (parts.length == 3) {
+                    String[] ids = parts[2].split(",");
+                    cExample = new int[ids.length];
+                    for (int i = 0; i < ids.length; i++) {
+                        cExample[i] = Integer.parseInt(ids[i]);
+                    }
+                }
+                entries.put(parts[0], new Entry(false, cExample));
+                return;
+            }
+        } catch (NumberFormatException e) {
+            // Fall through.
+        }
+        logger.warning("Skipping malformed model checking cache entry: "
+                + line);
+    }
+
+    /**
+     * Writes the entries to file, from the least to the most recently used, so
+     * that the order of eviction is kept when the file is loaded. Does nothing
+     * if the cache is not persisted.
+     */
+    public synchronized void save() throws IOException {
+        if (file == null) {
+            return;
+        }
+        File dir = file.getAbsoluteFile().getParentFile();
+        File tmpFile = File.createTempFile(file.getName(), ".tmp", dir);
+        Writer writer = new BufferedWriter(new OutputStreamWriter(
+                new FileOutputStream(tmpFile), utf8));
+        try {
+            writer.write(fileHeader + "\n");
+            for (Map.Entry<String, Entry> e : entries.entrySet()) {
+                Entry entry = e.getValue();
+                writer.write(e.getKey());
+                if (entry.isSafe) {
+                    writer.write(" safe\n");
+                    continue;
+                }
+                writer.write(" unsafe");
+                for (int i = 0; i < entry.cExample.length; i++) {
+                    writer.write(i == 0 ? " " : ",");
+                    writer.write(Integer.toString(entry.cExample[i]));
+                }
+                writer.write("\n");
+            }
+        } finally {
+            writer.close();
+        }
+
+        // Replace the file only once the new contents are complete.
+        if (!tmpFile.renameTo(file)) {
+            file.delete();
+            if (!tmpFile.renameTo(file)) {
+                tmpFile.delete();
+                throw new IOException("Could not write " + file);
+            }
+        }
+        logger.info("Saved " + entries.size()
+                + " cached model checking results to " + file);
+    }
+}
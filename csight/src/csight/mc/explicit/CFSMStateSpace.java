@@ -0,0 +1,416 @@
+package csight.mc.explicit;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import csight.invariants.BinaryInvariant;
+import csight.invariants.checkers.BinChecker;
+import csight.model.fifosys.cfsm.CFSM;
+import csight.model.fifosys.cfsm.fsm.FSM;
+import csight.model.fifosys.cfsm.fsm.FSMState;
+import csight.util.Util;
+
+import synoptic.model.channelid.ChannelId;
+import synoptic.model.event.DistEventType;
+
+/**
+ * The global state space of a CFSM, with every channel bounded to hold at most
+ * channelBound messages, composed with a monitor for a binary invariant. The
+ * CFSM and the monitor are compiled into arrays of integer ids, so that
+ * exploring the state space does not touch the FSM objects. <br />
+ * <br />
+ * A global state is the state of every FSM, the state of the monitor, and the
+ * contents of every channel. Sending to a full channel blocks. A global state
+ * is bad (violates the invariant) if all of the FSMs are in accepting states,
+ * all of the channels are empty, and the monitor is failing. This is the same
+ * bad state that McScM checks for in a CFSM that is augmented with invariant
+ * tracing, except that channels are bounded. <br />
+ * <br />
+ * Global states are encoded as EncodedState instances, whose bytes are:
+ *
+ * <pre>
+ * state of pid 0, ..., state of pid n-1, monitor state,
+ * length of channel 0, messages in channel 0, ..., length of channel m-1, messages in channel m-1
+ * </pre>
+ *
+ * where each value takes one byte if all of the ids fit into a byte, and two
+ * bytes otherwise. Instances are immutable once constructed, and may be used by
+ * multiple threads.
+ */
+class CFSMStateSpace {
+    // Kinds of transitions.
+    private static final int LOCAL = 0;
+    private static final int SEND = 1;
+    private static final int RECV = 2;
+
+    // Number of ints per transition in the transitions arrays: kind, channel,
+    // message, event id, and target state.
+    private static final int TX_SIZE = 5;
+
+    // Orders FSM states by their ids, so that the compiled state space (and
+    // counter-examples) do not depend on hash set iteration order.
+    private static final Comparator<FSMState> stateIdOrder = new Comparator<FSMState>() {
+        @Override
+        public int compare(FSMState s1, FSMState s2) {
+            return Integer.compare(s1.getStateId(), s2.getStateId());
+        }
+    };
+
+    private final int numProcesses;
+    private final int numChannels;
+    private final int channelBound;
+
+    /** All of the events of the CFSM, indexed by event id. */
+    private final List<DistEventType> events;
+
+    /** Initial state ids of each pid. */
+    private final int[][] initStates;
+
+    /** Whether each state (by id) of each pid is an accepting state. */
+    private final boolean[][] acceptStates;
+
+    /**
+     * The transitions out of each state (by id) of each pid, as a flat array of
+     * TX_SIZE-tuples.
+     */
+    private final int[][][] transitions;
+
+    /** Next monitor state, indexed by monitor state and event id. */
+    private final int[][] monitorNext;
+
+    /** Whether each monitor state is failing. */
+    private final boolean[] monitorFail;
+
+    /** Number of bytes used to encode each value in a global state. */
+    private final int bytesPerValue;
+
+    /**
+     * Compiles the state space of cfsm composed with a monitor for inv.
+     *
+     * @param cfsm
+     *            a CFSM that is not augmented with invariant tracing
+     * @param inv
+     *            the invariant to monitor
+     * @param channelBound
+     *            maximum number of messages in a channel
+     */
+    CFSMStateSpace(CFSM cfsm, BinaryInvariant inv, int channelBound) {
+        assert channelBound > 0;
+
+        this.numProcesses = cfsm.getNumProcesses();
+        this.channelBound = channelBound;
+
+        List<ChannelId> cids = cfsm.getChannelIds();
+        this.numChannels = cids.size();
+        Map<ChannelId, Integer> channelIndices = Util.newMap();
+        List<Map<String, Integer>> messageIds = Util.newList(numChannels);
+        for (int i = 0; i < numChannels; i++) {
+            channelIndices.put(cids.get(i), i);
+            messageIds.add(Util.<String, Integer> newMap());
+        }
+
+        this.events = Util.newList();
+        Map<DistEventType, Integer> eventIds = Util.newMap();
+
+        this.initStates = new int[numProcesses][];
+        this.acceptStates = new boolean[numProcesses][];
+        this.transitions = new int[numProcesses][][];
+
+        int maxValue = channelBound;
+        for (int pid = 0; pid < numProcesses; pid++) {
+            FSM fsm = cfsm.getFSMs().get(pid);
+
+            // Assign ids to the states reachable from the initial states, in
+            // breadth-first order. FSMState.hashCode() is constant, so an
+            // identity map is used to look up ids.
+            List<FSMState> states = Util.newList();
+            Map<FSMState, Integer> stateIds = new IdentityHashMap<FSMState, Integer>();
+            List<FSMState> inits = new ArrayList<FSMState>(fsm.getInitStates());
+            Collections.sort(inits, stateIdOrder);
+            initStates[pid] = new int[inits.size()];
+            for (int i = 0; i < inits.size(); i++) {
+                initStates[pid][i] = getId(inits.get(i), states, stateIds);
+            }
+
+            List<int[]> pidTransitions = Util.newList();
+            for (int sId = 0; sId < states.size(); sId++) {
+                FSMState s = states.get(sId);
+                List<Integer> txs = Util.newList();
+                List<DistEventType> sEvents = new ArrayList<DistEventType>(
+                        s.getTransitioningEvents());
+                Collections.sort(sEvents);
+                for (DistEventType e : sEvents) {
+                    int kind;
+                    int channel = -1;
+                    int message = -1;
+                    if (e.isSynthSendEvent()) {
+                        throw new IllegalArgumentException(
+                                "Cannot check a CFSM that is augmented with invariant tracing: "
+                                        + e);
+                    } else if (e.isSendEvent() || e.isRecvEvent()) {
+                        kind = e.isSendEvent() ? SEND : RECV;
+                        Integer ch = channelIndices.get(e.getChannelId());
+                        if (ch == null) {
+                            throw new IllegalArgumentException(
+                                    "Event on an unknown channel: " + e);
+                        }
+                        channel = ch;
+                        message = getId(e.getEType(), messageIds.get(channel));
+                    } else {
+                        kind = LOCAL;
+                    }
+
+                    Integer eId = eventIds.get(e);
+                    if (eId == null) {
+                        eId = events.size();
+                        events.add(e);
+                        eventIds.put(e, eId);
+                    }
+
+                    List<FSMState> nextStates = new ArrayList<FSMState>(
+                            s.getNextStates(e));
+                    Collections.sort(nextStates, stateIdOrder);
+                    for (FSMState next : nextStates) {
+                        txs.add(kind);
+                        txs.add(channel);
+                        txs.add(message);
+                        txs.add(eId);
+                        txs.add(getId(next, states, stateIds));
+                    }
+                }
+                int[] txArray = new int[txs.size()];
+                for (int i = 0; i < txArray.length; i++) {
+                    txArray[i] = txs.get(i);
+                }
+                pidTransitions.add(txArray);
+            }
+
+            transitions[pid] = pidTransitions.toArray(new int[0][]);
+            acceptStates[pid] = new boolean[states.size()];
+            for (int sId = 0; sId < states.size(); sId++) {
+                acceptStates[pid][sId] = states.get(sId).isAccept();
+            }
+            maxValue = Math.max(maxValue, states.size());
+        }
+        for (Map<String, Integer> ids : messageIds) {
+            maxValue = Math.max(maxValue, ids.size());
+        }
+
+        // Compile the monitor by exploring the states of a checker for inv
+        // over all events of the CFSM.
+        List<BinChecker<?>> checkers = Util.newList();
+        Map<Object, Integer> checkerStateIds = Util.newMap();
+        BinChecker<?> initChecker = inv.newChecker();
+        checkers.add(initChecker);
+        checkerStateIds.put(initChecker.getState(), 0);
+        List<int[]> next = Util.newList();
+        for (int m = 0; m < checkers.size(); m++) {
+            int[] mNext = new int[events.size()];
+            for (int eId = 0; eId < events.size(); eId++) {
+                BinChecker<?> c = checkers.get(m).getClone();
+                c.transition(events.get(eId));
+                Integer nextId = checkerStateIds.get(c.getState());
+                if (nextId == null) {
+                    nextId = checkers.size();
+                    checkers.add(c);
+                    checkerStateIds.put(c.getState(), nextId);
+                }
+                mNext[eId] = nextId;
+            }
+            next.add(mNext);
+        }
+        this.monitorNext = next.toArray(new int[0][]);
+        this.monitorFail = new boolean[checkers.size()];
+        for (int m = 0; m < checkers.size(); m++) {
+            monitorFail[m] = checkers.get(m).isFail();
+        }
+        maxValue = Math.max(maxValue, checkers.size());
+
+        if (maxValue <= 0xFF) {
+            bytesPerValue = 1;
+        } else if (maxValue <= 0xFFFF) {
+            bytesPerValue = 2;
+        } else {
+            throw new IllegalArgumentException(
+                    "CFSM is too large to check: more than 65535 states in an FSM or messages on a channel");
+        }
+    }
+
+    private static int getId(FSMState s, List<FSMState> states,
+            Map<FSMState, Integer> stateIds) {
+        Integer id = stateIds.get(s);
+        if (id == null) {
+            id = states.size();
+            states.add(s);
+            stateIds.put(s, id);
+        }
+        return id;
+    }
+
+    private static int getId(String message, Map<String, Integer> messageIds) {
+        Integer id = messageIds.get(message);
+        if (id == null) {
+            id = messageIds.size();
+            messageIds.put(message, id);
+        }
+        return id;
+    }
+
+    // //////////////////////////////////////////////////////////////////
+    // Decoded global states are int arrays of the following layout:
+    // [ state of pid 0, ..., state of pid n-1, monitor state,
+    // channel 0 length, channel 0 messages (channelBound slots), ... ]
+
+    private int monitorIndex() {
+        return numProcesses;
+    }
+
+    private int channelIndex(int channel) {
+        return numProcesses + 1 + channel * (channelBound + 1);
+    }
+
+    private int decodedSize() {
+        return channelIndex(numChannels);
+    }
+
+    private void decode(EncodedState s, int[] vec) {
+        byte[] b = s.bytes;
+        int pos = 0;
+        for (int i = 0; i <= numProcesses; i++) {
+            vec[i] = readValue(b, pos);
+            pos += bytesPerValue;
+        }
+        for (int c = 0; c < numChannels; c++) {
+            int base = channelIndex(c);
+            int len = readValue(b, pos);
+            pos += bytesPerValue;
+            vec[base] = len;
+            for (int i = 1; i <= len; i++) {
+                vec[base + i] = readValue(b, pos);
+                pos += bytesPerValue;
+            }
+        }
+    }
+
+    private EncodedState encode(int[] vec, EncodedState parent, int eventId) {
+        int numValues = numProcesses + 1;
+        boolean channelsEmpty = true;
+        for (int c = 0; c < numChannels; c++) {
+            int len = vec[channelIndex(c)];
+            numValues += 1 + len;
+            channelsEmpty &= (len == 0);
+        }
+
+        byte[] b = new byte[numValues * bytesPerValue];
+        int pos = 0;
+        for (int i = 0; i <= numProcesses; i++) {
+            pos = writeValue(b, pos, vec[i]);
+        }
+        for (int c = 0; c < numChannels; c++) {
+            int base = channelIndex(c);
+            int len = vec[base];
+            pos = writeValue(b, pos, len);
+            for (int i = 1; i <= len; i++) {
+                pos = writeValue(b, pos, vec[base + i]);
+            }
+        }
+
+        boolean isBad = channelsEmpty && monitorFail[vec[monitorIndex()]];
+        for (int pid = 0; isBad && pid < numProcesses; pid++) {
+            isBad = acceptStates[pid][vec[pid]];
+        }
+        return new EncodedState(b, isBad, parent, eventId);
+    }
+
+    private int readValue(byte[] b, int pos) {
+        if (bytesPerValue == 1) {
+            return b[pos] & 0xFF;
+        }
+        return ((b[pos] & 0xFF) << 8) | (b[pos + 1] & 0xFF);
+    }
+
+    private int writeValue(byte[] b, int pos, int value) {
+        if (bytesPerValue == 1) {
+            b[pos] = (byte) value;
+            return pos + 1;
+        }
+        b[pos] = (byte) (value >>> 8);
+        b[pos + 1] = (byte) value;
+        return pos + 2;
+    }
+
+    // //////////////////////////////////////////////////////////////////
+
+    /**
+     * Returns the initial global states: every combination of initial FSM
+     * states, with empty channels and the initial monitor state.
+     */
+    List<EncodedState> getInitialStates() {
+        List<EncodedState> ret = Util.newList();
+        int[] vec = new int[decodedSize()];
+        addInitialStates(0, vec, ret);
+        return ret;
+    }
+
+    private void addInitialStates(int pid, int[] vec, List<EncodedState> ret) {
+        if (pid == numProcesses) {
+            ret.add(encode(vec, null, -1));
+            return;
+        }
+        for (int sId : initStates[pid]) {
+            vec[pid] = sId;
+            addInitialStates(pid + 1, vec, ret);
+        }
+    }
+
+    /**
+     * Adds the global states that are reachable from s in one transition of
+     * some FSM to successors.
+     */
+    void addSuccessors(EncodedState s, List<EncodedState> successors) {
+        int[] vec = new int[decodedSize()];
+        decode(s, vec);
+        int monitor = vec[monitorIndex()];
+
+        for (int pid = 0; pid < numProcesses; pid++) {
+            int[] txs = transitions[pid][vec[pid]];
+            for (int i = 0; i < txs.length; i += TX_SIZE) {
+                int kind = txs[i];
+                int base = (kind == LOCAL) ? -1 : channelIndex(txs[i + 1]);
+                int message = txs[i + 2];
+                int eventId = txs[i + 3];
+
+                if (kind == SEND && vec[base] == channelBound) {
+                    // The channel is full.
+                    continue;
+                }
+                if (kind == RECV && (vec[base] == 0 || vec[base + 1] != message)) {
+                    // The message is not at the head of the channel.
+                    continue;
+                }
+
+                int[] nextVec = vec.clone();
+                nextVec[pid] = txs[i + 4];
+                nextVec[monitorIndex()] = monitorNext[monitor][eventId];
+                if (kind == SEND) {
+                    nextVec[base] += 1;
+                    nextVec[base + nextVec[base]] = message;
+                } else if (kind == RECV) {
+                    int len = vec[base];
+                    System.arraycopy(vec, base + 2, nextVec, base + 1, len - 1);
+                    nextVec[base] = len - 1;
+                }
+                successors.add(encode(nextVec, s, eventId));
+            }
+        }
+    }
+
+    /** Returns the event with the given id. */
+    DistEventType getEvent(int eventId) {
+        return events.get(eventId);
+    }
+}
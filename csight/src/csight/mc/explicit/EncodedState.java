@@ -0,0 +1,56 @@
+package csight.mc.explicit;
+
+import java.util.Arrays;
+
+/**
+ * A global state of a CFSM (the states of all FSMs, the contents of all
+ * channels, and the state of an invariant monitor), encoded as a compact byte
+ * array by a CFSMStateSpace. Two encoded states are equal if their bytes are
+ * equal. The hash code is computed once, when the state is created, so that it
+ * is computed by the thread that explores the state and not by the thread that
+ * adds it to the set of visited states.
+ */
+final class EncodedState {
+    final byte[] bytes;
+    private final int hash;
+
+    /** Whether the state violates the invariant. */
+    final boolean isBad;
+
+    /**
+     * The state from which this state was first reached, or null if this is an
+     * initial state.
+     */
+    final EncodedState parent;
+
+    /**
+     * Id (in the CFSMStateSpace) of the event that leads from parent to this
+     * state, or -1 if this is an initial state.
+     */
+    final int eventId;
+
+    EncodedState(byte[] bytes, boolean isBad, EncodedState parent, int eventId) {
+        this.bytes = bytes;
+        this.hash = Arrays.hashCode(bytes);
+        this.isBad = isBad;
+        this.parent = parent;
+        this.eventId = eventId;
+    }
+
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        if (this == other) {
+            return true;
+        }
+        if (!(other instanceof EncodedState)) {
+            return false;
+        }
+        EncodedState sOther = (EncodedState) other;
+        return hash == sOther.hash && Arrays.equals(bytes, sOther.bytes);
+    }
+}
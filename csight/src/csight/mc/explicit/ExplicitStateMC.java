@@ -0,0 +1,313 @@
+package csight.mc.explicit;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeoutException;
+import java.util.logging.Logger;
+
+import csight.invariants.BinaryInvariant;
+import csight.mc.MC;
+import csight.mc.MCResult;
+import csight.mc.MCcExample;
+import csight.model.fifosys.cfsm.CFSM;
+import csight.util.Util;
+
+import synoptic.model.channelid.ChannelId;
+
+/**
+ * A model checker that runs inside the JVM: it explores the global state space
+ * of a CFSM directly, instead of serializing the CFSM to an input string for an
+ * external model checker process. This avoids the cost of starting a process
+ * and of writing and parsing text for every check, and needs no model checker
+ * to be installed. <br />
+ * <br />
+ * The search is a breadth-first search over the state space of the CFSM with
+ * channels bounded to channelBound messages (sending to a full channel blocks),
+ * so the reported counter-examples are shortest paths to a bad state. A "safe"
+ * result means that no bad state is reachable within this bound, which, unlike
+ * a safe result from McScM, does not imply that the CFSM is safe with unbounded
+ * channels. <br />
+ * <br />
+ * Each level of the search is expanded by numThreads threads, and the new
+ * states are then added to the set of visited states by a single thread, in a
+ * fixed order, so the result of a check does not depend on the number of
+ * threads.
+ */
+public class ExplicitStateMC extends MC {
+    static Logger logger = Logger.getLogger("ExplicitStateMC");
+
+    /**
+     * Levels with fewer states than this are expanded by the calling thread.
+     */
+    private static final int minParallelLevelSize = 256;
+
+    /** Number of states to expand between two checks of the deadline. */
+    private static final int deadlineCheckInterval = 1024;
+
+    private final int channelBound;
+    private final int numThreads;
+
+    /** Threads that expand levels of the search, created on first use. */
+    private ExecutorService executor = null;
+
+    /** The result of the last call to verify. */
+    private ExplicitStateMCResult result = null;
+
+    /**
+     * @param channelBound
+     *            maximum number of messages in a channel
+     * @param numThreads
+     *            number of threads that explore the state space
+     */
+    public ExplicitStateMC(int channelBound, int numThreads) {
+        super(null);
+        if (channelBound < 1 || numThreads < 1) {
+            throw new IllegalArgumentException(
+                    "Channel bound and number of threads must be positive");
+        }
+        this.channelBound = channelBound;
+        this.numThreads = numThreads;
+    }
+
+    public int getChannelBound() {
+        return channelBound;
+    }
+
+    /**
+     * The explicit-state model checker checks CFSM instances, not input
+     * strings: use verify(CFSM, BinaryInvariant, int) instead.
+     */
+    @Override
+    public void verify(String input, int timeoutSecs) {
+        throw new UnsupportedOperationException(
+                "ExplicitStateMC checks CFSM instances, not input strings.");
+    }
+
+    /**
+     * Checks whether cfsm satisfies inv, and stores the result, which is
+     * returned by getVerifyResult. The CFSM must not be augmented with
+     * invariant tracing. Times out the check after timeoutSecs.
+     *
+     * @throws TimeoutException
+     *             if the check did not finish in timeoutSecs
+     * @throws InterruptedException
+     *             if the calling thread was interrupted during the check
+     */
+    public void verify(CFSM cfsm, BinaryInvariant inv, int timeoutSecs)
+            throws InterruptedException, TimeoutException {
+        result = null;
+        long deadline = System.currentTimeMillis() + timeoutSecs * 1000L;
+
+        CFSMStateSpace space = new CFSMStateSpace(cfsm, inv, channelBound);
+
+        // Maps each visited state to itself, so that the first path to a state
+        // is kept in its parent pointers.
+        Map<EncodedState, EncodedState> visited = Util.newMap();
+        List<EncodedState> level = Util.newList();
+        EncodedState bad = null;
+
+        for (EncodedState s : space.getInitialStates()) {
+            if (!visited.containsKey(s)) {
+                visited.put(s, s);
+                level.add(s);
+                if (s.isBad && bad == null) {
+                    bad = s;
+                }
+            }
+        }
+
+        int depth = 0;
+        while (bad == null && !level.isEmpty()) {
+            List<List<EncodedState>> successors = expandLevel(space, level,
+                    visited, deadline);
+
+            List<EncodedState> nextLevel = Util.newList();
+            for (List<EncodedState> chunk : successors) {
+                for (EncodedState s : chunk) {
+                    if (visited.containsKey(s)) {
+                        continue;
+                    }
+                    visited.put(s, s);
+                    nextLevel.add(s);
+                    if (s.isBad && bad == null) {
+                        bad = s;
+                    }
+                }
+            }
+            level = nextLevel;
+            depth++;
+        }
+
+        List<String> lines = Util.newList();
+        lines.add("Checked " + inv.toString() + " with channel bound "
+                + channelBound + ".");
+        lines.add("Explored " + visited.size() + " states to depth " + depth
+                + ".");
+        MCcExample cExample = null;
+        if (bad == null) {
+            lines.add("Result: Model is safe.");
+        } else {
+            lines.add("Result: Model is unsafe.");
+            cExample = getCExample(space, bad);
+        }
+        result = new ExplicitStateMCResult(lines, cfsm.getChannelIds(),
+                cExample);
+    }
+
+    @Override
+    public MCResult getVerifyResult(List<ChannelId> cids) {
+        assert result != null;
+        return result;
+    }
+
+    /**
+     * Stops the threads that explore the state space.
+     */
+    public synchronized void shutdown() {
+        if (executor != null) {
+            executor.shutdownNow();
+            executor = null;
+        }
+    }
+
+    // //////////////////////////////////////////////////////////////////
+
+    /**
+     * Returns the successors of the states in level that are not in visited,
+     * in chunks whose order does not depend on the number of threads.
+     * Duplicates are not removed. visited is only read while the level is
+     * expanded.
+     */
+    private List<List<EncodedState>> expandLevel(
+            final CFSMStateSpace space, List<EncodedState> level,
+            final Map<EncodedState, EncodedState> visited, final long deadline)
+            throws InterruptedException, TimeoutException {
+        if (numThreads == 1 || level.size() < minParallelLevelSize) {
+            return Collections.singletonList(expand(space, level, visited,
+                    deadline));
+        }
+
+        int chunkSize = (level.size() + numThreads - 1) / numThreads;
+        List<Future<List<EncodedState>>> futures = Util.newList(numThreads);
+        ExecutorService pool = getExecutor();
+        for (int i = 0; i < level.size(); i += chunkSize) {
+            final List<EncodedState> chunk = level.subList(i,
+                    Math.min(i + chunkSize, level.size()));
+            futures.add(pool.submit(new Callable<List<EncodedState>>() {
+                @Override
+                public List<EncodedState> call() throws Exception {
+                    return expand(space, chunk, visited, deadline);
+                }
+            }));
+        }
+
+        List<List<EncodedState>> ret = Util.newList(futures.size());
+        try {
+            for (Future<List<EncodedState>> future : futures) {
+                ret.add(future.get());
+            }
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof TimeoutException) {
+                throw (TimeoutException) cause;
+            }
+            if (cause instanceof InterruptedException) {
+                throw (InterruptedException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new RuntimeException(cause);
+        } finally {
+            // Stop the remaining chunks if one of them failed, or if the
+            // calling thread was interrupted.
+            for (Future<List<EncodedState>> future : futures) {
+                future.cancel(true);
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * Returns the successors of the states in chunk that are not in visited.
+     */
+    private static List<EncodedState> expand(CFSMStateSpace space,
+            List<EncodedState> chunk, Map<EncodedState, EncodedState> visited,
+            long deadline) throws InterruptedException, TimeoutException {
+        List<EncodedState> successors = Util.newList();
+        List<EncodedState> ret = Util.newList();
+        int count = 0;
+        for (EncodedState s : chunk) {
+            if (++count % deadlineCheckInterval == 0) {
+                checkDeadline(deadline);
+            }
+            successors.clear();
+            space.addSuccessors(s, successors);
+            for (EncodedState next : successors) {
+                if (!visited.containsKey(next)) {
+                    ret.add(next);
+                }
+            }
+        }
+        checkDeadline(deadline);
+        return ret;
+    }
+
+    private static void checkDeadline(long deadline)
+            throws InterruptedException, TimeoutException {
+        if (Thread.interrupted()) {
+            throw new InterruptedException();
+        }
+        if (System.currentTimeMillis() > deadline) {
+            throw new TimeoutException("Explicit-state model checking timed out.");
+        }
+    }
+
+    /**
+     * Returns the sequence of events that leads from an initial state to bad.
+     */
+    private static MCcExample getCExample(CFSMStateSpace space,
+            EncodedState bad) {
+        List<EncodedState> path = Util.newList();
+        for (EncodedState s = bad; s.parent != null; s = s.parent) {
+            path.add(s);
+        }
+        Collections.reverse(path);
+
+        MCcExample cExample = new MCcExample();
+        for (EncodedState s : path) {
+            cExample.addScmEventStrToPath(space.getEvent(s.eventId));
+        }
+        return cExample;
+    }
+
+    private synchronized ExecutorService getExecutor() {
+        if (executor == null) {
+            executor = Executors.newFixedThreadPool(numThreads,
+                    new ThreadFactory() {
+                        private int nextThreadID = 1;
+
+                        @Override
+                        public synchronized Thread newThread(Runnable r) {
+                            Thread t = new Thread(r, "explicit-mc-"
+                                    + nextThreadID++);
+                            t.setDaemon(true);
+                            return t;
+                        }
+                    });
+            logger.info("Exploring state spaces on " + numThreads
+                    + " threads.");
+        }
+        return executor;
+    }
+}
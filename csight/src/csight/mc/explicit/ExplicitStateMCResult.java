@@ -0,0 +1,32 @@
+package csight.mc.explicit;
+
+import java.util.List;
+
+import csight.mc.MCResult;
+import csight.mc.MCcExample;
+
+import synoptic.model.channelid.ChannelId;
+
+/**
+ * The result of checking an invariant with the explicit-state model checker.
+ * Unlike the results of external model checkers, this result is not parsed
+ * from the output of a tool: the raw lines are a summary of the search.
+ */
+public class ExplicitStateMCResult extends MCResult {
+
+    /**
+     * @param verifyRawLines
+     *            summary of the search
+     * @param cids
+     *            channel ids of the checked CFSM
+     * @param cExample
+     *            the path to a state that violates the invariant, or null if
+     *            no such state was found
+     */
+    public ExplicitStateMCResult(List<String> verifyRawLines,
+            List<ChannelId> cids, MCcExample cExample) {
+        super(verifyRawLines, cids);
+        this.modelIsSafe = (cExample == null);
+        this.cExample = cExample;
+    }
+}
@@ -8,6 +8,8 @@ import java.util.concurrent.TimeoutException;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 import java.util.logging.Logger;
 
+import csight.mc.MCResult;
+import csight.mc.MCResultCache;
 import csight.mc.mcscm.McScM;
 import csight.mc.parallelizer.ParallelizerTask.ParallelizerCommands;
 import csight.model.fifosys.cfsm.CFSM;
@@ -42,7 +44,10 @@ import csight.model.fifosys.cfsm.CFSM;
  * discarded. Corresponding inputs sent in the task is expected to be null.<br />
  * The refinement counter will act as a guard to prevent out-dated model
  * checking runs from executing. STOP_ALL is expected to be associated with the
- * new refinementCounter.
+ * new refinementCounter. CSightMain only advances the refinement counter (and
+ * sends STOP_ALL) when a refinement changes the CFSM. Refinements that leave
+ * every FSM of the CFSM unchanged do not affect the running processes, which
+ * keep running and return their results with the same refinement counter.
  * </p>
  * <p>
  * QUEUE2 (resultsChannel): An unbounded BlockingQueue that provides completed
@@ -94,6 +99,9 @@ public class McScMParallelizer implements Runnable {
 
     /** The location of McScM. */
     protected final String mcPath;
+
+    /** Cache of model checking results, or null. */
+    private final MCResultCache mcCache;
     protected final Logger logger;
 
     /**
@@ -108,14 +116,18 @@ public class McScMParallelizer implements Runnable {
      * 
      * @param numParallel
      * @param mcPath
+     * @param mcCache
+     *            cache of model checking results, or null to not cache results
      * @param taskChannel
      * @param resultsChannel
      */
     public McScMParallelizer(int numParallel, String mcPath,
+            MCResultCache mcCache,
             BlockingQueue<ParallelizerTask> taskChannel,
             BlockingQueue<ParallelizerResult> resultsChannel) {
         this.numParallel = numParallel;
         this.mcPath = mcPath;
+        this.mcCache = mcCache;
         this.taskChannel = taskChannel;
         this.resultsChannel = resultsChannel;
 
@@ -192,6 +204,25 @@ public class McScMParallelizer implements Runnable {
                 ParallelizerResult result;
 
                 try {
+                    // Reuse the result of an earlier check of the invariant in
+                    // the same CFSM. The key is computed before the CFSM is
+                    // augmented.
+                    MCResultCache.Key cacheKey = null;
+                    if (mcCache != null) {
+                        cacheKey = mcCache.getKey(cfsm,
+                                invTimeoutPair.getInv());
+                        MCResult cached = mcCache.get(cacheKey,
+                                cfsm.getChannelIds());
+                        if (cached != null) {
+                            logger.fine("Using the cached result of checking "
+                                    + invTimeoutPair.getInv().toString());
+                            writeResultUntilSuccess(ParallelizerResult
+                                    .cachedVerificationResult(invTimeoutPair,
+                                            cached, refinementCounter));
+                            return;
+                        }
+                    }
+
                     cfsm.augmentWithInvTracing(invTimeoutPair.getInv());
 
                     String mcInputStr = cfsm.toScmString("checking_scm_"
@@ -208,10 +239,13 @@ public class McScMParallelizer implements Runnable {
                     McScM mcscm = new McScM(mcPath);
 
                     mcscm.verify(mcInputStr, invTimeoutPair.getTimeout());
+                    MCResult mcResult = mcscm.getVerifyResult(cfsm
+                            .getChannelIds());
+                    if (mcCache != null) {
+                        mcCache.put(cacheKey, mcResult);
+                    }
                     result = ParallelizerResult.verificationResult(
-                            invTimeoutPair,
-                            mcscm.getVerifyResult(cfsm.getChannelIds()),
-                            refinementCounter);
+                            invTimeoutPair, mcResult, refinementCounter);
 
                 } catch (TimeoutException e) {
                     // Model checking timed out.
@@ -228,6 +262,10 @@ public class McScMParallelizer implements Runnable {
                             refinementCounter);
                 }
 
+                writeResultUntilSuccess(result);
+            }
+
+            private void writeResultUntilSuccess(ParallelizerResult result) {
                 boolean success;
                 do {
                     // Result may occasionally fail to enqueue into the results
@@ -35,6 +35,12 @@ public class ParallelizerResult {
      */
     private final boolean isException;
 
+    /**
+     * Specifies if the result was reused from the model checking cache
+     * instead of running the model checker.
+     */
+    private final boolean isCached;
+
     /**
      * The Exception being passed to CSightMain, if applicable.
      */
@@ -56,13 +62,13 @@ public class ParallelizerResult {
     protected static ParallelizerResult timeOutResult(
             InvariantTimeoutPair invTimeoutPair, int refinementCounter) {
         return new ParallelizerResult(invTimeoutPair, null, true, false, false,
-                null, refinementCounter);
+                false, null, refinementCounter);
     }
 
     public static ParallelizerResult interruptedResult(
             InvariantTimeoutPair invTimeoutPair, int refinementCounter) {
         return new ParallelizerResult(invTimeoutPair, null, false, true, false,
-                null, refinementCounter);
+                false, null, refinementCounter);
     }
 
     /**
@@ -77,7 +83,23 @@ public class ParallelizerResult {
             InvariantTimeoutPair invTimeoutPair, MCResult mcResult,
             int refinementCounter) {
         return new ParallelizerResult(invTimeoutPair, mcResult, false, false,
-                false, null, refinementCounter);
+                false, false, null, refinementCounter);
+    }
+
+    /**
+     * Builds a verification result that was reused from the model checking
+     * cache
+     * 
+     * @param invTimeoutPair
+     * @param mcResult
+     * @param refinementCounter
+     * @return
+     */
+    protected static ParallelizerResult cachedVerificationResult(
+            InvariantTimeoutPair invTimeoutPair, MCResult mcResult,
+            int refinementCounter) {
+        return new ParallelizerResult(invTimeoutPair, mcResult, false, false,
+                false, true, null, refinementCounter);
     }
 
     /**
@@ -89,8 +111,8 @@ public class ParallelizerResult {
      */
     protected static ParallelizerResult exceptionResult(Exception e,
             int refinementCounter) {
-        return new ParallelizerResult(null, null, false, false, true, e,
-                refinementCounter);
+        return new ParallelizerResult(null, null, false, false, true, false,
+                e, refinementCounter);
     }
 
     /**
@@ -100,7 +122,8 @@ public class ParallelizerResult {
      * @return
      */
     protected static ParallelizerResult exceptionResult(Exception e) {
-        return new ParallelizerResult(null, null, false, false, true, e, -1);
+        return new ParallelizerResult(null, null, false, false, true, false,
+                e, -1);
     }
 
     /**
@@ -111,17 +134,20 @@ public class ParallelizerResult {
      * @param isTimeout
      * @param isInterrupted
      * @param isException
+     * @param isCached
      * @param e
      * @param refinementCounter
      */
     private ParallelizerResult(InvariantTimeoutPair invTimeoutPair,
             MCResult mcResult, boolean isTimeout, boolean isInterrupted,
-            boolean isException, Exception e, int refinementCounter) {
+            boolean isException, boolean isCached, Exception e,
+            int refinementCounter) {
         this.invTimeoutPair = invTimeoutPair;
         this.mcResult = mcResult;
         this.isTimeout = isTimeout;
         this.isInterrupted = isInterrupted;
         this.isException = isException;
+        this.isCached = isCached;
         this.e = e;
         this.refinementCounter = refinementCounter;
     }
@@ -150,6 +176,10 @@ public class ParallelizerResult {
         return isException;
     }
 
+    public boolean isCached() {
+        return isCached;
+    }
+
     public Exception getException() {
         return e;
     }
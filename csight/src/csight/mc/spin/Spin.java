@@ -2,17 +2,24 @@ package csight.mc.spin;
 
 import java.io.BufferedWriter;
 import java.io.File;
-import java.io.FileFilter;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.OutputStreamWriter;
 import java.io.Writer;
+import java.nio.file.Files;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeoutException;
 import java.util.logging.Logger;
 
-import org.apache.commons.io.filefilter.WildcardFileFilter;
+import org.apache.commons.io.FileUtils;
 
 import csight.mc.MC;
 import csight.mc.MCProcess;
@@ -29,19 +36,28 @@ import synoptic.model.channelid.ChannelId;
  * We'll need to compile the source code and then execute the resulting program
  * to verify. The generated program is called pan.
  * <p>
- * This class generates and deletes files in the current directory that match:
+ * Each call to prepare creates a new temporary directory, in which the
+ * following files are generated:
  * <ul>
  * <li>csight.pml</li>
  * <li>csight.pml.*.trail</li>
  * <li>pan</li>
  * <li>pan.*</li>
  * </ul>
+ * The directory is deleted by cleanUpFiles, which is called once the results
+ * are retrieved. Since every prepared model has its own directory, multiple
+ * Spin instances (and multiple CSight processes) can check models at the same
+ * time, and the pan verifications of the invariants of one model can run in
+ * parallel (see verifyAll).
  * </p>
  */
 public class Spin extends MC {
 
     static Logger logger = Logger.getLogger("Spin");
 
+    /** Prefix of the names of the temporary directories of prepared models. */
+    static final String workDirPrefix = "csight-spin-";
+
     /**
      * Stores the returned lines from model checking. These lines need to be
      * parsed to determine which trail file to use for the counterexamples.
@@ -56,19 +72,82 @@ public class Spin extends MC {
      */
     Map<Integer, MCResult> returnedResults;
 
+    /** The C compiler used to compile pan. */
+    private final String ccPath;
+
+    /**
+     * Maximum number of pan verifications (and trail simulations) to run at
+     * once.
+     */
+    private final int numParallel;
+
+    /** The directory of the prepared model, or null if there is none. */
+    private File workDir = null;
+
     public Spin(String mcPath) {
-        super(mcPath);
+        this(mcPath, 1);
+    }
+
+    /**
+     * @param mcPath
+     *            path of the Spin binary
+     * @param numParallel
+     *            maximum number of pan verifications to run at once
+     */
+    public Spin(String mcPath, int numParallel) {
+        this(mcPath, "gcc", numParallel);
+    }
+
+    /**
+     * @param mcPath
+     *            path of the Spin binary
+     * @param ccPath
+     *            path of the C compiler that compiles pan, which must accept
+     *            gcc's arguments
+     * @param numParallel
+     *            maximum number of pan verifications to run at once
+     */
+    public Spin(String mcPath, String ccPath, int numParallel) {
+        // Spin and the compiler run in the directory of the prepared model, so
+        // relative paths are resolved against the current directory now.
+        super(toAbsolutePath(mcPath));
+        if (numParallel < 1) {
+            throw new IllegalArgumentException(
+                    "Cannot run less than one pan verification at once");
+        }
+        this.ccPath = toAbsolutePath(ccPath);
+        this.numParallel = numParallel;
         returnedLines = Util.newMap();
         returnedResults = Util.newMap();
     }
 
+    /**
+     * Returns the absolute path of an executable that is given by a path, and
+     * returns an executable that is given by a name (to be looked up in the
+     * system PATH) as is.
+     */
+    private static String toAbsolutePath(String exec) {
+        if (exec == null || new File(exec).getParent() == null) {
+            return exec;
+        }
+        return new File(exec).getAbsolutePath();
+    }
+
+    /**
+     * Returns the directory of the prepared model, or null if no model is
+     * prepared.
+     */
+    public File getWorkDir() {
+        return workDir;
+    }
+
     /**
      * This writes the Promela input to a file, generates and compiles the model
      * checker source. Spin does not use stdin for this. At the moment, we
      * require that the user has gcc on their system. The model checker will
      * return a result after it finishes running. To retrieve the result, call
      * getVerifyResult.
-     * 
+     *
      * @throws TimeoutException
      */
     @Override
@@ -79,11 +158,12 @@ public class Spin extends MC {
     }
 
     /**
-     * Prepares the Spin model checker. This writes the Promela input to a file,
-     * generates and compiles the model checker source. Spin does not use stdin
-     * for this. At the moment, we require that the user has gcc on their
-     * system.
-     * 
+     * Prepares the Spin model checker. This writes the Promela input to a file
+     * in a new temporary directory, and generates and compiles the model
+     * checker source there. The directory of a previously prepared model is
+     * deleted. Spin does not use stdin for this. At the moment, we require that
+     * the user has gcc on their system.
+     *
      * @param input
      *            The input Promela string
      * @param timeoutSecs
@@ -97,10 +177,24 @@ public class Spin extends MC {
         returnedLines.clear();
         returnedResults.clear();
 
-        File currentPath = new java.io.File(".");
+        cleanUpFiles();
+        workDir = Files.createTempDirectory(workDirPrefix).toFile();
+        boolean prepared = false;
+        try {
+            generateAndCompile(input, timeoutSecs);
+            prepared = true;
+        } finally {
+            if (!prepared) {
+                // Nothing can be verified in the directory.
+                cleanUpFiles();
+            }
+        }
+    }
 
+    private void generateAndCompile(String input, int timeoutSecs)
+            throws IOException, InterruptedException, TimeoutException {
         // Write Promela file.
-        File promelaFile = new java.io.File("csight.pml");
+        File promelaFile = new File(workDir, "csight.pml");
         Writer writer = new BufferedWriter(new OutputStreamWriter(
                 new FileOutputStream(promelaFile)));
         writer.write(input);
@@ -109,7 +203,7 @@ public class Spin extends MC {
         // Run spin to create C source.
         String[] command = new String[] { mcPath, "-a", "csight.pml" };
         // Spin does not use stdin for Promela input.
-        mcProcess = new MCProcess(command, "", currentPath, timeoutSecs);
+        mcProcess = new MCProcess(command, "", workDir, timeoutSecs);
         // We run Spin to generate the source for the model checker.
         generateMCSource(mcProcess);
 
@@ -125,9 +219,9 @@ public class Spin extends MC {
         /* -DBFS_DISK enables disk caching during BFS. */
         /* -DREACH checks for errors up to the default depth. */
         // The others are common gcc parameters.
-        command = new String[] { "gcc", "-O", "-DBFS", "-DREACH", "-o", "pan",
+        command = new String[] { ccPath, "-O", "-DBFS", "-DREACH", "-o", "pan",
                 "pan.c" };
-        mcProcess = new MCProcess(command, "", currentPath, timeoutSecs);
+        mcProcess = new MCProcess(command, "", workDir, timeoutSecs);
         // We compile the source from the previous step.
         compileMC(mcProcess);
     }
@@ -136,7 +230,7 @@ public class Spin extends MC {
      * The model checker will return a result after it finishes running. This
      * result is saved. To retrieve the all of the results, call
      * getVerifyResults.
-     * 
+     *
      * @param input
      *            The input Promela string
      * @param timeoutSecs
@@ -150,16 +244,60 @@ public class Spin extends MC {
 
     public void verify(String input, int timeoutSecs, int invNum)
             throws IOException, InterruptedException, TimeoutException {
+        returnedLines.put(invNum, runPan(timeoutSecs, invNum));
+    }
 
-        File currentPath = new java.io.File(".");
-        // Run Pan verifier for each invariant.
-        String panExec;
-        if (Os.isWindows()) {
-            panExec = "pan.exe";
-        } else {
-            panExec = "./pan";
+    /**
+     * Runs the pan verifications of invariants 0 to numInvs - 1 of the prepared
+     * model, at most numParallel at a time, and saves their results. To
+     * retrieve the results, call getMultipleVerifyResults. Each verification
+     * times out separately after timeoutSecs.
+     *
+     * @param numInvs
+     *            Number of invariants in the prepared model.
+     * @param timeoutSecs
+     *            Seconds before timing out a verification.
+     * @return The numbers of the invariants whose verifications timed out.
+     * @throws IOException
+     * @throws InterruptedException
+     */
+    public Set<Integer> verifyAll(int numInvs, final int timeoutSecs)
+            throws IOException, InterruptedException {
+        List<Callable<List<String>>> tasks = Util.newList(numInvs);
+        for (int i = 0; i < numInvs; i++) {
+            final int invNum = i;
+            tasks.add(new Callable<List<String>>() {
+                @Override
+                public List<String> call() throws Exception {
+                    return runPan(timeoutSecs, invNum);
+                }
+            });
         }
 
+        List<Future<List<String>>> futures = runAll(tasks);
+        Set<Integer> timedOut = Util.newSet();
+        for (int i = 0; i < numInvs; i++) {
+            try {
+                returnedLines.put(i, getResult(futures.get(i)));
+            } catch (TimeoutException e) {
+                timedOut.add(i);
+            }
+        }
+        return timedOut;
+    }
+
+    /**
+     * Runs the pan verification of invariant invNum of the prepared model, and
+     * returns its output.
+     */
+    private List<String> runPan(int timeoutSecs, int invNum)
+            throws IOException, InterruptedException, TimeoutException {
+        assert workDir != null;
+
+        // Run Pan verifier for each invariant.
+        String panExec = new File(workDir, Os.isWindows() ? "pan.exe" : "pan")
+                .getAbsolutePath();
+
         // -q makes the verifier check for empty message channels.
 
         // -m sets the max search depth. This may be an option later on.
@@ -175,18 +313,71 @@ public class Spin extends MC {
         String[] command = new String[] { panExec, "-q", "-m250", "-n", "-N",
                 "never_" + invNum, "-t" + invNum + ".trail" };
 
-        mcProcess = new MCProcess(command, "", currentPath, timeoutSecs);
+        // A process per verification, as verifications may run in parallel.
+        MCProcess panProcess = new MCProcess(command, "", workDir, timeoutSecs);
+        panProcess.runProcess();
+        return panProcess.getInputStreamContent();
+    }
 
-        mcProcess.runProcess();
-        // Save results from running Spin.
-        returnedLines.put(invNum, mcProcess.getInputStreamContent());
+    /**
+     * Runs tasks on at most numParallel threads, and waits until all of them
+     * are done. If the calling thread is interrupted, the tasks are
+     * interrupted, which kills their processes.
+     */
+    private <T> List<Future<T>> runAll(List<Callable<T>> tasks)
+            throws InterruptedException {
+        if (tasks.isEmpty()) {
+            return Util.newList();
+        }
+        ExecutorService pool = Executors.newFixedThreadPool(
+                Math.min(numParallel, tasks.size()), new ThreadFactory() {
+                    @Override
+                    public Thread newThread(Runnable r) {
+                        Thread t = new Thread(r, "spin-verify");
+                        t.setDaemon(true);
+                        return t;
+                    }
+                });
+        try {
+            return pool.invokeAll(tasks);
+        } finally {
+            pool.shutdownNow();
+        }
+    }
 
+    /**
+     * Returns the result of a finished task, and re-throws the exception that
+     * the task failed with.
+     */
+    private static <T> T getResult(Future<T> future) throws IOException,
+            InterruptedException, TimeoutException {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof InterruptedException) {
+                throw (InterruptedException) cause;
+            }
+            if (cause instanceof TimeoutException) {
+                throw (TimeoutException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IOException(cause);
+        }
     }
 
     /**
      * Spin generates the source code for the model checker. This will need to
      * be compiled and executed.
-     * 
+     *
      * @param process
      * @return Time taken to run process.
      * @throws IOException
@@ -216,7 +407,7 @@ public class Spin extends MC {
     /**
      * Compiles the pan source into the model checker. There must be source code
      * files for this to work.
-     * 
+     *
      * @param process
      * @return
      * @throws IOException
@@ -249,7 +440,7 @@ public class Spin extends MC {
 
     /**
      * Parses a single MCResult from the supplied lines.
-     * 
+     *
      * @param cids
      * @param lines
      *            Lines returned from running the Spin process.
@@ -258,31 +449,36 @@ public class Spin extends MC {
     private MCResult getVerifyResult(List<ChannelId> cids, List<String> lines) {
         logger.info("Spin returned: " + lines.toString());
 
-        MCResult ret = new SpinResult(lines, cids, mcPath);
+        MCResult ret = new SpinResult(lines, cids, mcPath, workDir);
         return ret;
     }
 
     /**
      * Retrieves multiple MCResults from parsing the Spin counterexamples. It is
      * recommended that the iterator is not used for the returned result as a
-     * null result is valid for the Map.
-     * 
+     * null result is valid for the Map. The counterexamples are parsed from
+     * their trail files at most numParallel at a time.
+     *
      * @param cids
      * @param numInvsInRun
      *            Number of invariants in this Spin model checking run.
      * @return
      * @throws IOException
+     * @throws InterruptedException
      */
     public Map<Integer, MCResult> getMultipleVerifyResults(
-            List<ChannelId> cids, int numInvsInRun) throws IOException {
+            final List<ChannelId> cids, int numInvsInRun) throws IOException,
+            InterruptedException {
 
         /*
          * We iterate through returnedLines based on the number of expected
          * results as we may have been interrupted while we were model checking.
          * We don't want to verify runs that did not complete.
          */
+        List<Integer> invNums = Util.newList();
+        List<Callable<MCResult>> tasks = Util.newList();
         for (int i = 0; i < numInvsInRun; i++) {
-            List<String> lines = returnedLines.get(i);
+            final List<String> lines = returnedLines.get(i);
             // If the run for this invariant was interrupted, it would have a
             // null entry for returnedLines. We do not attempt to parse these
             // runs.
@@ -290,32 +486,52 @@ public class Spin extends MC {
             if (lines != null) {
                 // Parse only the lines that returned when retrieving
                 // counterexamples.
-                MCResult ret = getVerifyResult(cids, lines);
-                returnedResults.put(i, ret);
+                invNums.add(i);
+                tasks.add(new Callable<MCResult>() {
+                    @Override
+                    public MCResult call() {
+                        return getVerifyResult(cids, lines);
+                    }
+                });
             } else {
                 returnedResults.put(i, null);
             }
         }
+
+        try {
+            List<Future<MCResult>> futures = runAll(tasks);
+            for (int i = 0; i < invNums.size(); i++) {
+                returnedResults.put(invNums.get(i), getResult(futures.get(i)));
+            }
+        } catch (TimeoutException e) {
+            // Parsing a result does not time out: SpinResult reports timed out
+            // trail simulations as parse exceptions.
+            throw new IOException(e);
+        } finally {
+            // Clean files once we're done with them.
+            cleanUpFiles();
+        }
         assert numInvsInRun == returnedResults.size();
-        // Clean files once we're done with them.
-        cleanUpFiles();
         return returnedResults;
     }
 
     /**
-     * This cleans up the files generated by this class. This includes the
-     * Promela representation of the CFSM, the model checker source, the model
-     * checker executable and the trail file.
+     * This cleans up the files generated by this class, by deleting the
+     * directory of the prepared model. This includes the Promela representation
+     * of the CFSM, the model checker source, the model checker executable and
+     * the trail files.
      */
     public void cleanUpFiles() {
-        File outputDir = new File(".");
-        String[] filters = new String[] { "pan", "pan.*", "csight.pml",
-                "csight.pml.*.trail" };
-        FileFilter filter = new WildcardFileFilter(filters);
-        File[] spinFiles = outputDir.listFiles(filter);
-        for (File spinFile : spinFiles) {
-            spinFile.delete();
+        if (workDir == null) {
+            return;
+        }
+        try {
+            FileUtils.deleteDirectory(workDir);
+        } catch (IOException e) {
+            logger.warning("Could not delete Spin directory " + workDir + ": "
+                    + e.getMessage());
         }
+        workDir = null;
     }
 
 }
@@ -41,10 +41,14 @@ public class SpinResult extends MCResult {
 
     private String mcPath;
 
+    /** The directory that contains the Promela file and the trail files. */
+    private File spinDir;
+
     public SpinResult(List<String> verifyRawLines, List<ChannelId> cids,
-            String mcPath) throws VerifyOutputParseException {
+            String mcPath, File spinDir) throws VerifyOutputParseException {
         super(verifyRawLines, cids);
         this.mcPath = mcPath;
+        this.spinDir = spinDir;
         parseVerifyOutput(verifyRawLines);
     }
 
@@ -78,7 +82,6 @@ public class SpinResult extends MCResult {
 
         if (!modelIsSafe) {
             try {
-                File currentPath = new java.io.File(".");
                 // Run a new instance of Spin to read the trail file.
                 // The warnings can be ignored for now. They are a result of
                 // nesting atomics and d_steps as a result of inlines.
@@ -88,7 +91,7 @@ public class SpinResult extends MCResult {
                 // -k selects the trail to parse for the counterexample.
                 MCProcess trailProcess = new MCProcess(new String[] { mcPath,
                         "-t", "-T", "-k", trailName, "csight.pml" }, "",
-                        currentPath, 20);
+                        spinDir, 20);
                 trailProcess.runProcess();
                 trailLines = trailProcess.getInputStreamContent();
                 parseCounterExample(trailLines);
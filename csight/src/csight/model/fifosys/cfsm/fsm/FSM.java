@@ -2,6 +2,7 @@ package csight.model.fifosys.cfsm.fsm;
 
 import java.util.Collection;
 import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
@@ -116,6 +117,43 @@ public class FSM extends AbsFSM<FSMState, DistEventType> {
         this.states.add(synthState2);
     }
 
+    /**
+     * Returns a deep copy of this FSM, with new FSMState instances that have
+     * the same ids and transitions as the states of this FSM.
+     */
+    public FSM copy() {
+        // FSMState.hashCode() is constant, so an identity map is used to look
+        // up the copies of states.
+        Map<FSMState, FSMState> copies = new IdentityHashMap<FSMState, FSMState>();
+        for (FSMState s : states) {
+            copies.put(s, new FSMState(s.isAccept(), s.isInitial(), pid,
+                    s.getStateId()));
+        }
+        for (FSMState s : states) {
+            FSMState sCopy = copies.get(s);
+            for (DistEventType e : s.getTransitioningEvents()) {
+                for (FSMState next : s.getNextStates(e)) {
+                    if (e.isSynthSendEvent()) {
+                        sCopy.addSynthTransition(e, copies.get(next));
+                    } else {
+                        sCopy.addTransition(e, copies.get(next));
+                    }
+                }
+            }
+        }
+
+        Set<FSMState> initCopies = Util.newSet();
+        for (FSMState s : initStates) {
+            initCopies.add(copies.get(s));
+        }
+        Set<FSMState> acceptCopies = Util.newSet();
+        for (FSMState s : acceptStates) {
+            acceptCopies.add(copies.get(s));
+        }
+        return new FSM(pid, initCopies, acceptCopies, copies.values(),
+                nextScmFSMStateId);
+    }
+
     @Override
     public Set<FSMState> getStates() {
         return this.states;
@@ -61,6 +61,28 @@ public class GFSM extends FifoSys<GFSMState, DistEventType> {
     /** Used when converting GFSM to a CFSM representation. */
     private int nextFsmStateId = 0;
 
+    /**
+     * Used when converting GFSM to a CFSM representation: per pid, the cached
+     * non-pid transitive closure of each partition.
+     */
+    private List<Map<GFSMState, Set<GFSMState>>> nonPidClosures = null;
+
+    /**
+     * Used when converting GFSM to a CFSM representation: per pid, the view
+     * that the last FSM was derived from, and that FSM (which is never handed
+     * out, since callers modify FSMs).
+     */
+    private List<PidView> pidViews = null;
+    private List<FSM> pidFSMs = null;
+    private boolean pidFSMsMinimized;
+
+    /**
+     * Used when converting GFSM to a CFSM representation: maps the partitions
+     * created by refinements since the last conversion to the partitions that
+     * they were split from.
+     */
+    private final Map<GFSMState, GFSMState> splitOrigins = Util.newMap();
+
     /** Creates an empty GFSM. */
     public GFSM(int numProcesses, List<ChannelId> channelIds) {
         super(numProcesses, channelIds);
@@ -228,6 +250,7 @@ public class GFSM extends FifoSys<GFSMState, DistEventType> {
 
         states.addAll(newStates);
         recomputeAlphabet();
+        clearCFSMCaches();
     }
 
     /** Adds a new partition/state s to this GFSM. */
@@ -236,6 +259,7 @@ public class GFSM extends FifoSys<GFSMState, DistEventType> {
 
         states.add(s);
         recomputeAlphabet();
+        clearCFSMCaches();
     }
 
     /** Removes the partition/state s from this GFSM. */
@@ -244,6 +268,7 @@ public class GFSM extends FifoSys<GFSMState, DistEventType> {
 
         states.remove(s);
         recomputeAlphabet();
+        clearCFSMCaches();
     }
 
     /**
@@ -318,7 +343,13 @@ public class GFSM extends FifoSys<GFSMState, DistEventType> {
     /**
      * Constructs a CFSM from a GFSM. It performs the necessary traversal of the
      * GFSM to construct/specify all the process FSMs that should be part of the
-     * CFSM.
+     * CFSM. <br />
+     * <br />
+     * The derivation is incremental: the non-pid transitive closures of
+     * partitions are cached across calls, and the FSM of a pid is re-used if
+     * the FSM derived for it from the refined GFSM is equivalent to the one
+     * derived previously (see PidView). The returned FSMs are always new
+     * instances, since callers modify them (e.g., with invariant tracing).
      * 
      * @param minimize
      *            - whether to minimize each of the process FSMs
@@ -331,173 +362,335 @@ public class GFSM extends FifoSys<GFSMState, DistEventType> {
 
         logger.finest("GFSM -> CFSM: " + this.toString() + "\n");
 
+        if (pidFSMs == null || pidFSMsMinimized != minimize) {
+            pidViews = Util.newList();
+            pidFSMs = Util.newList();
+            for (int pid = 0; pid < numProcesses; pid++) {
+                pidViews.add(null);
+                pidFSMs.add(null);
+            }
+            pidFSMsMinimized = minimize;
+        }
+
+        // Create an FSM per pid.
+        for (int pid = 0; pid < numProcesses; pid++) {
+            PidView view = new PidView(pid);
+
+            FSM fsm = pidFSMs.get(pid);
+            if (fsm != null && view.isEquivalentTo(pidViews.get(pid))) {
+                logger.info("Re-using the unchanged FSM for pid " + pid);
+            } else {
+                logger.info("Building FSM for pid " + pid);
+                fsm = buildFSM(view, minimize);
+            }
+            pidViews.set(pid, view);
+            pidFSMs.set(pid, fsm);
+
+            // Add FSM to the CFSM.
+            cfsm.addFSM(fsm.copy());
+        }
+        splitOrigins.clear();
+        return cfsm;
+    }
+
+    /**
+     * Builds the FSM for the pid of view.
+     * 
+     * @param minimize
+     *            - whether to minimize the FSM
+     */
+    private FSM buildFSM(PidView view, boolean minimize) {
+        int pid = view.pid;
         Set<FSMState> initFSMStates = Util.newSet();
         Set<FSMState> acceptFSMStates = Util.newSet();
-        Set<GFSMState> nonPidTxClosureStates = Util.newSet();
         Map<GFSMState, FSMState> stateMap = Util.newMap();
 
-        Set<GFSMState> gvisited = Util.newSet();
-
-        Set<FSMState> txClosure = Util.newSet();
-        Set<FSMState> fvisited = Util.newSet();
+        // States in each FSM have to be uniquely numbered in the scm
+        // output.
+        nextScmId = 0;
 
-        // Create an FSM per pid.
-        for (int pid = 0; pid < numProcesses; pid++) {
-            logger.info("Building FSM for pid " + pid);
-            // States in each FSM have to be uniquely numbered in the scm
-            // output.
-            nextScmId = 0;
-
-            // Create a new FSM state corresponding to each GFSMState.
-            for (GFSMState gstate : states) {
-                // NOTE: FSMState accept flag is further computed below.
-                FSMState fstate = new FSMState(gstate.isAcceptForPid(pid),
-                        gstate.isInitForPid(pid), pid, nextScmId);
+        // Create a new FSM state corresponding to each GFSMState that is
+        // reachable in the FSM (the other states are not part of the view).
+        for (GFSMState gstate : states) {
+            if (view.transitions.containsKey(gstate)) {
+                FSMState fstate = new FSMState(view.accepts.contains(gstate),
+                        view.inits.contains(gstate), pid, nextScmId);
                 if (fstate.isInitial()) {
                     initFSMStates.add(fstate);
                 }
-                nextScmId += 1;
+                if (fstate.isAccept()) {
+                    acceptFSMStates.add(fstate);
+                }
                 stateMap.put(gstate, fstate);
             }
+            nextScmId += 1;
+        }
+
+        // Create transitions between FSMState instances based on the pid
+        // transitions of the view.
+        for (Map.Entry<GFSMState, Map<DistEventType, Set<GFSMState>>> entry : view.transitions
+                .entrySet()) {
+            FSMState fstate = stateMap.get(entry.getKey());
+            for (Map.Entry<DistEventType, Set<GFSMState>> tx : entry
+                    .getValue().entrySet()) {
+                for (GFSMState gNext : tx.getValue()) {
+                    fstate.addTransition(tx.getKey(), stateMap.get(gNext));
+                }
+            }
+        }
+
+        logger.finest("GFSMState->FSMState[pid=" + pid + "] stateMap : "
+                + stateMap.toString());
+
+        // We want to create the smallest possible FSM for efficiency (McScM
+        // runs faster on smaller models) and so that the models are simple
+        // to inspect.
+
+        // 1. Merge any FSM states that are bisimular --- if their behavior
+        // is indistinguishable.
+        boolean merged = false;
+        do {
+            merged = false;
+            Set<GFSMState> keySet = stateMap.keySet();
+            Iterator<GFSMState> keyItr = keySet.iterator();
+            while (keyItr.hasNext()) {
+                GFSMState gstate = keyItr.next();
+                GFSMState gstate2 = findBisimularFSMState(gstate, stateMap);
+
+                // Did not find a corresponding gstate2 that maps to fstate2
+                // that is bisimular to fstate.
+                if (gstate2 == null) {
+                    continue;
+                }
+
+                FSMState fstate = stateMap.get(gstate);
+                FSMState fstate2 = stateMap.get(gstate2);
+
+                // Merges fstate INTO fstate2.
+                remapPredTxns(fstate, fstate2, stateMap);
+
+                // Remove gstate/fstate from the stateMap, and remove
+                // fstate from accepting set
+                keyItr.remove();
+                acceptFSMStates.remove(fstate);
+                initFSMStates.remove(fstate);
+                merged = true;
+                break;
+            }
+            // Re-try all possible n^2 merges if we've just merged two
+            // states, since this might induce further state equivalence and
+            // merging.
+        } while (merged);
+
+        // 2. Remove states when there is a state that simulates it --
+        // TODO: INCOMPLETE.
+        // mergeSimulatingStates(initFSMStates, acceptFSMStates, stateMap);
+
+        assert !acceptFSMStates.isEmpty();
+        assert !initFSMStates.isEmpty();
+
+        // Create the FSM for this pid.
+        FSM fsm = new FSM(pid, initFSMStates, acceptFSMStates,
+                stateMap.values(), nextScmId);
+
+        // 3. Check if after bisimulation merging above the FSM is
+        // now a DFA and we can use standard minimization to further
+        // minimize the FSM.
+        if (minimize && fsm.isDeterministic()) {
+            fsm.minimize();
+        }
+        return fsm;
+    }
+
+    /**
+     * Returns the set of partitions that can be reached from gstate through
+     * non-pid transitions (see AbsFSMState.findNonPidTransitiveClosure). The
+     * closures are cached until a refinement invalidates them.
+     */
+    private Set<GFSMState> getNonPidClosure(int pid, GFSMState gstate) {
+        if (nonPidClosures == null) {
+            nonPidClosures = Util.newList();
+            for (int i = 0; i < numProcesses; i++) {
+                nonPidClosures.add(Util.<GFSMState, Set<GFSMState>> newMap());
+            }
+        }
+
+        Map<GFSMState, Set<GFSMState>> closures = nonPidClosures.get(pid);
+        Set<GFSMState> closure = closures.get(gstate);
+        if (closure == null) {
+            closure = Util.newSet();
+            AbsFSMState.findNonPidTransitiveClosure(pid, gstate,
+                    Util.<GFSMState> newSet(), closure);
+            closures.put(gstate, closure);
+        }
+        return closure;
+    }
+
+    /**
+     * Updates the caches used to derive the CFSM after part was split into
+     * part and newPart: drops the closures that might have changed, and
+     * records the partition that newPart originates from.
+     */
+    private void updateCFSMCachesAfterSplit(GFSMState part, GFSMState newPart) {
+        // Only closures that include part can change, since the transitions
+        // that changed are from part, and those that went to part.
+        if (nonPidClosures != null) {
+            for (Map<GFSMState, Set<GFSMState>> closures : nonPidClosures) {
+                Iterator<Map.Entry<GFSMState, Set<GFSMState>>> itr = closures
+                        .entrySet().iterator();
+                while (itr.hasNext()) {
+                    Map.Entry<GFSMState, Set<GFSMState>> entry = itr.next();
+                    if (entry.getKey() == part
+                            || entry.getValue().contains(part)) {
+                        itr.remove();
+                    }
+                }
+            }
+        }
+
+        GFSMState origin = splitOrigins.get(part);
+        splitOrigins.put(newPart, (origin != null) ? origin : part);
+    }
 
-            logger.finest("GFSMState->FSMState[pid=" + pid + "] stateMap : "
-                    + stateMap.toString());
+    /**
+     * Drops all of the caches used to derive the CFSM, after a change to the
+     * partitions other than a refinement.
+     */
+    private void clearCFSMCaches() {
+        nonPidClosures = null;
+        pidViews = null;
+        pidFSMs = null;
+        splitOrigins.clear();
+    }
 
-            // Create transitions between FSMState instances based on
-            // corresponding GFSMState transitions, as well as the non-pid
-            // transition transitive closure for each GFSMState.
+    /**
+     * The FSM of a pid as it is derived from the partitions, before any of its
+     * states are merged: the partitions that are reachable in the FSM, which of
+     * these are initial/accepting for the pid, and the pid transitions between
+     * them (including those through non-pid transitions, which are treated as
+     * epsilon transitions).
+     */
+    private class PidView {
+        final int pid;
+        final Set<GFSMState> inits = Util.newSet();
+        final Set<GFSMState> accepts = Util.newSet();
+        final Map<GFSMState, Map<DistEventType, Set<GFSMState>>> transitions = Util
+                .newMap();
+
+        PidView(int pid) {
+            this.pid = pid;
+            Set<GFSMState> pidAccepts = getAcceptStatesForPid(pid);
+
+            Map<GFSMState, Map<DistEventType, Set<GFSMState>>> allTransitions = Util
+                    .newMap();
             for (GFSMState gstate : states) {
+                if (gstate.isInitForPid(pid)) {
+                    inits.add(gstate);
+                }
+
                 // Find the states that can be reached through non-pid
                 // transitions (we treat them as epsilon transitions).
-                nonPidTxClosureStates.clear();
-                gvisited.clear();
-                // TODO: cache reachability for explored states and re-use this
-                // information.
-                AbsFSMState.findNonPidTransitiveClosure(pid, gstate, gvisited,
-                        nonPidTxClosureStates);
-
+                Set<GFSMState> nonPidTxClosureStates = Util
+                        .newSet(getNonPidClosure(pid, gstate));
                 nonPidTxClosureStates.add(gstate);
 
-                FSMState fstate = stateMap.get(gstate);
-
+                Map<DistEventType, Set<GFSMState>> txns = Util.newMap();
                 for (GFSMState g : nonPidTxClosureStates) {
                     // Accept computation: If we can reach an accepting g from
                     // gstate using non-pid (epsilon) transitions, then this
-                    // process can terminate at gstate, or equivalently, at the
-                    // corresponding fstate.
-                    if (g.isAcceptForPid(pid)) {
-                        fstate.setAccept();
-                        acceptFSMStates.add(fstate);
+                    // process can terminate at gstate.
+                    if (pidAccepts.contains(g)) {
+                        accepts.add(gstate);
                     }
 
-                    // Add the GFSMState transitions to fstate.
+                    // Add the GFSMState transitions to gstate.
                     for (DistEventType e : g.getTransitioningEvents()) {
                         // Only create this pid's event transitions.
                         if (e.getPid() != pid) {
                             continue;
                         }
-                        for (GFSMState gNext : g.getNextStates(e)) {
-                            FSMState fNext = stateMap.get(gNext);
-                            fstate.addTransition(e, fNext);
+                        Set<GFSMState> next = txns.get(e);
+                        if (next == null) {
+                            next = Util.newSet();
+                            txns.put(e, next);
                         }
+                        next.addAll(g.getNextStates(e));
                     }
                 }
+                allTransitions.put(gstate, txns);
             }
 
-            // Remove any non-reachable FSM states.
-
-            // 1. Build the transitive closure of state from all initial states.
-            for (FSMState istate : initFSMStates) {
-                fvisited.clear();
-                AbsFSMState.findTransitiveClosure(istate, fvisited, txClosure);
+            // Keep only the states that are reachable from an initial state
+            // (initial states are always reachable).
+            List<GFSMState> toVisit = Util.newList(inits);
+            for (GFSMState gstate : inits) {
+                transitions.put(gstate, allTransitions.get(gstate));
             }
-
-            // 2. Remove those FSM states that are not reachable from any
-            // initial state -- that are not in txClosure -- from stateMap.
-            Set<GFSMState> keySet = stateMap.keySet();
-            Iterator<GFSMState> keyItr = keySet.iterator();
-            while (keyItr.hasNext()) {
-                GFSMState gstate = keyItr.next();
-                FSMState fstate = stateMap.get(gstate);
-                // Skip states that are initial -- we can always reach these.
-                if (fstate.isInitial()) {
-                    continue;
-                }
-
-                if (!txClosure.contains(fstate)) {
-                    // Remove from stateMap, as well as accepting set of states.
-                    keyItr.remove();
-                    acceptFSMStates.remove(fstate);
+            while (!toVisit.isEmpty()) {
+                GFSMState gstate = toVisit.remove(toVisit.size() - 1);
+                for (Set<GFSMState> next : allTransitions.get(gstate).values()) {
+                    for (GFSMState gNext : next) {
+                        if (!transitions.containsKey(gNext)) {
+                            transitions.put(gNext, allTransitions.get(gNext));
+                            toVisit.add(gNext);
+                        }
+                    }
                 }
             }
+            accepts.retainAll(transitions.keySet());
+        }
 
-            // We want to create the smallest possible FSM for efficiency (McScM
-            // runs faster on smaller models) and so that the models are simple
-            // to inspect.
-
-            // 1. Merge any FSM states that are bisimular --- if their behavior
-            // is indistinguishable.
-            boolean merged = false;
-            do {
-                merged = false;
-                keySet = stateMap.keySet();
-                keyItr = keySet.iterator();
-                while (keyItr.hasNext()) {
-                    GFSMState gstate = keyItr.next();
-                    GFSMState gstate2 = findBisimularFSMState(gstate, stateMap);
-
-                    // Did not find a corresponding gstate2 that maps to fstate2
-                    // that is bisimular to fstate.
-                    if (gstate2 == null) {
-                        continue;
-                    }
-
-                    FSMState fstate = stateMap.get(gstate);
-                    FSMState fstate2 = stateMap.get(gstate2);
+        /**
+         * Returns true if this view maps onto the previous view through
+         * splitOrigins, which maps the partitions created by refinements
+         * since the previous view to the partitions that they were split from
+         * (other partitions map to themselves). That is, the mapping is onto
+         * the states of the previous view, preserves the initial and accepting
+         * states, and maps the transitions of every state exactly onto the
+         * transitions of the state it maps to. The mapping is then a
+         * bisimulation, and the FSM derived from the previous view is
+         * equivalent to the FSM that this view derives.
+         */
+        boolean isEquivalentTo(PidView prev) {
+            if (prev == null || prev.transitions.size() > transitions.size()) {
+                return false;
+            }
 
-                    // Merges fstate INTO fstate2.
-                    remapPredTxns(fstate, fstate2, stateMap);
+            Set<GFSMState> image = Util.newSet();
+            for (Map.Entry<GFSMState, Map<DistEventType, Set<GFSMState>>> entry : transitions
+                    .entrySet()) {
+                GFSMState gstate = entry.getKey();
+                GFSMState gOrigin = getOrigin(gstate);
+                Map<DistEventType, Set<GFSMState>> prevTxns = prev.transitions
+                        .get(gOrigin);
+                if (prevTxns == null
+                        || inits.contains(gstate) != prev.inits
+                                .contains(gOrigin)
+                        || accepts.contains(gstate) != prev.accepts
+                                .contains(gOrigin)
+                        || !entry.getValue().keySet().equals(prevTxns.keySet())) {
+                    return false;
+                }
 
-                    // Remove gstate/fstate from the stateMap, and remove
-                    // fstate from accepting set
-                    keyItr.remove();
-                    acceptFSMStates.remove(fstate);
-                    initFSMStates.remove(fstate);
-                    merged = true;
-                    break;
+                for (Map.Entry<DistEventType, Set<GFSMState>> tx : entry
+                        .getValue().entrySet()) {
+                    Set<GFSMState> nextOrigins = Util.newSet();
+                    for (GFSMState gNext : tx.getValue()) {
+                        nextOrigins.add(getOrigin(gNext));
+                    }
+                    if (!nextOrigins.equals(prevTxns.get(tx.getKey()))) {
+                        return false;
+                    }
                 }
-                // Re-try all possible n^2 merges if we've just merged two
-                // states, since this might induce further state equivalence and
-                // merging.
-            } while (merged);
-
-            // 2. Remove states when there is a state that simulates it --
-            // TODO: INCOMPLETE.
-            // mergeSimulatingStates(initFSMStates, acceptFSMStates, stateMap);
-
-            assert !acceptFSMStates.isEmpty();
-            assert !initFSMStates.isEmpty();
-
-            // Create the FSM for this pid.
-            FSM fsm = new FSM(pid, initFSMStates, acceptFSMStates,
-                    stateMap.values(), nextScmId);
-
-            // 3. Check if after bisimulation merging above the FSM is
-            // now a DFA and we can use standard minimization to further
-            // minimize the FSM.
-            if (minimize && fsm.isDeterministic()) {
-                fsm.minimize();
+                image.add(gOrigin);
             }
+            return image.size() == prev.transitions.size();
+        }
 
-            // Add FSM to the CFSM.
-            cfsm.addFSM(fsm);
-
-            stateMap.clear();
-            initFSMStates.clear();
-            acceptFSMStates.clear();
-            txClosure.clear();
+        private GFSMState getOrigin(GFSMState gstate) {
+            GFSMState origin = splitOrigins.get(gstate);
+            return (origin != null) ? origin : gstate;
         }
-        return cfsm;
     }
 
     /**
@@ -894,7 +1087,8 @@ public class GFSM extends FifoSys<GFSMState, DistEventType> {
         }
 
         part.removeAllObs(setExtract);
-        states.add(new GFSMState(numProcesses, setExtract));
+        GFSMState newPart = new GFSMState(numProcesses, setExtract);
+        states.add(newPart);
 
         part.recreateCachedTransitions();
 
@@ -908,6 +1102,7 @@ public class GFSM extends FifoSys<GFSMState, DistEventType> {
                 s.recreateCachedTransitions();
             }
         }
+        updateCFSMCachesAfterSplit(part, newPart);
 
         // Check consistency of just the observations that belong to the
         // original (unrefined) partition.
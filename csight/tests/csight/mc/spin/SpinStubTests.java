@@ -0,0 +1,186 @@
+package csight.mc.spin;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+import csight.CSightTest;
+import csight.mc.MCResult;
+import csight.mc.mcscm.Os;
+import csight.util.Util;
+
+import synoptic.model.channelid.ChannelId;
+import synoptic.model.event.DistEventType;
+
+/**
+ * Tests the way Spin prepares models and runs verifications, using stub
+ * scripts instead of Spin, gcc, and pan. The "Promela" input of a stub model
+ * lists how long each verification sleeps, and which invariants are violated:
+ *
+ * <pre>
+ * sleep 1
+ * unsafe 0
+ * </pre>
+ *
+ * A violated invariant has a trail with a single local event e at pid 0.
+ */
+public class SpinStubTests extends CSightTest {
+
+    File stubDir;
+    String spinStub;
+    String ccStub;
+
+    List<ChannelId> cids;
+
+    @Override
+    @Before
+    public void setUp() throws Exception {
+        super.setUp();
+        Assume.assumeTrue(!Os.isWindows());
+
+        stubDir = Files.createTempDirectory("csight-spin-stubs").toFile();
+
+        // Generates pan.c for -a, and prints the trail file for -t.
+        spinStub = writeScript("spin", "if [ \"$1\" = \"-a\" ]; then\n"
+                + "  echo stub > pan.c\n" + "else\n" + "  cat \"$4\"\n"
+                + "fi\n");
+
+        // Compiles a pan that sleeps, and then reports the invariant (the
+        // number in never_<n>) as safe, or as unsafe with a trail.
+        ccStub = writeScript("cc", "cat > pan <<'EOF'\n" + "#!/bin/sh\n"
+                + "n=${5#never_}\n"
+                + "sleep `sed -n 's/^sleep //p' csight.pml`\n"
+                + "if grep -q \"^unsafe $n\\$\" csight.pml; then\n"
+                + "  echo 'CSightTrace[ep0L_0]' > csight.pml$n.trail\n"
+                + "  echo \"pan: wrote csight.pml$n.trail\"\n" + "else\n"
+                + "  echo 'State-vector 20 byte, depth reached 3, errors: 0'\n"
+                + "fi\n" + "EOF\n" + "chmod +x pan\n");
+
+        cids = Util.newList();
+        cids.add(new ChannelId(0, 1, 0));
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        if (stubDir != null) {
+            FileUtils.deleteDirectory(stubDir);
+        }
+    }
+
+    private String writeScript(String name, String body) throws IOException {
+        File script = new File(stubDir, name);
+        FileUtils.writeStringToFile(script, "#!/bin/sh\n" + body);
+        assertTrue(script.setExecutable(true));
+        return script.getAbsolutePath();
+    }
+
+    private void assertUnsafe(MCResult result) {
+        assertFalse(result.modelIsSafe());
+        List<DistEventType> expected = Util.newList();
+        expected.add(DistEventType.LocalEvent("e", 0));
+        assertEquals(expected, result.getCExample().getEvents());
+    }
+
+    /**
+     * The model is prepared in a new directory, which is deleted once the
+     * results are retrieved.
+     */
+    @Test
+    public void testPrepareInOwnDirectory() throws Exception {
+        Spin spin = new Spin(spinStub, ccStub, 1);
+        spin.prepare("sleep 0\n", 20);
+
+        File dir = spin.getWorkDir();
+        assertNotNull(dir);
+        assertFalse(dir.getCanonicalFile().equals(
+                new File(".").getCanonicalFile()));
+        assertTrue(new File(dir, "csight.pml").exists());
+        assertTrue(new File(dir, "pan").canExecute());
+        assertFalse(new File("csight.pml").exists());
+
+        spin.verify("sleep 0\n", 20, 0);
+        assertTrue(spin.getVerifyResult(cids).modelIsSafe());
+        assertNull(spin.getWorkDir());
+        assertFalse(dir.exists());
+    }
+
+    /**
+     * Verifications of the invariants of a model run in parallel, and their
+     * results (including counter-examples from trail files) are retrieved by
+     * getMultipleVerifyResults.
+     */
+    @Test
+    public void testVerifyAllInParallel() throws Exception {
+        String input = "sleep 1\nunsafe 1\nunsafe 3\n";
+        Spin spin = new Spin(spinStub, ccStub, 4);
+        spin.prepare(input, 20);
+
+        long startTime = System.currentTimeMillis();
+        Set<Integer> timedOut = spin.verifyAll(4, 20);
+        long elapsed = System.currentTimeMillis() - startTime;
+        assertTrue(timedOut.isEmpty());
+        // Four sequential verifications would take at least 4 seconds.
+        assertTrue("Verifications did not run in parallel: " + elapsed
+                + "ms", elapsed < 3500);
+
+        Map<Integer, MCResult> results = spin.getMultipleVerifyResults(cids,
+                4);
+        assertEquals(4, results.size());
+        assertTrue(results.get(0).modelIsSafe());
+        assertUnsafe(results.get(1));
+        assertTrue(results.get(2).modelIsSafe());
+        assertUnsafe(results.get(3));
+        assertNull(spin.getWorkDir());
+    }
+
+    /**
+     * Timed out verifications are reported by verifyAll, and have no results.
+     */
+    @Test
+    public void testVerifyAllTimeout() throws Exception {
+        Spin spin = new Spin(spinStub, ccStub, 2);
+        spin.prepare("sleep 5\n", 20);
+
+        Set<Integer> timedOut = spin.verifyAll(2, 1);
+        assertEquals(2, timedOut.size());
+
+        Map<Integer, MCResult> results = spin.getMultipleVerifyResults(cids,
+                2);
+        assertNull(results.get(0));
+        assertNull(results.get(1));
+    }
+
+    /**
+     * Two instances can check different models at the same time without
+     * clobbering each other's files.
+     */
+    @Test
+    public void testConcurrentInstances() throws Exception {
+        Spin spin1 = new Spin(spinStub, ccStub, 1);
+        Spin spin2 = new Spin(spinStub, ccStub, 1);
+        spin1.prepare("sleep 0\nunsafe 0\n", 20);
+        spin2.prepare("sleep 0\n", 20);
+        assertFalse(spin1.getWorkDir().equals(spin2.getWorkDir()));
+
+        spin1.verifyAll(1, 20);
+        spin2.verifyAll(1, 20);
+        assertUnsafe(spin1.getMultipleVerifyResults(cids, 1).get(0));
+        assertTrue(spin2.getMultipleVerifyResults(cids, 1).get(0)
+                .modelIsSafe());
+    }
+}
@@ -77,29 +77,31 @@ public class SpinTests extends CSightTest {
     @Test
     public void testPrepare() throws IOException, InterruptedException,
             TimeoutException {
-        assertTrue("Cannot write to target directory.",
-                new File(".").canWrite());
-        assertTrue("Cannot read from target directory.",
-                new File(".").canRead());
-
         File spinMC = new File(spinPath);
         assertTrue("Cannot execute Spin.", spinMC.canExecute());
 
         spin.prepare("active proctype p1() { printf(\"Compile Test.\"); }", 20);
 
+        // The model is prepared in its own directory.
+        File dir = spin.getWorkDir();
+        assertTrue("Cannot write to target directory.", dir.canWrite());
+        assertTrue("Cannot read from target directory.", dir.canRead());
+
         assertTrue("csight.pml was not written.",
-                new File("csight.pml").exists());
-        assertTrue("Cannot read csight.pml.", new File("csight.pml").canRead());
+                new File(dir, "csight.pml").exists());
+        assertTrue("Cannot read csight.pml.",
+                new File(dir, "csight.pml").canRead());
 
         assertTrue("pan source files were not written by Spin.", 
-                new File("pan.c").exists());
+                new File(dir, "pan.c").exists());
         assertTrue("pan source files cannot be read.", 
-                new File("pan.c").canRead());
+                new File(dir, "pan.c").canRead());
         
         // Select the correct name for pan.
-        File pan = new File(Os.isWindows() ? "./pan.exe" : "./pan");
+        File pan = new File(dir, Os.isWindows() ? "pan.exe" : "pan");
         assertTrue("Pan was not compiled.", pan.exists());
         assertTrue("Cannot execute pan.", pan.canExecute());
         spin.cleanUpFiles();
+        assertTrue("Spin directory was not deleted.", !dir.exists());
     }
 }
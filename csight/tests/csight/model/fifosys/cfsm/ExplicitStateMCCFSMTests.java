@@ -0,0 +1,206 @@
+package csight.model.fifosys.cfsm;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+
+import org.junit.Test;
+
+import csight.invariants.AlwaysFollowedBy;
+import csight.invariants.AlwaysPrecedes;
+import csight.invariants.BinaryInvariant;
+import csight.invariants.EventuallyHappens;
+import csight.invariants.NeverFollowedBy;
+import csight.mc.MCResult;
+import csight.mc.explicit.ExplicitStateMC;
+import csight.model.fifosys.cfsm.fsm.FSM;
+import csight.model.fifosys.cfsm.fsm.FSMState;
+import csight.util.Util;
+
+import synoptic.model.event.DistEventType;
+
+/**
+ * Checks the same CFSMs and invariants as SpinCFSMTests, with the built-in
+ * explicit-state model checker, which needs no external model checker.
+ */
+public class ExplicitStateMCCFSMTests extends CFSMTesting {
+
+    ExplicitStateMC mc;
+
+    @Override
+    public void setUp() throws Exception {
+        super.setUp();
+        mc = new ExplicitStateMC(5, 1);
+    }
+
+    /**
+     * Removes the transitions from accept states to init states in the CFSM.
+     * This removes cycles from the testing CFSM.
+     */
+    public void simplifyCFSM() {
+        p0Accept.rmTransition(p0Le, p0Init);
+        p1Accept.rmTransition(p1Lf, p1Init);
+    }
+
+    public MCResult verify(BinaryInvariant inv) throws Exception {
+        mc.verify(cfsm, inv, 60);
+        MCResult result = mc.getVerifyResult(cfsm.getChannelIds());
+        logger.info(result.toRawString());
+        return result;
+    }
+
+    @Test
+    public void verifyEventuallySafe() throws Exception {
+        EventuallyHappens inv = new EventuallyHappens(p1Rm);
+        MCResult result = verify(inv);
+        assertTrue(result.modelIsSafe());
+        assertTrue(result.getCExample() == null);
+    }
+
+    @Test
+    public void verifyEventuallyUnSafe() throws Exception {
+        simplifyCFSM();
+        EventuallyHappens inv = new EventuallyHappens(p0Le);
+        MCResult result = verify(inv);
+        assertTrue(!result.modelIsSafe());
+
+        // The counter-example is the shortest path to a bad state.
+        List<DistEventType> expected = Util.newList();
+        expected.add(p0Sm);
+        expected.add(p1Rm);
+        assertEquals(expected, result.getCExample().getEvents());
+    }
+
+    /**
+     * The CFSM starts in the accept state, so the expected counter-example is
+     * an empty execution.
+     */
+    @Test
+    public void verifyEventuallyUnsafe2() throws Exception {
+        FSMState p0InitAccept = new FSMState(true, true, 0, 0);
+        states = Util.newSet();
+        states.add(p0InitAccept);
+        p0InitAccept.addTransition(p0Le, p0InitAccept);
+        f0 = new FSM(0, p0InitAccept, p0InitAccept, states, 1);
+
+        FSMState p1InitAccept = new FSMState(true, true, 1, 0);
+        states = Util.newSet();
+        states.add(p1InitAccept);
+        f1 = new FSM(1, p1InitAccept, p1InitAccept, states, 2);
+
+        channels = Util.newList();
+        channels.add(cid);
+        cfsm = new CFSM(2, channels);
+        cfsm.addFSM(f0);
+        cfsm.addFSM(f1);
+
+        EventuallyHappens inv = new EventuallyHappens(p0Le);
+        MCResult result = verify(inv);
+        assertTrue(!result.modelIsSafe());
+        assertTrue(result.getCExample() != null);
+        assertTrue(result.getCExample().getEvents().size() == 0);
+    }
+
+    @Test
+    public void verifyAFbySimpleSafe() throws Exception {
+        simplifyCFSM();
+        AlwaysFollowedBy inv = new AlwaysFollowedBy(p0Sm, p1Rm);
+        MCResult result = verify(inv);
+        assertTrue(result.modelIsSafe());
+        assertTrue(result.getCExample() == null);
+    }
+
+    @Test
+    public void verifyAFbySafe() throws Exception {
+        AlwaysFollowedBy inv = new AlwaysFollowedBy(p0Sm, p1Rm);
+        MCResult result = verify(inv);
+        assertTrue(result.modelIsSafe());
+        assertTrue(result.getCExample() == null);
+    }
+
+    @Test
+    public void verifyAFbyUnsafe() throws Exception {
+        simplifyCFSM();
+        AlwaysFollowedBy inv = new AlwaysFollowedBy(p1Rm, p0Sm);
+        MCResult result = verify(inv);
+        assertTrue(!result.modelIsSafe());
+        assertTrue(result.getCExample() != null);
+    }
+
+    @Test
+    public void verifyNFbySafe() throws Exception {
+        simplifyCFSM();
+        NeverFollowedBy inv = new NeverFollowedBy(p1Rm, p0Sm);
+        MCResult result = verify(inv);
+        assertTrue(result.modelIsSafe());
+        assertTrue(result.getCExample() == null);
+    }
+
+    @Test
+    public void verifyNFbySafe2() throws Exception {
+        simplifyCFSM();
+        NeverFollowedBy inv = new NeverFollowedBy(p0Sm, p0Sm);
+        MCResult result = verify(inv);
+        assertTrue(result.modelIsSafe());
+        assertTrue(result.getCExample() == null);
+    }
+
+    @Test
+    public void verifyNFbyUnsafe() throws Exception {
+        NeverFollowedBy inv = new NeverFollowedBy(p0Sm, p1Rm);
+        MCResult result = verify(inv);
+        assertTrue(!result.modelIsSafe());
+        assertTrue(result.getCExample() != null);
+    }
+
+    @Test
+    public void verifyNFbyUnsafe2() throws Exception {
+        NeverFollowedBy inv = new NeverFollowedBy(p1Rm, p0Sm);
+        MCResult result = verify(inv);
+        assertTrue(!result.modelIsSafe());
+        assertTrue(result.getCExample() != null);
+    }
+
+    @Test
+    public void verifyNFbyUnsafe3() throws Exception {
+        NeverFollowedBy inv = new NeverFollowedBy(p0Sm, p0Sm);
+        MCResult result = verify(inv);
+        assertTrue(!result.modelIsSafe());
+        assertTrue(result.getCExample() != null);
+    }
+
+    @Test
+    public void verifyAPSafe() throws Exception {
+        AlwaysPrecedes inv = new AlwaysPrecedes(p0Sm, p1Rm);
+        MCResult result = verify(inv);
+        assertTrue(result.modelIsSafe());
+        assertTrue(result.getCExample() == null);
+    }
+
+    @Test
+    public void verifyAPUnsafe() throws Exception {
+        AlwaysPrecedes inv = new AlwaysPrecedes(p1Rm, p0Sm);
+        MCResult result = verify(inv);
+        assertTrue(!result.modelIsSafe());
+        assertTrue(result.getCExample() != null);
+    }
+
+    /**
+     * Checks that the counter-example does not depend on the number of
+     * threads that explore the state space.
+     */
+    @Test
+    public void verifyMultipleThreads() throws Exception {
+        NeverFollowedBy inv = new NeverFollowedBy(p0Sm, p0Sm);
+        MCResult result = verify(inv);
+
+        mc = new ExplicitStateMC(5, 4);
+        MCResult parallelResult = verify(inv);
+        mc.shutdown();
+
+        assertTrue(!parallelResult.modelIsSafe());
+        assertEquals(result.getCExample().getEvents(), parallelResult
+                .getCExample().getEvents());
+    }
+}
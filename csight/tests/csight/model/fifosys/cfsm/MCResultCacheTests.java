@@ -0,0 +1,213 @@
+package csight.model.fifosys.cfsm;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.Test;
+
+import csight.invariants.AlwaysPrecedes;
+import csight.invariants.BinaryInvariant;
+import csight.invariants.NeverFollowedBy;
+import csight.mc.MCResult;
+import csight.mc.MCResultCache;
+import csight.mc.explicit.ExplicitStateMC;
+import csight.model.fifosys.cfsm.fsm.FSM;
+import csight.model.fifosys.cfsm.fsm.FSMState;
+import csight.util.Util;
+
+import synoptic.model.channelid.ChannelId;
+import synoptic.model.event.DistEventType;
+
+public class MCResultCacheTests extends CFSMTesting {
+
+    MCResultCache cache;
+    ExplicitStateMC mc;
+
+    @Override
+    public void setUp() throws Exception {
+        super.setUp();
+        cache = new MCResultCache("explicit", 16, null);
+        mc = new ExplicitStateMC(5, 1);
+    }
+
+    private MCResult verify(CFSM c, BinaryInvariant inv) throws Exception {
+        mc.verify(c, inv, 60);
+        return mc.getVerifyResult(c.getChannelIds());
+    }
+
+    /**
+     * Returns a CFSM that is the same as the testing CFSM, except for the ids
+     * of its states and the objects of its events.
+     */
+    private CFSM newRenumberedCFSM() {
+        ChannelId cid2 = new ChannelId(0, 1, 0);
+        List<ChannelId> channels2 = Util.newList();
+        channels2.add(cid2);
+
+        FSMState q0Init = new FSMState(false, true, 0, 7);
+        FSMState q0Accept = new FSMState(true, false, 0, 3);
+        q0Init.addTransition(DistEventType.SendEvent("m", cid2), q0Accept);
+        q0Accept.addTransition(DistEventType.LocalEvent("e", 0), q0Init);
+        Set<FSMState> states0 = Util.newSet();
+        states0.add(q0Init);
+        states0.add(q0Accept);
+
+        FSMState q1Init = new FSMState(false, true, 1, 9);
+        FSMState q1Accept = new FSMState(true, false, 1, 2);
+        q1Init.addTransition(DistEventType.RecvEvent("m", cid2), q1Accept);
+        q1Accept.addTransition(DistEventType.LocalEvent("f", 1), q1Init);
+        Set<FSMState> states1 = Util.newSet();
+        states1.add(q1Init);
+        states1.add(q1Accept);
+
+        CFSM c = new CFSM(2, channels2);
+        c.addFSM(new FSM(0, q0Init, q0Accept, states0, 8));
+        c.addFSM(new FSM(1, q1Init, q1Accept, states1, 10));
+        return c;
+    }
+
+    @Test
+    public void getAfterPut() throws Exception {
+        NeverFollowedBy inv = new NeverFollowedBy(p0Sm, p1Rm);
+        MCResultCache.Key key = cache.getKey(cfsm, inv);
+        assertNull(cache.get(key, cfsm.getChannelIds()));
+
+        MCResult result = verify(cfsm, inv);
+        assertFalse(result.modelIsSafe());
+        cache.put(key, result);
+
+        MCResult cached = cache.get(cache.getKey(cfsm, inv),
+                cfsm.getChannelIds());
+        assertNotNull(cached);
+        assertFalse(cached.modelIsSafe());
+        assertEquals(result.getCExample().getEvents(), cached.getCExample()
+                .getEvents());
+        assertEquals(1, cache.getNumHits());
+        assertEquals(1, cache.getNumMisses());
+
+        AlwaysPrecedes safeInv = new AlwaysPrecedes(p0Sm, p1Rm);
+        MCResultCache.Key safeKey = cache.getKey(cfsm, safeInv);
+        cache.put(safeKey, verify(cfsm, safeInv));
+        cached = cache.get(safeKey, cfsm.getChannelIds());
+        assertTrue(cached.modelIsSafe());
+        assertNull(cached.getCExample());
+    }
+
+    /**
+     * The key does not depend on the ids of the states, and a cached
+     * counter-example is returned in terms of the events of the CFSM that it is
+     * looked up for.
+     */
+    @Test
+    public void keyIsCanonical() throws Exception {
+        NeverFollowedBy inv = new NeverFollowedBy(p0Sm, p1Rm);
+        cache.put(cache.getKey(cfsm, inv), verify(cfsm, inv));
+
+        CFSM renumbered = newRenumberedCFSM();
+        MCResultCache.Key key = cache.getKey(renumbered, inv);
+        assertEquals(cache.getKey(cfsm, inv).toString(), key.toString());
+
+        MCResult cached = cache.get(key, renumbered.getChannelIds());
+        assertNotNull(cached);
+        assertEquals(verify(renumbered, inv).getCExample().getEvents(),
+                cached.getCExample().getEvents());
+    }
+
+    @Test
+    public void keyDependsOnInvCFSMAndConfig() throws Exception {
+        NeverFollowedBy inv = new NeverFollowedBy(p0Sm, p1Rm);
+        String key = cache.getKey(cfsm, inv).toString();
+
+        assertFalse(key.equals(cache.getKey(cfsm,
+                new NeverFollowedBy(p1Rm, p0Sm)).toString()));
+        assertFalse(key.equals(cache.getKey(cfsm,
+                new AlwaysPrecedes(p0Sm, p1Rm)).toString()));
+
+        MCResultCache otherConfig = new MCResultCache("spin", 16, null);
+        assertFalse(key.equals(otherConfig.getKey(cfsm, inv).toString()));
+
+        p1Accept.rmTransition(p1Lf, p1Init);
+        assertFalse(key.equals(cache.getKey(cfsm, inv).toString()));
+    }
+
+    /**
+     * FSM digests do not depend on the ids of the states, and change when the
+     * FSM changes.
+     */
+    @Test
+    public void fsmDigests() throws Exception {
+        CFSM renumbered = newRenumberedCFSM();
+        String digest0 = MCResultCache.getDigest(f0);
+        String digest1 = MCResultCache.getDigest(f1);
+        assertEquals(digest0, MCResultCache.getDigest(renumbered.getFSMs()
+                .get(0)));
+        assertEquals(digest1, MCResultCache.getDigest(renumbered.getFSMs()
+                .get(1)));
+        assertFalse(digest0.equals(digest1));
+
+        p1Accept.rmTransition(p1Lf, p1Init);
+        assertEquals(digest0, MCResultCache.getDigest(f0));
+        assertFalse(digest1.equals(MCResultCache.getDigest(f1)));
+    }
+
+    @Test
+    public void evictsLeastRecentlyUsed() throws Exception {
+        cache = new MCResultCache("explicit", 2, null);
+        BinaryInvariant inv1 = new NeverFollowedBy(p0Sm, p1Rm);
+        BinaryInvariant inv2 = new NeverFollowedBy(p1Rm, p0Sm);
+        BinaryInvariant inv3 = new AlwaysPrecedes(p0Sm, p1Rm);
+        cache.put(cache.getKey(cfsm, inv1), verify(cfsm, inv1));
+        cache.put(cache.getKey(cfsm, inv2), verify(cfsm, inv2));
+
+        // Use inv1, so that inv2 is evicted.
+        assertNotNull(cache.get(cache.getKey(cfsm, inv1), channels));
+        cache.put(cache.getKey(cfsm, inv3), verify(cfsm, inv3));
+
+        assertEquals(2, cache.size());
+        assertNotNull(cache.get(cache.getKey(cfsm, inv1), channels));
+        assertNull(cache.get(cache.getKey(cfsm, inv2), channels));
+        assertNotNull(cache.get(cache.getKey(cfsm, inv3), channels));
+    }
+
+    @Test
+    public void persistsResults() throws Exception {
+        File file = File.createTempFile("csight-mc-cache", ".txt");
+        file.delete();
+        try {
+            cache = new MCResultCache("explicit", 16, file);
+            BinaryInvariant unsafeInv = new NeverFollowedBy(p0Sm, p1Rm);
+            BinaryInvariant safeInv = new AlwaysPrecedes(p0Sm, p1Rm);
+            MCResult unsafeResult = verify(cfsm, unsafeInv);
+            cache.put(cache.getKey(cfsm, unsafeInv), unsafeResult);
+            cache.put(cache.getKey(cfsm, safeInv), verify(cfsm, safeInv));
+            cache.save();
+
+            // A malformed entry is skipped.
+            FileWriter writer = new FileWriter(file, true);
+            writer.write("not an entry\n");
+            writer.close();
+
+            CFSM renumbered = newRenumberedCFSM();
+            MCResultCache loaded = new MCResultCache("explicit", 16, file);
+            assertEquals(2, loaded.size());
+            MCResult cached = loaded.get(
+                    loaded.getKey(renumbered, unsafeInv),
+                    renumbered.getChannelIds());
+            assertFalse(cached.modelIsSafe());
+            assertEquals(unsafeResult.getCExample().getEvents(), cached
+                    .getCExample().getEvents());
+            assertTrue(loaded.get(loaded.getKey(renumbered, safeInv),
+                    renumbered.getChannelIds()).modelIsSafe());
+        } finally {
+            file.delete();
+        }
+    }
+}
@@ -2,6 +2,7 @@ package csight.model.fifosys.gfsm;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
 import static org.junit.Assert.assertTrue;
 
 import java.io.File;
@@ -14,6 +15,8 @@ import org.junit.Test;
 import csight.CSightTest;
 import csight.model.export.GraphExporter;
 import csight.model.fifosys.cfsm.CFSM;
+import csight.model.fifosys.cfsm.fsm.FSM;
+import csight.model.fifosys.cfsm.fsm.FSMState;
 import csight.model.fifosys.channel.channelstate.ImmutableMultiChState;
 import csight.model.fifosys.gfsm.observed.ObsDistEventType;
 import csight.model.fifosys.gfsm.observed.ObsFSMState;
@@ -152,4 +155,131 @@ public class GFSMTests extends CSightTest {
         assertFalse(g.deepEquals(notG));
         assertFalse(notG.deepEquals(g));
     }
-}
\ No newline at end of file
+
+    /**
+     * Returns a GFSM of two processes from a single trace, in which process 0
+     * sends m to process 1 twice, and each of the processes executes a local
+     * event in between. The observations of the trace are returned in obs.
+     */
+    private GFSM createTwoProcessGFSM(List<ObsFifoSysState> obs) {
+        ChannelId cid = new ChannelId(0, 1, 0);
+        List<ChannelId> cids = Util.newList();
+        cids.add(cid);
+
+        DistEventType mSend = DistEventType.SendEvent("m", cid);
+        DistEventType mRecv = DistEventType.RecvEvent("m", cid);
+        List<DistEventType> events = Util.newList();
+        events.add(mSend);
+        events.add(mRecv);
+        events.add(DistEventType.LocalEvent("a", 0));
+        events.add(DistEventType.LocalEvent("b", 1));
+        events.add(mSend);
+        events.add(mRecv);
+
+        // The states of the processes after each of the events.
+        String[] p0Names = { "i0", "i1", "i1", "i2", "i2", "i3", "i3" };
+        String[] p1Names = { "j0", "j0", "j1", "j1", "j2", "j2", "j3" };
+
+        ImmutableMultiChState chState = ImmutableMultiChState
+                .fromChannelIds(cids);
+        for (int i = 0; i < p0Names.length; i++) {
+            boolean isInit = (i == 0);
+            boolean isTerm = (i == p0Names.length - 1);
+            List<ObsFSMState> P = Util.newList();
+            P.add(ObsFSMState.namedObsFSMState(0, p0Names[i], isInit, isTerm));
+            P.add(ObsFSMState.namedObsFSMState(1, p1Names[i], isInit, isTerm));
+            if (i > 0) {
+                chState = chState.getNextChState(events.get(i - 1));
+            }
+            ObsFifoSysState s = ObsFifoSysState.getFifoSysState(
+                    ObsMultFSMState.getMultiFSMState(P), chState);
+            if (i > 0) {
+                obs.get(i - 1).addTransition(
+                        new ObsDistEventType(events.get(i - 1), 0), s);
+            }
+            obs.add(s);
+        }
+
+        Set<ObsFifoSysState> states = Util.newSet();
+        states.addAll(obs);
+        List<ObsFifoSys> traces = Util.newList(1);
+        traces.add(new ObsFifoSys(cids, obs.get(0), obs.get(obs.size() - 1),
+                states));
+        return new GFSM(traces, 1);
+    }
+
+    /**
+     * Returns the CFSM of gfsm as it is derived without the state that gfsm
+     * caches from previous derivations.
+     */
+    private CFSM getCFSMFromScratch(GFSM gfsm, boolean minimize) {
+        // Removing/adding a partition drops all of the cached state.
+        GFSMState part = gfsm.getStates().iterator().next();
+        gfsm.removeGFSMState(part);
+        gfsm.addGFSMState(part);
+        return gfsm.getCFSM(minimize);
+    }
+
+    /** Splits the partition of obs.get(i) so that it is in a new partition. */
+    private void isolate(List<ObsFifoSysState> obs, int i) {
+        GFSMState part = obs.get(i).getParent();
+        Set<ObsFifoSysState> setRight = Util.newSet();
+        setRight.add(obs.get(i));
+        Set<ObsFifoSysState> setLeft = Util.newSet(part.getObservedStates());
+        setLeft.remove(obs.get(i));
+        g.refineWithRandNonRelevantObsAssignment(part, setLeft, setRight);
+    }
+
+    /**
+     * Checks that the CFSM that is derived incrementally after each refinement
+     * is the same as the one derived from scratch, and that its FSMs are new
+     * instances.
+     */
+    private void checkCFSMsAfterRefinements(boolean minimize) {
+        List<ObsFifoSysState> obs = Util.newList();
+        g = createTwoProcessGFSM(obs);
+        int[] toIsolate = { 0, 3, 5, 4, 2 };
+
+        for (int i : toIsolate) {
+            CFSM c1 = g.getCFSM(minimize);
+            CFSM c2 = g.getCFSM(minimize);
+            for (int pid = 0; pid < 2; pid++) {
+                assertNotSame(c1.getFSMs().get(pid), c2.getFSMs().get(pid));
+                assertEquals(c1.getFSMs().get(pid), c2.getFSMs().get(pid));
+            }
+
+            isolate(obs, i);
+
+            CFSM incremental = g.getCFSM(minimize);
+            CFSM fromScratch = getCFSMFromScratch(g, minimize);
+            for (int pid = 0; pid < 2; pid++) {
+                assertEquals(fromScratch.getFSMs().get(pid), incremental
+                        .getFSMs().get(pid));
+            }
+        }
+    }
+
+    @Test
+    public void gfsmToCFSMAfterRefinements() {
+        checkCFSMsAfterRefinements(false);
+    }
+
+    @Test
+    public void gfsmToMinimizedCFSMAfterRefinements() {
+        checkCFSMsAfterRefinements(true);
+    }
+
+    /** A copy of an FSM does not share states with the FSM. */
+    @Test
+    public void fsmCopy() {
+        FSM fsm = g.getCFSM(false).getFSMs().get(0);
+        FSM copy = fsm.copy();
+        assertEquals(fsm, copy);
+        assertEquals(fsm.getStates().size(), copy.getStates().size());
+        for (FSMState s : copy.getStates()) {
+            for (FSMState t : fsm.getStates()) {
+                assertFalse(s == t);
+            }
+        }
+    }
+}
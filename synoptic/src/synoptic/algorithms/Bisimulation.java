@@ -12,6 +12,7 @@ package synoptic.algorithms;
 
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedHashMap;
@@ -26,6 +27,10 @@ import synoptic.algorithms.graphops.IOperation;
 import synoptic.algorithms.graphops.PartitionMerge;
 import synoptic.algorithms.graphops.PartitionMultiSplit;
 import synoptic.algorithms.graphops.PartitionSplit;
+import synoptic.benchmarks.Counter;
+import synoptic.benchmarks.Gauge;
+import synoptic.benchmarks.Histogram;
+import synoptic.benchmarks.Metrics;
 import synoptic.benchmarks.PerformanceMetrics;
 import synoptic.benchmarks.TimedTask;
 import synoptic.invariants.CExamplePath;
@@ -50,6 +55,27 @@ import synoptic.util.InternalSynopticException;
 public class Bisimulation {
     public static Logger logger = Logger.getLogger("Bisimulation");
 
+    private static final Counter refinementIterations = Metrics.counter(
+            "synoptic_refinement_iterations_total",
+            "Number of refinement iterations (model checking and splitting)");
+    private static final Histogram refinementIterationSeconds = Metrics
+            .histogram("synoptic_refinement_iteration_seconds",
+                    "Time spent in each refinement iteration",
+                    Histogram.secondsBuckets);
+    private static final Histogram counterExamples = Metrics.histogram(
+            "synoptic_refinement_counterexamples",
+            "Number of counter-examples found in each refinement iteration",
+            Histogram.sizeBuckets);
+    private static final Counter refinementSplits = Metrics.counter(
+            "synoptic_refinement_splits_total",
+            "Number of split steps applied during refinement");
+    private static final Gauge unsatisfiedInvariantsGauge = Metrics.gauge(
+            "synoptic_unsatisfied_invariants",
+            "Number of invariants that are not satisfied by the partition graph");
+    private static final Gauge partitions = Metrics.gauge(
+            "synoptic_partitions",
+            "Number of partitions in the partition graph");
+
     /**
      * Consider incoming transitions for splitting TODO: expose this as a
      * command line option
@@ -88,15 +114,41 @@ public class Bisimulation {
 
         List<CExamplePath<Partition>> counterExampleTraces = null;
 
+        // Re-uses model checking results from the previous iteration, if
+        // incremental model checking is enabled.
+        IncrementalModelChecker incrementalChecker = null;
+        if (main.options.incrementalModelChecking) {
+            incrementalChecker = new IncrementalModelChecker(pGraph);
+        }
+
+        // Evaluates candidate splits concurrently, if more than one thread
+        // is requested.
+        ParallelSplitChecker splitChecker = null;
+        if (main.options.refinementThreads > 1) {
+            splitChecker = new ParallelSplitChecker(
+                    main.options.refinementThreads);
+        }
+
+        // Periodically saves the partitioning, if checkpoints are enabled.
+        RefinementCheckpoint.Periodic checkpoint = RefinementCheckpoint
+                .newPeriodic(main.options);
+
         while (true) {
+            long timer = Metrics.startTimer();
             // Recompute the counter-examples for the unsatisfied invariants.
-            counterExampleTraces = new TemporalInvariantSet(
-                    unsatisfiedInvariants).getAllCounterExamples(pGraph);
+            if (incrementalChecker != null) {
+                counterExampleTraces = incrementalChecker
+                        .getAllCounterExamples(unsatisfiedInvariants);
+            } else {
+                counterExampleTraces = new TemporalInvariantSet(
+                        unsatisfiedInvariants).getAllCounterExamples(pGraph);
+            }
             logger.fine("Counter-examples: " + counterExampleTraces);
 
             if (counterExampleTraces == null
                     || counterExampleTraces.size() == 0) {
                 logger.fine("Invariants satisfied. Stopping.");
+                unsatisfiedInvariantsGauge.set(0);
                 break;
             }
 
@@ -125,7 +177,16 @@ public class Bisimulation {
             // Perform the splitting.
             prevNumSplitSteps = numSplitSteps;
             numSplitSteps = performSplits(numSplitSteps, pGraph,
-                    counterExampleTraces);
+                    counterExampleTraces, splitChecker);
+
+            refinementIterations.inc();
+            refinementIterationSeconds.observeSince(timer);
+            counterExamples.observe(counterExampleTraces.size());
+            refinementSplits.add(numSplitSteps - prevNumSplitSteps);
+            unsatisfiedInvariantsGauge.set(unsatisfiedInvariants.size());
+            if (Metrics.isEnabled()) {
+                partitions.set(pGraph.getNodes().size());
+            }
 
             if (numSplitSteps == prevNumSplitSteps) {
                 // No splits were performed, which means that we could not
@@ -139,6 +200,22 @@ public class Bisimulation {
                                 + unsatisfiedInvariants);
             }
 
+            if (checkpoint != null) {
+                checkpoint.maybeWrite(pGraph,
+                        RefinementCheckpoint.Stage.REFINEMENT);
+            }
+        }
+
+        // Refinement is done, so a resumed run can go straight to coarsening.
+        if (checkpoint != null) {
+            checkpoint.write(pGraph, RefinementCheckpoint.Stage.COARSENING);
+        }
+
+        if (incrementalChecker != null) {
+            incrementalChecker.close();
+        }
+        if (splitChecker != null) {
+            splitChecker.close();
         }
 
         if (main.options.dumpIntermediateStages) {
@@ -168,6 +245,21 @@ public class Bisimulation {
      */
     public static int performSplits(int numSplitSteps, PartitionGraph pGraph,
             List<CExamplePath<Partition>> counterExampleTraces) {
+        return performSplits(numSplitSteps, pGraph, counterExampleTraces, null);
+    }
+
+    /**
+     * Same as {@code performSplits(numSplitSteps, pGraph,
+     * counterExampleTraces)}, but evaluates the candidate splits with
+     * splitChecker.
+     * 
+     * @param splitChecker
+     *            Evaluates candidate splits concurrently, or null to evaluate
+     *            them one at a time on pGraph.
+     */
+    public static int performSplits(int numSplitSteps, PartitionGraph pGraph,
+            List<CExamplePath<Partition>> counterExampleTraces,
+            ParallelSplitChecker splitChecker) {
 
         // Stores all splits that cause an invariant to be satisfied, indexed by
         // partition to which they are applied.
@@ -196,7 +288,7 @@ public class Bisimulation {
         IOperation arbitrarySplit;
 
         arbitrarySplit = getInvSatisfyingSplits(counterExampleTraces, pGraph,
-                splitsToDoByPartition, newlySatisfiedInvariants);
+                splitsToDoByPartition, newlySatisfiedInvariants, splitChecker);
 
         // String logStr;
         if (splitsToDoByPartition.size() == 0) {
@@ -605,6 +697,8 @@ public class Bisimulation {
      *            include all splits that make the graph satisfy previously
      *            unsatisfied invariants.
      * @param newlySatisfiedInvariants
+     * @param splitChecker
+     *            Evaluates candidate splits concurrently, or null
      * @return an arbitrary split that may be useful in the case that
      *         splitsToDoByPartition is empty and there are no splits that lead
      *         to new invariant satisfaction.
@@ -613,7 +707,8 @@ public class Bisimulation {
             List<CExamplePath<Partition>> counterexampleTraces,
             PartitionGraph pGraph,
             HashMap<Partition, PartitionMultiSplit> splitsToDoByPartition,
-            Set<ITemporalInvariant> newlySatisfiedInvariants) {
+            Set<ITemporalInvariant> newlySatisfiedInvariants,
+            ParallelSplitChecker splitChecker) {
 
         IOperation arbitrarySplit = null;
         AbstractMain main = AbstractMain.getInstance();
@@ -649,6 +744,21 @@ public class Bisimulation {
                 arbitrarySplit = candidateSplits.get(0);
             }
 
+            // Evaluate the candidates concurrently, and only keep the first
+            // one (in the permuted order) that satisfies the invariant.
+            boolean checkedConcurrently = false;
+            if (splitChecker != null && ParallelSplitChecker.supports(inv)) {
+                int i = splitChecker.findSatisfyingSplit(inv, pGraph,
+                        candidateSplits);
+                if (i < 0) {
+                    candidateSplits = Collections.emptyList();
+                } else {
+                    candidateSplits = Collections.singletonList(candidateSplits
+                            .get(i));
+                }
+                checkedConcurrently = true;
+            }
+
             // A split that satisfies the invariant locally (within the subgraph
             // where the violation was found) but not globally (in the entire
             // partition graph). Only applied if a globally-satisfying split is
@@ -688,7 +798,8 @@ public class Bisimulation {
                 // invariant, and (2) continue searching for more such splits on
                 // the _mutated_ pGraph.
 
-                if (splitSatisfiesInvariantGlobally(inv, pGraph, splitOp)) {
+                if (checkedConcurrently
+                        || splitSatisfiesInvariantGlobally(inv, pGraph, splitOp)) {
                     // If we already have a split for that partition,
                     // incorporate the new split into it.
                     if (splitsToDoByPartition.containsKey(partitionBeingSplit)) {
@@ -781,7 +892,13 @@ public class Bisimulation {
         // violations.
         Map<Partition, Set<Partition>> mergeBlacklist = new LinkedHashMap<Partition, Set<Partition>>();
 
+        // Buckets the partitions by their k-tail signature, so that only
+        // k-equal partitions are paired up.
+        MergeCandidateIndex candidateIndex = new MergeCandidateIndex(pGraph, k);
+
         AbstractMain syn = AbstractMain.getInstance();
+        RefinementCheckpoint.Periodic checkpoint = RefinementCheckpoint
+                .newPeriodic(syn.options);
         while (true) {
             if (syn.options.dumpIntermediateStages) {
                 syn.exportNonInitialGraph(
@@ -791,9 +908,14 @@ public class Bisimulation {
             outerItters++;
 
             logger.fine("--------------------------------");
-            if (!mergePartitions(pGraph, mergeBlacklist, invariants, k)) {
+            if (!mergePartitions(pGraph, mergeBlacklist, candidateIndex,
+                    invariants, k)) {
                 break;
             }
+            if (checkpoint != null) {
+                checkpoint.maybeWrite(pGraph,
+                        RefinementCheckpoint.Stage.COARSENING);
+            }
         }
 
         if (syn.options.dumpIntermediateStages) {
@@ -804,39 +926,61 @@ public class Bisimulation {
 
     /**
      * Attempts to merge partitions that are k-equivalent, while respecting
-     * invariants. Tries all pairs of partitions from pGraph, except for those
-     * that are in the mergeBlacklist (these have been attempted previously and
-     * are known to violate invariants). Returns true if at least one merge was
-     * performed, otherwise returns false.
+     * invariants. Tries all pairs of k-equivalent partitions from pGraph, as
+     * found in candidateIndex, except for those that are in the mergeBlacklist
+     * (these have been attempted previously and are known to violate
+     * invariants). Pairs are tried in the order of the partitions in pGraph.
+     * Returns true if at least one merge was performed, otherwise returns
+     * false.
      * 
      * @param pGraph
      * @param mergeBlacklist
+     * @param candidateIndex
+     *            index of the partitions in pGraph by k-tail signature, updated
+     *            if a merge is performed
      * @param invariants
      * @param k
      * @return
      */
     private static boolean mergePartitions(PartitionGraph pGraph,
             Map<Partition, Set<Partition>> mergeBlacklist,
+            MergeCandidateIndex candidateIndex,
             TemporalInvariantSet invariants, int k) {
         ArrayList<Partition> partitions = new ArrayList<Partition>();
         partitions.addAll(pGraph.getNodes());
 
-        // Attempt to merge all pairs of partitions in the current graph.
+        // The position of each partition in the current graph, used to try
+        // the candidates of a partition in graph order.
+        final Map<Partition, Integer> positions = new HashMap<Partition, Integer>();
         for (Partition p : partitions) {
-            for (Partition q : partitions) {
-                // 1. Can't merge a partition with itself
-                if (p == q) {
-                    continue;
-                }
+            positions.put(p, positions.size());
+        }
+        Comparator<Partition> graphOrder = new Comparator<Partition>() {
+            @Override
+            public int compare(Partition p1, Partition p2) {
+                return positions.get(p1).compareTo(positions.get(p2));
+            }
+        };
+
+        // Attempt to merge all pairs of k-equivalent partitions in the current
+        // graph. A partition is never a candidate for itself.
+        for (Partition p : partitions) {
+            List<Partition> candidates = new ArrayList<Partition>(
+                    candidateIndex.getCandidates(p));
+            Collections.sort(candidates, graphOrder);
 
+            for (Partition q : candidates) {
                 logger.fine("Attempting to merge: " + p + "(hash: "
                         + p.hashCode() + ") + " + q + "(hash: " + q.hashCode()
                         + ")");
 
-                // 2. Only merge partitions that are k-equivalent
-                if (!KTails.kEquals(p, q, k)) {
-                    logger.fine("Partitions are not k-equivalent(k=" + k + ")");
-                    continue;
+                if (AbstractMain.getInstance().options.performExtraChecks) {
+                    // The index should only return k-equivalent partitions.
+                    if (!KTails.kEquals(p, q, k)) {
+                        throw new InternalSynopticException(
+                                "Merge candidates are not k-equivalent(k=" + k
+                                        + ")");
+                    }
                 }
 
                 // 3. Ignore partition pairs that were previously tried (are
@@ -849,8 +993,12 @@ public class Bisimulation {
                     continue;
                 }
 
-                Set<Partition> parts = new LinkedHashSet<Partition>();
-                parts.addAll(pGraph.getNodes());
+                int numParts = pGraph.getNodes().size();
+                Set<Partition> parts = null;
+                if (AbstractMain.getInstance().options.performExtraChecks) {
+                    parts = new LinkedHashSet<Partition>();
+                    parts.addAll(pGraph.getNodes());
+                }
                 IOperation rewindOperation = pGraph.apply(new PartitionMerge(p,
                         q));
 
@@ -881,9 +1029,14 @@ public class Bisimulation {
                     // We cannot change the partition sets because we are
                     // iterating over the partitions. Therefore, check that
                     // the resulting partition set is the same as the
-                    // original partition set.
-                    if (!(parts.containsAll(pGraph.getNodes()) && pGraph
-                            .getNodes().containsAll(parts))) {
+                    // original partition set (comparing the full sets only
+                    // when performing extra checks).
+                    Set<Partition> nodes = pGraph.getNodes();
+                    if (nodes.size() != numParts
+                            || !nodes.contains(p)
+                            || !nodes.contains(q)
+                            || (parts != null && !(parts.containsAll(nodes) && nodes
+                                    .containsAll(parts)))) {
                         throw new InternalSynopticException(
                                 "partition set changed due to rewind: "
                                         + rewindOperation);
@@ -892,6 +1045,7 @@ public class Bisimulation {
                 } else {
                     logger.fine("Merge of partitions " + p.getEType()
                             + " nodes maintains invs, accepted.");
+                    candidateIndex.merged(p, q);
                     return true;
                 }
             }
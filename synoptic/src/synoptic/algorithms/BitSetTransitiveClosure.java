@@ -0,0 +1,249 @@
+package synoptic.algorithms;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import synoptic.model.EventNode;
+
+/**
+ * A compact transitive closure with the same interface as
+ * {@link TransitiveClosure}. The events of each trace are assigned dense int
+ * ids, and the events that an event can reach are stored as a bit-set of the
+ * ids of its trace, in a long[] row. Chains of events that are added with
+ * {@link #addChain(List)} are stored as interval labels instead -- an event of
+ * a chain reaches exactly the events that come after it in the chain -- and
+ * are only expanded into bit-sets if reachability between their events is
+ * later recorded or merged explicitly. <br />
+ * <br />
+ * Since events of different traces can never reach each other, reachability
+ * may only be recorded between events of the same trace (as given by
+ * {@link EventNode#getTraceID()}).
+ */
+public class BitSetTransitiveClosure extends TransitiveClosure {
+
+    /** The events of one trace, and their reachability. */
+    private static class Block {
+        final List<EventNode> nodes = new ArrayList<EventNode>();
+        /**
+         * The bit-set of events reachable from each event, indexed by event
+         * id. Null while the block only holds chains.
+         */
+        long[][] rows = null;
+    }
+
+    /** The position of an event in the closure. */
+    private static class Label {
+        final Block block;
+        /** The id of the event within its block. */
+        final int id;
+        /** The chain holding the event, or -1 if it is not part of a chain. */
+        final int chain;
+
+        Label(Block block, int id, int chain) {
+            this.block = block;
+            this.id = id;
+            this.chain = chain;
+        }
+    }
+
+    private final Map<Integer, Block> blocks = new LinkedHashMap<Integer, Block>();
+    private final Map<EventNode, Label> labels = new HashMap<EventNode, Label>();
+    private int numChains = 0;
+
+    public BitSetTransitiveClosure(Set<String> relations) {
+        super(relations);
+    }
+
+    /**
+     * Records that each event in chain can reach every event that comes after
+     * it in chain. The events must all belong to the same trace, and must not
+     * have been added to the closure before.
+     */
+    public void addChain(List<EventNode> chain) {
+        if (chain.size() < 2) {
+            return;
+        }
+        int chainId = numChains++;
+        for (EventNode node : chain) {
+            assert !labels.containsKey(node);
+            addNode(node, chainId);
+        }
+    }
+
+    @Override
+    public boolean isReachable(EventNode m, EventNode n) {
+        Label lm = labels.get(m);
+        Label ln = labels.get(n);
+        if (lm == null || ln == null || lm.block != ln.block) {
+            return false;
+        }
+        long[][] rows = lm.block.rows;
+        if (rows == null) {
+            return lm.chain != -1 && lm.chain == ln.chain && lm.id < ln.id;
+        }
+        return isSet(rows[lm.id], ln.id);
+    }
+
+    /**
+     * Adds the events reachable from {@code from} to the events reachable from
+     * {@code into}. Both events must belong to the same trace.
+     */
+    @Override
+    public void mergeReachables(EventNode from, EventNode into) {
+        Label lFrom = labels.get(from);
+        if (lFrom == null) {
+            return;
+        }
+        Label lInto = getOrAddLabel(into);
+        assert lFrom.block == lInto.block;
+
+        long[][] rows = expand(lInto.block);
+        long[] src = rows[lFrom.id];
+        if (src == null) {
+            return;
+        }
+        long[] dst = row(rows, lInto.id, src.length);
+        for (int w = 0; w < src.length; w++) {
+            dst[w] |= src[w];
+        }
+    }
+
+    @Override
+    public void recordTransitiveReachability(EventNode m, EventNode n) {
+        Label lm = getOrAddLabel(m);
+        Label ln = getOrAddLabel(n);
+        assert lm.block == ln.block;
+
+        long[][] rows = expand(lm.block);
+        long[] r = row(rows, lm.id, (ln.id >> 6) + 1);
+        r[ln.id >> 6] |= 1L << ln.id;
+    }
+
+    /**
+     * Returns a new set holding the nodes that are reachable from source, or
+     * null if no nodes are reachable from source.
+     */
+    @Override
+    public Set<EventNode> getReachableNodes(EventNode source) {
+        Label l = labels.get(source);
+        if (l == null) {
+            return null;
+        }
+        Set<EventNode> reachables = new LinkedHashSet<EventNode>();
+        List<EventNode> nodes = l.block.nodes;
+        long[][] rows = l.block.rows;
+        if (rows == null) {
+            for (int i = l.id + 1; i < nodes.size(); i++) {
+                if (labels.get(nodes.get(i)).chain == l.chain) {
+                    reachables.add(nodes.get(i));
+                }
+            }
+        } else if (rows[l.id] != null) {
+            long[] r = rows[l.id];
+            for (int i = 0; i < nodes.size(); i++) {
+                if (isSet(r, i)) {
+                    reachables.add(nodes.get(i));
+                }
+            }
+        }
+        if (reachables.isEmpty()) {
+            return null;
+        }
+        return reachables;
+    }
+
+    /**
+     * Returns a newly built map from each node to the set of nodes that it can
+     * reach, holding only the nodes that can reach some node. Modifying the
+     * returned map does not modify the closure.
+     */
+    @Override
+    public Map<EventNode, Set<EventNode>> getTC() {
+        Map<EventNode, Set<EventNode>> map = new LinkedHashMap<EventNode, Set<EventNode>>();
+        for (Block block : blocks.values()) {
+            for (EventNode node : block.nodes) {
+                Set<EventNode> reachables = getReachableNodes(node);
+                if (reachables != null) {
+                    map.put(node, reachables);
+                }
+            }
+        }
+        return map;
+    }
+
+    private Label getOrAddLabel(EventNode node) {
+        Label l = labels.get(node);
+        if (l == null) {
+            l = addNode(node, -1);
+        }
+        return l;
+    }
+
+    private Label addNode(EventNode node, int chainId) {
+        Block block = blocks.get(node.getTraceID());
+        if (block == null) {
+            block = new Block();
+            blocks.put(node.getTraceID(), block);
+        }
+        Label l = new Label(block, block.nodes.size(), chainId);
+        block.nodes.add(node);
+        labels.put(node, l);
+        if (block.rows != null && block.rows.length < block.nodes.size()) {
+            block.rows = Arrays.copyOf(block.rows, block.rows.length * 2);
+        }
+        return l;
+    }
+
+    /**
+     * Returns the rows of block, first converting the chains in block into
+     * bit-sets if the block does not have rows yet.
+     */
+    private long[][] expand(Block block) {
+        if (block.rows != null) {
+            return block.rows;
+        }
+        List<EventNode> nodes = block.nodes;
+        long[][] rows = new long[Math.max(nodes.size(), 16)][];
+        for (int i = 0; i < nodes.size(); i++) {
+            int chain = labels.get(nodes.get(i)).chain;
+            if (chain == -1) {
+                continue;
+            }
+            for (int j = i + 1; j < nodes.size(); j++) {
+                if (labels.get(nodes.get(j)).chain == chain) {
+                    long[] r = row(rows, i, (j >> 6) + 1);
+                    r[j >> 6] |= 1L << j;
+                }
+            }
+        }
+        block.rows = rows;
+        return rows;
+    }
+
+    /**
+     * Returns row id of rows, allocating or growing it to at least minWords
+     * longs.
+     */
+    private static long[] row(long[][] rows, int id, int minWords) {
+        long[] r = rows[id];
+        if (r == null) {
+            r = new long[minWords];
+            rows[id] = r;
+        } else if (r.length < minWords) {
+            r = Arrays.copyOf(r, Math.max(minWords, r.length * 2));
+            rows[id] = r;
+        }
+        return r;
+    }
+
+    private static boolean isSet(long[] r, int id) {
+        return r != null && (id >> 6) < r.length
+                && (r[id >> 6] & (1L << id)) != 0;
+    }
+}
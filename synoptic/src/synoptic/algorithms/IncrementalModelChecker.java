@@ -0,0 +1,208 @@
+package synoptic.algorithms;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.logging.Logger;
+
+import synoptic.benchmarks.PerformanceMetrics;
+import synoptic.benchmarks.TimedTask;
+import synoptic.invariants.BinaryInvariant;
+import synoptic.invariants.CExamplePath;
+import synoptic.invariants.ITemporalInvariant;
+import synoptic.invariants.fsmcheck.FsmModelChecker;
+import synoptic.invariants.fsmcheck.FsmModelChecker.DirtyRegion;
+import synoptic.invariants.fsmcheck.TracingStateSet;
+import synoptic.main.AbstractMain;
+import synoptic.model.Partition;
+import synoptic.model.PartitionGraph;
+
+/**
+ * Computes counter-examples for invariants in a partition graph that is being
+ * refined, re-using the model checker state sets computed in the previous
+ * iteration. The graph records the partitions that are modified by the applied
+ * operations, and only the state sets of these partitions and of partitions
+ * reachable from them are re-computed. This region is computed once per
+ * iteration, and shared by all invariants. This is useful during refinement,
+ * where each iteration typically splits just a few partitions of a large graph.
+ * <br />
+ * <br />
+ * Like the non-incremental check, the check of an invariant stops as soon as a
+ * counter-example is found. The partitions whose states were not propagated
+ * yet are kept with the state sets, and propagated on the next iteration.
+ */
+public class IncrementalModelChecker {
+    public static Logger logger = Logger.getLogger("IncrementalModelChecker");
+
+    /** The graph that is being checked. */
+    private final PartitionGraph pGraph;
+
+    /** The state sets computed for each invariant, per partition. */
+    private final Map<ITemporalInvariant, Map<Partition, TracingStateSet<Partition>>> statesByInv = new LinkedHashMap<ITemporalInvariant, Map<Partition, TracingStateSet<Partition>>>();
+
+    /**
+     * The partitions whose state sets were not propagated yet, because the
+     * check of the invariant stopped at a counter-example.
+     */
+    private final Map<ITemporalInvariant, Queue<Partition>> pendingByInv = new LinkedHashMap<ITemporalInvariant, Queue<Partition>>();
+
+    /**
+     * The number of events of each partition at the time the state sets were
+     * computed. Used to ignore partitions that were split and then restored by
+     * a rewind.
+     */
+    private final Map<Partition, Integer> checkedSizes = new LinkedHashMap<Partition, Integer>();
+
+    /**
+     * Creates an incremental model checker for pGraph and enables the tracking
+     * of modified partitions in pGraph.
+     */
+    public IncrementalModelChecker(PartitionGraph pGraph) {
+        this.pGraph = pGraph;
+        pGraph.setTrackModifiedPartitions(true);
+        pGraph.takeModifiedPartitions();
+    }
+
+    /**
+     * Releases all cached state sets and disables the tracking of modified
+     * partitions in the graph.
+     */
+    public void close() {
+        pGraph.setTrackModifiedPartitions(false);
+        statesByInv.clear();
+        pendingByInv.clear();
+        checkedSizes.clear();
+    }
+
+    /**
+     * Returns a list of paths, each of which violates one of the invariants
+     * (i.e. each of which is a counter-example), sorted by length. Cached state
+     * sets for invariants that are not in invariants are discarded.
+     *
+     * @param invariants
+     *            the invariants to check
+     * @return a list of violating paths, or null if all invariants hold
+     */
+    public List<CExamplePath<Partition>> getAllCounterExamples(
+            Collection<ITemporalInvariant> invariants) {
+        TimedTask violations = PerformanceMetrics.createTask(
+                "getAllCounterExamples", false);
+        AbstractMain main = AbstractMain.getInstance();
+        try {
+            Set<Partition> removed = new LinkedHashSet<Partition>();
+            Set<Partition> changed = updateCheckedPartitions(removed);
+            statesByInv.keySet().retainAll(invariants);
+            pendingByInv.keySet().retainAll(invariants);
+
+            // The region only depends on the graph, so it is shared by all of
+            // the invariants.
+            DirtyRegion<Partition> region = null;
+            if (!statesByInv.isEmpty()) {
+                region = FsmModelChecker.getDirtyRegion(pGraph, changed,
+                        removed);
+                logger.fine("Partitions to re-check: " + region.size());
+            }
+
+            List<CExamplePath<Partition>> paths = new ArrayList<CExamplePath<Partition>>();
+            for (ITemporalInvariant tinv : invariants) {
+                BinaryInvariant inv = (BinaryInvariant) tinv;
+                TracingStateSet<Partition> initial = FsmModelChecker
+                        .newTracingStateSet(inv);
+                Map<Partition, TracingStateSet<Partition>> states = statesByInv
+                        .get(inv);
+                Queue<Partition> pending = pendingByInv.get(inv);
+                if (states == null) {
+                    pending = new LinkedList<Partition>();
+                    states = FsmModelChecker.runWorkListChecker(initial,
+                            pGraph, pending, true);
+                    statesByInv.put(inv, states);
+                    pendingByInv.put(inv, pending);
+                } else {
+                    FsmModelChecker.runChecker(initial, pGraph, states,
+                            pending, region, true);
+                }
+
+                CExamplePath<Partition> path = FsmModelChecker
+                        .getShortestCounterExample(inv, states);
+                if (path != null) {
+                    paths.add(path);
+                }
+            }
+
+            if (paths.size() == 0) {
+                // Did not find any counter-examples.
+                return null;
+            }
+
+            Collections.sort(paths, new Comparator<CExamplePath<Partition>>() {
+                @Override
+                public int compare(CExamplePath<Partition> o1,
+                        CExamplePath<Partition> o2) {
+                    return Integer.valueOf(o1.path.size()).compareTo(
+                            o2.path.size());
+                }
+            });
+
+            return paths;
+        } finally {
+            violations.stop();
+            if (main.options.doBenchmarking) {
+                logger.info("BENCHM: " + violations.toString());
+            }
+        }
+    }
+
+    /**
+     * Returns the partitions in the graph that were added, or whose events
+     * changed, since the state sets were last computed, and records the
+     * current sizes of these partitions. The partitions that were removed from
+     * the graph are added to removed.
+     */
+    private Set<Partition> updateCheckedPartitions(Set<Partition> removed) {
+        Set<Partition> nodes = pGraph.getNodes();
+        Set<Partition> changed = new LinkedHashSet<Partition>();
+        for (Partition p : pGraph.takeModifiedPartitions()) {
+            if (!nodes.contains(p)) {
+                if (checkedSizes.remove(p) != null) {
+                    removed.add(p);
+                }
+                continue;
+            }
+            Integer size = checkedSizes.get(p);
+            if (size == null || size != p.size()) {
+                changed.add(p);
+                checkedSizes.put(p, p.size());
+            }
+        }
+
+        // Partitions that were never checked before (e.g., on the first
+        // iteration) are recorded, and treated as changed, as well.
+        if (checkedSizes.size() != nodes.size()) {
+            for (Partition p : nodes) {
+                if (!checkedSizes.containsKey(p)) {
+                    checkedSizes.put(p, p.size());
+                    changed.add(p);
+                }
+            }
+            for (Iterator<Partition> iter = checkedSizes.keySet().iterator(); iter
+                    .hasNext();) {
+                Partition p = iter.next();
+                if (!nodes.contains(p)) {
+                    iter.remove();
+                    removed.add(p);
+                }
+            }
+        }
+        logger.fine("Partitions changed since last check: " + changed.size());
+        return changed;
+    }
+}
@@ -0,0 +1,275 @@
+package synoptic.algorithms;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import synoptic.model.event.EventType;
+import synoptic.model.interfaces.INode;
+
+/**
+ * Computes a signature of the k-strings (see {@code KTails.getNodeKStrings})
+ * of a list of nodes, such that two nodes have the same set of k-strings
+ * exactly when they have the same signature. <br />
+ * <br />
+ * The k-strings of a node are a prefix-closed set of strings, which is
+ * represented as a trie whose root is labeled with the event type of the node.
+ * Tries are hash-consed -- a trie is only created if no equal trie exists --
+ * so that every distinct set of k-strings is represented by a single trie
+ * instance, which is the signature of the set. Comparing the k-strings of two
+ * nodes is then an identity comparison, and nodes can be grouped by their
+ * k-strings in a hash table. <br />
+ * <br />
+ * The tries are built bottom-up by depth instead of with a traversal from
+ * every node: the depth d trie of a node is labeled with the event type of the
+ * node and has the merged depth d-1 tries of the successors of the node as
+ * children. Each depth is computed in parallel across the nodes.
+ */
+class KTailSignatures<NodeType extends INode<NodeType>> {
+    /** Minimum number of nodes that a task computes the tries of. */
+    private static final int minChunkSize = 256;
+
+    private static final Trie[] noChildren = new Trie[0];
+
+    private static final Comparator<Trie> byType = new Comparator<Trie>() {
+        @Override
+        public int compare(Trie t1, Trie t2) {
+            return t1.type < t2.type ? -1 : (t1.type == t2.type ? 0 : 1);
+        }
+    };
+
+    /**
+     * A trie of event types, which is identified by its type and (the
+     * identities of) its children.
+     */
+    private static final class Trie {
+        /** The index of the event type of the root of the trie. */
+        final int type;
+        /** The canonical tries below the root, with distinct increasing types. */
+        final Trie[] children;
+        final int hash;
+
+        Trie(int type, Trie[] children) {
+            this.type = type;
+            this.children = children;
+            int h = type;
+            for (Trie child : children) {
+                h = 31 * h + System.identityHashCode(child);
+            }
+            hash = h;
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (this == other) {
+                return true;
+            }
+            if (!(other instanceof Trie)) {
+                return false;
+            }
+            Trie t = (Trie) other;
+            if (t.hash != hash || t.type != type
+                    || t.children.length != children.length) {
+                return false;
+            }
+            for (int i = 0; i < children.length; i++) {
+                if (t.children[i] != children[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    /** The canonical instance of every trie that was created. */
+    private final ConcurrentHashMap<Trie, Trie> tries = new ConcurrentHashMap<Trie, Trie>();
+
+    /** The index of the event type of each node. */
+    private final int[] types;
+    /** The indices of the successors of each node. */
+    private final int[][] successors;
+
+    private KTailSignatures(List<NodeType> nodes) {
+        Map<NodeType, Integer> ids = new HashMap<NodeType, Integer>(
+                nodes.size() * 2);
+        Map<EventType, Integer> typeIds = new HashMap<EventType, Integer>();
+        types = new int[nodes.size()];
+        for (int i = 0; i < nodes.size(); i++) {
+            NodeType node = nodes.get(i);
+            ids.put(node, i);
+            Integer type = typeIds.get(node.getEType());
+            if (type == null) {
+                type = typeIds.size();
+                typeIds.put(node.getEType(), type);
+            }
+            types[i] = type;
+        }
+
+        successors = new int[nodes.size()][];
+        for (int i = 0; i < nodes.size(); i++) {
+            Set<NodeType> succs = nodes.get(i).getAllSuccessors();
+            successors[i] = new int[succs.size()];
+            int j = 0;
+            for (NodeType succ : succs) {
+                successors[i][j++] = ids.get(succ);
+            }
+        }
+    }
+
+    /**
+     * Returns the signatures of the k-strings of nodes, which must contain all
+     * of the successors of the nodes. The signatures are only meaningful when
+     * compared with each other, using equals() or identity.
+     *
+     * @param nodes
+     *            the nodes to compute the signatures of
+     * @param k
+     *            the length of the k-strings, which must be positive
+     * @param numThreads
+     *            number of threads used to compute the signatures (1 computes
+     *            them sequentially)
+     */
+    static <NodeType extends INode<NodeType>> Object[] getSignatures(
+            List<NodeType> nodes, int k, int numThreads) {
+        assert (k > 0);
+        return new KTailSignatures<NodeType>(nodes).computeTries(k, numThreads);
+    }
+
+    private Trie[] computeTries(int k, int numThreads) {
+        ForkJoinPool pool = null;
+        if (numThreads > 1 && types.length > minChunkSize) {
+            pool = new ForkJoinPool(numThreads);
+        }
+        try {
+            Trie[] prev = null;
+            for (int depth = 1; depth <= k; depth++) {
+                Trie[] next = new Trie[types.length];
+                if (pool == null) {
+                    computeTries(prev, next, 0, types.length);
+                } else {
+                    pool.invoke(new ComputeTriesTask(prev, next, 0,
+                            types.length));
+                }
+                prev = next;
+            }
+            return prev;
+        } finally {
+            if (pool != null) {
+                pool.shutdown();
+            }
+        }
+    }
+
+    /**
+     * Computes the tries of the nodes in [from, to) one level deeper than the
+     * tries in prev (or the depth 1 tries if prev is null), into next.
+     */
+    private void computeTries(Trie[] prev, Trie[] next, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (prev == null || successors[i].length == 0) {
+                next[i] = intern(types[i], noChildren);
+                continue;
+            }
+
+            Trie[] children = new Trie[successors[i].length];
+            for (int j = 0; j < children.length; j++) {
+                children[j] = prev[successors[i][j]];
+            }
+            next[i] = intern(types[i], mergeByType(children));
+        }
+    }
+
+    private class ComputeTriesTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final Trie[] prev;
+        private final Trie[] next;
+        private final int from;
+        private final int to;
+
+        ComputeTriesTask(Trie[] prev, Trie[] next, int from, int to) {
+            this.prev = prev;
+            this.next = next;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= minChunkSize) {
+                computeTries(prev, next, from, to);
+                return;
+            }
+            int mid = (from + to) >>> 1;
+            invokeAll(new ComputeTriesTask(prev, next, from, mid),
+                    new ComputeTriesTask(prev, next, mid, to));
+        }
+    }
+
+    /**
+     * Sorts tries by type and merges the tries with the same type, yielding
+     * the children of a canonical trie. May modify the array.
+     */
+    private Trie[] mergeByType(Trie[] tries) {
+        if (tries.length == 1) {
+            return tries;
+        }
+        Arrays.sort(tries, byType);
+        int n = 0;
+        for (int i = 0; i < tries.length; i++) {
+            if (n > 0 && tries[n - 1].type == tries[i].type) {
+                tries[n - 1] = merge(tries[n - 1], tries[i]);
+            } else {
+                tries[n++] = tries[i];
+            }
+        }
+        return n == tries.length ? tries : Arrays.copyOf(tries, n);
+    }
+
+    /**
+     * Returns the canonical trie of the union of the strings of t1 and t2,
+     * which have the same type.
+     */
+    private Trie merge(Trie t1, Trie t2) {
+        assert t1.type == t2.type;
+        if (t1 == t2) {
+            return t1;
+        }
+        Trie[] children = new Trie[t1.children.length + t2.children.length];
+        int n = 0;
+        int i = 0;
+        int j = 0;
+        while (i < t1.children.length || j < t2.children.length) {
+            if (j == t2.children.length
+                    || (i < t1.children.length && t1.children[i].type < t2.children[j].type)) {
+                children[n++] = t1.children[i++];
+            } else if (i == t1.children.length
+                    || t2.children[j].type < t1.children[i].type) {
+                children[n++] = t2.children[j++];
+            } else {
+                children[n++] = merge(t1.children[i++], t2.children[j++]);
+            }
+        }
+        if (n < children.length) {
+            children = Arrays.copyOf(children, n);
+        }
+        return intern(t1.type, children);
+    }
+
+    private Trie intern(int type, Trie[] children) {
+        Trie trie = new Trie(type, children);
+        Trie existing = tries.putIfAbsent(trie, trie);
+        return existing == null ? trie : existing;
+    }
+}
@@ -30,104 +30,70 @@ public class KTails {
      * the given k value to the given trace graph
      */
     public static PartitionGraph performKTails(ChainsTraceGraph g, int k) {
+        return performKTails(g, k, 1);
+    }
+
+    /**
+     * Constructs and returns a PartitionGraph generated by applying kTails with
+     * the given k value to the given trace graph, using numThreads threads to
+     * compute the k-strings of the partitions. The result does not depend on
+     * the number of threads.
+     */
+    public static PartitionGraph performKTails(ChainsTraceGraph g, int k,
+            int numThreads) {
         // Note: at k == 0, all "states" should be considered equal, but an
         // event-based model cannot express this, thus the assert.
         assert (k > 0);
 
         PartitionGraph pGraph = new PartitionGraph(g, false, null);
-        kTails(pGraph, k);
+        kTails(pGraph, k, numThreads);
         return pGraph;
     }
 
     /**
      * Finds and executes all possible k-equivalent merges in pGraph.
      */
-    private static void kTails(PartitionGraph pGraph, int k) {
+    private static void kTails(PartitionGraph pGraph, int k, int numThreads) {
         // Note: at k == 0, all "states" should be considered equal, but an
         // event-based model cannot express this, thus the assert.
         assert (k > 0);
 
-        // Keeps track of the merges that we want to perform.
-        Set<PartitionMultiMerge> merges = new LinkedHashSet<PartitionMultiMerge>();
-
         // List of all partitions -- needed for ordering partitions in the loops
         // below.
         List<Partition> partitions = new ArrayList<Partition>(pGraph.getNodes());
 
-        // Partitions that belong to a merge.
-        List<Partition> mergedPartitions = new ArrayList<Partition>();
-
-        // Maps a partition to the set of strings of length <= k reachable from
-        // the partition.
-        // TODO: this is inefficient, ideally we would Map sets of strings to
-        // partitions with those sets!
-        Map<Partition, Set<List<EventType>>> kStringsMap = new LinkedHashMap<Partition, Set<List<EventType>>>();
+        // Two partitions are k-equivalent exactly when the sets of strings of
+        // length <= k reachable from the partitions have the same signature.
+        logger.fine("Pre-computing [node -> ktail signature] map");
+        Object[] signatures = KTailSignatures.getSignatures(partitions, k,
+                numThreads);
 
-        // int remaining = partitions.size();
-        // Build the kStringsMap
-        logger.fine("Pre-computing [node -> ktail set] map");
-        for (Partition P : partitions) {
-            // logger.info("Remaining kTails pre-mining = " + remaining);
-            // remaining -= 1;
-
-            Set<List<EventType>> ret = getNodeKStrings(P, k);
-            kStringsMap.put(P, ret);
-        }
-
-        logger.fine("Pre-computed map: " + kStringsMap.toString());
-
-        // remaining = partitions.size();
+        // Groups the partitions by signature. Each group is merged into its
+        // first partition, in the order of the partitions. Since
+        // k-equivalence is transitive, a group contains all the partitions
+        // that are k-equivalent to its first partition.
         logger.fine("Finding sets of nodes that are k-equivalent.");
+        Map<Object, List<Partition>> groups = new LinkedHashMap<Object, List<Partition>>();
         for (int i = 0; i < partitions.size(); i++) {
-            // logger.info("Remaining kTails n^2 checking = " + remaining);
-            // remaining -= 1;
-            Partition Pi = partitions.get(i);
-
-            // Skip partition Pi if it has already been merged previously.
-            // Since k-equivalence is transitive, this merge already contains
-            // all the k-equivalent partitions.
-            if (mergedPartitions.contains(Pi)) {
-                continue;
+            List<Partition> group = groups.get(signatures[i]);
+            if (group == null) {
+                group = new ArrayList<Partition>(1);
+                groups.put(signatures[i], group);
             }
+            group.add(partitions.get(i));
+        }
 
-            // m will track all partitions to be merged with Pi.
-            PartitionMultiMerge m = null;
-
-            Set<List<EventType>> PiKStrings = kStringsMap.get(Pi);
-
-            // Can't merge a partition with itself. So skip i=j. Also, merging
-            // is commutative so if we've tried merge(p1,p2), then we don't have
-            // to try/check merge(p2,p1). So skip j < i.
-            for (int j = i + 1; j < partitions.size(); j++) {
-                Partition Pj = partitions.get(j);
-                // If we merged p1 and p2 previously, and now we are merging
-                // p2 and p3, then p3 _must_ be in the p1+p2 partition, since we
-                // must have already compared the ktails of p1 and p3
-                // previously.
-                if (mergedPartitions.contains(Pj)) {
-                    continue;
-                }
-
-                Set<List<EventType>> PjKStrings = kStringsMap.get(Pj);
-                if (!PiKStrings.equals(PjKStrings)) {
-                    continue;
-                }
-
-                logger.fine("Merging " + Pi + " and " + Pj);
-
-                if (m == null) {
-                    List<Partition> list = new ArrayList<Partition>();
-                    list.add(Pj);
-                    m = new PartitionMultiMerge(Pi, list);
-                    merges.add(m);
-                } else {
-                    m.addToMerge(Pj);
-                }
-
-                // We don't need to add Pi to mergedPartitions, since we
-                // will never come back to it in the check above.
-                mergedPartitions.add(Pj);
+        // Keeps track of the merges that we want to perform.
+        List<PartitionMultiMerge> merges = new ArrayList<PartitionMultiMerge>();
+        for (List<Partition> group : groups.values()) {
+            if (group.size() == 1) {
+                continue;
             }
+            Partition Pi = group.get(0);
+            List<Partition> list = new ArrayList<Partition>(group.subList(1,
+                    group.size()));
+            logger.fine("Merging " + Pi + " and " + list);
+            merges.add(new PartitionMultiMerge(Pi, list));
         }
 
         logger.fine("Applying merges.");
@@ -167,7 +133,7 @@ public class KTails {
      * @param P
      * @return
      */
-    private static <NodeType extends INode<NodeType>> Set<List<EventType>> getNodeKStrings(
+    static <NodeType extends INode<NodeType>> Set<List<EventType>> getNodeKStrings(
             NodeType P, int k) {
         assert (k >= 0);
 
@@ -0,0 +1,124 @@
+package synoptic.algorithms;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+import synoptic.model.Partition;
+import synoptic.model.PartitionGraph;
+
+/**
+ * Indexes the partitions of a partition graph by their k-tail signature -- the
+ * event type of the partition for k = 1, and the set of k-strings starting at
+ * the partition otherwise. Two partitions are k-equal (see
+ * {@code KTails.kEquals}) exactly when they have the same signature, so
+ * coarsening only needs to consider pairs of partitions within one bucket of
+ * the index. <br />
+ * <br />
+ * The index must be told about every merge that is kept in the graph. Merges
+ * that are rewound do not need to be reported, since a rewind restores the
+ * original partitions and their transitions.
+ */
+public class MergeCandidateIndex {
+    private final int k;
+
+    /** Partitions with the same signature, keyed by that signature. */
+    private final Map<Object, Set<Partition>> buckets = new LinkedHashMap<Object, Set<Partition>>();
+
+    /** The current signature of each indexed partition. */
+    private final Map<Partition, Object> signatures = new LinkedHashMap<Partition, Object>();
+
+    /**
+     * The indexed graph, whose predecessor partitions are needed for k > 1,
+     * when a merge can change the signatures of the partitions that precede
+     * the merged partition.
+     */
+    private final PartitionGraph pGraph;
+
+    /**
+     * Creates an index of the partitions in pGraph using k-tail signatures.
+     */
+    public MergeCandidateIndex(PartitionGraph pGraph, int k) {
+        assert (k > 0);
+        this.k = k;
+        this.pGraph = pGraph;
+
+        for (Partition p : pGraph.getNodes()) {
+            add(p);
+        }
+    }
+
+    /**
+     * Returns the partitions, other than p, that have the same signature as p
+     * (and are therefore k-equal to p).
+     */
+    public Set<Partition> getCandidates(Partition p) {
+        Set<Partition> bucket = buckets.get(signatures.get(p));
+        if (bucket == null || bucket.size() < 2) {
+            return Collections.emptySet();
+        }
+        Set<Partition> candidates = new LinkedHashSet<Partition>(bucket);
+        candidates.remove(p);
+        return candidates;
+    }
+
+    /**
+     * Updates the index after the events of removed were merged into retained.
+     * Re-computes the signatures of retained and of all partitions that can
+     * reach retained in fewer than k steps.
+     */
+    public void merged(Partition retained, Partition removed) {
+        remove(removed);
+
+        Set<Partition> affected = new LinkedHashSet<Partition>();
+        affected.add(retained);
+        Set<Partition> frontier = affected;
+        for (int depth = 1; depth < k; depth++) {
+            Set<Partition> preds = new LinkedHashSet<Partition>();
+            for (Partition p : frontier) {
+                for (Partition pred : pGraph.getPredecessors(p)) {
+                    if (affected.add(pred)) {
+                        preds.add(pred);
+                    }
+                }
+            }
+            frontier = preds;
+        }
+
+        for (Partition p : affected) {
+            remove(p);
+            add(p);
+        }
+    }
+
+    private void add(Partition p) {
+        Object signature;
+        if (k == 1) {
+            signature = p.getEType();
+        } else {
+            signature = KTails.getNodeKStrings(p, k);
+        }
+        signatures.put(p, signature);
+
+        Set<Partition> bucket = buckets.get(signature);
+        if (bucket == null) {
+            bucket = new LinkedHashSet<Partition>();
+            buckets.put(signature, bucket);
+        }
+        bucket.add(p);
+    }
+
+    private void remove(Partition p) {
+        Object signature = signatures.remove(p);
+        if (signature == null) {
+            return;
+        }
+        Set<Partition> bucket = buckets.get(signature);
+        bucket.remove(p);
+        if (bucket.isEmpty()) {
+            buckets.remove(signature);
+        }
+    }
+}
@@ -0,0 +1,479 @@
+package synoptic.algorithms;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Logger;
+
+import synoptic.algorithms.graphops.PartitionSplit;
+import synoptic.invariants.BinaryInvariant;
+import synoptic.invariants.ITemporalInvariant;
+import synoptic.invariants.constraints.TempConstrainedInvariant;
+import synoptic.invariants.fsmcheck.FsmModelChecker;
+import synoptic.invariants.fsmcheck.TracingStateSet;
+import synoptic.model.EventNode;
+import synoptic.model.Partition;
+import synoptic.model.PartitionGraph;
+import synoptic.model.Transition;
+import synoptic.model.event.EventType;
+import synoptic.model.interfaces.IGraph;
+import synoptic.model.interfaces.INode;
+import synoptic.model.interfaces.ITransition;
+import synoptic.util.InternalSynopticException;
+
+/**
+ * Evaluates candidate splits of a partition graph concurrently. Instead of
+ * applying each split to the shared graph and rewinding it, every candidate is
+ * model checked on a read-only view of the graph in which the split partition
+ * is replaced by its two halves. The graph must not be modified while a call
+ * to {@code findSatisfyingSplit} is in progress. The call only returns once
+ * none of its candidates are being checked anymore, so the caller can apply
+ * the split that it finds.
+ */
+public class ParallelSplitChecker {
+    public static Logger logger = Logger.getLogger("ParallelSplitChecker");
+
+    private final ExecutorService executor;
+
+    /**
+     * Creates a checker that evaluates candidate splits with numThreads
+     * threads.
+     */
+    public ParallelSplitChecker(int numThreads) {
+        executor = Executors.newFixedThreadPool(numThreads,
+                new ThreadFactory() {
+                    @Override
+                    public Thread newThread(Runnable r) {
+                        Thread t = new Thread(r, "ParallelSplitChecker");
+                        t.setDaemon(true);
+                        return t;
+                    }
+                });
+    }
+
+    /** Stops the threads of this checker. */
+    public void close() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Whether or not inv can be checked on a split view. Constrained
+     * invariants inspect the event transitions between the actual partitions
+     * of the graph, and must be checked by applying the split.
+     */
+    public static boolean supports(ITemporalInvariant inv) {
+        return !(inv instanceof TempConstrainedInvariant<?>);
+    }
+
+    /**
+     * Returns the index of the first split in candidateSplits that makes
+     * pGraph satisfy inv, or -1 if no such split exists. The candidates are
+     * checked concurrently, but the returned index is the same as that found
+     * by checking them one at a time in order.
+     *
+     * @param inv
+     *            the invariant to satisfy
+     * @param pGraph
+     *            the graph to which the splits apply
+     * @param candidateSplits
+     *            the splits to check
+     */
+    public int findSatisfyingSplit(ITemporalInvariant inv,
+            PartitionGraph pGraph, List<PartitionSplit> candidateSplits) {
+        if (candidateSplits.isEmpty()) {
+            return -1;
+        }
+        final BinaryInvariant bInv = (BinaryInvariant) inv;
+        final GraphSnapshot snapshot = new GraphSnapshot(pGraph);
+        // Set once the candidates that have not been checked yet are no longer
+        // needed.
+        final AtomicBoolean stopped = new AtomicBoolean(false);
+
+        List<Future<Boolean>> results = new ArrayList<Future<Boolean>>(
+                candidateSplits.size());
+        for (final PartitionSplit split : candidateSplits) {
+            results.add(executor.submit(new Callable<Boolean>() {
+                @Override
+                public Boolean call() {
+                    if (stopped.get()) {
+                        return false;
+                    }
+                    return splitSatisfiesInvariant(bInv, new SplitView(
+                            snapshot, split, stopped));
+                }
+            }));
+        }
+
+        int found = -1;
+        try {
+            for (int i = 0; i < results.size(); i++) {
+                if (results.get(i).get()) {
+                    found = i;
+                    break;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InternalSynopticException(e);
+        } catch (ExecutionException e) {
+            throw new InternalSynopticException(e);
+        } finally {
+            // Candidates after the winner are no longer needed. Their checks
+            // stop at the next step, but they read the graph until then, and
+            // the caller modifies it once this call returns.
+            stopped.set(true);
+            awaitAll(results);
+        }
+        return found;
+    }
+
+    /**
+     * Waits until all of the results are completed, ignoring their outcome.
+     * Futures are not cancelled instead, since cancelling a running task does
+     * not wait for it to stop.
+     */
+    private static void awaitAll(List<Future<Boolean>> results) {
+        boolean interrupted = false;
+        for (Future<Boolean> result : results) {
+            while (true) {
+                try {
+                    result.get();
+                    break;
+                } catch (InterruptedException e) {
+                    // The remaining checks stop quickly, so keep waiting.
+                    interrupted = true;
+                } catch (ExecutionException e) {
+                    break;
+                } catch (CancellationException e) {
+                    break;
+                }
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Whether or not the view has no counter-example for inv.
+     */
+    private static boolean splitSatisfiesInvariant(BinaryInvariant inv,
+            SplitView view) {
+        TracingStateSet<ViewNode> initial = FsmModelChecker
+                .newTracingStateSet(inv);
+        Map<ViewNode, TracingStateSet<ViewNode>> states = FsmModelChecker
+                .runChecker(initial, view, true);
+        for (Entry<ViewNode, TracingStateSet<ViewNode>> e : states.entrySet()) {
+            if (e.getKey().isTerminal() && e.getValue().failpath() != null) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * The nodes and edges of a partition graph, recorded so that they can be
+     * shared by concurrently checked split views.
+     */
+    private static class GraphSnapshot {
+        final Map<Partition, Set<Partition>> adjacent = new LinkedHashMap<Partition, Set<Partition>>();
+        final Set<String> relations;
+        final Partition initial;
+
+        GraphSnapshot(PartitionGraph pGraph) {
+            for (Partition p : pGraph.getNodes()) {
+                adjacent.put(p, pGraph.getAdjacentNodes(p));
+            }
+            relations = new LinkedHashSet<String>(pGraph.getRelations());
+            initial = pGraph.getDummyInitialNode();
+        }
+    }
+
+    /**
+     * A view of a graph snapshot after a split. Used by a single thread. The
+     * view never modifies the snapshot or the partition graph: the edges of
+     * its nodes are derived from the events of their partitions, and nodes
+     * that are added to the view only change the node set of the view.
+     */
+    private static class SplitView implements IGraph<ViewNode> {
+        private final GraphSnapshot snapshot;
+        private final Partition splitPart;
+        private final Set<EventNode> splitEvents;
+        /** The nodes of the partitions that are not split. */
+        private final Map<Partition, ViewNode> partitionNodes = new LinkedHashMap<Partition, ViewNode>();
+        /** Holds the events of splitPart that remain in it. */
+        private final ViewNode remaining;
+        /** Holds the events that are split out of splitPart. */
+        private final ViewNode splitOut;
+        private final Set<ViewNode> nodes = new LinkedHashSet<ViewNode>();
+        private final Map<ViewNode, Set<ViewNode>> adjacentCache = new LinkedHashMap<ViewNode, Set<ViewNode>>();
+        /** Set when the check of this view is no longer needed. */
+        private final AtomicBoolean stopped;
+
+        SplitView(GraphSnapshot snapshot, PartitionSplit split,
+                AtomicBoolean stopped) {
+            this.snapshot = snapshot;
+            this.stopped = stopped;
+            this.splitPart = split.getPartition();
+            this.splitEvents = split.getSplitEvents();
+            for (Partition p : snapshot.adjacent.keySet()) {
+                if (p != splitPart) {
+                    ViewNode node = new ViewNode(this, p, 0);
+                    partitionNodes.put(p, node);
+                    nodes.add(node);
+                }
+            }
+            this.remaining = new ViewNode(this, splitPart, 1);
+            this.splitOut = new ViewNode(this, splitPart, 2);
+            nodes.add(remaining);
+            nodes.add(splitOut);
+        }
+
+        @Override
+        public Set<ViewNode> getNodes() {
+            return Collections.unmodifiableSet(nodes);
+        }
+
+        @Override
+        public Set<String> getRelations() {
+            return Collections.unmodifiableSet(snapshot.relations);
+        }
+
+        @Override
+        public ViewNode getDummyInitialNode() {
+            return partitionNodes.get(snapshot.initial);
+        }
+
+        @Override
+        public Set<ViewNode> getAdjacentNodes(ViewNode node) {
+            Set<ViewNode> adjNodes = adjacentCache.get(node);
+            if (adjNodes != null) {
+                return adjNodes;
+            }
+            if (stopped.get()) {
+                // Abandons the check before reading the graph again.
+                throw new CancellationException();
+            }
+
+            adjNodes = new LinkedHashSet<ViewNode>();
+            if (node.half == 0
+                    && !snapshot.adjacent.get(node.partition).contains(
+                            splitPart)) {
+                // Edges that do not lead into the split partition are not
+                // affected by the split.
+                for (Partition p : snapshot.adjacent.get(node.partition)) {
+                    adjNodes.add(partitionNodes.get(p));
+                }
+            } else {
+                for (EventNode e : getEventNodes(node)) {
+                    for (EventNode eSucc : e.getAllSuccessors()) {
+                        adjNodes.add(getNode(eSucc));
+                    }
+                }
+            }
+            adjacentCache.put(node, adjNodes);
+            return adjNodes;
+        }
+
+        /**
+         * Returns the events of the partition of node that are in node.
+         */
+        List<EventNode> getEventNodes(ViewNode node) {
+            List<EventNode> events = new ArrayList<EventNode>();
+            for (EventNode e : node.partition.getEventNodes()) {
+                if (node.half == 0
+                        || splitEvents.contains(e) == (node == splitOut)) {
+                    events.add(e);
+                }
+            }
+            return events;
+        }
+
+        /**
+         * Returns the node of this view that holds e.
+         */
+        ViewNode getNode(EventNode e) {
+            Partition p = e.getParent();
+            if (p != splitPart) {
+                return partitionNodes.get(p);
+            }
+            return splitEvents.contains(e) ? splitOut : remaining;
+        }
+
+        /**
+         * Adds node, which must be a node of this view, to the node set of
+         * this view.
+         */
+        @Override
+        public void add(ViewNode node) {
+            assert node.view == this;
+            nodes.add(node);
+        }
+    }
+
+    /**
+     * A partition, or one half of a partition that is being split, in a split
+     * view. Its successors and transitions are derived from the events that it
+     * holds, so they reflect the split.
+     */
+    private static class ViewNode implements INode<ViewNode> {
+        final SplitView view;
+        final Partition partition;
+        /** 0 for a whole partition, 1 or 2 for the halves of a split. */
+        final int half;
+
+        ViewNode(SplitView view, Partition partition, int half) {
+            this.view = view;
+            this.partition = partition;
+            this.half = half;
+        }
+
+        @Override
+        public EventType getEType() {
+            return partition.getEType();
+        }
+
+        @Override
+        public boolean isTerminal() {
+            return partition.isTerminal();
+        }
+
+        @Override
+        public boolean isInitial() {
+            return partition.isInitial();
+        }
+
+        @Override
+        public int compareTo(ViewNode other) {
+            int cmp = partition.compareTo(other.partition);
+            if (cmp != 0) {
+                return cmp;
+            }
+            return half - other.half;
+        }
+
+        @Override
+        public Set<ViewNode> getAllSuccessors() {
+            return view.getAdjacentNodes(this);
+        }
+
+        @Override
+        public List<Transition<ViewNode>> getAllTransitions() {
+            List<ITransition<EventNode>> eventTransitions = new ArrayList<ITransition<EventNode>>();
+            for (EventNode e : view.getEventNodes(this)) {
+                eventTransitions.addAll(e.getAllTransitions());
+            }
+            return getTransitions(eventTransitions);
+        }
+
+        @Override
+        public List<Transition<ViewNode>> getTransitionsWithExactRelations(
+                Set<String> relations) {
+            List<ITransition<EventNode>> eventTransitions = new ArrayList<ITransition<EventNode>>();
+            for (EventNode e : view.getEventNodes(this)) {
+                eventTransitions.addAll(e
+                        .getTransitionsWithExactRelations(relations));
+            }
+            return getTransitions(eventTransitions);
+        }
+
+        @Override
+        public List<Transition<ViewNode>> getTransitionsWithSubsetRelations(
+                Set<String> relations) {
+            List<ITransition<EventNode>> eventTransitions = new ArrayList<ITransition<EventNode>>();
+            for (EventNode e : view.getEventNodes(this)) {
+                eventTransitions.addAll(e
+                        .getTransitionsWithSubsetRelations(relations));
+            }
+            return getTransitions(eventTransitions);
+        }
+
+        @Override
+        public List<Transition<ViewNode>> getTransitionsWithIntersectingRelations(
+                Set<String> relations) {
+            List<ITransition<EventNode>> eventTransitions = new ArrayList<ITransition<EventNode>>();
+            for (EventNode e : view.getEventNodes(this)) {
+                eventTransitions.addAll(e
+                        .getTransitionsWithIntersectingRelations(relations));
+            }
+            return getTransitions(eventTransitions);
+        }
+
+        /**
+         * Returns the transitions of getAllTransitions(), annotated with the
+         * number of event transitions that take them. As in Partition, the
+         * probability of a transition out of the initial node is relative to
+         * all event transitions out of it, and otherwise relative to the number
+         * of events in this node.
+         */
+        @Override
+        public List<Transition<ViewNode>> getWeightedTransitions() {
+            List<ITransition<EventNode>> eventTransitions = new ArrayList<ITransition<EventNode>>();
+            List<EventNode> events = view.getEventNodes(this);
+            for (EventNode e : events) {
+                eventTransitions.addAll(e.getAllTransitions());
+            }
+
+            Map<ViewNode, Integer> counts = new LinkedHashMap<ViewNode, Integer>();
+            for (ITransition<EventNode> tr : eventTransitions) {
+                ViewNode target = view.getNode(tr.getTarget());
+                Integer count = counts.get(target);
+                counts.put(target, count == null ? 1 : count + 1);
+            }
+
+            int total = isInitial() ? eventTransitions.size() : events.size();
+            List<Transition<ViewNode>> transitions = getTransitions(eventTransitions);
+            for (Transition<ViewNode> tr : transitions) {
+                int count = counts.get(tr.getTarget());
+                tr.setCount(count);
+                tr.setProbability((double) count / (double) total);
+            }
+            return transitions;
+        }
+
+        /**
+         * Merges event transitions out of the events of this node into one
+         * transition per target node.
+         */
+        private List<Transition<ViewNode>> getTransitions(
+                List<ITransition<EventNode>> eventTransitions) {
+            Map<ViewNode, Transition<ViewNode>> transitions = new LinkedHashMap<ViewNode, Transition<ViewNode>>();
+            for (ITransition<EventNode> tr : eventTransitions) {
+                ViewNode target = view.getNode(tr.getTarget());
+                if (!transitions.containsKey(target)) {
+                    transitions.put(target, new Transition<ViewNode>(this,
+                            target, tr.getRelation()));
+                }
+            }
+            return new ArrayList<Transition<ViewNode>>(transitions.values());
+        }
+
+        @Override
+        public void setParent(Partition parent) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public Partition getParent() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public String toString() {
+            return partition.toString() + (half == 0 ? "" : "/" + half);
+        }
+    }
+}
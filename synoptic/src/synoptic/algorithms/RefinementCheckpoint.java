@@ -0,0 +1,249 @@
+package synoptic.algorithms;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Logger;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import synoptic.invariants.TemporalInvariantSet;
+import synoptic.main.options.AbstractOptions;
+import synoptic.model.BinaryModelReader;
+import synoptic.model.BinaryModelWriter;
+import synoptic.model.ChainsTraceGraph;
+import synoptic.model.EventNode;
+import synoptic.model.Partition;
+import synoptic.model.PartitionGraph;
+
+/**
+ * A checkpoint of a partition graph during refinement or coarsening, from
+ * which a run can be resumed without parsing the log or mining invariants
+ * again. A checkpoint holds the trace graph, the invariants, the partition of
+ * every event node, and the stage that the run was in, in the (gzipped) binary
+ * form of {@link BinaryModelWriter}. <br />
+ * <br />
+ * A checkpoint is first written to a temporary file that then replaces the
+ * checkpoint file, so the checkpoint file always holds a complete checkpoint.
+ * The operations applied to the partition graph, and the merges that were
+ * rejected during coarsening, are not saved: a resumed run continues from
+ * the saved partitioning.
+ */
+public class RefinementCheckpoint {
+    private static Logger logger = Logger.getLogger("RefinementCheckpoint");
+
+    private static final int magic = 0x53594e43;
+    private static final int version = 1;
+
+    /**
+     * The stage of a run that a checkpoint was taken in.
+     */
+    public enum Stage {
+        REFINEMENT, COARSENING
+    }
+
+    private final PartitionGraph pGraph;
+    private final Stage stage;
+
+    private RefinementCheckpoint(PartitionGraph pGraph, Stage stage) {
+        this.pGraph = pGraph;
+        this.stage = stage;
+    }
+
+    /**
+     * Returns the partition graph restored from the checkpoint.
+     */
+    public PartitionGraph getPartitionGraph() {
+        return pGraph;
+    }
+
+    /**
+     * Returns the stage that the checkpoint was taken in.
+     */
+    public Stage getStage() {
+        return stage;
+    }
+
+    /**
+     * Writes a checkpoint of pGraph, taken in stage, to file.
+     * 
+     * @throws IOException
+     * @throws IllegalArgumentException
+     *             if the graph contains events, resources, or invariants that
+     *             cannot be written
+     */
+    public static void write(File file, PartitionGraph pGraph, Stage stage)
+            throws IOException {
+        File tmp = new File(file.getPath() + ".tmp");
+        OutputStream out = new BufferedOutputStream(new GZIPOutputStream(
+                new FileOutputStream(tmp)), 1 << 16);
+        try {
+            BinaryModelWriter writer = new BinaryModelWriter(out);
+            writer.writeInt(magic);
+            writer.writeVarInt(version);
+            writer.writeVarInt(stage.ordinal());
+
+            Map<EventNode, Integer> nodeIds = new HashMap<EventNode, Integer>();
+            writer.writeChainsTraceGraph(pGraph.getTraceGraph(), nodeIds);
+            writer.writeInvariants(pGraph.getInvariants());
+
+            writer.writeVarInt(pGraph.getNodes().size());
+            for (Partition p : pGraph.getNodes()) {
+                writer.writeVarInt(p.size());
+                for (EventNode e : p.getEventNodes()) {
+                    writer.writeVarInt(nodeIds.get(e));
+                }
+            }
+            writer.flush();
+        } finally {
+            out.close();
+        }
+        Files.move(tmp.toPath(), file.toPath(),
+                StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Reads the checkpoint in file.
+     * 
+     * @throws IOException
+     *             if the file cannot be read or is not a valid checkpoint
+     */
+    public static RefinementCheckpoint read(File file) throws IOException {
+        InputStream in = new BufferedInputStream(new GZIPInputStream(
+                new FileInputStream(file)), 1 << 16);
+        try {
+            BinaryModelReader reader = new BinaryModelReader(in);
+            if (reader.readInt() != magic) {
+                throw new IOException(file + " is not a refinement checkpoint");
+            }
+            int fileVersion = reader.readVarInt();
+            if (fileVersion != version) {
+                throw new IOException("Unsupported checkpoint version "
+                        + fileVersion + " in " + file);
+            }
+            int stageId = reader.readVarInt();
+            if (stageId >= Stage.values().length) {
+                throw new IOException("Unknown stage " + stageId + " in "
+                        + file);
+            }
+            Stage stage = Stage.values()[stageId];
+
+            List<EventNode> nodes = new ArrayList<EventNode>();
+            ChainsTraceGraph traceGraph = reader.readChainsTraceGraph(nodes);
+            TemporalInvariantSet invariants = reader.readInvariants();
+
+            int numPartitions = reader.readVarInt();
+            List<Set<EventNode>> partitioning = new ArrayList<Set<EventNode>>(
+                    numPartitions);
+            boolean[] assigned = new boolean[nodes.size()];
+            int numAssigned = 0;
+            for (int i = 0; i < numPartitions; i++) {
+                int size = reader.readVarInt();
+                Set<EventNode> eNodes = new LinkedHashSet<EventNode>();
+                for (int j = 0; j < size; j++) {
+                    int id = reader.readVarInt();
+                    if (id >= nodes.size() || assigned[id]) {
+                        throw new IOException("Invalid partitioning in "
+                                + file);
+                    }
+                    assigned[id] = true;
+                    numAssigned++;
+                    eNodes.add(nodes.get(id));
+                }
+                partitioning.add(eNodes);
+            }
+            if (numAssigned != nodes.size()) {
+                throw new IOException("Invalid partitioning in " + file);
+            }
+
+            return new RefinementCheckpoint(new PartitionGraph(traceGraph,
+                    partitioning, invariants), stage);
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Returns a writer of periodic checkpoints to the checkpoint file in
+     * options, or null if checkpointing is disabled.
+     */
+    public static Periodic newPeriodic(AbstractOptions options) {
+        if (options.checkpointFile == null) {
+            return null;
+        }
+        if (options.stateProcessing) {
+            logger.warning("Checkpoints do not support state processing. Continuing without checkpoints.");
+            return null;
+        }
+        return new Periodic(new File(options.checkpointFile),
+                options.checkpointInterval * 1000L);
+    }
+
+    /**
+     * Writes checkpoints of a partition graph to a file, at most once every
+     * interval. A checkpoint that cannot be written is logged, and disables
+     * further checkpoints, but does not stop the run.
+     */
+    public static class Periodic {
+        private final File file;
+        private final long intervalMillis;
+        private long lastWriteTime;
+        private boolean failed = false;
+
+        Periodic(File file, long intervalMillis) {
+            this.file = file;
+            this.intervalMillis = intervalMillis;
+            this.lastWriteTime = System.currentTimeMillis();
+        }
+
+        /**
+         * Writes a checkpoint if at least the interval has passed since the
+         * last one (or since this writer was created).
+         */
+        public void maybeWrite(PartitionGraph pGraph, Stage stage) {
+            if (System.currentTimeMillis() - lastWriteTime >= intervalMillis) {
+                write(pGraph, stage);
+            }
+        }
+
+        /**
+         * Writes a checkpoint.
+         */
+        public void write(PartitionGraph pGraph, Stage stage) {
+            if (failed) {
+                return;
+            }
+            long startTime = System.currentTimeMillis();
+            try {
+                RefinementCheckpoint.write(file, pGraph, stage);
+                logger.info("Wrote " + stage.toString().toLowerCase()
+                        + " checkpoint [" + pGraph.getNodes().size()
+                        + " partitions] to " + file + " in "
+                        + (System.currentTimeMillis() - startTime) + "ms");
+            } catch (IOException e) {
+                failed = true;
+                logger.warning("Could not write checkpoint to " + file
+                        + ", disabling checkpoints: " + e.getMessage());
+            } catch (IllegalArgumentException e) {
+                failed = true;
+                logger.warning("Could not write checkpoint to " + file
+                        + ", disabling checkpoints: " + e.getMessage());
+            }
+            lastWriteTime = System.currentTimeMillis();
+        }
+    }
+}
@@ -100,8 +100,9 @@ public class TransitiveClosure {
             return false;
         }
 
-        for (EventNode u : other.tc.keySet()) {
-            for (EventNode v : other.tc.get(u)) {
+        Map<EventNode, Set<EventNode>> otherTC = other.getTC();
+        for (EventNode u : otherTC.keySet()) {
+            for (EventNode v : otherTC.get(u)) {
                 // v is reachable from u in other.tc, check that same is true
                 // for this.tc:
                 if (!isReachable(u, v)) {
@@ -110,8 +111,9 @@ public class TransitiveClosure {
             }
         }
 
-        for (EventNode u : tc.keySet()) {
-            for (EventNode v : tc.get(u)) {
+        Map<EventNode, Set<EventNode>> thisTC = getTC();
+        for (EventNode u : thisTC.keySet()) {
+            for (EventNode v : thisTC.get(u)) {
                 // v is reachable from u in this.tc, check that same is true for
                 // other.tc:
                 if (!other.isReachable(u, v)) {
@@ -123,7 +125,7 @@ public class TransitiveClosure {
     }
 
     public String toString() {
-        return tc.toString();
+        return getTC().toString();
     }
 
     /**
@@ -0,0 +1,64 @@
+package synoptic.benchmarks;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A metric that counts events, such as the number of parsed log lines. The
+ * count only increases (until the metrics are reset). Incrementing a counter
+ * has no effect while metrics are disabled.
+ */
+public class Counter extends Metric {
+    private final AtomicLong count = new AtomicLong();
+
+    Counter(String name, String help) {
+        super(name, help);
+    }
+
+    /**
+     * Increments the counter by one.
+     */
+    public void inc() {
+        if (!Metrics.enabled) {
+            return;
+        }
+        count.incrementAndGet();
+    }
+
+    /**
+     * Increments the counter by delta, which must not be negative.
+     */
+    public void add(long delta) {
+        if (!Metrics.enabled) {
+            return;
+        }
+        assert delta >= 0;
+        count.addAndGet(delta);
+    }
+
+    /**
+     * Returns the current count.
+     */
+    public long get() {
+        return count.get();
+    }
+
+    @Override
+    String getType() {
+        return "counter";
+    }
+
+    @Override
+    void reset() {
+        count.set(0);
+    }
+
+    @Override
+    Object toJSONValue() {
+        return get();
+    }
+
+    @Override
+    void appendPrometheusSamples(StringBuilder out) {
+        out.append(name).append(' ').append(get()).append('\n');
+    }
+}
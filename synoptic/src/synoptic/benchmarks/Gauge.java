@@ -0,0 +1,65 @@
+package synoptic.benchmarks;
+
+/**
+ * A metric whose value can go up and down, such as the number of partitions
+ * in the model. The value is either set by the code that is measured (setting
+ * it has no effect while metrics are disabled), or is sampled from a
+ * {@link Source} whenever a snapshot of the metrics is taken.
+ */
+public class Gauge extends Metric {
+    /**
+     * Computes the value of a sampled gauge.
+     */
+    public interface Source {
+        long getValue();
+    }
+
+    private final Source source;
+    private volatile long value = 0;
+
+    Gauge(String name, String help, Source source) {
+        super(name, help);
+        this.source = source;
+    }
+
+    /**
+     * Sets the value of the gauge. Must not be called on a sampled gauge.
+     */
+    public void set(long newValue) {
+        if (!Metrics.enabled) {
+            return;
+        }
+        assert source == null;
+        value = newValue;
+    }
+
+    /**
+     * Returns the current value of the gauge.
+     */
+    public long get() {
+        if (source != null) {
+            return source.getValue();
+        }
+        return value;
+    }
+
+    @Override
+    String getType() {
+        return "gauge";
+    }
+
+    @Override
+    void reset() {
+        value = 0;
+    }
+
+    @Override
+    Object toJSONValue() {
+        return get();
+    }
+
+    @Override
+    void appendPrometheusSamples(StringBuilder out) {
+        out.append(name).append(' ').append(get()).append('\n');
+    }
+}
@@ -0,0 +1,160 @@
+package synoptic.benchmarks;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A metric that records the distribution of observed values, such as the
+ * duration of each refinement iteration, in buckets with fixed upper bounds
+ * (as in a Prometheus histogram). Also keeps the number, sum, minimum, and
+ * maximum of the observed values. Observing a value has no effect while
+ * metrics are disabled.
+ */
+public class Histogram extends Metric {
+    /**
+     * Bucket upper bounds for durations in seconds, from 1ms to 10 minutes.
+     */
+    public static final double[] secondsBuckets = { 0.001, 0.005, 0.01, 0.05,
+            0.1, 0.5, 1, 5, 10, 30, 60, 300, 600 };
+
+    /**
+     * Bucket upper bounds for sizes, such as the number of counter-examples.
+     */
+    public static final double[] sizeBuckets = { 1, 2, 5, 10, 20, 50, 100,
+            200, 500, 1000, 2000, 5000, 10000, 100000 };
+
+    /**
+     * The (increasing) upper bounds of the buckets, without the implicit +Inf
+     * bucket.
+     */
+    private final double[] bounds;
+    /**
+     * The number of observed values in each bucket (not cumulative). The last
+     * bucket is the +Inf bucket.
+     */
+    private final long[] bucketCounts;
+    private long count = 0;
+    private double sum = 0;
+    private double min = Double.NaN;
+    private double max = Double.NaN;
+
+    Histogram(String name, String help, double[] bounds) {
+        super(name, help);
+        for (int i = 1; i < bounds.length; i++) {
+            if (bounds[i - 1] >= bounds[i]) {
+                throw new IllegalArgumentException(
+                        "Histogram bucket bounds must be increasing: "
+                                + Arrays.toString(bounds));
+            }
+        }
+        this.bounds = bounds.clone();
+        this.bucketCounts = new long[bounds.length + 1];
+    }
+
+    /**
+     * Records an observed value.
+     */
+    public void observe(double value) {
+        if (!Metrics.enabled) {
+            return;
+        }
+        int i = Arrays.binarySearch(bounds, value);
+        if (i < 0) {
+            // The index of the first bound that is larger than value.
+            i = -i - 1;
+        }
+        synchronized (this) {
+            bucketCounts[i]++;
+            count++;
+            sum += value;
+            if (count == 1 || value < min) {
+                min = value;
+            }
+            if (count == 1 || value > max) {
+                max = value;
+            }
+        }
+    }
+
+    /**
+     * Records the seconds that passed since startTime, which was returned by
+     * {@link Metrics#startTimer()}.
+     */
+    public void observeSince(long startTime) {
+        if (!Metrics.enabled || startTime == 0) {
+            return;
+        }
+        observe((System.nanoTime() - startTime) / 1e9);
+    }
+
+    /**
+     * Returns the number of observed values.
+     */
+    public synchronized long getCount() {
+        return count;
+    }
+
+    /**
+     * Returns the sum of the observed values.
+     */
+    public synchronized double getSum() {
+        return sum;
+    }
+
+    @Override
+    String getType() {
+        return "histogram";
+    }
+
+    @Override
+    synchronized void reset() {
+        Arrays.fill(bucketCounts, 0);
+        count = 0;
+        sum = 0;
+        min = Double.NaN;
+        max = Double.NaN;
+    }
+
+    @Override
+    synchronized Object toJSONValue() {
+        Map<String, Object> value = new LinkedHashMap<String, Object>();
+        value.put("count", count);
+        value.put("sum", sum);
+        if (count > 0) {
+            value.put("min", min);
+            value.put("max", max);
+        }
+        // Cumulative bucket counts, as in the Prometheus format.
+        Map<String, Object> buckets = new LinkedHashMap<String, Object>();
+        long cumulative = 0;
+        for (int i = 0; i < bucketCounts.length; i++) {
+            cumulative += bucketCounts[i];
+            buckets.put(boundToString(i), cumulative);
+        }
+        value.put("buckets", buckets);
+        return value;
+    }
+
+    @Override
+    synchronized void appendPrometheusSamples(StringBuilder out) {
+        long cumulative = 0;
+        for (int i = 0; i < bucketCounts.length; i++) {
+            cumulative += bucketCounts[i];
+            out.append(name).append("_bucket{le=\"").append(boundToString(i))
+                    .append("\"} ").append(cumulative).append('\n');
+        }
+        out.append(name).append("_sum ").append(sum).append('\n');
+        out.append(name).append("_count ").append(count).append('\n');
+    }
+
+    /**
+     * Returns the upper bound of bucket i as a string.
+     */
+    private String boundToString(int i) {
+        if (i == bounds.length) {
+            return "+Inf";
+        }
+        return Double.toString(bounds[i]);
+    }
+}
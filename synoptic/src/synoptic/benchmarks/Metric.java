@@ -0,0 +1,52 @@
+package synoptic.benchmarks;
+
+/**
+ * The base class of the metrics that are kept by {@link Metrics}. A metric has
+ * a name, which must be a valid Prometheus metric name, and a short help text
+ * describing what it measures.
+ */
+abstract class Metric {
+    /**
+     * The name of the metric, e.g., synoptic_parse_events_total.
+     */
+    final String name;
+    /**
+     * A one-line description of the metric.
+     */
+    final String help;
+
+    Metric(String name, String help) {
+        this.name = name;
+        this.help = help;
+    }
+
+    /**
+     * Returns the name of the metric.
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Returns the Prometheus type of the metric (counter, gauge, or
+     * histogram).
+     */
+    abstract String getType();
+
+    /**
+     * Resets the metric to its initial value.
+     */
+    abstract void reset();
+
+    /**
+     * Returns the current value of the metric, as a number or as a map that
+     * can be serialized to JSON.
+     */
+    abstract Object toJSONValue();
+
+    /**
+     * Appends the samples of the metric in the Prometheus text format (without
+     * the HELP and TYPE lines) to out.
+     */
+    abstract void appendPrometheusSamples(StringBuilder out);
+}
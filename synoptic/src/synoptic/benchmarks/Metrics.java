@@ -0,0 +1,191 @@
+package synoptic.benchmarks;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.regex.Pattern;
+
+import org.json.simple.JSONValue;
+
+/**
+ * The registry of the counters, gauges, and histograms that are recorded over
+ * a run of the Synoptic pipeline (parsing, mining, refinement, and
+ * coarsening). Unlike {@link PerformanceMetrics}, which accumulates the total
+ * time of each task, the metrics here are meant to be exported periodically
+ * (see {@link MetricsExporter}) to chart where a run is spending its time and
+ * memory. <br />
+ * <br />
+ * Metrics are disabled by default. While they are disabled, recording a value
+ * only reads a volatile flag, so instrumented code is free to keep its metrics
+ * in static fields and to record values unconditionally. Code that has to do
+ * work to compute a value (e.g., counting the partitions of a graph) should
+ * check {@link #isEnabled()} first. <br />
+ * <br />
+ * Metric names must be valid Prometheus metric names. Durations are recorded
+ * in seconds, in histograms whose names end in _seconds.
+ */
+public final class Metrics {
+    private static final Pattern validName = Pattern
+            .compile("[a-zA-Z_:][a-zA-Z0-9_:]*");
+
+    /**
+     * Whether recording is enabled. Read by the metrics on every update.
+     */
+    static volatile boolean enabled = false;
+
+    /**
+     * All registered metrics, sorted by name.
+     */
+    private static final ConcurrentMap<String, Metric> metrics = new ConcurrentSkipListMap<String, Metric>();
+
+    static {
+        final MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        gauge("synoptic_heap_used_bytes", "Used heap memory",
+                new Gauge.Source() {
+                    @Override
+                    public long getValue() {
+                        return memory.getHeapMemoryUsage().getUsed();
+                    }
+                });
+        gauge("synoptic_heap_committed_bytes", "Committed heap memory",
+                new Gauge.Source() {
+                    @Override
+                    public long getValue() {
+                        return memory.getHeapMemoryUsage().getCommitted();
+                    }
+                });
+    }
+
+    /** Suppress default constructor for non-instantiability */
+    private Metrics() {
+        throw new AssertionError();
+    }
+
+    /**
+     * Enables recording.
+     */
+    public static void enable() {
+        enabled = true;
+    }
+
+    /**
+     * Disables recording. The values recorded so far are kept.
+     */
+    public static void disable() {
+        enabled = false;
+    }
+
+    /**
+     * Returns whether recording is enabled.
+     */
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Resets all registered metrics to their initial values.
+     */
+    public static void reset() {
+        for (Metric metric : metrics.values()) {
+            metric.reset();
+        }
+    }
+
+    /**
+     * Returns a start time to pass to {@link Histogram#observeSince(long)}, or
+     * 0 if metrics are disabled (to avoid reading the clock).
+     */
+    public static long startTimer() {
+        if (!enabled) {
+            return 0;
+        }
+        return System.nanoTime();
+    }
+
+    /**
+     * Returns the counter with the given name, registering it first if
+     * necessary.
+     */
+    public static Counter counter(String name, String help) {
+        return register(new Counter(name, help), Counter.class);
+    }
+
+    /**
+     * Returns the gauge with the given name, registering it first if
+     * necessary. The value of the gauge is set with {@link Gauge#set(long)}.
+     */
+    public static Gauge gauge(String name, String help) {
+        return register(new Gauge(name, help, null), Gauge.class);
+    }
+
+    /**
+     * Returns the gauge with the given name, registering it first if
+     * necessary. The value of the gauge is sampled from source.
+     */
+    public static Gauge gauge(String name, String help, Gauge.Source source) {
+        return register(new Gauge(name, help, source), Gauge.class);
+    }
+
+    /**
+     * Returns the histogram with the given name, registering it first (with
+     * the given bucket upper bounds) if necessary.
+     */
+    public static Histogram histogram(String name, String help,
+            double[] bounds) {
+        return register(new Histogram(name, help, bounds), Histogram.class);
+    }
+
+    private static <T extends Metric> T register(T metric, Class<T> type) {
+        if (!validName.matcher(metric.name).matches()) {
+            throw new IllegalArgumentException("Invalid metric name: "
+                    + metric.name);
+        }
+        Metric existing = metrics.putIfAbsent(metric.name, metric);
+        if (existing == null) {
+            return metric;
+        }
+        if (!type.isInstance(existing)) {
+            throw new IllegalArgumentException("Metric " + metric.name
+                    + " is already registered as a " + existing.getType());
+        }
+        return type.cast(existing);
+    }
+
+    /**
+     * Returns a snapshot of all metrics as a single line of JSON: an object
+     * with the timestamp (in milliseconds since the epoch) and an object that
+     * maps each metric name to its value. The value of a histogram is an
+     * object with its count, sum, minimum, maximum, and cumulative bucket
+     * counts.
+     */
+    public static String toJSONLine(long timestamp) {
+        Map<String, Object> values = new LinkedHashMap<String, Object>();
+        for (Metric metric : metrics.values()) {
+            values.put(metric.name, metric.toJSONValue());
+        }
+        Map<String, Object> snapshot = new LinkedHashMap<String, Object>();
+        snapshot.put("timestamp", timestamp);
+        snapshot.put("metrics", values);
+        return JSONValue.toJSONString(snapshot);
+    }
+
+    /**
+     * Returns a snapshot of all metrics in the Prometheus text exposition
+     * format.
+     */
+    public static String toPrometheusText() {
+        StringBuilder out = new StringBuilder();
+        for (Metric metric : metrics.values()) {
+            out.append("# HELP ").append(metric.name).append(' ')
+                    .append(metric.help.replace("\\", "\\\\")
+                            .replace("\n", "\\n")).append('\n');
+            out.append("# TYPE ").append(metric.name).append(' ')
+                    .append(metric.getType()).append('\n');
+            metric.appendPrometheusSamples(out);
+        }
+        return out.toString();
+    }
+}
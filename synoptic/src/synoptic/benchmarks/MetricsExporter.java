@@ -0,0 +1,144 @@
+package synoptic.benchmarks;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+/**
+ * Periodically writes a snapshot of the {@link Metrics} to a file, from a
+ * daemon thread. In the JSON lines format every snapshot is appended to the
+ * file as one line. In the Prometheus format the file is replaced with the
+ * latest snapshot (e.g., for the textfile collector of the node exporter). A
+ * final snapshot is written when the exporter is closed. Creating an exporter
+ * enables metrics, and closing it disables them again.
+ */
+public class MetricsExporter {
+    private static Logger logger = Logger.getLogger("MetricsExporter");
+
+    /**
+     * The formats in which snapshots can be written.
+     */
+    public enum Format {
+        JSON, PROMETHEUS;
+
+        /**
+         * Returns the format named s ("json" or "prometheus"), ignoring case.
+         */
+        public static Format parse(String s) {
+            for (Format format : values()) {
+                if (format.name().equalsIgnoreCase(s)) {
+                    return format;
+                }
+            }
+            throw new IllegalArgumentException("Unknown metrics format: " + s
+                    + " (must be json or prometheus)");
+        }
+    }
+
+    private static final Charset utf8 = Charset.forName("UTF-8");
+
+    private final File file;
+    private final Format format;
+    private final ScheduledExecutorService executor;
+
+    /**
+     * Creates an exporter that writes a snapshot of the metrics to file every
+     * intervalSeconds (if intervalSeconds is positive; otherwise, only when it
+     * is closed). The file is truncated first.
+     * 
+     * @throws IOException
+     *             if the file cannot be written
+     */
+    public MetricsExporter(final File file, Format format,
+            int intervalSeconds) throws IOException {
+        this.file = file;
+        this.format = format;
+        new FileOutputStream(file).close();
+
+        Metrics.enable();
+        if (intervalSeconds > 0) {
+            executor = Executors
+                    .newSingleThreadScheduledExecutor(new ThreadFactory() {
+                        @Override
+                        public Thread newThread(Runnable r) {
+                            Thread t = new Thread(r, "MetricsExporter");
+                            t.setDaemon(true);
+                            return t;
+                        }
+                    });
+            executor.scheduleAtFixedRate(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        writeSnapshot();
+                    } catch (IOException e) {
+                        logger.warning("Could not write metrics to " + file
+                                + ": " + e.getMessage());
+                    }
+                }
+            }, intervalSeconds, intervalSeconds, TimeUnit.SECONDS);
+        } else {
+            executor = null;
+        }
+    }
+
+    /**
+     * Writes a snapshot of the metrics to the file.
+     */
+    public synchronized void writeSnapshot() throws IOException {
+        if (format == Format.JSON) {
+            Writer out = new OutputStreamWriter(new FileOutputStream(file,
+                    true), utf8);
+            try {
+                out.write(Metrics.toJSONLine(System.currentTimeMillis()));
+                out.write('\n');
+            } finally {
+                out.close();
+            }
+        } else {
+            // Write to a temporary file first, so that readers never see a
+            // partially written snapshot.
+            File tmp = new File(file.getPath() + ".tmp");
+            Writer out = new OutputStreamWriter(new FileOutputStream(tmp),
+                    utf8);
+            try {
+                out.write(Metrics.toPrometheusText());
+            } finally {
+                out.close();
+            }
+            Files.move(tmp.toPath(), file.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        }
+    }
+
+    /**
+     * Stops the periodic snapshots, writes a final snapshot, and disables
+     * metrics.
+     */
+    public void close() throws IOException {
+        if (executor != null) {
+            executor.shutdownNow();
+            try {
+                executor.awaitTermination(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        try {
+            writeSnapshot();
+        } finally {
+            Metrics.disable();
+        }
+    }
+}
@@ -12,7 +12,11 @@ import synoptic.main.AbstractMain;
  * record of the number of updates to each value. An update to a value (using
  * record) will add the value to the previously recorded one. This also keeps
  * track of a hierarchy of tasks: createTask adds a task to the task stack, and
- * a call to the task's stop method pops it.
+ * a call to the task's stop method pops it. <br />
+ * <br />
+ * The totals kept here are reported at the end of a {@link Benchmark} run. To
+ * monitor a run as it progresses (per-iteration timings, counts, and memory
+ * use), use the counters, gauges, and histograms in {@link Metrics} instead.
  */
 public class PerformanceMetrics {
     private static Logger logger = Logger.getLogger("Performance Metrics");
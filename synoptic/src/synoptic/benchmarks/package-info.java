@@ -5,4 +5,9 @@ package synoptic.benchmarks;
  * Provides a home for all benchmark-related code for the project, as well as a
  * common base class for all benchmarks.
  * </p>
+ * <p>
+ * The JMH benchmarks of the pipeline stages, which report statistically sound
+ * results that can be compared against a baseline, are in the synopticjmh
+ * project.
+ * </p>
  */
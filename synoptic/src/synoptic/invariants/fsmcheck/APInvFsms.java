@@ -49,8 +49,9 @@ public class APInvFsms<T extends INode<T>> extends FsmStateSet<T> {
 
     @Override
     public void setInitial(T input) {
-        BitSet isA = getInputInvariantsDependencies(0, input);
-        BitSet isB = getInputInvariantsDependencies(1, input);
+        // Inputs cloned since they become the states.
+        BitSet isA = getInputCopy(0, input);
+        BitSet isB = getInputCopy(1, input);
         BitSet neither = nor(isA, isB, count);
         sets.set(0, neither);
         sets.set(1, isA);
@@ -59,10 +60,12 @@ public class APInvFsms<T extends INode<T>> extends FsmStateSet<T> {
 
     @Override
     public void transition(T input) {
-        // Inputs cloned so that they can be mutated.
-        BitSet isA = getInputCopy(0, input);
-        BitSet isB = getInputCopy(1, input);
-        BitSet neither = nor(isA, isB, count);
+        // Inputs copied so that they can be mutated.
+        BitSet isA = scratch(0);
+        isA.or(getInputInvariantsDependencies(0, input));
+        BitSet isB = scratch(1);
+        isB.or(getInputInvariantsDependencies(1, input));
+        BitSet neither = nor(isA, isB, count, scratch(2));
         BitSet s1 = sets.get(0);
         BitSet s2 = sets.get(1);
         BitSet s3 = sets.get(2);
@@ -80,4 +83,4 @@ public class APInvFsms<T extends INode<T>> extends FsmStateSet<T> {
 
         s1.and(neither);
     }
-}
+}
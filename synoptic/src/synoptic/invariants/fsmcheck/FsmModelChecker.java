@@ -2,7 +2,9 @@ package synoptic.invariants.fsmcheck;
 
 import java.util.ArrayList;
 import java.util.BitSet;
+import java.util.Iterator;
 import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
@@ -37,7 +39,12 @@ public class FsmModelChecker {
      * states eventually reached. The states in the graph are transitioned along
      * edges, and merged at the nodes. Once every merge causes no change to the
      * graph, the resulting association between nodes in the graph and states is
-     * yielded.
+     * yielded. <br />
+     * <br />
+     * Only getNodes(), getDummyInitialNode() and getAdjacentNodes() of graph
+     * are used. The state sets use getEType() and isTerminal() of the nodes
+     * (constrained state sets also use isInitial() and the event transitions
+     * of partitions).
      * 
      * @param <StateSet>
      *            The type of StateSet we are propagating.
@@ -50,9 +57,45 @@ public class FsmModelChecker {
     public static <Node extends INode<Node>, StateSet extends IStateSet<Node, StateSet>> Map<Node, StateSet> runChecker(
             IStateSet<Node, StateSet> initial, IGraph<Node> graph,
             boolean earlyExit) {
+        return new IndexedFsmChecker<Node, StateSet>(initial, graph, earlyExit)
+                .run();
+    }
 
-        // A queue of nodes that we should process.
-        Queue<Node> workList = new LinkedList<Node>();
+    /**
+     * The original map-based implementation of {@code runChecker}, which
+     * yields the same associations between nodes and statesets. Kept as a
+     * reference for tests and benchmarks of the {@code runChecker} engine.
+     * 
+     * @param initial
+     *            The initial state of each node.
+     * @param graph
+     *            The graph to analyze.
+     * @return The associations between node and stateset.
+     */
+    public static <Node extends INode<Node>, StateSet extends IStateSet<Node, StateSet>> Map<Node, StateSet> runWorkListChecker(
+            IStateSet<Node, StateSet> initial, IGraph<Node> graph,
+            boolean earlyExit) {
+        return runWorkListChecker(initial, graph, new LinkedList<Node>(),
+                earlyExit);
+    }
+
+    /**
+     * The map-based implementation of {@code runChecker}, which leaves the
+     * nodes whose states still have to be propagated in workList if it exits
+     * early. The returned states and workList can be passed to the incremental
+     * {@code runChecker} to resume the propagation.
+     * 
+     * @param initial
+     *            The initial state of each node.
+     * @param graph
+     *            The graph to analyze.
+     * @param workList
+     *            An empty queue, which holds the pending nodes on return.
+     * @return The associations between node and stateset.
+     */
+    public static <Node extends INode<Node>, StateSet extends IStateSet<Node, StateSet>> Map<Node, StateSet> runWorkListChecker(
+            IStateSet<Node, StateSet> initial, IGraph<Node> graph,
+            Queue<Node> workList, boolean earlyExit) {
 
         // Maps a node to a set of states.
         Map<Node, StateSet> states = new LinkedHashMap<Node, StateSet>();
@@ -67,6 +110,180 @@ public class FsmModelChecker {
         workList.add(node);
         states.get(node).setInitial(node);
 
+        propagate(states, workList, graph, earlyExit);
+        return states;
+    }
+
+    /**
+     * The part of a graph whose states may differ from those computed before
+     * the graph was modified: the changed nodes and the nodes reachable from
+     * them. It also holds the unchanged nodes with an edge into the region,
+     * from which propagation resumes, and the nodes that were removed from the
+     * graph. The region only depends on the graph, so it is computed once per
+     * modification and shared by the incremental checks of all invariants.
+     */
+    public static class DirtyRegion<Node> {
+        final Set<Node> dirty;
+        final List<Node> entries;
+        final Set<Node> removed;
+
+        DirtyRegion(Set<Node> dirty, List<Node> entries, Set<Node> removed) {
+            this.dirty = dirty;
+            this.entries = entries;
+            this.removed = removed;
+        }
+
+        /**
+         * Returns whether no states have to be re-computed.
+         */
+        public boolean isEmpty() {
+            return dirty.isEmpty() && removed.isEmpty();
+        }
+
+        /**
+         * Returns the number of nodes whose states are re-computed.
+         */
+        public int size() {
+            return dirty.size();
+        }
+    }
+
+    /**
+     * Computes the region of graph whose states have to be re-computed by the
+     * incremental {@code runChecker} after the graph was modified.
+     * 
+     * @param graph
+     *            The (modified) graph.
+     * @param changedNodes
+     *            The nodes of graph that were added, or whose adjacencies
+     *            changed, since the states were computed.
+     * @param removedNodes
+     *            The nodes that were removed from graph since the states were
+     *            computed.
+     */
+    public static <Node extends INode<Node>> DirtyRegion<Node> getDirtyRegion(
+            IGraph<Node> graph, Set<Node> changedNodes, Set<Node> removedNodes) {
+        Set<Node> nodes = graph.getNodes();
+
+        // Every node reachable from a changed node may now inhabit different
+        // states.
+        Queue<Node> frontier = new LinkedList<Node>();
+        Set<Node> dirty = new LinkedHashSet<Node>();
+        for (Node node : changedNodes) {
+            if (nodes.contains(node) && dirty.add(node)) {
+                frontier.add(node);
+            }
+        }
+        while (!frontier.isEmpty()) {
+            for (Node target : graph.getAdjacentNodes(frontier.remove())) {
+                if (dirty.add(target)) {
+                    frontier.add(target);
+                }
+            }
+        }
+
+        // Propagation resumes from the unchanged nodes that have an edge into
+        // the reset region.
+        List<Node> entries = new ArrayList<Node>();
+        if (!dirty.isEmpty()) {
+            for (Node node : nodes) {
+                if (dirty.contains(node)) {
+                    continue;
+                }
+                for (Node target : graph.getAdjacentNodes(node)) {
+                    if (dirty.contains(target)) {
+                        entries.add(node);
+                        break;
+                    }
+                }
+            }
+        }
+        return new DirtyRegion<Node>(dirty, entries, removedNodes);
+    }
+
+    /**
+     * Incremental version of {@code runChecker}: updates the states previously
+     * computed by {@code runWorkListChecker}, or by an earlier call to this
+     * method, after the graph has been modified. Only the states of the nodes
+     * in region can differ from their previous values. These are reset and
+     * re-propagated from their unchanged predecessors, while the states of all
+     * other nodes are kept as is. <br />
+     * <br />
+     * If the states were computed with earlyExit, workList holds the nodes
+     * whose propagation was cut short, and these are propagated as well. So
+     * the states reach the same fixpoint as {@code runChecker} does when
+     * earlyExit is false, and when it is true the propagation again stops as
+     * soon as a failing state reaches a terminal node.
+     * 
+     * @param initial
+     *            The initial state of each node.
+     * @param graph
+     *            The (modified) graph to analyze.
+     * @param states
+     *            The associations between nodes and statesets computed before
+     *            the graph was modified, which are updated in place.
+     * @param workList
+     *            The nodes whose states were not propagated yet, which is
+     *            updated in place.
+     * @param region
+     *            The region of the graph that changed since states was
+     *            computed, see {@code getDirtyRegion}.
+     * @return The updated associations between node and stateset.
+     */
+    public static <Node extends INode<Node>, StateSet extends IStateSet<Node, StateSet>> Map<Node, StateSet> runChecker(
+            IStateSet<Node, StateSet> initial, IGraph<Node> graph,
+            Map<Node, StateSet> states, Queue<Node> workList,
+            DirtyRegion<Node> region, boolean earlyExit) {
+        if (region.isEmpty() && (earlyExit || workList.isEmpty())) {
+            return states;
+        }
+
+        // Forget the states of nodes that are no longer in the graph.
+        states.keySet().removeAll(region.removed);
+        for (Iterator<Node> iter = workList.iterator(); iter.hasNext();) {
+            if (region.removed.contains(iter.next())) {
+                iter.remove();
+            }
+        }
+
+        for (Node node : region.dirty) {
+            states.put(node, initial.copy());
+        }
+
+        Node initNode = graph.getDummyInitialNode();
+        if (states.size() != graph.getNodes().size()) {
+            // The region does not account for all of the changes, so start
+            // over.
+            states.clear();
+            workList.clear();
+            for (Node node : graph.getNodes()) {
+                states.put(node, initial.copy());
+            }
+            workList.add(initNode);
+            states.get(initNode).setInitial(initNode);
+        } else {
+            if (region.dirty.contains(initNode)) {
+                workList.add(initNode);
+                states.get(initNode).setInitial(initNode);
+            }
+            workList.addAll(region.entries);
+        }
+
+        propagate(states, workList, graph, earlyExit);
+        return states;
+    }
+
+    /**
+     * Propagates states from the nodes in workList until a fixpoint is reached,
+     * or, if earlyExit is true, until a failing state reaches a terminal node.
+     * On an early exit, workList holds the nodes that still have to be
+     * propagated to reach the fixpoint.
+     */
+    private static <Node extends INode<Node>, StateSet extends IStateSet<Node, StateSet>> void propagate(
+            Map<Node, StateSet> states, Queue<Node> workList,
+            IGraph<Node> graph, boolean earlyExit) {
+        Node node;
+
         // Actual model checking step - takes an item off the worklist, and
         // transitions the state found at that node, using the labels of all
         // of the adjacent nodes as input. The resulting state is then checked
@@ -91,7 +308,12 @@ public class FsmModelChecker {
                 oldTargetStates.mergeWith(updatesToTargetStates);
                 if (earlyExit && oldTargetStates.isFail()
                         && target.isTerminal()) {
-                    return states;
+                    // The remaining targets of node may not be up to date.
+                    if (!isSubset && !workList.contains(target)) {
+                        workList.add(target);
+                    }
+                    workList.add(node);
+                    return;
                 }
 
                 // If updatesToTargetStates is subset of targetStates, then NOT
@@ -102,8 +324,6 @@ public class FsmModelChecker {
                 }
             }
         }
-
-        return states;
     }
 
     // Helper which invokes runChecker given an fsm state set, and process the
@@ -179,14 +399,28 @@ public class FsmModelChecker {
      *            The invariant to test.
      * @return The shortest counterexample path for this invariant.
      */
-    @SuppressWarnings("unchecked")
     public static <Node extends INode<Node>> CExamplePath<Node> getCounterExample(
             BinaryInvariant invariant, IGraph<Node> graph) {
-
-        TracingStateSet<Node> stateset = null;
         if (invariant == null) {
             return null;
         }
+        TracingStateSet<Node> stateset = newTracingStateSet(invariant);
+        return getShortestCounterExample(invariant,
+                runChecker(stateset, graph, true));
+    }
+
+    /**
+     * Creates the initial tracing state set that simulates the finite state
+     * machine for the invariant, or null if the invariant type is unsupported.
+     * 
+     * @param invariant
+     *            The invariant to simulate.
+     */
+    @SuppressWarnings("unchecked")
+    public static <Node extends INode<Node>> TracingStateSet<Node> newTracingStateSet(
+            BinaryInvariant invariant) {
+
+        TracingStateSet<Node> stateset = null;
         Class<BinaryInvariant> invClass = (Class<BinaryInvariant>) invariant
                 .getClass();
         if (invClass.equals(AlwaysFollowedInvariant.class)) {
@@ -234,11 +468,26 @@ public class FsmModelChecker {
             }
         }
 
+        return stateset;
+    }
+
+    /**
+     * Extracts the shortest counterexample path for the invariant from the
+     * states computed by {@code runChecker} for a tracing state set.
+     * 
+     * @param invariant
+     *            The invariant that was tested.
+     * @param states
+     *            The associations between nodes and tracing state sets.
+     * @return The shortest counterexample path, or null if the invariant holds.
+     */
+    public static <Node extends INode<Node>> CExamplePath<Node> getShortestCounterExample(
+            BinaryInvariant invariant, Map<Node, TracingStateSet<Node>> states) {
+
         // Return the shortest path, ending on a final node, which causes the
         // invariant to fail.
         HistoryNode<Node> shortestPath = null;
-        Set<Entry<Node, TracingStateSet<Node>>> entrySet = runChecker(stateset,
-                graph, true).entrySet();
+        Set<Entry<Node, TracingStateSet<Node>>> entrySet = states.entrySet();
         for (Entry<Node, TracingStateSet<Node>> e : entrySet) {
             TracingStateSet<Node> stateSet = e.getValue();
             Node node = e.getKey();
@@ -1,7 +1,5 @@
 package synoptic.invariants.fsmcheck;
 
-import java.lang.reflect.Constructor;
-import java.lang.reflect.InvocationTargetException;
 import java.util.ArrayList;
 import java.util.BitSet;
 import java.util.LinkedHashMap;
@@ -54,10 +52,17 @@ import synoptic.util.InternalSynopticException;
  * @see NFbyInvFsms
  */
 public abstract class FsmStateSet<T extends INode<T>> implements
-        IStateSet<T, FsmStateSet<T>> {
+        IStateSet<T, FsmStateSet<T>>, Cloneable {
     protected List<BitSet> sets;
     protected int count;
 
+    /**
+     * Bit-sets that are reused as temporaries by transitions and subset
+     * checks, instead of allocating new bit-sets each time. Not shared between
+     * copies.
+     */
+    private BitSet[] scratch = new BitSet[3];
+
     /**
      * A bitset encoding of invariants between event types. This list has
      * exactly two elements (because we only consider binary invariants). Its
@@ -162,11 +167,11 @@ public abstract class FsmStateSet<T extends INode<T>> implements
             return false;
         }
         assert other.invariantsMap == invariantsMap;
+        BitSet s = scratch(0);
         for (int j = 0; j < sets.size(); j++) {
-            BitSet thisSet = sets.get(j);
-            BitSet s = (BitSet) thisSet.clone();
-            s.and(other.sets.get(j));
-            s.xor(thisSet); // (intersection != this) == 0 for subset
+            s.clear();
+            s.or(sets.get(j));
+            s.andNot(other.sets.get(j)); // (this - other) == 0 for subset
             if (!s.isEmpty()) {
                 return false;
             }
@@ -175,8 +180,8 @@ public abstract class FsmStateSet<T extends INode<T>> implements
     }
 
     /**
-     * Clones this set of states, using reflection to ascertain the actual type
-     * to construct.
+     * Clones this set of states. The clone has the actual type of this set of
+     * states, and shares the input mapping with it.
      * 
      * @see java.lang.Object#clone()
      */
@@ -184,36 +189,37 @@ public abstract class FsmStateSet<T extends INode<T>> implements
     @SuppressWarnings("unchecked")
     public FsmStateSet<T> copy() {
         FsmStateSet<T> result;
-
-        Constructor<?> cons = null;
-        for (Constructor<?> c : this.getClass().getConstructors()) {
-            Class<?>[] params = c.getParameterTypes();
-            if (params.length == 1 && params[0].toString().equals("int")) {
-                cons = c;
-            }
-        }
         try {
-            result = (FsmStateSet<T>) cons.newInstance(sets.size());
-        } catch (IllegalArgumentException e) {
-            throw InternalSynopticException.wrap(e);
-        } catch (InstantiationException e) {
-            throw InternalSynopticException.wrap(e);
-        } catch (IllegalAccessException e) {
-            throw InternalSynopticException.wrap(e);
-        } catch (InvocationTargetException e) {
+            result = (FsmStateSet<T>) super.clone();
+        } catch (CloneNotSupportedException e) {
             throw InternalSynopticException.wrap(e);
         }
 
-        result.count = count;
-        ArrayList<BitSet> newSets = new ArrayList<BitSet>();
+        ArrayList<BitSet> newSets = new ArrayList<BitSet>(sets.size());
         for (int i = 0; i < sets.size(); i++) {
             newSets.add((BitSet) sets.get(i).clone());
         }
         result.sets = newSets;
-        result.invariantsMap = invariantsMap;
+        result.scratch = new BitSet[scratch.length];
         return result;
     }
 
+    /**
+     * Returns the i-th temporary bit-set of this set of states, cleared. The
+     * returned bit-set is reused by later calls, so it must not be stored in
+     * the state.
+     */
+    protected BitSet scratch(int i) {
+        BitSet s = scratch[i];
+        if (s == null) {
+            s = new BitSet(count);
+            scratch[i] = s;
+        } else {
+            s.clear();
+        }
+        return s;
+    }
+
     @SuppressWarnings("unchecked")
     @Override
     public boolean equals(Object otherObj) {
@@ -283,6 +289,17 @@ public abstract class FsmStateSet<T extends INode<T>> implements
         return result;
     }
 
+    /**
+     * Version of nor that stores the result in the (cleared) bit-set result,
+     * instead of allocating a new bit-set.
+     */
+    public static BitSet nor(BitSet a, BitSet b, int count, BitSet result) {
+        result.or(a);
+        result.or(b);
+        result.flip(0, count);
+        return result;
+    }
+
     /*
      * Helpers for dealing with mapping from some event representation to
      * BitSets, which indicate which boolean inputs to provide to each of the
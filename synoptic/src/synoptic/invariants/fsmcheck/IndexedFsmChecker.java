@@ -0,0 +1,255 @@
+package synoptic.invariants.fsmcheck;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import synoptic.model.interfaces.IGraph;
+import synoptic.model.interfaces.INode;
+
+/**
+ * The engine behind {@link FsmModelChecker#runChecker}. Computes the same
+ * fixpoint as the map-based {@link FsmModelChecker#runWorkListChecker}, but
+ * assigns the nodes of the graph dense indices, keeps the state sets and the
+ * (lazily computed) adjacencies of the nodes in arrays indexed by these
+ * indices, and de-duplicates the worklist with an in-queue bit-set instead of
+ * scanning the queue. State sets are only created for nodes that the
+ * propagation reaches. <br />
+ * <br />
+ * The order in which nodes are processed depends on the state sets:
+ * <ul>
+ * <li>{@link TracingStateSet}s keep the first shortest path that they are
+ * merged with, so the counter-examples they yield depend on the processing
+ * order. These are propagated in the same FIFO order as
+ * {@code runWorkListChecker}, which yields the exact same state sets.</li>
+ * <li>{@link FsmStateSet}s are bit-sets whose fixpoint does not depend on the
+ * processing order. These are propagated in reverse post-order of the graph,
+ * always picking the pending node that comes first in this order, so that the
+ * states of a loop converge before they are propagated past the loop.</li>
+ * </ul>
+ */
+class IndexedFsmChecker<Node extends INode<Node>, StateSet extends IStateSet<Node, StateSet>> {
+    private static final int[] noSuccessors = new int[0];
+
+    private final IStateSet<Node, StateSet> initial;
+    private final IGraph<Node> graph;
+    private final boolean earlyExit;
+
+    /** The nodes of the graph, in the order of graph.getNodes(). */
+    private final List<Node> nodes;
+    private final Map<Node, Integer> ids;
+    /** The indices of the adjacent nodes of each node, or null if not known. */
+    private final int[][] successors;
+    /** The state set of each node, or null if no state has reached it. */
+    private final Object[] states;
+
+    IndexedFsmChecker(IStateSet<Node, StateSet> initial, IGraph<Node> graph,
+            boolean earlyExit) {
+        this.initial = initial;
+        this.graph = graph;
+        this.earlyExit = earlyExit;
+
+        Set<Node> nodeSet = graph.getNodes();
+        nodes = new ArrayList<Node>(nodeSet);
+        ids = new HashMap<Node, Integer>(nodes.size() * 2);
+        for (int i = 0; i < nodes.size(); i++) {
+            ids.put(nodes.get(i), i);
+        }
+        successors = new int[nodes.size()][];
+        states = new Object[nodes.size()];
+    }
+
+    /**
+     * Propagates the states from the initial node of the graph, and returns
+     * the state set of each node in the order of graph.getNodes(). Nodes that
+     * no state reached have a copy of the initial state set.
+     */
+    Map<Node, StateSet> run() {
+        Node initNode = graph.getDummyInitialNode();
+        int init = ids.get(initNode);
+        StateSet initState = initial.copy();
+        initState.setInitial(initNode);
+        states[init] = initState;
+
+        if (initial instanceof FsmStateSet) {
+            propagateInReversePostOrder(init);
+        } else {
+            propagateInFifoOrder(init);
+        }
+
+        Map<Node, StateSet> result = new LinkedHashMap<Node, StateSet>(
+                nodes.size() * 2);
+        for (int i = 0; i < nodes.size(); i++) {
+            StateSet state = getState(i);
+            if (state == null) {
+                state = initial.copy();
+            }
+            result.put(nodes.get(i), state);
+        }
+        return result;
+    }
+
+    private void propagateInFifoOrder(int init) {
+        // A node is in the queue at most once, so the queue never holds more
+        // than all of the nodes.
+        int[] queue = new int[nodes.size()];
+        int head = 0;
+        int size = 0;
+        BitSet inQueue = new BitSet(nodes.size());
+
+        queue[0] = init;
+        size = 1;
+        inQueue.set(init);
+        while (size > 0) {
+            int node = queue[head];
+            head = (head + 1) % queue.length;
+            size--;
+            inQueue.clear(node);
+
+            StateSet current = getState(node);
+            for (int target : getSuccessors(node)) {
+                int changed = relax(current, target);
+                if (changed == -1) {
+                    return;
+                }
+                if (changed == 1 && !inQueue.get(target)) {
+                    queue[(head + size) % queue.length] = target;
+                    size++;
+                    inQueue.set(target);
+                }
+            }
+        }
+    }
+
+    private void propagateInReversePostOrder(int init) {
+        int[] order = reversePostOrder(init);
+        int[] position = new int[nodes.size()];
+        for (int pos = 0; pos < order.length; pos++) {
+            position[order[pos]] = pos;
+        }
+
+        // The positions of the pending nodes in the reverse post-order.
+        BitSet pending = new BitSet(order.length);
+        int numPending = 1;
+        pending.set(position[init]);
+        int pos = 0;
+        while (numPending > 0) {
+            // Continue with the next pending node in the order, and start
+            // over once the end of the order is reached.
+            pos = pending.nextSetBit(pos);
+            if (pos == -1) {
+                pos = pending.nextSetBit(0);
+            }
+            pending.clear(pos);
+            numPending--;
+            int node = order[pos];
+
+            StateSet current = getState(node);
+            for (int target : getSuccessors(node)) {
+                int changed = relax(current, target);
+                if (changed == -1) {
+                    return;
+                }
+                if (changed == 1 && !pending.get(position[target])) {
+                    pending.set(position[target]);
+                    numPending++;
+                }
+            }
+        }
+    }
+
+    /**
+     * Transitions current along the edge to target, and merges the result
+     * into the state of target.
+     *
+     * @return 1 if the state of target changed, 0 if it did not, and -1 if
+     *         the propagation should stop because a failing state reached a
+     *         terminal node.
+     */
+    private int relax(StateSet current, int target) {
+        Node targetNode = nodes.get(target);
+        StateSet oldTargetStates = getState(target);
+        if (oldTargetStates == null) {
+            oldTargetStates = initial.copy();
+            states[target] = oldTargetStates;
+        }
+        StateSet updatesToTargetStates = current.copy();
+        updatesToTargetStates.transition(targetNode);
+
+        // Evaluate isSubset _before_ the merge.
+        boolean isSubset = updatesToTargetStates.isSubset(oldTargetStates);
+        oldTargetStates.mergeWith(updatesToTargetStates);
+        if (earlyExit && oldTargetStates.isFail() && targetNode.isTerminal()) {
+            return -1;
+        }
+        return isSubset ? 0 : 1;
+    }
+
+    /**
+     * Returns the indices of the nodes reachable from init, in reverse
+     * post-order of a depth-first traversal from init.
+     */
+    private int[] reversePostOrder(int init) {
+        int[] postOrder = new int[nodes.size()];
+        int numVisited = 0;
+        BitSet visited = new BitSet(nodes.size());
+
+        // The depth-first traversal stack, holding each node along with the
+        // index of its next successor to visit.
+        int[] stack = new int[nodes.size()];
+        int[] nextSuccessor = new int[nodes.size()];
+        int depth = 0;
+        stack[0] = init;
+        nextSuccessor[0] = 0;
+        visited.set(init);
+        while (depth >= 0) {
+            int node = stack[depth];
+            int[] succs = getSuccessors(node);
+            if (nextSuccessor[depth] < succs.length) {
+                int target = succs[nextSuccessor[depth]++];
+                if (!visited.get(target)) {
+                    visited.set(target);
+                    depth++;
+                    stack[depth] = target;
+                    nextSuccessor[depth] = 0;
+                }
+            } else {
+                postOrder[numVisited++] = node;
+                depth--;
+            }
+        }
+
+        int[] order = new int[numVisited];
+        for (int i = 0; i < numVisited; i++) {
+            order[i] = postOrder[numVisited - 1 - i];
+        }
+        return order;
+    }
+
+    private int[] getSuccessors(int node) {
+        int[] succs = successors[node];
+        if (succs == null) {
+            Set<Node> adjacent = graph.getAdjacentNodes(nodes.get(node));
+            if (adjacent.isEmpty()) {
+                succs = noSuccessors;
+            } else {
+                succs = new int[adjacent.size()];
+                int i = 0;
+                for (Node target : adjacent) {
+                    succs[i++] = ids.get(target);
+                }
+            }
+            successors[node] = succs;
+        }
+        return succs;
+    }
+
+    @SuppressWarnings("unchecked")
+    private StateSet getState(int node) {
+        return (StateSet) states[node];
+    }
+}
@@ -15,8 +15,21 @@ public class AllRelationsTransitiveClosure {
     private final LinkedHashMap<String, TransitiveClosure> tcs = new LinkedHashMap<String, TransitiveClosure>();
 
     public AllRelationsTransitiveClosure(TraceGraph<?> g) {
+        this(g, false);
+    }
+
+    /**
+     * @param useBitSets
+     *            whether or not to store the closures as bit-sets (see
+     *            {@code TraceGraph.getBitSetTransitiveClosure})
+     */
+    public AllRelationsTransitiveClosure(TraceGraph<?> g, boolean useBitSets) {
         for (String relation : g.getRelations()) {
-            tcs.put(relation, g.getTransitiveClosure(relation));
+            if (useBitSets) {
+                tcs.put(relation, g.getBitSetTransitiveClosure(relation));
+            } else {
+                tcs.put(relation, g.getTransitiveClosure(relation));
+            }
         }
     }
 
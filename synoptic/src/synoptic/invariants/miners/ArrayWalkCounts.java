@@ -0,0 +1,271 @@
+package synoptic.invariants.miners;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+
+import synoptic.model.event.EventType;
+import synoptic.model.interfaces.IRelationPath;
+
+/**
+ * Global event, followed-by, precedes and interrupted-by counts of a set of
+ * relation paths, kept in flat arrays indexed by interned event type ids (see
+ * {@link EventTypeInterner}). Holds the same information as the count maps
+ * aggregated by {@link ChainWalkingTOInvMiner}: for event type ids a and b,
+ * with n event types,
+ *
+ * <pre>
+ * eventCnts[a]            = #a
+ * followedByCnts[a*n + b] = #F(a->b)
+ * precedesCnts[a*n + b]   = #P(a->b)
+ * b in possibleInterrupts[a]  iff  hasInterrupts[a] and bit b of row a is set
+ * a in AlwaysFollowsINITIALSet iff bit a of alwaysFollowsInitial is set
+ * </pre>
+ *
+ * Sets of event types are stored as bit-sets of ceil(n / 64) longs. The three
+ * n*n arrays take 12*n^2 bytes, so array counts are only used for at most
+ * {@link #maxEventTypes} event types.
+ */
+public class ArrayWalkCounts {
+    /**
+     * The largest number of event types that counts are kept in arrays for
+     * (which take about 48MB).
+     */
+    public static final int maxEventTypes = 2048;
+
+    /** Number of event types. */
+    final int n;
+    /** Number of longs in a bit-set of event types. */
+    final int words;
+
+    final int[] eventCnts;
+    final int[] followedByCnts;
+    final int[] precedesCnts;
+    final long[] possibleInterrupts;
+    final boolean[] hasInterrupts;
+    final long[] alwaysFollowsInitial;
+    /** Whether or not any relation path has been added. */
+    boolean hasPaths = false;
+
+    // Per-path scratch state, reset after each path.
+    private final int[] pathCnts;
+    private final int[] pathFollowedByCnts;
+    private final int[] pathSeen;
+    private final long[] pathSeenBits;
+    private final int[] lastPos;
+    private final long[] pathInterrupts;
+    private final boolean[] pathHasInterrupts;
+    private final long[] typesInBetween;
+
+    /**
+     * Returns the approximate number of bytes taken by the counts of n event
+     * types, which are dominated by the three n*n int arrays.
+     */
+    public static long getNumBytes(int n) {
+        return 12L * n * n;
+    }
+
+    /**
+     * Creates empty counts for n event types.
+     */
+    public ArrayWalkCounts(int n) {
+        if (n > maxEventTypes) {
+            // Also prevents n*n from overflowing.
+            throw new IllegalArgumentException("Cannot count " + n
+                    + " event types with arrays (at most " + maxEventTypes
+                    + ")");
+        }
+        this.n = n;
+        this.words = (n + 63) / 64;
+
+        eventCnts = new int[n];
+        followedByCnts = new int[n * n];
+        precedesCnts = new int[n * n];
+        possibleInterrupts = new long[n * words];
+        hasInterrupts = new boolean[n];
+        alwaysFollowsInitial = new long[words];
+
+        pathCnts = new int[n];
+        pathFollowedByCnts = new int[n * n];
+        pathSeen = new int[n];
+        pathSeenBits = new long[words];
+        lastPos = new int[n];
+        Arrays.fill(lastPos, -1);
+        pathInterrupts = new long[n * words];
+        pathHasInterrupts = new boolean[n];
+        typesInBetween = new long[words];
+    }
+
+    /**
+     * Adds the counts of a totally ordered relation path, given as the
+     * sequence of the event type ids of its events. Counts the path in the
+     * same way as {@code ChainRelationPath}.
+     */
+    public void addPath(int[] eTypeIds) {
+        int numSeen = 0;
+        for (int pos = 0; pos < eTypeIds.length; pos++) {
+            int b = eTypeIds[pos];
+
+            // Every a seen so far precedes this b, and the number of a
+            // FollowedBy b at this point is the number of a's seen so far.
+            for (int i = 0; i < numSeen; i++) {
+                int a = pathSeen[i];
+                precedesCnts[a * n + b]++;
+                pathFollowedByCnts[a * n + b] = pathCnts[a];
+            }
+
+            // All event types in between b and the last occurrence of b are
+            // possible IntrBy invariants.
+            if (pathCnts[b] > 0) {
+                Arrays.fill(typesInBetween, 0L);
+                for (int p = pos - 1; p > lastPos[b]; p--) {
+                    int a = eTypeIds[p];
+                    typesInBetween[a >> 6] |= 1L << a;
+                }
+                intersect(pathInterrupts, pathHasInterrupts, b,
+                        typesInBetween, 0);
+            }
+
+            if (pathCnts[b] == 0) {
+                pathSeen[numSeen++] = b;
+                pathSeenBits[b >> 6] |= 1L << b;
+            }
+            pathCnts[b]++;
+            lastPos[b] = pos;
+        }
+
+        // Fold the path counts into the global counts, and reset the path
+        // state.
+        for (int i = 0; i < numSeen; i++) {
+            int a = pathSeen[i];
+            eventCnts[a] += pathCnts[a];
+            for (int j = 0; j < numSeen; j++) {
+                int idx = a * n + pathSeen[j];
+                followedByCnts[idx] += pathFollowedByCnts[idx];
+                pathFollowedByCnts[idx] = 0;
+            }
+            if (pathHasInterrupts[a]) {
+                intersect(possibleInterrupts, hasInterrupts, a,
+                        pathInterrupts, a * words);
+                pathHasInterrupts[a] = false;
+            }
+            pathCnts[a] = 0;
+            lastPos[a] = -1;
+        }
+        intersectSeen(pathSeenBits);
+        Arrays.fill(pathSeenBits, 0L);
+    }
+
+    /**
+     * Adds the counts of a relation path that are provided by the path itself,
+     * for paths that are not simple chains (e.g., multi-relational paths).
+     * All event types of the path must have been interned in eTypes.
+     */
+    public void addPath(IRelationPath relationPath, EventTypeInterner eTypes) {
+        for (Entry<EventType, Integer> e : relationPath.getEventCounts()
+                .entrySet()) {
+            eventCnts[eTypes.getId(e.getKey())] += e.getValue();
+        }
+        addCounts(relationPath.getFollowedByCounts(), followedByCnts, eTypes);
+        addCounts(relationPath.getPrecedesCounts(), precedesCnts, eTypes);
+
+        for (Entry<EventType, Set<EventType>> e : relationPath
+                .getPossibleInterrupts().entrySet()) {
+            toBits(e.getValue(), typesInBetween, eTypes);
+            intersect(possibleInterrupts, hasInterrupts,
+                    eTypes.getId(e.getKey()), typesInBetween, 0);
+        }
+
+        toBits(relationPath.getSeen(), pathSeenBits, eTypes);
+        intersectSeen(pathSeenBits);
+        Arrays.fill(pathSeenBits, 0L);
+    }
+
+    /**
+     * Adds the counts of the relation paths that were added to other, which
+     * must have the same number of event types. The result is the same as if
+     * the paths had been added to these counts directly.
+     */
+    public void addCounts(ArrayWalkCounts other) {
+        assert other.n == n;
+        for (int a = 0; a < n; a++) {
+            eventCnts[a] += other.eventCnts[a];
+            if (other.hasInterrupts[a]) {
+                intersect(possibleInterrupts, hasInterrupts, a,
+                        other.possibleInterrupts, a * words);
+            }
+        }
+        for (int i = 0; i < n * n; i++) {
+            followedByCnts[i] += other.followedByCnts[i];
+            precedesCnts[i] += other.precedesCnts[i];
+        }
+        if (other.hasPaths) {
+            intersectSeen(other.alwaysFollowsInitial);
+        }
+    }
+
+    /**
+     * Whether or not bit b of the interrupts row of a is set.
+     */
+    boolean interruptedBy(int a, int b) {
+        return hasInterrupts[a]
+                && (possibleInterrupts[a * words + (b >> 6)] & (1L << b)) != 0;
+    }
+
+    /**
+     * Whether or not event type a was seen in every relation path.
+     */
+    boolean alwaysFollowsInitial(int a) {
+        return (alwaysFollowsInitial[a >> 6] & (1L << a)) != 0;
+    }
+
+    private void addCounts(Map<EventType, Map<EventType, Integer>> src,
+            int[] dst, EventTypeInterner eTypes) {
+        for (Entry<EventType, Map<EventType, Integer>> aEntry : src.entrySet()) {
+            int a = eTypes.getId(aEntry.getKey());
+            for (Entry<EventType, Integer> bEntry : aEntry.getValue()
+                    .entrySet()) {
+                dst[a * n + eTypes.getId(bEntry.getKey())] += bEntry
+                        .getValue();
+            }
+        }
+    }
+
+    private void toBits(Set<EventType> src, long[] dst,
+            EventTypeInterner eTypes) {
+        Arrays.fill(dst, 0L);
+        for (EventType eType : src) {
+            int id = eTypes.getId(eType);
+            dst[id >> 6] |= 1L << id;
+        }
+    }
+
+    /**
+     * Sets row a of rows to the bits in src (starting at srcOffset) if row a
+     * is not present yet, and intersects it with these bits otherwise.
+     */
+    private void intersect(long[] rows, boolean[] present, int a, long[] src,
+            int srcOffset) {
+        int offset = a * words;
+        if (!present[a]) {
+            System.arraycopy(src, srcOffset, rows, offset, words);
+            present[a] = true;
+        } else {
+            for (int w = 0; w < words; w++) {
+                rows[offset + w] &= src[srcOffset + w];
+            }
+        }
+    }
+
+    private void intersectSeen(long[] seenBits) {
+        if (!hasPaths) {
+            System.arraycopy(seenBits, 0, alwaysFollowsInitial, 0, words);
+            hasPaths = true;
+        } else {
+            for (int w = 0; w < words; w++) {
+                alwaysFollowsInitial[w] &= seenBits[w];
+            }
+        }
+    }
+}
@@ -1,10 +1,19 @@
 package synoptic.invariants.miners;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import synoptic.invariants.AlwaysFollowedInvariant;
 import synoptic.invariants.AlwaysPrecedesInvariant;
@@ -12,11 +21,15 @@ import synoptic.invariants.ITemporalInvariant;
 import synoptic.invariants.InterruptedByInvariant;
 import synoptic.invariants.NeverFollowedInvariant;
 import synoptic.invariants.TemporalInvariantSet;
+import synoptic.main.parser.ParseException;
+import synoptic.model.ChainRelationPath;
 import synoptic.model.ChainsTraceGraph;
+import synoptic.model.ColumnarTraceGraph;
 import synoptic.model.Trace;
 import synoptic.model.event.Event;
 import synoptic.model.event.EventType;
 import synoptic.model.interfaces.IRelationPath;
+import synoptic.util.InternalSynopticException;
 
 /**
  * Implements a temporal invariant mining algorithm which mines the invariants
@@ -27,11 +40,75 @@ import synoptic.model.interfaces.IRelationPath;
  * on partition sizes. A more detailed complexity break-down is given below. <br/>
  * <br/>
  * This algorithm has lower space usage than the transitive-closure-based
- * algorithms.
+ * algorithms. <br/>
+ * <br/>
+ * By default, counts are kept in flat arrays indexed by interned event type
+ * ids (see {@link ArrayWalkCounts}), and traces can be walked and counted by
+ * several threads. The arrays are quadratic in the number of event types, so
+ * relations with more than {@link ArrayWalkCounts#maxEventTypes} event types
+ * are counted with the original map-based counting, which produces the same
+ * invariants and only keeps counts for the pairs of event types that occur.
  */
 public class ChainWalkingTOInvMiner extends CountingInvariantMiner implements
         ITOInvariantMiner {
 
+    /** Whether to count with arrays rather than with nested maps. */
+    private final boolean useArrayCounts;
+
+    /** The number of threads used to walk and count traces. */
+    private final int numThreads;
+
+    /**
+     * The largest number of event types of a relation that is counted with
+     * arrays.
+     */
+    private final int maxArrayETypes;
+
+    public ChainWalkingTOInvMiner() {
+        this(true);
+    }
+
+    /**
+     * @param useArrayCounts
+     *            whether to keep counts in arrays indexed by event type ids
+     *            (true), or in nested maps keyed by event types (false)
+     */
+    public ChainWalkingTOInvMiner(boolean useArrayCounts) {
+        this(useArrayCounts, 1);
+    }
+
+    /**
+     * @param useArrayCounts
+     *            whether to keep counts in arrays indexed by event type ids
+     *            (true), or in nested maps keyed by event types (false)
+     * @param numThreads
+     *            the number of threads that walk and count traces in parallel
+     *            (only used with array counts)
+     */
+    public ChainWalkingTOInvMiner(boolean useArrayCounts, int numThreads) {
+        this(useArrayCounts, numThreads, ArrayWalkCounts.maxEventTypes);
+    }
+
+    /**
+     * @param useArrayCounts
+     *            whether to keep counts in arrays indexed by event type ids
+     *            (true), or in nested maps keyed by event types (false)
+     * @param numThreads
+     *            the number of threads that walk and count traces in parallel
+     *            (only used with array counts)
+     * @param maxArrayETypes
+     *            the largest number of event types of a relation that is
+     *            counted with arrays; relations with more event types are
+     *            counted with maps
+     */
+    public ChainWalkingTOInvMiner(boolean useArrayCounts, int numThreads,
+            int maxArrayETypes) {
+        assert maxArrayETypes <= ArrayWalkCounts.maxEventTypes;
+        this.useArrayCounts = useArrayCounts;
+        this.numThreads = numThreads;
+        this.maxArrayETypes = maxArrayETypes;
+    }
+
     public TemporalInvariantSet computeInvariants(ChainsTraceGraph g,
             boolean multipleRelations, boolean supportCount) {
         TemporalInvariantSet result = new TemporalInvariantSet();
@@ -94,45 +171,39 @@ public class ChainWalkingTOInvMiner extends CountingInvariantMiner implements
     public TemporalInvariantSet computeInvariants(ChainsTraceGraph g,
             String relation, boolean multipleRelations, boolean supportCount) {
 
+        Set<IRelationPath> relationPaths = getRelationPaths(g, relation,
+                multipleRelations);
+
+        if (useArrayCounts) {
+            return computeInvariantsWithArrays(relationPaths, relation,
+                    multipleRelations, supportCount);
+        }
+        return computeInvariantsWithMaps(relationPaths, relation,
+                multipleRelations, supportCount);
+    }
+
+    /**
+     * Computes the invariants of relationPaths, keeping all counts in nested
+     * maps keyed by event types. Only the pairs of event types that occur in
+     * the same relation path have followed-by and precedes counts.
+     */
+    private TemporalInvariantSet computeInvariantsWithMaps(
+            Set<IRelationPath> relationPaths, String relation,
+            boolean multipleRelations, boolean supportCount) {
         // TODO: we can set the initial capacity of the following HashMaps more
         // optimally, e.g. (N / 0.75) + 1 where N is the total number of event
         // types. See:
         // http://stackoverflow.com/questions/434989/hashmap-intialization-parameters-load-initialcapacity
 
-        // Stores generated RelationPaths
-        Set<IRelationPath> relationPaths = new HashSet<IRelationPath>();
-
         // Tracks event counts globally -- across all traces.
         Map<EventType, Integer> gEventCnts = new LinkedHashMap<EventType, Integer>();
 
         /*
-         * Build the set of all event types in the RelationPaths. We will use
-         * this set to pre-seed the various maps below. Also, since we're
-         * iterating over all nodes, we might as well count up the total counts
-         * of instances for each event type.
+         * Count up the total counts of instances for each event type. The
+         * other count maps are not pre-seeded with all pairs of event types,
+         * so that they only grow with the pairs that occur.
          */
-        Set<EventType> eTypes = new LinkedHashSet<EventType>();
-        for (Trace trace : g.getTraces()) {
-
-            if (multipleRelations && !relation.equals(Event.defTimeRelationStr)) {
-                IRelationPath relationPath = trace.getBiRelationalPath(
-                        relation, Event.defTimeRelationStr);
-                relationPaths.add(relationPath);
-            } else {
-                Set<IRelationPath> subgraphs = trace
-                        .getSingleRelationPaths(relation);
-                if (relation.equals(Event.defTimeRelationStr)
-                        && subgraphs.size() != 1) {
-                    throw new IllegalStateException(
-                            "Multiple relation subraphs for ordering relation graph");
-                }
-                relationPaths.addAll(subgraphs);
-            }
-
-        }
-
         for (IRelationPath relationPath : relationPaths) {
-            eTypes.addAll(relationPath.getSeen());
             Map<EventType, Integer> relationPathEventCounts = relationPath
                     .getEventCounts();
             for (EventType eventType : relationPathEventCounts.keySet()) {
@@ -146,26 +217,13 @@ public class ChainWalkingTOInvMiner extends CountingInvariantMiner implements
             }
         }
 
-        // Tracks followed-by counts.
+        // Tracks followed-by counts (missing counts are 0).
         Map<EventType, Map<EventType, Integer>> gFollowedByCnts = new LinkedHashMap<EventType, Map<EventType, Integer>>();
-        // Tracks precedence counts.
+        // Tracks precedence counts (missing counts are 0).
         Map<EventType, Map<EventType, Integer>> gPrecedesCnts = new LinkedHashMap<EventType, Map<EventType, Integer>>();
         // Tracks interrupted-by counts.
         Map<EventType, Set<EventType>> gPossibleInterrupts = new LinkedHashMap<EventType, Set<EventType>>();
 
-        // Initialize the event-type contents of the maps that persist
-        // across traces (global counts maps).
-        for (EventType e : eTypes) {
-            Map<EventType, Integer> mapF = new LinkedHashMap<EventType, Integer>();
-            Map<EventType, Integer> mapP = new LinkedHashMap<EventType, Integer>();
-            gFollowedByCnts.put(e, mapF);
-            gPrecedesCnts.put(e, mapP);
-            for (EventType e2 : eTypes) {
-                mapF.put(e2, 0);
-                mapP.put(e2, 0);
-            }
-        }
-
         // Tracks which events were observed across all RelationPaths.
         Set<EventType> AlwaysFollowsINITIALSet = null;
 
@@ -223,6 +281,323 @@ public class ChainWalkingTOInvMiner extends CountingInvariantMiner implements
                 multipleRelations, supportCount));
     }
 
+    /**
+     * Returns the relation paths of all traces in g for relation.
+     */
+    private static Set<IRelationPath> getRelationPaths(ChainsTraceGraph g,
+            String relation, boolean multipleRelations) {
+        // Stores generated RelationPaths
+        Set<IRelationPath> relationPaths = new HashSet<IRelationPath>();
+        for (Trace trace : g.getTraces()) {
+
+            if (multipleRelations && !relation.equals(Event.defTimeRelationStr)) {
+                IRelationPath relationPath = trace.getBiRelationalPath(
+                        relation, Event.defTimeRelationStr);
+                relationPaths.add(relationPath);
+            } else {
+                Set<IRelationPath> subgraphs = trace
+                        .getSingleRelationPaths(relation);
+                if (relation.equals(Event.defTimeRelationStr)
+                        && subgraphs.size() != 1) {
+                    throw new IllegalStateException(
+                            "Multiple relation subraphs for ordering relation graph");
+                }
+                relationPaths.addAll(subgraphs);
+            }
+
+        }
+
+        return relationPaths;
+    }
+
+    /**
+     * Computes the invariants of relationPaths, keeping all counts in arrays
+     * indexed by interned event type ids. With more than one thread, the
+     * relation paths are walked and counted in parallel, and the per-thread
+     * counts are summed up. The event type ids are always assigned in the
+     * order of the paths, so the result does not depend on the thread count.
+     */
+    private TemporalInvariantSet computeInvariantsWithArrays(
+            Set<IRelationPath> relationPaths, String relation,
+            boolean multipleRelations, boolean supportCount) {
+        List<IRelationPath> paths = new ArrayList<IRelationPath>(relationPaths);
+        ForkJoinPool pool = null;
+        if (numThreads > 1) {
+            pool = new ForkJoinPool(numThreads);
+        }
+        try {
+            // Walk the chains to find the event types of their events.
+            List<List<EventType>> pathETypes = new ArrayList<List<EventType>>(
+                    Collections.<List<EventType>> nCopies(paths.size(), null));
+            WalkPathsTask walk = new WalkPathsTask(paths, pathETypes, 0,
+                    paths.size(), getLeafSize(paths.size()));
+            if (pool != null) {
+                pool.invoke(walk);
+            } else {
+                walk.compute();
+            }
+
+            // Intern the event types in the order in which they are first
+            // seen, and record the event type ids of every chain.
+            EventTypeInterner eTypes = new EventTypeInterner();
+            List<int[]> pathETypeIds = new ArrayList<int[]>(paths.size());
+            for (int i = 0; i < paths.size(); i++) {
+                List<EventType> chain = pathETypes.get(i);
+                if (chain != null) {
+                    int[] ids = new int[chain.size()];
+                    for (int j = 0; j < ids.length; j++) {
+                        ids[j] = eTypes.intern(chain.get(j));
+                    }
+                    pathETypeIds.add(ids);
+                    // Drop the event types of each path as soon as they
+                    // are interned.
+                    pathETypes.set(i, null);
+                } else {
+                    IRelationPath relationPath = paths.get(i);
+                    for (EventType eType : relationPath.getEventCounts()
+                            .keySet()) {
+                        eTypes.intern(eType);
+                    }
+                    for (EventType eType : relationPath.getSeen()) {
+                        eTypes.intern(eType);
+                    }
+                    pathETypeIds.add(null);
+                }
+            }
+
+            if (eTypes.size() > maxArrayETypes) {
+                logger.info("Counting " + eTypes.size()
+                        + " event types of relation " + relation
+                        + " with maps instead of arrays");
+                return computeInvariantsWithMaps(relationPaths, relation,
+                        multipleRelations, supportCount);
+            }
+
+            return new TemporalInvariantSet(
+                    extractPathInvariantsFromWalkCounts(relation, eTypes,
+                            countPaths(paths, pathETypeIds, eTypes, pool),
+                            multipleRelations, supportCount));
+        } finally {
+            if (pool != null) {
+                pool.shutdown();
+            }
+        }
+    }
+
+    /**
+     * Computes the invariants of the traces in a columnar trace graph, by
+     * walking the relation paths of each relation directly over the event type
+     * columns of the graph, without creating any event nodes. Mines the same
+     * invariants as computing the invariants of the corresponding
+     * ChainsTraceGraph with array counts and without multiple relations.
+     * Relations with too many event types to count with arrays are counted
+     * with maps over the relation paths of the ChainsTraceGraph, which is only
+     * created in that case.
+     * 
+     * @param g
+     *            the columnar trace graph of a totally ordered log
+     * @param supportCount
+     *            whether to record the support count of the invariants
+     * @return the set of temporal invariants that g satisfies
+     */
+    public TemporalInvariantSet computeInvariants(ColumnarTraceGraph g,
+            boolean supportCount) {
+        TemporalInvariantSet result = new TemporalInvariantSet();
+        ForkJoinPool pool = null;
+        if (numThreads > 1) {
+            pool = new ForkJoinPool(numThreads);
+        }
+        ChainsTraceGraph graph = null;
+        try {
+            for (String relation : g.getRelations()) {
+                List<int[]> pathETypeIds = g
+                        .getRelationPathETypeIds(relation);
+
+                // Translate the event type ids of the graph into ids
+                // interned in the order of the paths, as for trace graphs.
+                EventTypeInterner eTypes = new EventTypeInterner();
+                int[] internedIds = new int[g.getNumETypes()];
+                Arrays.fill(internedIds, -1);
+                for (int[] ids : pathETypeIds) {
+                    for (int j = 0; j < ids.length; j++) {
+                        if (internedIds[ids[j]] == -1) {
+                            internedIds[ids[j]] = eTypes.intern(g
+                                    .getETypeById(ids[j]));
+                        }
+                        ids[j] = internedIds[ids[j]];
+                    }
+                }
+
+                if (eTypes.size() > maxArrayETypes) {
+                    logger.info("Counting " + eTypes.size()
+                            + " event types of relation " + relation
+                            + " with maps instead of arrays");
+                    if (graph == null) {
+                        graph = toChainsTraceGraph(g);
+                    }
+                    result.add(computeInvariantsWithMaps(
+                            getRelationPaths(graph, relation, false),
+                            relation, false, supportCount));
+                    continue;
+                }
+
+                result.add(new TemporalInvariantSet(
+                        extractPathInvariantsFromWalkCounts(relation, eTypes,
+                                countPaths(null, pathETypeIds, eTypes, pool),
+                                false, supportCount)));
+            }
+        } finally {
+            if (pool != null) {
+                pool.shutdown();
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the trace graph of the traces in g.
+     */
+    private static ChainsTraceGraph toChainsTraceGraph(ColumnarTraceGraph g) {
+        try {
+            return g.toChainsTraceGraph();
+        } catch (ParseException e) {
+            // The traces were already added to g without errors.
+            throw new InternalSynopticException(e);
+        }
+    }
+
+    /**
+     * Counts the paths, given as the event type ids of each chain or, for
+     * paths that are not chains, as the path in paths (which may be null if
+     * all paths are chains), in pool or sequentially if pool is null. <br />
+     * <br />
+     * Each counting worker adds the ranges of paths that it takes to its own
+     * counts, and the counts of the workers are summed up at the end. The
+     * counts are quadratic in the number of event types, so there are at most
+     * as many workers as threads, and fewer if their counts would take more
+     * than a quarter of the maximum heap size.
+     */
+    private ArrayWalkCounts countPaths(final List<IRelationPath> paths,
+            final List<int[]> pathETypeIds, final EventTypeInterner eTypes,
+            ForkJoinPool pool) {
+        final int numPaths = pathETypeIds.size();
+        int numWorkers = (pool == null) ? 1 : getNumCountingWorkers(eTypes
+                .size());
+        if (numWorkers <= 1) {
+            ArrayWalkCounts counts = new ArrayWalkCounts(eTypes.size());
+            countPaths(paths, pathETypeIds, eTypes, 0, numPaths, counts);
+            return counts;
+        }
+
+        final int leafSize = getLeafSize(numPaths);
+        final AtomicInteger nextPath = new AtomicInteger(0);
+        List<ForkJoinTask<ArrayWalkCounts>> workers = new ArrayList<ForkJoinTask<ArrayWalkCounts>>(
+                numWorkers);
+        for (int i = 0; i < numWorkers; i++) {
+            workers.add(pool.submit(new Callable<ArrayWalkCounts>() {
+                @Override
+                public ArrayWalkCounts call() {
+                    ArrayWalkCounts counts = new ArrayWalkCounts(eTypes.size());
+                    int from;
+                    while ((from = nextPath.getAndAdd(leafSize)) < numPaths) {
+                        countPaths(paths, pathETypeIds, eTypes, from,
+                                Math.min(from + leafSize, numPaths), counts);
+                    }
+                    return counts;
+                }
+            }));
+        }
+
+        ArrayWalkCounts counts = workers.get(0).join();
+        for (int i = 1; i < numWorkers; i++) {
+            counts.addCounts(workers.get(i).join());
+        }
+        return counts;
+    }
+
+    /**
+     * Adds the paths in paths[from, to) -- chains by their event type ids,
+     * other paths by the counts they provide -- to counts.
+     */
+    private static void countPaths(List<IRelationPath> paths,
+            List<int[]> pathETypeIds, EventTypeInterner eTypes, int from,
+            int to, ArrayWalkCounts counts) {
+        for (int i = from; i < to; i++) {
+            int[] ids = pathETypeIds.get(i);
+            if (ids != null) {
+                counts.addPath(ids);
+            } else {
+                counts.addPath(paths.get(i), eTypes);
+            }
+        }
+    }
+
+    /**
+     * Returns the number of workers that count paths of n event types in
+     * parallel: at most numThreads, and at least one.
+     */
+    private int getNumCountingWorkers(int n) {
+        long maxWorkers = Runtime.getRuntime().maxMemory() / 4
+                / Math.max(ArrayWalkCounts.getNumBytes(n), 1);
+        return (int) Math.max(1, Math.min(numThreads, maxWorkers));
+    }
+
+    /**
+     * Returns the number of paths that a single task walks or counts at a
+     * time. Paths are split into a few ranges per thread, so that threads
+     * that finish early can take on more ranges.
+     */
+    private int getLeafSize(int numPaths) {
+        if (numThreads <= 1) {
+            return Math.max(numPaths, 1);
+        }
+        return Math.max(numPaths / (numThreads * 4), 1);
+    }
+
+    /**
+     * Walks the chains in paths[from, to) and stores the event types of each
+     * chain at its index in pathETypes. Entries for paths that are not chains
+     * are left null.
+     */
+    private static class WalkPathsTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final List<IRelationPath> paths;
+        private final List<List<EventType>> pathETypes;
+        private final int from;
+        private final int to;
+        private final int leafSize;
+
+        WalkPathsTask(List<IRelationPath> paths,
+                List<List<EventType>> pathETypes, int from, int to,
+                int leafSize) {
+            this.paths = paths;
+            this.pathETypes = pathETypes;
+            this.from = from;
+            this.to = to;
+            this.leafSize = leafSize;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= leafSize) {
+                for (int i = from; i < to; i++) {
+                    IRelationPath relationPath = paths.get(i);
+                    if (relationPath instanceof ChainRelationPath) {
+                        pathETypes.set(i,
+                                ((ChainRelationPath) relationPath)
+                                        .getEventTypes());
+                    }
+                }
+                return;
+            }
+            int mid = (from + to) >>> 1;
+            invokeAll(new WalkPathsTask(paths, pathETypes, from, mid,
+                    leafSize), new WalkPathsTask(paths, pathETypes, mid, to,
+                    leafSize));
+        }
+    }
+
     /**
      * Prune and update global possible InterruptedBy invariant counts by
      * retaining only those that are valid in this RelationPath and updating
@@ -255,6 +630,10 @@ public class ChainWalkingTOInvMiner extends CountingInvariantMiner implements
         for (EventType a : src.keySet()) {
             Map<EventType, Integer> srcBValues = src.get(a);
             Map<EventType, Integer> dstBValues = dst.get(a);
+            if (dstBValues == null) {
+                dstBValues = new LinkedHashMap<EventType, Integer>();
+                dst.put(a, dstBValues);
+            }
             for (EventType b : srcBValues.keySet()) {
                 int count = srcBValues.get(b);
                 if (dstBValues.containsKey(b)) {
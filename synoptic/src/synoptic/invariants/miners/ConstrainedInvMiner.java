@@ -1,7 +1,15 @@
 package synoptic.invariants.miners;
 
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
 
 import synoptic.invariants.AlwaysFollowedInvariant;
 import synoptic.invariants.AlwaysPrecedesInvariant;
@@ -45,6 +53,16 @@ import synoptic.util.resource.AbstractResource;
  * lower bound and upper bound) and added in the resulting constrained invariant
  * set.
  * </p>
+ * <p>
+ * By default, the bounds of all invariants are instead computed in a single
+ * walk of each relation path, which tracks the earliest and latest time of
+ * every event type seen so far in the path: the smallest delta from an
+ * earlier a to a b is the delta from the latest earlier a, and the largest is
+ * the delta from the earliest one. Relation paths can be walked by several
+ * threads, whose bounds are combined by taking their minimum and maximum. The
+ * per-invariant walks, which compute the same constraints, remain available
+ * for comparison.
+ * </p>
  */
 public class ConstrainedInvMiner extends InvariantMiner {
 
@@ -53,8 +71,29 @@ public class ConstrainedInvMiner extends InvariantMiner {
     // The set of constrained invariants that we will be returning.
     private TemporalInvariantSet constrainedInvs;
 
+    /** Whether to compute all bounds in one walk of each relation path. */
+    private final boolean useOnePassBounds;
+
+    /** The number of threads used to walk relation paths. */
+    private final int numThreads;
+
     public ConstrainedInvMiner() {
+        this(true, 1);
+    }
+
+    /**
+     * @param useOnePassBounds
+     *            whether to compute the bounds of all invariants in one walk of
+     *            each relation path (true), or to walk all relation paths for
+     *            every invariant (false)
+     * @param numThreads
+     *            the number of threads that walk relation paths in parallel
+     *            (only used with one-pass bounds)
+     */
+    public ConstrainedInvMiner(boolean useOnePassBounds, int numThreads) {
         this.relationPaths = new HashSet<IRelationPath>();
+        this.useOnePassBounds = useOnePassBounds;
+        this.numThreads = numThreads;
     }
 
     /**
@@ -103,8 +142,13 @@ public class ConstrainedInvMiner extends InvariantMiner {
         // generated constrained invariants.
         this.constrainedInvs = new TemporalInvariantSet();
 
+        // The relation paths only depend on the relations of the invariants,
+        // so they are built once for each relation.
+        Set<String> relations = new LinkedHashSet<String>();
         for (ITemporalInvariant inv : invs.getSet()) {
-            String relation = inv.getRelation();
+            relations.add(inv.getRelation());
+        }
+        for (String relation : relations) {
             boolean isTimeRelation = relation.equals(Event.defTimeRelationStr);
 
             // Loop through the traces.
@@ -126,6 +170,11 @@ public class ConstrainedInvMiner extends InvariantMiner {
             }
         }
 
+        Map<Pair<EventType, EventType>, AbstractResource[]> allBounds = null;
+        if (useOnePassBounds) {
+            allBounds = computeAllBounds(invs);
+        }
+
         for (ITemporalInvariant inv : invs.getSet()) {
             if (inv instanceof NeverFollowedInvariant) {
                 constrainedInvs.add(inv);
@@ -135,7 +184,20 @@ public class ConstrainedInvMiner extends InvariantMiner {
                     || inv instanceof AlwaysPrecedesInvariant || inv instanceof InterruptedByInvariant)) {
                 continue;
             }
-            computeInvariants((BinaryInvariant) inv);
+            if (allBounds == null) {
+                computeInvariants((BinaryInvariant) inv);
+                continue;
+            }
+
+            Pair<EventType, EventType> boundedPair = getBoundedPair((BinaryInvariant) inv);
+            if (boundedPair == null) {
+                continue;
+            }
+            AbstractResource[] bounds = allBounds.get(boundedPair);
+            augmentInvariant((BinaryInvariant) inv,
+                    new Pair<IThresholdConstraint, IThresholdConstraint>(
+                            new LowerBoundConstraint(bounds[0]),
+                            new UpperBoundConstraint(bounds[1])));
         }
 
         relationPaths.clear();
@@ -303,4 +365,263 @@ public class ConstrainedInvMiner extends InvariantMiner {
 
         return new Pair<IThresholdConstraint, IThresholdConstraint>(l, u);
     }
+
+    /**
+     * Returns the pair of event types between which the bounds of inv are
+     * computed -- (a, a) for a IntrBy b, and (a, b) otherwise -- or null if
+     * the bounds of inv cannot be computed because a is INITIAL.
+     */
+    private static Pair<EventType, EventType> getBoundedPair(BinaryInvariant inv) {
+        EventType a = inv.getFirst();
+        if (a.isInitialEventType()) {
+            return null;
+        }
+        if (inv instanceof InterruptedByInvariant) {
+            return new Pair<EventType, EventType>(a, a);
+        }
+        return new Pair<EventType, EventType>(a, inv.getSecond());
+    }
+
+    /**
+     * Computes the lower and upper bound of the deltas between every (a, b)
+     * pair of events in the relation paths, for the bounded pairs of all
+     * AFby, AP and IntrBy invariants in invs at once. Returns, for each
+     * bounded pair, an array holding the lower bound and the upper bound
+     * (both null if the pair never occurs in a path).
+     */
+    private Map<Pair<EventType, EventType>, AbstractResource[]> computeAllBounds(
+            TemporalInvariantSet invs) {
+        Map<Pair<EventType, EventType>, Integer> pairIds = new LinkedHashMap<Pair<EventType, EventType>, Integer>();
+        for (ITemporalInvariant inv : invs.getSet()) {
+            if (!(inv instanceof AlwaysFollowedInvariant
+                    || inv instanceof AlwaysPrecedesInvariant || inv instanceof InterruptedByInvariant)) {
+                continue;
+            }
+            Pair<EventType, EventType> boundedPair = getBoundedPair((BinaryInvariant) inv);
+            if (boundedPair != null && !pairIds.containsKey(boundedPair)) {
+                pairIds.put(boundedPair, pairIds.size());
+            }
+        }
+
+        PathBoundsWalker walker = new PathBoundsWalker(pairIds.keySet());
+        List<IRelationPath> paths = new ArrayList<IRelationPath>(relationPaths);
+        WalkBoundsTask walk = new WalkBoundsTask(walker, paths, 0,
+                paths.size(), getLeafSize(paths.size()));
+        PathBounds bounds;
+        if (numThreads > 1) {
+            ForkJoinPool pool = new ForkJoinPool(numThreads);
+            try {
+                bounds = pool.invoke(walk);
+            } finally {
+                pool.shutdown();
+            }
+        } else {
+            bounds = walk.compute();
+        }
+
+        Map<Pair<EventType, EventType>, AbstractResource[]> ret = new LinkedHashMap<Pair<EventType, EventType>, AbstractResource[]>();
+        for (Map.Entry<Pair<EventType, EventType>, Integer> e : pairIds
+                .entrySet()) {
+            int id = e.getValue();
+            ret.put(e.getKey(), new AbstractResource[] { bounds.lower[id],
+                    bounds.upper[id] });
+        }
+        return ret;
+    }
+
+    /**
+     * Returns the number of paths that a single task walks.
+     */
+    private int getLeafSize(int numPaths) {
+        if (numThreads <= 1) {
+            return Math.max(numPaths, 1);
+        }
+        return Math.max(numPaths / (numThreads * 4), 1);
+    }
+
+    /**
+     * The lower and upper bounds of each bounded pair, indexed by pair id.
+     */
+    private static final class PathBounds {
+        final AbstractResource[] lower;
+        final AbstractResource[] upper;
+
+        PathBounds(int numPairs) {
+            lower = new AbstractResource[numPairs];
+            upper = new AbstractResource[numPairs];
+        }
+
+        void updateLower(int pair, AbstractResource delta) {
+            if (lower[pair] == null || delta.lessThan(lower[pair])) {
+                lower[pair] = delta;
+            }
+        }
+
+        void updateUpper(int pair, AbstractResource delta) {
+            if (upper[pair] == null || upper[pair].lessThan(delta)) {
+                upper[pair] = delta;
+            }
+        }
+
+        /** Combines the bounds of other into these bounds. */
+        void mergeWith(PathBounds other) {
+            for (int pair = 0; pair < lower.length; pair++) {
+                if (other.lower[pair] != null) {
+                    updateLower(pair, other.lower[pair]);
+                }
+                if (other.upper[pair] != null) {
+                    updateUpper(pair, other.upper[pair]);
+                }
+            }
+        }
+    }
+
+    /**
+     * Walks relation paths and computes the bounds of a fixed list of bounded
+     * pairs. Only reads its state while walking, so it can be shared by
+     * several threads.
+     */
+    private static final class PathBoundsWalker {
+        private final EventTypeInterner eTypes = new EventTypeInterner();
+        private final int numPairs;
+        /** The event type id of the first event type of each pair. */
+        private final int[] pairFirsts;
+        /** The ids of the pairs that each event type id is second in. */
+        private final int[][] pairsBySecond;
+
+        PathBoundsWalker(Collection<Pair<EventType, EventType>> pairs) {
+            numPairs = pairs.size();
+            pairFirsts = new int[numPairs];
+            List<List<Integer>> bySecond = new ArrayList<List<Integer>>();
+            int id = 0;
+            for (Pair<EventType, EventType> pair : pairs) {
+                pairFirsts[id] = eTypes.intern(pair.getLeft());
+                int second = eTypes.intern(pair.getRight());
+                while (bySecond.size() < eTypes.size()) {
+                    bySecond.add(new ArrayList<Integer>());
+                }
+                bySecond.get(second).add(id);
+                id++;
+            }
+            pairsBySecond = new int[eTypes.size()][];
+            for (int t = 0; t < pairsBySecond.length; t++) {
+                List<Integer> ids = bySecond.get(t);
+                pairsBySecond[t] = new int[ids.size()];
+                for (int i = 0; i < ids.size(); i++) {
+                    pairsBySecond[t][i] = ids.get(i);
+                }
+            }
+        }
+
+        /**
+         * Walks paths[from, to) and returns the bounds of the pairs in them.
+         */
+        PathBounds walk(List<IRelationPath> paths, int from, int to) {
+            PathBounds bounds = new PathBounds(numPairs);
+            // The earliest and latest time of each event type in the current
+            // path, and the event types whose times are set.
+            AbstractResource[] minTimes = new AbstractResource[eTypes.size()];
+            AbstractResource[] maxTimes = new AbstractResource[eTypes.size()];
+            int[] seen = new int[eTypes.size()];
+            for (int i = from; i < to; i++) {
+                int numSeen = walk(paths.get(i), bounds, minTimes, maxTimes,
+                        seen);
+                for (int j = 0; j < numSeen; j++) {
+                    minTimes[seen[j]] = null;
+                    maxTimes[seen[j]] = null;
+                }
+            }
+            return bounds;
+        }
+
+        /**
+         * Walks relationPath from its first to its last node, following the
+         * first transition of each node like the per-invariant walks, and
+         * updates bounds with the deltas of the pairs in it. Returns the
+         * number of event type ids whose times were stored in seen.
+         */
+        private int walk(IRelationPath relationPath, PathBounds bounds,
+                AbstractResource[] minTimes, AbstractResource[] maxTimes,
+                int[] seen) {
+            EventNode end = relationPath.getLastNode();
+            EventNode curr = relationPath.getFirstNode();
+            int numSeen = 0;
+            while (true) {
+                int t = eTypes.getId(curr.getEType());
+                if (t >= 0) {
+                    AbstractResource time = curr.getTime();
+                    // The smallest delta from an earlier first event is the
+                    // one from the latest of them, and the largest delta the
+                    // one from the earliest.
+                    for (int pair : pairsBySecond[t]) {
+                        int first = pairFirsts[pair];
+                        if (maxTimes[first] != null) {
+                            bounds.updateLower(pair,
+                                    time.computeDelta(maxTimes[first]));
+                            bounds.updateUpper(pair,
+                                    time.computeDelta(minTimes[first]));
+                        }
+                    }
+
+                    if (time != null) {
+                        if (maxTimes[t] == null) {
+                            seen[numSeen++] = t;
+                            minTimes[t] = time;
+                            maxTimes[t] = time;
+                        } else if (time.lessThan(minTimes[t])) {
+                            minTimes[t] = time;
+                        } else if (maxTimes[t].lessThan(time)) {
+                            maxTimes[t] = time;
+                        }
+                    }
+                }
+
+                // Reached ending node in path.
+                if (curr.equals(end)) {
+                    break;
+                }
+                assert (curr.getAllTransitions().size() == 1);
+                curr = curr.getAllTransitions().get(0).getTarget();
+            }
+            return numSeen;
+        }
+    }
+
+    /**
+     * Walks the paths in paths[from, to) and returns their combined bounds.
+     */
+    private static class WalkBoundsTask extends RecursiveTask<PathBounds> {
+        private static final long serialVersionUID = 1L;
+
+        private final PathBoundsWalker walker;
+        private final List<IRelationPath> paths;
+        private final int from;
+        private final int to;
+        private final int leafSize;
+
+        WalkBoundsTask(PathBoundsWalker walker, List<IRelationPath> paths,
+                int from, int to, int leafSize) {
+            this.walker = walker;
+            this.paths = paths;
+            this.from = from;
+            this.to = to;
+            this.leafSize = leafSize;
+        }
+
+        @Override
+        protected PathBounds compute() {
+            if (to - from <= leafSize) {
+                return walker.walk(paths, from, to);
+            }
+            int mid = (from + to) >>> 1;
+            WalkBoundsTask left = new WalkBoundsTask(walker, paths, from, mid,
+                    leafSize);
+            WalkBoundsTask right = new WalkBoundsTask(walker, paths, mid, to,
+                    leafSize);
+            right.fork();
+            PathBounds bounds = left.compute();
+            bounds.mergeWith(right.join());
+            return bounds;
+        }
+    }
 }
@@ -6,6 +6,7 @@ import java.util.Set;
 
 import synoptic.invariants.AlwaysFollowedInvariant;
 import synoptic.invariants.AlwaysPrecedesInvariant;
+import synoptic.invariants.BinaryInvariant;
 import synoptic.invariants.ITemporalInvariant;
 import synoptic.invariants.InterruptedByInvariant;
 import synoptic.invariants.NeverFollowedInvariant;
@@ -72,82 +73,32 @@ abstract public class CountingInvariantMiner extends InvariantMiner {
                     if (gEventCoOccurrences == null
                             || !alwaysConcurrentWith(gFollowedByCnts,
                                     gEventCoOccurrences, e1, e2)) {
-                        if (multipleRelations) {
-                            NFBiRelationInvariant invariant = new NFBiRelationInvariant(
-                                    e1, e2, relation, Event.defTimeRelationStr);
-                            if (supportCount) {
-                                invariant
-                                        .setStatistics(new InvariantStatistics(
-                                                gEventCnts.get(e1)));
-                            }
-                            invariants.add(invariant);
-                        } else {
-
-                            NeverFollowedInvariant invariant = new NeverFollowedInvariant(
-                                    e1, e2, relation);
-                            if (supportCount) {
-                                invariant
-                                        .setStatistics(new InvariantStatistics(
-                                                gEventCnts.get(e1)));
-                            }
-                            invariants.add(invariant);
-                        }
+                        addInvariant(invariants,
+                                newNeverFollowedBy(e1, e2, relation,
+                                        multipleRelations), supportCount,
+                                gEventCnts.get(e1));
                     }
                 }
 
                 if (alwaysFollowedBy(gEventCnts, gFollowedByCnts, e1, e2)) {
-                    if (multipleRelations) {
-
-                        AFBiRelationInvariant invariant = new AFBiRelationInvariant(
-                                e1, e2, relation, Event.defTimeRelationStr);
-                        if (supportCount) {
-                            invariant.setStatistics(new InvariantStatistics(
-                                    gEventCnts.get(e1)));
-                        }
-                        invariants.add(invariant);
-
-                    } else {
-                        AlwaysFollowedInvariant invariant = new AlwaysFollowedInvariant(
-                                e1, e2, relation);
-                        if (supportCount) {
-                            invariant.setStatistics(new InvariantStatistics(
-                                    gEventCnts.get(e1)));
-                        }
-                        invariants.add(invariant);
-                    }
+                    addInvariant(invariants,
+                            newAlwaysFollowedBy(e1, e2, relation,
+                                    multipleRelations), supportCount,
+                            gEventCnts.get(e1));
                 }
 
                 if (alwaysPrecedes(gEventCnts, gPrecedesCnts, e1, e2)) {
-                    if (multipleRelations) {
-                        APBiRelationInvariant invariant = new APBiRelationInvariant(
-                                e1, e2, relation, Event.defTimeRelationStr);
-                        if (supportCount) {
-                            invariant.setStatistics(new InvariantStatistics(
-                                    gEventCnts.get(e2)));
-                        }
-                        invariants.add(invariant);
-                    } else {
-                        AlwaysPrecedesInvariant invariant = new AlwaysPrecedesInvariant(
-                                e1, e2, relation);
-                        if (supportCount) {
-                            invariant.setStatistics(new InvariantStatistics(
-                                    gEventCnts.get(e2)));
-                        }
-                        invariants.add(invariant);
-                    }
+                    addInvariant(invariants,
+                            newAlwaysPrecedes(e1, e2, relation,
+                                    multipleRelations), supportCount,
+                            gEventCnts.get(e2));
                 }
 
                 if (interruptedBy(gPossibleInterrupts, e1, e2)) {
-                    if (multipleRelations) {
-                        throw new NotImplementedException();
-                    }
-                    InterruptedByInvariant invariant = new InterruptedByInvariant(
-                            e1, e2, relation);
-                    if (supportCount) {
-                        invariant.setStatistics(new InvariantStatistics(
-                                gEventCnts.get(e1)));
-                    }
-                    invariants.add(invariant);
+                    addInvariant(invariants,
+                            newInterruptedBy(e1, e2, relation,
+                                    multipleRelations), supportCount,
+                            gEventCnts.get(e1));
                 }
             }
         }
@@ -155,29 +106,146 @@ abstract public class CountingInvariantMiner extends InvariantMiner {
         // Determine all the INITIAL AFby x invariants to represent
         // "eventually x"
         for (EventType label : AlwaysFollowsINITIALSet) {
-            if (multipleRelations) {
-                AFBiRelationInvariant invariant = new AFBiRelationInvariant(
-                        StringEventType.newInitialStringEventType(), label,
-                        relation);
-                if (supportCount) {
-                    invariant.setStatistics(new InvariantStatistics(gEventCnts
-                            .get(label)));
+            addInvariant(invariants,
+                    newInitialAlwaysFollowedBy(label, relation,
+                            multipleRelations), supportCount,
+                    gEventCnts.get(label));
+        }
+        return invariants;
+    }
+
+    /**
+     * Same as
+     * {@link #extractPathInvariantsFromWalkCounts(String, Map, Map, Map, Map, Map, Set, boolean, boolean)}
+     * (without concurrency filtering), but for counts kept in arrays indexed
+     * by the event type ids of eTypes. Considers event types in the order of
+     * their ids.
+     * 
+     * @param relation
+     * @param eTypes
+     * @param counts
+     * @return
+     */
+    protected Set<ITemporalInvariant> extractPathInvariantsFromWalkCounts(
+            String relation, EventTypeInterner eTypes, ArrayWalkCounts counts,
+            boolean multipleRelations, boolean supportCount) {
+
+        Set<ITemporalInvariant> invariants = new LinkedHashSet<ITemporalInvariant>();
+        int n = counts.n;
+
+        for (int a = 0; a < n; a++) {
+            EventType e1 = eTypes.getEventType(a);
+            for (int b = 0; b < n; b++) {
+                EventType e2 = eTypes.getEventType(b);
+                int followedBy = counts.followedByCnts[a * n + b];
+
+                // #F(a->b) == 0 therefore a NFby b
+                if (followedBy == 0) {
+                    addInvariant(invariants,
+                            newNeverFollowedBy(e1, e2, relation,
+                                    multipleRelations), supportCount,
+                            counts.eventCnts[a]);
                 }
-                invariants.add(invariant);
-            } else {
-                AlwaysFollowedInvariant invariant = new AlwaysFollowedInvariant(
-                        StringEventType.newInitialStringEventType(), label,
-                        relation);
-                if (supportCount) {
-                    invariant.setStatistics(new InvariantStatistics(gEventCnts
-                            .get(label)));
+
+                // #F(a->b) == #a therefore a AFby b
+                if (followedBy == counts.eventCnts[a]) {
+                    addInvariant(invariants,
+                            newAlwaysFollowedBy(e1, e2, relation,
+                                    multipleRelations), supportCount,
+                            counts.eventCnts[a]);
+                }
+
+                // #P(a->b) == #b therefore a AP b
+                if (counts.precedesCnts[a * n + b] == counts.eventCnts[b]) {
+                    addInvariant(invariants,
+                            newAlwaysPrecedes(e1, e2, relation,
+                                    multipleRelations), supportCount,
+                            counts.eventCnts[b]);
+                }
+
+                if (counts.interruptedBy(a, b)) {
+                    addInvariant(invariants,
+                            newInterruptedBy(e1, e2, relation,
+                                    multipleRelations), supportCount,
+                            counts.eventCnts[a]);
+                }
+            }
+        }
+
+        // Determine all the INITIAL AFby x invariants to represent
+        // "eventually x"
+        if (counts.hasPaths) {
+            for (int a = 0; a < n; a++) {
+                if (counts.alwaysFollowsInitial(a)) {
+                    addInvariant(invariants,
+                            newInitialAlwaysFollowedBy(
+                                    eTypes.getEventType(a), relation,
+                                    multipleRelations), supportCount,
+                            counts.eventCnts[a]);
                 }
-                invariants.add(invariant);
             }
         }
         return invariants;
     }
 
+    /**
+     * Adds inv to invariants, setting its support count to support if
+     * supportCount is true.
+     */
+    private static void addInvariant(Set<ITemporalInvariant> invariants,
+            BinaryInvariant inv, boolean supportCount, int support) {
+        if (supportCount) {
+            inv.setStatistics(new InvariantStatistics(support));
+        }
+        invariants.add(inv);
+    }
+
+    private static BinaryInvariant newNeverFollowedBy(EventType e1,
+            EventType e2, String relation, boolean multipleRelations) {
+        if (multipleRelations) {
+            return new NFBiRelationInvariant(e1, e2, relation,
+                    Event.defTimeRelationStr);
+        }
+        return new NeverFollowedInvariant(e1, e2, relation);
+    }
+
+    private static BinaryInvariant newAlwaysFollowedBy(EventType e1,
+            EventType e2, String relation, boolean multipleRelations) {
+        if (multipleRelations) {
+            return new AFBiRelationInvariant(e1, e2, relation,
+                    Event.defTimeRelationStr);
+        }
+        return new AlwaysFollowedInvariant(e1, e2, relation);
+    }
+
+    private static BinaryInvariant newAlwaysPrecedes(EventType e1,
+            EventType e2, String relation, boolean multipleRelations) {
+        if (multipleRelations) {
+            return new APBiRelationInvariant(e1, e2, relation,
+                    Event.defTimeRelationStr);
+        }
+        return new AlwaysPrecedesInvariant(e1, e2, relation);
+    }
+
+    private static BinaryInvariant newInterruptedBy(EventType e1,
+            EventType e2, String relation, boolean multipleRelations) {
+        if (multipleRelations) {
+            throw new NotImplementedException();
+        }
+        return new InterruptedByInvariant(e1, e2, relation);
+    }
+
+    private static BinaryInvariant newInitialAlwaysFollowedBy(
+            EventType label, String relation, boolean multipleRelations) {
+        if (multipleRelations) {
+            return new AFBiRelationInvariant(
+                    StringEventType.newInitialStringEventType(), label,
+                    relation);
+        }
+        return new AlwaysFollowedInvariant(
+                StringEventType.newInitialStringEventType(), label, relation);
+    }
+
     /**
      * Returns true if and only if <code>e1</code> gets interrupted by
      * <code>e2</code>.
@@ -202,10 +270,24 @@ abstract public class CountingInvariantMiner extends InvariantMiner {
         return false;
     }
 
+    /**
+     * Returns counts[e1][e2], or 0 if counts has no such entry.
+     */
+    protected static int getCount(
+            Map<EventType, Map<EventType, Integer>> counts, EventType e1,
+            EventType e2) {
+        Map<EventType, Integer> e1Counts = counts.get(e1);
+        if (e1Counts == null) {
+            return 0;
+        }
+        Integer count = e1Counts.get(e2);
+        return count == null ? 0 : count;
+    }
+
     protected boolean alwaysPrecedes(Map<EventType, Integer> gEventCnts,
             Map<EventType, Map<EventType, Integer>> gPrecedesCnts,
             EventType e1, EventType e2) {
-        if (gPrecedesCnts.get(e1).get(e2).equals(gEventCnts.get(e2))) {
+        if (getCount(gPrecedesCnts, e1, e2) == gEventCnts.get(e2)) {
             // #_P(label1->label2) == #label2 therefore label1
             // AP label2
             return true;
@@ -216,7 +298,7 @@ abstract public class CountingInvariantMiner extends InvariantMiner {
     protected boolean neverFollowedBy(
             Map<EventType, Map<EventType, Integer>> gFollowedByCnts,
             EventType e1, EventType e2) {
-        if (gFollowedByCnts.get(e1).get(e2) == 0) {
+        if (getCount(gFollowedByCnts, e1, e2) == 0) {
             // label1 was never followed by label2, therefore label1
             // NFby label2 (i.e. #_F(label1->label2) == 0)
             return true;
@@ -227,7 +309,7 @@ abstract public class CountingInvariantMiner extends InvariantMiner {
     protected boolean alwaysFollowedBy(Map<EventType, Integer> gEventCnts,
             Map<EventType, Map<EventType, Integer>> gFollowedByCnts,
             EventType e1, EventType e2) {
-        if (gFollowedByCnts.get(e1).get(e2).equals(gEventCnts.get(e1))) {
+        if (getCount(gFollowedByCnts, e1, e2) == gEventCnts.get(e1)) {
             // #_F(label1->label2) == #label1 therefore label1
             // AFby label2
             return true;
@@ -239,8 +321,8 @@ abstract public class CountingInvariantMiner extends InvariantMiner {
             Map<EventType, Map<EventType, Integer>> gFollowedByCnts,
             Map<EventType, Set<EventType>> gEventCoOccurrences, EventType e1,
             EventType e2) {
-        int e1_fby_e2 = gFollowedByCnts.get(e1).get(e2);
-        int e2_fby_e1 = gFollowedByCnts.get(e2).get(e1);
+        int e1_fby_e2 = getCount(gFollowedByCnts, e1, e2);
+        int e2_fby_e1 = getCount(gFollowedByCnts, e2, e1);
 
         if (e1_fby_e2 == 0 && e2_fby_e1 == 0) {
             // That is, e1 NFby e2 && e2 NFby e1 means that e1 and e2
@@ -262,8 +344,8 @@ abstract public class CountingInvariantMiner extends InvariantMiner {
             Map<EventType, Set<EventType>> gEventCoOccurrences,
             Map<EventType, Map<EventType, Integer>> gEventTypesOrderedBalances,
             EventType e1, EventType e2) {
-        int e1_fby_e2 = gFollowedByCnts.get(e1).get(e2);
-        int e2_fby_e1 = gFollowedByCnts.get(e2).get(e1);
+        int e1_fby_e2 = getCount(gFollowedByCnts, e1, e2);
+        int e2_fby_e1 = getCount(gFollowedByCnts, e2, e1);
 
         if (e1_fby_e2 != 0 || e2_fby_e1 != 0) {
             // e1 was ordered with e2 or e2 was ordered with e1 at
@@ -8,6 +8,9 @@ import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 
 import synoptic.invariants.AlwaysFollowedInvariant;
 import synoptic.invariants.AlwaysPrecedesInvariant;
@@ -40,6 +43,11 @@ import synoptic.model.interfaces.ITransition;
  * TemporalInvariantSet.extractInvariantsFromWalkCounts() to turn these counts
  * into valid temporal invariants. <br/>
  * <br/>
+ * With more than one thread, the traces are split into contiguous ranges, and
+ * each range is walked by a separate walker (a miner instance of its own) in
+ * parallel. The counts of the walkers are then merged in trace order, so the
+ * mined invariants do not depend on the thread count. <br/>
+ * <br/>
  * Note that this miner DOES NOT mine the IntrBy invariant.
  */
 public class DAGWalkingPOInvMiner extends CountingInvariantMiner implements
@@ -178,6 +186,9 @@ public class DAGWalkingPOInvMiner extends CountingInvariantMiner implements
 
     boolean mineNeverConcurrentWith;
 
+    // The number of threads that walk traces in parallel.
+    final int numThreads;
+
     /**
      * Whether or not distributed invariants of the form (a AlwaysConcurrentWith
      * b, a NeverConcurrentWith b) will be mined and also returned.
@@ -186,11 +197,23 @@ public class DAGWalkingPOInvMiner extends CountingInvariantMiner implements
 
     public DAGWalkingPOInvMiner() {
         // By default, mine the NeverConcurrentWith invariant.
-        mineNeverConcurrentWith = true;
+        this(true);
     }
 
     public DAGWalkingPOInvMiner(boolean mineNeverConcurrentWith) {
+        this(mineNeverConcurrentWith, 1);
+    }
+
+    /**
+     * @param mineNeverConcurrentWith
+     *            whether or not to mine the NeverConcurrentWith invariant
+     * @param numThreads
+     *            the number of threads that walk traces in parallel
+     */
+    public DAGWalkingPOInvMiner(boolean mineNeverConcurrentWith,
+            int numThreads) {
         this.mineNeverConcurrentWith = mineNeverConcurrentWith;
+        this.numThreads = numThreads;
     }
 
     public boolean getMineNeverConcurrentWith() {
@@ -287,41 +310,143 @@ public class DAGWalkingPOInvMiner extends CountingInvariantMiner implements
         }
 
         // Iterate through all the traces.
-        for (Set<EventNode> initTraceNodes : g.getTraceIdToInitNodes().values()) {
-            tNodeParentsMap.put(initNode, emptyNodeHashSet);
-
-            // ///////////////////
-            // TODO: this assumes that we have a single terminal node. But a PO
-            // trace could have multiple terminals. We need to treat terminals
-            // as we do with initial nodes -- maintain a termTraceNodes list.
-            // ///////////////////
-
-            EventNode termNode = null, termNodeNew = null;
-            for (EventNode curNode : initTraceNodes) {
-                tNodeParentsMap.put(curNode, initNodeList);
-                // A pre-processing step: builds the parent\child counts maps,
-                // the parents map, the tSeenETypes set, and determines the
-                // terminal node in the trace.
-                termNodeNew = preTraverseTrace(curNode);
-                if (termNodeNew != null) {
-                    termNode = termNodeNew;
+        List<Set<EventNode>> traces = new ArrayList<Set<EventNode>>(g
+                .getTraceIdToInitNodes().values());
+        if (numThreads > 1 && traces.size() > 1) {
+            walkTracesInParallel(traces, initNode);
+        } else {
+            for (Set<EventNode> initTraceNodes : traces) {
+                walkTrace(initTraceNodes, initNode, initNodeList,
+                        emptyNodeHashSet);
+            }
+        }
+
+        // Extract the AFby, NFby, AP invariants based on counts.
+        Set<ITemporalInvariant> pathInvs = extractPathInvariantsFromWalkCounts(
+                relation, gEventCnts, gFollowedByCnts, gPrecedesCnts, null,
+                gEventCoOccurrences, gAlwaysFollowsINITIALSet, false, false);
+
+        if (mineConcurrencyInvariants) {
+            // Extract the concurrency invariants based on counts.
+            Set<ITemporalInvariant> concurInvs = extractConcurrencyInvariantsFromWalkCounts(
+                    mineNeverConcurrentWith, relation, gEventCnts,
+                    gPrecedesCnts, gFollowedByCnts, gEventCoOccurrences,
+                    gEventTypesOrderedBalances);
+            // Merge the two sets.
+            pathInvs.addAll(concurInvs);
+        }
+        // Return pathInvs, which at this point contains any non-redundant
+        // concurrency invariants (if these were also mined -- see above).
+        return new TemporalInvariantSet(pathInvs);
+    } // /computeInvariants
+
+    /**
+     * Walks the trace with the given initial nodes, and adds its counts to the
+     * global counts maps. The per-trace structures are cleared afterwards.
+     * 
+     * @param initTraceNodes
+     *            the initial nodes of the trace
+     * @param initNode
+     *            the dummy initial node of the graph
+     * @param initNodeList
+     *            a list holding just initNode
+     * @param emptyNodeHashSet
+     *            an empty list
+     */
+    private void walkTrace(Set<EventNode> initTraceNodes, EventNode initNode,
+            List<EventNode> initNodeList, List<EventNode> emptyNodeHashSet) {
+        tNodeParentsMap.put(initNode, emptyNodeHashSet);
+
+        // ///////////////////
+        // TODO: this assumes that we have a single terminal node. But a PO
+        // trace could have multiple terminals. We need to treat terminals
+        // as we do with initial nodes -- maintain a termTraceNodes list.
+        // ///////////////////
+
+        EventNode termNode = null, termNodeNew = null;
+        for (EventNode curNode : initTraceNodes) {
+            tNodeParentsMap.put(curNode, initNodeList);
+            // A pre-processing step: builds the parent\child counts maps,
+            // the parents map, the tSeenETypes set, and determines the
+            // terminal node in the trace.
+            termNodeNew = preTraverseTrace(curNode);
+            if (termNodeNew != null) {
+                termNode = termNodeNew;
+            }
+        }
+        assert (termNode != null);
+
+        // For every pair of event types in the trace record that the two
+        // types have event instances that co-occur in some trace.
+        Set<EventType> toVisitETypes = new LinkedHashSet<EventType>();
+        toVisitETypes.addAll(tSeenETypes);
+        for (EventType e1 : tSeenETypes) {
+            // We don't consider (e1, e1) as these would be useful for local
+            // invariants and we don't use conditional counts for mining
+            // local invariants; and we do not consider (e1,e2) if we've
+            // already considered (e2,e1).
+            toVisitETypes.remove(e1);
+            for (EventType e2 : toVisitETypes) {
+                // Optimization: We won't be using event co-occurrence
+                // information for
+                // events that are local.
+                if (e1 == e2) {
+                    continue;
+                }
+                if (!(e1 instanceof DistEventType)
+                        || !(e2 instanceof DistEventType)) {
+                    continue;
                 }
+                if (((DistEventType) e1).getProcessName().equals(
+                        ((DistEventType) e2).getProcessName())) {
+
+                    continue;
+                }
+                // </Optimization>
+
+                // Record that e1 and e2 co-occur
+                if (!gEventCoOccurrences.containsKey(e1)) {
+                    gEventCoOccurrences.put(e1,
+                            new LinkedHashSet<EventType>());
+                }
+                gEventCoOccurrences.get(e1).add(e2);
+            }
+        }
+
+        // logger.info("co-occur-cnts: " +
+        // traceCoOccurrenceCnts.toString());
+
+        // ////////////////////////////////////////////////////////////////////////
+        // Precedes relations recording: traverse the trace rooted at each
+        // initial node in the forward direction.
+        for (EventNode curNode : initTraceNodes) {
+            if (mineNeverConcurrentWith) {
+                forwardTraverseTrace(curNode, null);
+            } else {
+                forwardTraverseTraceWithoutNeverConcurrent(curNode, null);
             }
-            assert (termNode != null);
+        }
+
+        // ////////////////////////////////////////////////////////////////////////
+        // FollowedBy relations recording: traverse the trace rooted at
+        // termNode in the reverse direction (following the
+        // tNodeParentsMap).
+        if (mineNeverConcurrentWith) {
+            reverseTraverseTrace(termNode, null);
+        } else {
+            reverseTraverseTraceWithoutNeverConcurrent(termNode, null);
+        }
+
+        if (mineNeverConcurrentWith) {
+            // Compute the gEventTypesOrderedBalances for the current trace.
+
+            // TODO: Because the NCwith invariant is symmetric, we only need
+            // to consider one of the permutations -- just (e1,e2) and not
+            // both (e1,e2) and (e2,e1).
 
-            // For every pair of event types in the trace record that the two
-            // types have event instances that co-occur in some trace.
-            Set<EventType> toVisitETypes = new LinkedHashSet<EventType>();
-            toVisitETypes.addAll(tSeenETypes);
             for (EventType e1 : tSeenETypes) {
-                // We don't consider (e1, e1) as these would be useful for local
-                // invariants and we don't use conditional counts for mining
-                // local invariants; and we do not consider (e1,e2) if we've
-                // already considered (e2,e1).
-                toVisitETypes.remove(e1);
-                for (EventType e2 : toVisitETypes) {
-                    // Optimization: We won't be using event co-occurrence
-                    // information for
+                for (EventType e2 : tSeenETypes) {
+                    // Optimization: we won't be using ordering balance for
                     // events that are local.
                     if (e1 == e2) {
                         continue;
@@ -332,152 +457,168 @@ public class DAGWalkingPOInvMiner extends CountingInvariantMiner implements
                     }
                     if (((DistEventType) e1).getProcessName().equals(
                             ((DistEventType) e2).getProcessName())) {
-
                         continue;
                     }
                     // </Optimization>
 
-                    // Record that e1 and e2 co-occur
-                    if (!gEventCoOccurrences.containsKey(e1)) {
-                        gEventCoOccurrences.put(e1,
-                                new LinkedHashSet<EventType>());
+                    int typeFtypeCnt = 0;
+                    if (tTypeFollowingTypeCnts.containsKey(e1)
+                            && tTypeFollowingTypeCnts.get(e1).containsKey(
+                                    e2)) {
+                        typeFtypeCnt = tTypeFollowingTypeCnts.get(e1).get(
+                                e2);
                     }
-                    gEventCoOccurrences.get(e1).add(e2);
-                }
-            }
 
-            // logger.info("co-occur-cnts: " +
-            // traceCoOccurrenceCnts.toString());
+                    int numE1 = tEventCnts.get(e1);
+                    int numE2 = tEventCnts.get(e2);
 
-            // ////////////////////////////////////////////////////////////////////////
-            // Precedes relations recording: traverse the trace rooted at each
-            // initial node in the forward direction.
-            for (EventNode curNode : initTraceNodes) {
-                if (mineNeverConcurrentWith) {
-                    forwardTraverseTrace(curNode, null);
-                } else {
-                    forwardTraverseTraceWithoutNeverConcurrent(curNode, null);
+                    int typePtypeCnt = 0;
+                    if (tTypePrecedingTypeCnts.containsKey(e1)
+                            && tTypePrecedingTypeCnts.get(e1).containsKey(
+                                    e2)) {
+                        typePtypeCnt = tTypePrecedingTypeCnts.get(e1).get(
+                                e2);
+                    }
+
+                    // NOTE: since numE1 * numE2 is always >= typeFtypeCnt +
+                    // typePtypeCnt, the value is always <= 0. With 0
+                    // indicating that \forall \hat{e1}, \forall \hat{e2} e1
+                    // \precedes e2 or e2 \precedes e1. We use this to
+                    // deduce that e1 and e2 are never concurrent.
+                    addCount(gEventTypesOrderedBalances, e1, e2, typeFtypeCnt
+                            + typePtypeCnt - (numE1 * numE2));
                 }
             }
+        }
 
-            // ////////////////////////////////////////////////////////////////////////
-            // FollowedBy relations recording: traverse the trace rooted at
-            // termNode in the reverse direction (following the
-            // tNodeParentsMap).
-            if (mineNeverConcurrentWith) {
-                reverseTraverseTrace(termNode, null);
-            } else {
-                reverseTraverseTraceWithoutNeverConcurrent(termNode, null);
-            }
+        // Update the AlwaysFollowsINITIALSet set of events by
+        // intersecting it with all events seen in this partition.
+        if (gAlwaysFollowsINITIALSet == null) {
+            // This is the first trace we've processed.
+            gAlwaysFollowsINITIALSet = new LinkedHashSet<EventType>(
+                    tSeenETypes);
+        } else {
+            gAlwaysFollowsINITIALSet.retainAll(tSeenETypes);
+        }
 
-            if (mineNeverConcurrentWith) {
-                // Compute the gEventTypesOrderedBalances for the current trace.
-
-                // TODO: Because the NCwith invariant is symmetric, we only need
-                // to consider one of the permutations -- just (e1,e2) and not
-                // both (e1,e2) and (e2,e1).
-
-                for (EventType e1 : tSeenETypes) {
-                    for (EventType e2 : tSeenETypes) {
-                        // Optimization: we won't be using ordering balance for
-                        // events that are local.
-                        if (e1 == e2) {
-                            continue;
-                        }
-                        if (!(e1 instanceof DistEventType)
-                                || !(e2 instanceof DistEventType)) {
-                            continue;
-                        }
-                        if (((DistEventType) e1).getProcessName().equals(
-                                ((DistEventType) e2).getProcessName())) {
-                            continue;
-                        }
-                        // </Optimization>
-
-                        int typeFtypeCnt = 0;
-                        if (tTypeFollowingTypeCnts.containsKey(e1)
-                                && tTypeFollowingTypeCnts.get(e1).containsKey(
-                                        e2)) {
-                            typeFtypeCnt = tTypeFollowingTypeCnts.get(e1).get(
-                                    e2);
-                        }
+        // Clear all the per-trace structures to prepare for the next trace.
+        tNodeToNumParentsMap.clear();
+        tNodeParentsMap.clear();
+        tNodeToNumChildrenMap.clear();
+        tEventCnts.clear();
+        tSeenETypes.clear();
+        tFollowingNodeSets.clear();
+        tPrecedingNodeSets.clear();
 
-                        int numE1 = tEventCnts.get(e1);
-                        int numE2 = tEventCnts.get(e2);
+        if (mineNeverConcurrentWith) {
+            tTypeFollowingTypeCnts.clear();
+            tTypePrecedingTypeCnts.clear();
+        } else {
+            tNodeFollowingTypeCnts.clear();
+            tNodePrecedingTypeCnts.clear();
+        }
 
-                        int typePtypeCnt = 0;
-                        if (tTypePrecedingTypeCnts.containsKey(e1)
-                                && tTypePrecedingTypeCnts.get(e1).containsKey(
-                                        e2)) {
-                            typePtypeCnt = tTypePrecedingTypeCnts.get(e1).get(
-                                    e2);
-                        }
+        // At this point, we've completed all counts computation for the
+        // trace rooted at curNode.
+    }
 
-                        int prevBalance = gEventTypesOrderedBalances.get(e1)
-                                .get(e2);
-
-                        // NOTE: since numE1 * numE2 is always >= typeFtypeCnt +
-                        // typePtypeCnt, the value is always <= 0. With 0
-                        // indicating that \forall \hat{e1}, \forall \hat{e2} e1
-                        // \precedes e2 or e2 \precedes e1. We use this to
-                        // deduce that e1 and e2 are never concurrent.
-                        gEventTypesOrderedBalances.get(e1).put(
-                                e2,
-                                prevBalance + typeFtypeCnt + typePtypeCnt
-                                        - (numE1 * numE2));
+    /**
+     * Walks the traces in parallel: every thread walks a contiguous range of
+     * the traces with a walker of its own, which keeps its own per-trace
+     * structures and (sparse) global counts. The global counts of the walkers
+     * are then merged into this miner's global counts in trace order.
+     */
+    private void walkTracesInParallel(final List<Set<EventNode>> traces,
+            final EventNode initNode) {
+        int numWalkers = Math.min(numThreads, traces.size());
+        ForkJoinPool pool = new ForkJoinPool(numThreads);
+        try {
+            List<ForkJoinTask<DAGWalkingPOInvMiner>> walks = new ArrayList<ForkJoinTask<DAGWalkingPOInvMiner>>(
+                    numWalkers);
+            for (int i = 0; i < numWalkers; i++) {
+                final int from = (int) ((long) traces.size() * i / numWalkers);
+                final int to = (int) ((long) traces.size() * (i + 1) / numWalkers);
+                walks.add(pool.submit(new Callable<DAGWalkingPOInvMiner>() {
+                    @Override
+                    public DAGWalkingPOInvMiner call() {
+                        DAGWalkingPOInvMiner walker = new DAGWalkingPOInvMiner(
+                                mineNeverConcurrentWith);
+                        List<EventNode> initNodeList = new ArrayList<EventNode>();
+                        initNodeList.add(initNode);
+                        List<EventNode> emptyNodeHashSet = new ArrayList<EventNode>();
+                        for (int t = from; t < to; t++) {
+                            walker.walkTrace(traces.get(t), initNode,
+                                    initNodeList, emptyNodeHashSet);
+                        }
+                        return walker;
                     }
-                }
+                }));
+            }
+            for (ForkJoinTask<DAGWalkingPOInvMiner> walk : walks) {
+                mergeWalkCounts(walk.join());
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Merges the global counts of a walker, which walked the traces that
+     * follow the traces walked so far, into this miner's global counts.
+     */
+    private void mergeWalkCounts(DAGWalkingPOInvMiner walker) {
+        addCounts(gFollowedByCnts, walker.gFollowedByCnts);
+        addCounts(gPrecedesCnts, walker.gPrecedesCnts);
+        addCounts(gEventTypesOrderedBalances,
+                walker.gEventTypesOrderedBalances);
+
+        for (Entry<EventType, Set<EventType>> entry : walker.gEventCoOccurrences
+                .entrySet()) {
+            if (!gEventCoOccurrences.containsKey(entry.getKey())) {
+                gEventCoOccurrences.put(entry.getKey(),
+                        new LinkedHashSet<EventType>());
             }
+            gEventCoOccurrences.get(entry.getKey()).addAll(entry.getValue());
+        }
 
-            // Update the AlwaysFollowsINITIALSet set of events by
-            // intersecting it with all events seen in this partition.
+        if (walker.gAlwaysFollowsINITIALSet != null) {
             if (gAlwaysFollowsINITIALSet == null) {
-                // This is the first trace we've processed.
                 gAlwaysFollowsINITIALSet = new LinkedHashSet<EventType>(
-                        tSeenETypes);
+                        walker.gAlwaysFollowsINITIALSet);
             } else {
-                gAlwaysFollowsINITIALSet.retainAll(tSeenETypes);
+                gAlwaysFollowsINITIALSet
+                        .retainAll(walker.gAlwaysFollowsINITIALSet);
             }
+        }
+    }
 
-            // Clear all the per-trace structures to prepare for the next trace.
-            tNodeToNumParentsMap.clear();
-            tNodeParentsMap.clear();
-            tNodeToNumChildrenMap.clear();
-            tEventCnts.clear();
-            tSeenETypes.clear();
-            tFollowingNodeSets.clear();
-            tPrecedingNodeSets.clear();
-
-            if (mineNeverConcurrentWith) {
-                tTypeFollowingTypeCnts.clear();
-                tTypePrecedingTypeCnts.clear();
-            } else {
-                tNodeFollowingTypeCnts.clear();
-                tNodePrecedingTypeCnts.clear();
+    /**
+     * Adds every count in src to the corresponding count in dst.
+     */
+    private static void addCounts(Map<EventType, Map<EventType, Integer>> dst,
+            Map<EventType, Map<EventType, Integer>> src) {
+        for (Entry<EventType, Map<EventType, Integer>> row : src.entrySet()) {
+            for (Entry<EventType, Integer> entry : row.getValue().entrySet()) {
+                addCount(dst, row.getKey(), entry.getKey(), entry.getValue());
             }
-
-            // At this point, we've completed all counts computation for the
-            // trace rooted at curNode.
         }
+    }
 
-        // Extract the AFby, NFby, AP invariants based on counts.
-        Set<ITemporalInvariant> pathInvs = extractPathInvariantsFromWalkCounts(
-                relation, gEventCnts, gFollowedByCnts, gPrecedesCnts, null,
-                gEventCoOccurrences, gAlwaysFollowsINITIALSet, false, false);
-
-        if (mineConcurrencyInvariants) {
-            // Extract the concurrency invariants based on counts.
-            Set<ITemporalInvariant> concurInvs = extractConcurrencyInvariantsFromWalkCounts(
-                    mineNeverConcurrentWith, relation, gEventCnts,
-                    gPrecedesCnts, gFollowedByCnts, gEventCoOccurrences,
-                    gEventTypesOrderedBalances);
-            // Merge the two sets.
-            pathInvs.addAll(concurInvs);
+    /**
+     * Adds delta to counts[a][b], which is treated as 0 if missing. The global
+     * counts maps of this miner are pre-seeded with all event types, while
+     * those of parallel walkers only hold the counts that they have seen.
+     */
+    private static void addCount(Map<EventType, Map<EventType, Integer>> counts,
+            EventType a, EventType b, int delta) {
+        Map<EventType, Integer> aCounts = counts.get(a);
+        if (aCounts == null) {
+            aCounts = new LinkedHashMap<EventType, Integer>();
+            counts.put(a, aCounts);
         }
-        // Return pathInvs, which at this point contains any non-redundant
-        // concurrency invariants (if these were also mined -- see above).
-        return new TemporalInvariantSet(pathInvs);
-    } // /computeInvariants
+        Integer count = aCounts.get(b);
+        aCounts.put(b, (count == null ? 0 : count) + delta);
+    }
 
     /**
      * Recursively, depth-first traverses the trace forward to build the
@@ -665,8 +806,7 @@ public class DAGWalkingPOInvMiner extends CountingInvariantMiner implements
                     continue;
                 }
                 if (!a.isTerminalEventType() && !b.isTerminalEventType()) {
-                    gFollowedByCnts.get(a).put(b,
-                            gFollowedByCnts.get(a).get(b) + 1);
+                    addCount(gFollowedByCnts, a, b, 1);
                 }
                 visitedTypes.add(b);
             }
@@ -774,7 +914,7 @@ public class DAGWalkingPOInvMiner extends CountingInvariantMiner implements
                 if (visitedTypes.contains(a)) {
                     continue;
                 }
-                gPrecedesCnts.get(a).put(b, gPrecedesCnts.get(a).get(b) + 1);
+                addCount(gPrecedesCnts, a, b, 1);
                 visitedTypes.add(a);
             }
             visitedTypes.clear();
@@ -888,8 +1028,7 @@ public class DAGWalkingPOInvMiner extends CountingInvariantMiner implements
             // preceded the current b event in this trace.
             for (EventType b : tFollowingTypeCnts.keySet()) {
                 if (!a.isTerminalEventType() && !b.isTerminalEventType()) {
-                    gFollowedByCnts.get(a).put(b,
-                            gFollowedByCnts.get(a).get(b) + 1);
+                    addCount(gFollowedByCnts, a, b, 1);
                 }
             }
 
@@ -973,7 +1112,7 @@ public class DAGWalkingPOInvMiner extends CountingInvariantMiner implements
             // Update the global precedes counts based on the a events that
             // preceded the current b event in this trace.
             for (EventType a : tPrecedingTypeCnts.keySet()) {
-                gPrecedesCnts.get(a).put(b, gPrecedesCnts.get(a).get(b) + 1);
+                addCount(gPrecedesCnts, a, b, 1);
             }
 
             if (!tPrecedingTypeCnts.containsKey(b)) {
@@ -0,0 +1,58 @@
+package synoptic.invariants.miners;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import synoptic.model.event.EventType;
+
+/**
+ * Maps each event type to a dense int id, assigned in the order in which the
+ * event types are first interned. Allows miners to keep per-event-type counts
+ * in arrays instead of maps.
+ */
+public class EventTypeInterner {
+    private final Map<EventType, Integer> ids = new HashMap<EventType, Integer>();
+    private final List<EventType> eTypes = new ArrayList<EventType>();
+
+    /**
+     * Returns the id of eType, assigning it the next free id if eType has not
+     * been interned before.
+     */
+    public int intern(EventType eType) {
+        Integer id = ids.get(eType);
+        if (id == null) {
+            id = eTypes.size();
+            ids.put(eType, id);
+            eTypes.add(eType);
+        }
+        return id;
+    }
+
+    /**
+     * Returns the id of eType, or -1 if eType has not been interned.
+     */
+    public int getId(EventType eType) {
+        Integer id = ids.get(eType);
+        if (id == null) {
+            return -1;
+        }
+        return id;
+    }
+
+    /**
+     * Returns the event type with the given id.
+     */
+    public EventType getEventType(int id) {
+        return eTypes.get(id);
+    }
+
+    /**
+     * Returns the number of interned event types. Ids range from 0 to size() -
+     * 1.
+     */
+    public int size() {
+        return eTypes.size();
+    }
+}
@@ -50,6 +50,12 @@ public class TransitiveClosureInvMiner extends InvariantMiner implements
      */
     public boolean useWarshall = true;
 
+    /**
+     * Whether or not to store the transitive closure as per-trace bit-sets,
+     * instead of as sets of event nodes. No by default.
+     */
+    public boolean useBitSetClosure = false;
+
     public TransitiveClosureInvMiner() {
         // Empty constructor for testing.
     }
@@ -58,6 +64,12 @@ public class TransitiveClosureInvMiner extends InvariantMiner implements
         this.useWarshall = useWarshall;
     }
 
+    public TransitiveClosureInvMiner(boolean useWarshall,
+            boolean useBitSetClosure) {
+        this.useWarshall = useWarshall;
+        this.useBitSetClosure = useBitSetClosure;
+    }
+
     @Override
     public TemporalInvariantSet computeInvariants(DAGsTraceGraph g) {
         return computeTransClosureInvariants(g, true);
@@ -99,7 +111,7 @@ public class TransitiveClosureInvMiner extends InvariantMiner implements
 
             // Compute the transitive closure.
             AllRelationsTransitiveClosure transitiveClosure = new AllRelationsTransitiveClosure(
-                    g);
+                    g, useBitSetClosure);
 
             // Get the over-approximation.
             itc.stop();
@@ -12,6 +12,7 @@ import java.util.Iterator;
 import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.Random;
 import java.util.Set;
 import java.util.logging.ConsoleHandler;
@@ -23,6 +24,11 @@ import org.apache.commons.io.FilenameUtils;
 import org.apache.commons.io.filefilter.WildcardFileFilter;
 
 import synoptic.algorithms.Bisimulation;
+import synoptic.algorithms.RefinementCheckpoint;
+import synoptic.benchmarks.Gauge;
+import synoptic.benchmarks.Histogram;
+import synoptic.benchmarks.Metrics;
+import synoptic.benchmarks.MetricsExporter;
 import synoptic.invariants.BinaryInvariant;
 import synoptic.invariants.ITemporalInvariant;
 import synoptic.invariants.TemporalInvariantSet;
@@ -35,13 +41,18 @@ import synoptic.invariants.miners.ITOInvariantMiner;
 import synoptic.invariants.miners.TransitiveClosureInvMiner;
 import synoptic.main.options.AbstractOptions;
 import synoptic.main.options.Options;
+import synoptic.main.parser.ITraceConsumer;
 import synoptic.main.parser.ParseException;
+import synoptic.main.parser.TraceGraphCache;
 import synoptic.main.parser.TraceParser;
 import synoptic.model.ChainsTraceGraph;
+import synoptic.model.ColumnarTraceGraph;
 import synoptic.model.DAGsTraceGraph;
 import synoptic.model.EventNode;
 import synoptic.model.PartitionGraph;
+import synoptic.model.Relation;
 import synoptic.model.Trace;
+import synoptic.model.TraceGraph;
 import synoptic.model.Transition;
 import synoptic.model.event.Event;
 import synoptic.model.event.EventType;
@@ -95,6 +106,27 @@ public abstract class AbstractMain {
      */
     public static Options plumeOpts = null;
 
+    private static final Histogram miningSeconds = Metrics.histogram(
+            "synoptic_mining_seconds", "Time spent mining invariants",
+            Histogram.secondsBuckets);
+    private static final Gauge minedInvariants = Metrics.gauge(
+            "synoptic_mined_invariants",
+            "Number of invariants mined from the input log");
+    private static final Histogram refinementSeconds = Metrics.histogram(
+            "synoptic_refinement_seconds",
+            "Time spent refining the initial partition graph",
+            Histogram.secondsBuckets);
+    private static final Histogram coarseningSeconds = Metrics.histogram(
+            "synoptic_coarsening_seconds",
+            "Time spent coarsening the refined partition graph",
+            Histogram.secondsBuckets);
+    private static final Histogram exportSeconds = Metrics.histogram(
+            "synoptic_export_seconds", "Time spent exporting the final model",
+            Histogram.secondsBuckets);
+    private static final Gauge partitions = Metrics.gauge(
+            "synoptic_partitions",
+            "Number of partitions in the partition graph");
+
     /**
      * Return the singleton instance of AbstractMain, first asserting that the
      * instance isn't null.
@@ -170,7 +202,13 @@ public abstract class AbstractMain {
             return null;
         }
 
-        if (AbstractOptions.plumeOpts.logFilenames.size() == 0) {
+        if (options.resume) {
+            if (options.checkpointFile == null) {
+                logger.severe("Cannot resume without a checkpoint file. Set this file with:\n\t"
+                        + AbstractOptions.plumeOpts.getOptDesc("checkpointFile"));
+                return null;
+            }
+        } else if (AbstractOptions.plumeOpts.logFilenames.size() == 0) {
             logger.severe("No log filenames specified, exiting. Specify log files at the end of the command line with no options.");
             return null;
         }
@@ -198,6 +236,26 @@ public abstract class AbstractMain {
         logger.info(msg + (System.currentTimeMillis() - startTime) + "ms");
     }
 
+    /**
+     * Enables metrics and starts exporting them to the metrics file, if one
+     * was specified in the options. The returned exporter must be closed at
+     * the end of the run.
+     * 
+     * @return The exporter, or null if no metrics file was specified.
+     * @throws IOException
+     */
+    public MetricsExporter startMetricsExporter() throws IOException {
+        if (options.metricsFile == null) {
+            return null;
+        }
+        MetricsExporter.Format format = MetricsExporter.Format
+                .parse(options.metricsFormat);
+        logger.info("Writing metrics to " + options.metricsFile + " every "
+                + options.metricsInterval + "s");
+        return new MetricsExporter(new File(options.metricsFile), format,
+                options.metricsInterval);
+    }
+
     /**
      * Sets up and configures the Main.logger object based on command line
      * arguments.
@@ -372,17 +430,8 @@ public abstract class AbstractMain {
                 !options.exportAsGML);
     }
 
-    private void processPOLog(TraceParser parserIn, List<EventNode> parsedEvents)
+    private void processPOLog(DAGsTraceGraph traceGraph)
             throws ParseException, FileNotFoundException {
-        TraceParser parser = parserIn;
-
-        // //////////////////
-        DAGsTraceGraph traceGraph = genDAGsTraceGraph(parser, parsedEvents);
-        // //////////////////
-
-        // Parser can be garbage-collected.
-        parser = null;
-
         // TODO: vector time index sets aren't used yet.
         if (AbstractOptions.separateVTimeIndexSets != null) {
             // separateVTimeIndexSets is assumed to be in a format like:
@@ -459,6 +508,86 @@ public abstract class AbstractMain {
         return parsedEvents;
     }
 
+    /**
+     * Parses all the log filenames in streaming mode, adding each trace to the
+     * returned trace graph as soon as it has been parsed. The parser must be
+     * configured to parse totally ordered logs.
+     * 
+     * @param parser
+     * @param logFilenames
+     * @return
+     * @throws Exception
+     */
+    static public ChainsTraceGraph parseChainsTraceGraph(TraceParser parser,
+            List<String> logFilenames) throws Exception {
+        assert parser.logTimeTypeIsTotallyOrdered();
+        long startTime = loggerInfoStart("Parsing input files and generating inter-event temporal relation..");
+
+        final ChainsTraceGraph traceGraph = new ChainsTraceGraph();
+        ITraceConsumer consumer = new ITraceConsumer() {
+            @Override
+            public void addTrace(List<EventNode> events,
+                    Map<EventNode, Set<Relation>> eventRelations)
+                    throws ParseException {
+                for (EventNode event : events) {
+                    traceGraph.add(event);
+                }
+                traceGraph.addTrace(events, eventRelations);
+            }
+        };
+
+        for (String fileArg : logFilenames) {
+            logger.fine("\tprocessing fileArg: " + fileArg);
+            File[] files = getFiles(fileArg);
+            if (files.length == 0) {
+                throw new ParseException(
+                        "The set of input files is empty. Please specify a set of existing files to parse.");
+            }
+            for (File file : files) {
+                logger.fine("\tcalling parseTraceFileStreaming with file: "
+                        + file.getAbsolutePath());
+                parser.parseTraceFileStreaming(file, -1, consumer);
+            }
+        }
+        loggerInfoEnd("Parsing took ", startTime);
+
+        return traceGraph;
+    }
+
+    /**
+     * Parses all the log filenames in streaming mode into a columnar trace
+     * graph, without keeping any event nodes. The parser must be configured to
+     * parse totally ordered logs.
+     * 
+     * @param parser
+     * @param logFilenames
+     * @return
+     * @throws Exception
+     */
+    static public ColumnarTraceGraph parseColumnarTraceGraph(
+            TraceParser parser, List<String> logFilenames) throws Exception {
+        assert parser.logTimeTypeIsTotallyOrdered();
+        long startTime = loggerInfoStart("Parsing input files into a columnar trace store..");
+
+        ColumnarTraceGraph columns = new ColumnarTraceGraph();
+        for (String fileArg : logFilenames) {
+            logger.fine("\tprocessing fileArg: " + fileArg);
+            File[] files = getFiles(fileArg);
+            if (files.length == 0) {
+                throw new ParseException(
+                        "The set of input files is empty. Please specify a set of existing files to parse.");
+            }
+            for (File file : files) {
+                logger.fine("\tcalling parseTraceFileStreaming with file: "
+                        + file.getAbsolutePath());
+                parser.parseTraceFileStreaming(file, -1, columns);
+            }
+        }
+        loggerInfoEnd("Parsing took ", startTime);
+
+        return columns;
+    }
+
     static public ChainsTraceGraph genChainsTraceGraph(TraceParser parser,
             List<EventNode> parsedEvents) throws ParseException {
         long startTime = loggerInfoStart("Generating inter-event temporal relation...");
@@ -490,18 +619,51 @@ public abstract class AbstractMain {
         return mineTOInvariantsCommon(useTransitiveClosureMining, traceGraph);
     }
 
+    /**
+     * Returns whether the invariants of a log can be mined directly from its
+     * columnar trace graph with the current options, which is only the case
+     * for the (array-counting) chain walking miner over single relation
+     * paths.
+     */
+    private boolean canMineColumnarTraceGraph(boolean useTransitiveClosureMining) {
+        return !useTransitiveClosureMining && !options.multipleRelations
+                && !options.useMapCountingMining
+                && !options.usePerformanceInfo;
+    }
+
+    /**
+     * Mines and returns the totally ordered invariants from the columnar trace
+     * graph of the input log (see canMineColumnarTraceGraph).
+     */
+    private TemporalInvariantSet mineTOInvariants(ColumnarTraceGraph columns) {
+        ChainWalkingTOInvMiner miner = new ChainWalkingTOInvMiner(true,
+                options.miningThreads);
+        long startTime = loggerInfoStart("Mining invariants ["
+                + miner.getClass().getName() + ", columnar trace store]..");
+        long timer = Metrics.startTimer();
+        TemporalInvariantSet minedInvs = miner.computeInvariants(columns,
+                options.outputSupportCount);
+        miningSeconds.observeSince(timer);
+        minedInvariants.set(minedInvs.numInvariants());
+        loggerInfoEnd("Mining took ", startTime);
+        return minedInvs;
+    }
+
     protected TemporalInvariantSet mineTOInvariantsCommon(
             boolean useTransitiveClosureMining, ChainsTraceGraph traceGraph) {
         ITOInvariantMiner miner;
 
         if (useTransitiveClosureMining) {
-            miner = new TransitiveClosureInvMiner();
+            miner = new TransitiveClosureInvMiner(true,
+                    options.useBitSetTransitiveClosure);
         } else {
-            miner = new ChainWalkingTOInvMiner();
+            miner = new ChainWalkingTOInvMiner(!options.useMapCountingMining,
+                    options.miningThreads);
         }
 
         long startTime = loggerInfoStart("Mining invariants ["
                 + miner.getClass().getName() + "]..");
+        long timer = Metrics.startTimer();
         TemporalInvariantSet minedInvs = miner.computeInvariants(traceGraph,
                 options.multipleRelations, options.outputSupportCount);
 
@@ -517,6 +679,8 @@ public abstract class AbstractMain {
             }
         }
 
+        miningSeconds.observeSince(timer);
+        minedInvariants.set(minedInvs.numInvariants());
         loggerInfoEnd("Mining took ", startTime);
 
         // Miner can be garbage-collected.
@@ -537,20 +701,50 @@ public abstract class AbstractMain {
 
         IPOInvariantMiner miner;
         if (useTransitiveClosureMining) {
-            miner = new TransitiveClosureInvMiner();
+            miner = new TransitiveClosureInvMiner(true,
+                    options.useBitSetTransitiveClosure);
         } else {
-            miner = new DAGWalkingPOInvMiner(options.mineNeverConcurrentWithInv);
+            miner = new DAGWalkingPOInvMiner(
+                    options.mineNeverConcurrentWithInv, options.miningThreads);
         }
 
         long startTime = loggerInfoStart("Mining invariants ["
                 + miner.getClass().getName() + "]..");
+        long timer = Metrics.startTimer();
         TemporalInvariantSet minedInvs = miner.computeInvariants(traceGraph);
+        miningSeconds.observeSince(timer);
+        minedInvariants.set(minedInvs.numInvariants());
         loggerInfoEnd("Mining took ", startTime);
         // Miner can be garbage-collected.
         miner = null;
         return minedInvs;
     }
 
+    /**
+     * Returns the cache of the trace graph of the input log files, or null if
+     * trace graphs are not cached.
+     */
+    private TraceGraphCache getTraceGraphCache(boolean columnar)
+            throws Exception {
+        if (options.traceGraphCacheDir == null || options.debugParse) {
+            return null;
+        }
+        if (columnar) {
+            logger.warning("Trace graphs are not cached with a columnar trace store. Continuing without the cache.");
+            return null;
+        }
+        List<File> logFiles = new ArrayList<File>();
+        for (String fileArg : AbstractOptions.plumeOpts.logFilenames) {
+            logFiles.addAll(Arrays.asList(getFiles(fileArg)));
+        }
+        if (logFiles.isEmpty()) {
+            // Parsing reports the missing files.
+            return null;
+        }
+        return new TraceGraphCache(new File(options.traceGraphCacheDir),
+                options, logFiles);
+    }
+
     /**
      * Uses the values of static variables in Main to (1) read and parse the
      * input log files, (2) to mine invariants from the parsed files, and (3)
@@ -565,10 +759,47 @@ public abstract class AbstractMain {
         TraceParser parser = new TraceParser(options.regExps,
                 AbstractOptions.partitionRegExp,
                 AbstractOptions.separatorRegExp, options.dateFormat);
-        List<EventNode> parsedEvents;
+        boolean columnar = options.columnarTraceStore;
+        if (columnar && !parser.logTimeTypeIsTotallyOrdered()) {
+            logger.warning("A columnar trace store was requested, but this is only supported for totally ordered logs. Continuing without it.");
+            columnar = false;
+        }
+        boolean streaming = options.streamingParse || columnar;
+        if (streaming && !parser.logTimeTypeIsTotallyOrdered()) {
+            logger.warning("Streaming parsing was requested, but this is only supported for totally ordered logs. Continuing without streaming.");
+            streaming = false;
+        }
+
+        // Reuses the trace graph of an earlier run over the same logs, if it
+        // was cached.
+        TraceGraphCache cache = getTraceGraphCache(columnar);
+        TraceGraph<?> cachedGraph = null;
+        if (cache != null) {
+            long startTime = System.currentTimeMillis();
+            cachedGraph = cache.read();
+            if (cachedGraph != null) {
+                loggerInfoEnd("Read the trace graph ["
+                        + cachedGraph.getNodes().size() + " nodes] from "
+                        + cache.getFile() + " in ", startTime);
+            }
+        }
+
+        List<EventNode> parsedEvents = null;
+        ChainsTraceGraph traceGraph = null;
+        ColumnarTraceGraph columns = null;
         try {
-            parsedEvents = parseEvents(parser,
-                    AbstractOptions.plumeOpts.logFilenames);
+            if (cachedGraph != null) {
+                // Nothing to parse.
+            } else if (columnar) {
+                columns = parseColumnarTraceGraph(parser,
+                        AbstractOptions.plumeOpts.logFilenames);
+            } else if (streaming) {
+                traceGraph = parseChainsTraceGraph(parser,
+                        AbstractOptions.plumeOpts.logFilenames);
+            } else {
+                parsedEvents = parseEvents(parser,
+                        AbstractOptions.plumeOpts.logFilenames);
+            }
         } catch (ParseException e) {
             logger.severe("Caught ParseException -- unable to continue, exiting. Try cmd line option:\n\t"
                     + AbstractOptions.plumeOpts.getOptDesc("help"));
@@ -582,21 +813,62 @@ public abstract class AbstractMain {
             return null;
         }
 
-        // PO Logs are processed differently.
-        if (!parser.logTimeTypeIsTotallyOrdered()) {
-            logger.warning("Partially ordered log input detected. Only mining invariants since refinement/coarsening is not yet supported.");
-            processPOLog(parser, parsedEvents);
+        if (cachedGraph instanceof DAGsTraceGraph) {
+            processPOLog((DAGsTraceGraph) cachedGraph);
             return null;
-        }
+        } else if (cachedGraph != null) {
+            traceGraph = (ChainsTraceGraph) cachedGraph;
+        } else if (columnar) {
+            if (columns.getNumTraces() == 0) {
+                logger.severe("Did not parse any events from the input log files. Stopping.");
+                return null;
+            }
+            logger.info("Stored " + columns.getNumEvents() + " events of "
+                    + columns.getNumTraces() + " traces in columns");
+            // Event nodes are only created when they are needed.
+            if (options.traceNormalization || options.dumpTraceGraphDotFile
+                    || !canMineColumnarTraceGraph(options.useTransitiveClosureMining)) {
+                traceGraph = columns.toChainsTraceGraph();
+                columns = null;
+            }
+        } else if (streaming) {
+            if (traceGraph.getNumTraces() == 0) {
+                logger.severe("Did not parse any events from the input log files. Stopping.");
+                return null;
+            }
+            if (cache != null) {
+                cache.write(traceGraph);
+            }
+        } else {
+            // PO Logs are processed differently.
+            if (!parser.logTimeTypeIsTotallyOrdered()) {
+                logger.warning("Partially ordered log input detected. Only mining invariants since refinement/coarsening is not yet supported.");
+                // //////////////////
+                DAGsTraceGraph dagsGraph = genDAGsTraceGraph(parser,
+                        parsedEvents);
+                // //////////////////
+                if (cache != null) {
+                    cache.write(dagsGraph);
+                }
+                // Parsing information can be garbage-collected.
+                parser = null;
+                parsedEvents = null;
+                processPOLog(dagsGraph);
+                return null;
+            }
 
-        if (parsedEvents.size() == 0) {
-            logger.severe("Did not parse any events from the input log files. Stopping.");
-            return null;
-        }
+            if (parsedEvents.size() == 0) {
+                logger.severe("Did not parse any events from the input log files. Stopping.");
+                return null;
+            }
 
-        // //////////////////
-        ChainsTraceGraph traceGraph = genChainsTraceGraph(parser, parsedEvents);
-        // //////////////////
+            // //////////////////
+            traceGraph = genChainsTraceGraph(parser, parsedEvents);
+            // //////////////////
+            if (cache != null) {
+                cache.write(traceGraph);
+            }
+        }
 
         // Parsing information can be garbage-collected.
         parser = null;
@@ -615,8 +887,13 @@ public abstract class AbstractMain {
         }
 
         // //////////////////
-        TemporalInvariantSet minedInvs = mineTOInvariants(
-                options.useTransitiveClosureMining, traceGraph);
+        TemporalInvariantSet minedInvs;
+        if (columns != null) {
+            minedInvs = mineTOInvariants(columns);
+        } else {
+            minedInvs = mineTOInvariants(options.useTransitiveClosureMining,
+                    traceGraph);
+        }
         // //////////////////
 
         logger.info("Mined " + minedInvs.numInvariants() + " invariants");
@@ -699,6 +976,13 @@ public abstract class AbstractMain {
             return null;
         }
 
+        if (columns != null) {
+            long startTime = loggerInfoStart("Creating trace graph from columnar trace store..");
+            traceGraph = columns.toChainsTraceGraph();
+            columns = null;
+            loggerInfoEnd("Creating trace graph took ", startTime);
+        }
+
         // //////////////////
         // Create the initial partitioning graph.
         long startTime = loggerInfoStart("Creating initial partition graph.");
@@ -811,7 +1095,43 @@ public abstract class AbstractMain {
      *            The initial graph model to start refining.
      */
     public void runSynoptic(PartitionGraph pGraph) {
+        runSynoptic(pGraph, true);
+    }
+
+    /**
+     * Resumes the Synoptic algorithm from the checkpoint in the checkpoint
+     * file, without parsing the log or mining invariants. A checkpoint taken
+     * during refinement resumes refinement, and a checkpoint taken during
+     * coarsening resumes coarsening.
+     * 
+     * @throws IOException
+     *             if the checkpoint cannot be read
+     */
+    public void resumeSynoptic() throws IOException {
+        long startTime = loggerInfoStart("Reading checkpoint from "
+                + options.checkpointFile + "...");
+        RefinementCheckpoint checkpoint = RefinementCheckpoint.read(new File(
+                options.checkpointFile));
+        PartitionGraph pGraph = checkpoint.getPartitionGraph();
+        loggerInfoEnd("Reading checkpoint [" + pGraph.getNodes().size()
+                + " partitions, " + pGraph.getInvariants().numInvariants()
+                + " invariants] took ", startTime);
+        runSynoptic(pGraph,
+                checkpoint.getStage() == RefinementCheckpoint.Stage.REFINEMENT);
+    }
+
+    /**
+     * Runs the Synoptic algorithm starting from pGraph, skipping the
+     * refinement if refine is false (i.e., pGraph already satisfies all of its
+     * invariants).
+     */
+    private void runSynoptic(PartitionGraph pGraph, boolean refine) {
         long startTime;
+        long timer;
+
+        if (Metrics.isEnabled()) {
+            partitions.set(pGraph.getNodes().size());
+        }
 
         if (options.logLvlVerbose || options.logLvlExtraVerbose) {
             System.out.println("");
@@ -819,9 +1139,15 @@ public abstract class AbstractMain {
         }
 
         // //////////////////
-        startTime = loggerInfoStart("Refining (Splitting)...");
-        Bisimulation.splitUntilAllInvsSatisfied(pGraph);
-        loggerInfoEnd("Splitting took ", startTime);
+        if (refine) {
+            startTime = loggerInfoStart("Refining (Splitting)...");
+            timer = Metrics.startTimer();
+            Bisimulation.splitUntilAllInvsSatisfied(pGraph);
+            refinementSeconds.observeSince(timer);
+            loggerInfoEnd("Splitting took ", startTime);
+        } else {
+            logger.info("Skipping refinement, the checkpoint was taken after refinement.");
+        }
         // //////////////////
 
         if (options.logLvlVerbose || options.logLvlExtraVerbose) {
@@ -831,7 +1157,12 @@ public abstract class AbstractMain {
 
         // //////////////////
         startTime = loggerInfoStart("Coarsening (Merging)..");
+        timer = Metrics.startTimer();
         Bisimulation.mergePartitions(pGraph);
+        coarseningSeconds.observeSince(timer);
+        if (Metrics.isEnabled()) {
+            partitions.set(pGraph.getNodes().size());
+        }
         loggerInfoEnd("Merging took ", startTime);
         // //////////////////
 
@@ -845,9 +1176,11 @@ public abstract class AbstractMain {
             logger.info("Exporting final graph [" + pGraph.getNodes().size()
                     + " nodes]..");
             startTime = System.currentTimeMillis();
+            timer = Metrics.startTimer();
 
             exportNonInitialGraph(AbstractOptions.outputPathPrefix, pGraph);
 
+            exportSeconds.observeSince(timer);
             logger.info("Exporting took "
                     + (System.currentTimeMillis() - startTime) + "ms");
 
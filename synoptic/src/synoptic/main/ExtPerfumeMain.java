@@ -120,7 +120,8 @@ public class ExtPerfumeMain extends PerfumeMain {
 
         // Mine performance-constrained invariants TODO above
         long startTime = loggerInfoStart("Mining performance-constrained invariants...");
-        ConstrainedInvMiner constrainedMiner = new ConstrainedInvMiner();
+        ConstrainedInvMiner constrainedMiner = new ConstrainedInvMiner(true,
+                options.miningThreads);
 
         // Augment unconstrained invariants with performance information. A
         // 'false' parameter is hard-coded because Perfume does not support the
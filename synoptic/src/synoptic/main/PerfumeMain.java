@@ -5,6 +5,9 @@ import java.net.URISyntaxException;
 import java.util.Locale;
 import java.util.Random;
 
+import synoptic.benchmarks.Histogram;
+import synoptic.benchmarks.Metrics;
+import synoptic.benchmarks.MetricsExporter;
 import synoptic.invariants.TemporalInvariantSet;
 import synoptic.invariants.miners.ConstrainedInvMiner;
 import synoptic.main.options.AbstractOptions;
@@ -20,6 +23,11 @@ import synoptic.util.InternalSynopticException;
  */
 public class PerfumeMain extends AbstractMain {
 
+    private static final Histogram constrainedMiningSeconds = Metrics
+            .histogram("synoptic_constrained_mining_seconds",
+                    "Time spent mining performance-constrained invariants",
+                    Histogram.secondsBuckets);
+
     /**
      * Return the singleton instance of PerfumeMain, first asserting that the
      * instance isn't null.
@@ -43,17 +51,27 @@ public class PerfumeMain extends AbstractMain {
             return;
         }
 
+        MetricsExporter metricsExporter = mainInstance.startMetricsExporter();
         try {
             Locale.setDefault(Locale.US);
 
-            PartitionGraph pGraph = mainInstance.createInitialPartitionGraph();
-            if (pGraph != null) {
-                mainInstance.runSynoptic(pGraph);
+            if (mainInstance.options.resume) {
+                mainInstance.resumeSynoptic();
+            } else {
+                PartitionGraph pGraph = mainInstance
+                        .createInitialPartitionGraph();
+                if (pGraph != null) {
+                    mainInstance.runSynoptic(pGraph);
+                }
             }
         } catch (ParseException e) {
             throw e;
         } catch (Exception e) {
             throw InternalSynopticException.wrap(e);
+        } finally {
+            if (metricsExporter != null) {
+                metricsExporter.close();
+            }
         }
     }
 
@@ -126,13 +144,16 @@ public class PerfumeMain extends AbstractMain {
 
         // Mine performance-constrained invariants
         long startTime = loggerInfoStart("Mining performance-constrained invariants...");
-        ConstrainedInvMiner constrainedMiner = new ConstrainedInvMiner();
+        ConstrainedInvMiner constrainedMiner = new ConstrainedInvMiner(true,
+                options.miningThreads);
 
         // Augment unconstrained invariants with performance information. A
         // 'false' parameter is hard-coded because Perfume does not support the
         // multipleRelations flag.
+        long timer = Metrics.startTimer();
         TemporalInvariantSet allInvs = constrainedMiner.computeInvariants(
                 traceGraph, false, unconstrainedInvs);
+        constrainedMiningSeconds.observeSince(timer);
 
         loggerInfoEnd("Constrained mining took ", startTime);
 
@@ -5,6 +5,7 @@ import java.net.URISyntaxException;
 import java.util.Locale;
 import java.util.Random;
 
+import synoptic.benchmarks.MetricsExporter;
 import synoptic.main.options.AbstractOptions;
 import synoptic.main.options.SynopticOptions;
 import synoptic.main.parser.ParseException;
@@ -41,17 +42,27 @@ public class SynopticMain extends AbstractMain {
             return;
         }
 
+        MetricsExporter metricsExporter = mainInstance.startMetricsExporter();
         try {
             Locale.setDefault(Locale.US);
 
-            PartitionGraph pGraph = mainInstance.createInitialPartitionGraph();
-            if (pGraph != null) {
-                mainInstance.runSynoptic(pGraph);
+            if (mainInstance.options.resume) {
+                mainInstance.resumeSynoptic();
+            } else {
+                PartitionGraph pGraph = mainInstance
+                        .createInitialPartitionGraph();
+                if (pGraph != null) {
+                    mainInstance.runSynoptic(pGraph);
+                }
             }
         } catch (ParseException e) {
             throw e;
         } catch (Exception e) {
             throw InternalSynopticException.wrap(e);
+        } finally {
+            if (metricsExporter != null) {
+                metricsExporter.close();
+            }
         }
     }
 
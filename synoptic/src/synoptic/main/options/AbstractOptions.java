@@ -70,6 +70,15 @@ public class AbstractOptions {
     static final String termOnInterdiateModelStr = "-t Terminate on intermediate model output";
     public boolean termOnIntermediateModel = false;
 
+    static final String incrementalModelCheckingStr = "Reuse model checker state across refinement iterations and only re-check partitions downstream of the applied splits";
+    public boolean incrementalModelChecking = false;
+
+    static final String refinementThreadsStr = "Number of threads used to evaluate candidate splits in parallel during refinement (1 evaluates them sequentially)";
+    public int refinementThreads = 1;
+
+    static final String miningThreadsStr = "Number of threads used to walk and count traces in parallel when mining invariants and their time constraints";
+    public int miningThreads = 1;
+
     // ////////////////////////////
     // Parser Options
     // ////////////////////////////
@@ -103,6 +112,18 @@ public class AbstractOptions {
     static final String dateFormatStr = "Format of the dates contained in the log (required by DATETIME)";
     public String dateFormat = "dd/MMM/yyyy:HH:mm:ss";
 
+    static final String streamingParseStr = "Parse totally ordered logs in streaming mode, building each trace as soon as it is complete (requires the lines of each partition to be contiguous in the log)";
+    public boolean streamingParse = false;
+
+    static final String columnarTraceStoreStr = "Keep the traces of totally ordered logs in a compact columnar store, mine invariants directly from it when possible, and only create event nodes for the partition graph (implies streamingParse)";
+    public boolean columnarTraceStore = false;
+
+    static final String parsingThreadsStr = "Number of threads used to match log lines against the regular expressions (1 matches all lines sequentially)";
+    public int parsingThreads = 1;
+
+    static final String traceGraphCacheDirStr = "Cache the trace graphs of parsed logs in this directory, keyed by the contents of the log files and the parser options, and reuse them instead of parsing the same logs again";
+    public String traceGraphCacheDir = null;
+
     // ////////////////////////////
     // Input options
     // ////////////////////////////
@@ -156,6 +177,9 @@ public class AbstractOptions {
     static final String showMedianStr = "Show median metric value on edges in addition to min and max";
     public boolean showMedian = false;
 
+    static final String useQuantileSketchesStr = "Summarize the metric values of each transition with a bounded-size quantile sketch (exact min, max, and mean; approximate median) instead of keeping all values";
+    public boolean useQuantileSketches = false;
+
     static final String showTerminalNodeStr = "Show TERMINAL node in generated graphs.";
     public boolean showTerminalNode = true;
 
@@ -201,6 +225,12 @@ public class AbstractOptions {
     static final String useTransitiveClosureMiningStr = "Use the transitive closure invariant mining algorithm (usually slower)";
     public boolean useTransitiveClosureMining = false;
 
+    static final String useBitSetTransitiveClosureStr = "Store the transitive closure as per-trace bit-sets when using the transitive closure invariant mining algorithm";
+    public boolean useBitSetTransitiveClosure = false;
+
+    static final String useMapCountingMiningStr = "Count event pairs with maps keyed by event types, instead of arrays indexed by event type ids, when mining totally ordered invariants (slower; for comparison)";
+    public boolean useMapCountingMining = false;
+
     static final String mineNeverConcurrentWithInvStr = "Mine the NeverConcurrentWith invariant (only changes behavior for PO traces with useTransitiveClosureMining=false)";
     public boolean mineNeverConcurrentWithInv = true;
 
@@ -213,6 +243,24 @@ public class AbstractOptions {
     static final String doBenchmarkingStr = "Perform benchmarking and output benchmark information";
     public boolean doBenchmarking = false;
 
+    static final String metricsFileStr = "Record pipeline metrics (counters, gauges, and histograms) and periodically write snapshots of them to this file";
+    public String metricsFile = null;
+
+    static final String metricsFormatStr = "Format of the metrics file: json (one JSON object per snapshot, appended to the file) or prometheus (text exposition format, replaced with the latest snapshot)";
+    public String metricsFormat = "json";
+
+    static final String metricsIntervalStr = "Seconds between metrics snapshots (0 only writes a snapshot at the end of the run)";
+    public int metricsInterval = 10;
+
+    static final String checkpointFileStr = "Periodically write a checkpoint of the trace graph, the mined invariants, and the partitioning during refinement and coarsening to this file";
+    public String checkpointFile = null;
+
+    static final String checkpointIntervalStr = "Seconds between refinement and coarsening checkpoints";
+    public int checkpointInterval = 600;
+
+    static final String resumeStr = "Resume from the checkpoint in the checkpoint file, without parsing the log or mining invariants";
+    public boolean resume = false;
+
     static final String internCommonStringsStr = "Intern commonly occurring strings, such as event types, as a memory-usage optimization";
     public boolean internCommonStrings = true;
 
@@ -130,6 +130,34 @@ public class ExtPerfumeOptions extends Options {
      */
     public final boolean testGeneration = false;
 
+    /**
+     * Keep the model checker's per-partition state sets between refinement
+     * iterations and only re-propagate them from the partitions that the
+     * applied splits changed. Counter-examples may differ from a full re-check
+     * when several paths of equal length exist.
+     */
+    @Option(AbstractOptions.incrementalModelCheckingStr)
+    public boolean incrementalModelChecking = false;
+
+    /**
+     * Number of threads that evaluate candidate splits concurrently during
+     * refinement. Candidates are checked on read-only views of the partition
+     * graph, and the first satisfying candidate in the (seeded) shuffled order
+     * is chosen, so the result does not depend on this value.
+     */
+    @Option(AbstractOptions.refinementThreadsStr)
+    public int refinementThreads = 1;
+
+    /**
+     * Number of threads that walk and count traces in parallel when mining
+     * invariants from totally ordered logs, and that walk traces to compute
+     * the time bounds of constrained invariants. The per-thread counts are
+     * summed and the per-thread bounds combined, so the mined invariants do
+     * not depend on this value.
+     */
+    @Option(AbstractOptions.miningThreadsStr)
+    public int miningThreads = 1;
+
     // //////////////////////////////////////////////////
     /**
      * Regular expression separator string. When lines are found which match
@@ -211,6 +239,28 @@ public class ExtPerfumeOptions extends Options {
      */
     @Option(value = AbstractOptions.dateFormatStr, aliases = { "-dateFormat" })
     public String dateFormat = "dd/MMM/yyyy:HH:mm:ss";
+
+    /**
+     * Extended Perfume uses its own parser, which does not support streaming
+     */
+    public final boolean streamingParse = false;
+
+    /**
+     * Extended Perfume uses its own parser, which does not support a columnar
+     * trace store
+     */
+    public final boolean columnarTraceStore = false;
+
+    /**
+     * Extended Perfume uses its own parser, which always matches lines
+     * sequentially
+     */
+    public final int parsingThreads = 1;
+
+    /**
+     * Extended Perfume uses its own parser, which does not cache trace graphs
+     */
+    public final String traceGraphCacheDir = null;
     // end option group "Parser Options"
 
     // //////////////////////////////////////////////////
@@ -271,6 +321,14 @@ public class ExtPerfumeOptions extends Options {
     @Option(AbstractOptions.showMedianStr)
     public boolean showMedian = false;
 
+    /**
+     * Whether or not the metric values of each transition are summarized by a
+     * quantile sketch with a bounded size, which keeps the min, max, and mean
+     * exact but approximates the median of transitions with many values
+     */
+    @Option(AbstractOptions.useQuantileSketchesStr)
+    public boolean useQuantileSketches = false;
+
     /**
      * Whether or not the output graphs include the common TERMINAL state, to
      * which all final trace nodes have an edge.
@@ -367,6 +425,19 @@ public class ExtPerfumeOptions extends Options {
      */
     public final boolean useTransitiveClosureMining = false;
 
+    /**
+     * Perfume doesn't support the bit-set transitive closure backend either
+     */
+    public final boolean useBitSetTransitiveClosure = false;
+
+    /**
+     * Used to select the map-based counting backend of the chain walking
+     * invariant miner, instead of the array-based one. Both mine the same
+     * invariants.
+     */
+    @Option(AbstractOptions.useMapCountingMiningStr)
+    public boolean useMapCountingMining = false;
+
     /**
      * Perfume doesn't support the NeverConcurrentWith invariant
      */
@@ -393,6 +464,43 @@ public class ExtPerfumeOptions extends Options {
     @Option(AbstractOptions.doBenchmarkingStr)
     public boolean doBenchmarking = false;
 
+    /**
+     * Record pipeline metrics and periodically write snapshots of them to this
+     * file. This option is <i>unpublicized</i>; it will not appear in the
+     * default usage message
+     */
+    @Option(AbstractOptions.metricsFileStr)
+    public String metricsFile = null;
+
+    /**
+     * Format of the metrics file: json or prometheus. This option is
+     * <i>unpublicized</i>; it will not appear in the default usage message
+     */
+    @Option(AbstractOptions.metricsFormatStr)
+    public String metricsFormat = "json";
+
+    /**
+     * Seconds between metrics snapshots. This option is <i>unpublicized</i>;
+     * it will not appear in the default usage message
+     */
+    @Option(AbstractOptions.metricsIntervalStr)
+    public int metricsInterval = 10;
+
+    /**
+     * Extended Perfume does not checkpoint refinement or coarsening
+     */
+    public final String checkpointFile = null;
+
+    /**
+     * Extended Perfume does not checkpoint refinement or coarsening
+     */
+    public final int checkpointInterval = 600;
+
+    /**
+     * Extended Perfume does not resume from checkpoints
+     */
+    public final boolean resume = false;
+
     /**
      * Intern commonly occurring strings, such as event types, as a memory-usage
      * optimization. This option is <i>unpublicized</i>; it will not appear in
@@ -511,6 +619,9 @@ public class ExtPerfumeOptions extends Options {
         absOpts.multipleRelations = multipleRelations;
         absOpts.stateProcessing = stateProcessing;
         absOpts.testGeneration = testGeneration;
+        absOpts.incrementalModelChecking = incrementalModelChecking;
+        absOpts.refinementThreads = refinementThreads;
+        absOpts.miningThreads = miningThreads;
 
         // Parser options
 
@@ -523,6 +634,10 @@ public class ExtPerfumeOptions extends Options {
         absOpts.recoverFromParseErrors = recoverFromParseErrors;
         absOpts.debugParse = debugParse;
         absOpts.dateFormat = dateFormat;
+        absOpts.streamingParse = streamingParse;
+        absOpts.columnarTraceStore = columnarTraceStore;
+        absOpts.parsingThreads = parsingThreads;
+        absOpts.traceGraphCacheDir = traceGraphCacheDir;
 
         // Input options
 
@@ -536,6 +651,7 @@ public class ExtPerfumeOptions extends Options {
         AbstractOptions.dotExecutablePath = dotExecutablePath;
         absOpts.outputEdgeLabels = outputEdgeLabels;
         absOpts.showMedian = showMedian;
+        absOpts.useQuantileSketches = useQuantileSketches;
         absOpts.showTerminalNode = showTerminalNode;
         absOpts.showInitialNode = showInitialNode;
         absOpts.outputJSON = outputJSON;
@@ -553,10 +669,18 @@ public class ExtPerfumeOptions extends Options {
         absOpts.logLvlExtraVerbose = logLvlExtraVerbose;
         AbstractOptions.ignoreInvsOverETypeSet = ignoreInvsOverETypeSet;
         absOpts.useTransitiveClosureMining = useTransitiveClosureMining;
+        absOpts.useBitSetTransitiveClosure = useBitSetTransitiveClosure;
+        absOpts.useMapCountingMining = useMapCountingMining;
         absOpts.mineNeverConcurrentWithInv = mineNeverConcurrentWithInv;
         absOpts.onlyMineInvariants = onlyMineInvariants;
         absOpts.noCoarsening = noCoarsening;
         absOpts.doBenchmarking = doBenchmarking;
+        absOpts.metricsFile = metricsFile;
+        absOpts.metricsFormat = metricsFormat;
+        absOpts.metricsInterval = metricsInterval;
+        absOpts.checkpointFile = checkpointFile;
+        absOpts.checkpointInterval = checkpointInterval;
+        absOpts.resume = resume;
         absOpts.internCommonStrings = internCommonStrings;
         absOpts.runTests = runTests;
         absOpts.runAllTests = runAllTests;
@@ -91,6 +91,34 @@ public class PerfumeOptions extends Options {
      */
     public boolean ignoreIntrByInvs = false;
 
+    /**
+     * Keep the model checker's per-partition state sets between refinement
+     * iterations and only re-propagate them from the partitions that the
+     * applied splits changed. Counter-examples may differ from a full re-check
+     * when several paths of equal length exist.
+     */
+    @Option(AbstractOptions.incrementalModelCheckingStr)
+    public boolean incrementalModelChecking = false;
+
+    /**
+     * Number of threads that evaluate candidate splits concurrently during
+     * refinement. Candidates are checked on read-only views of the partition
+     * graph, and the first satisfying candidate in the (seeded) shuffled order
+     * is chosen, so the result does not depend on this value.
+     */
+    @Option(AbstractOptions.refinementThreadsStr)
+    public int refinementThreads = 1;
+
+    /**
+     * Number of threads that walk and count traces in parallel when mining
+     * invariants from totally ordered logs, and that walk traces to compute
+     * the time bounds of constrained invariants. The per-thread counts are
+     * summed and the per-thread bounds combined, so the mined invariants do
+     * not depend on this value.
+     */
+    @Option(AbstractOptions.miningThreadsStr)
+    public int miningThreads = 1;
+
     // //////////////////////////////////////////////////
     /**
      * Regular expression separator string. When lines are found which match
@@ -172,6 +200,37 @@ public class PerfumeOptions extends Options {
      */
     @Option(value = AbstractOptions.dateFormatStr, aliases = { "-dateFormat" })
     public String dateFormat = "dd/MMM/yyyy:HH:mm:ss";
+
+    /**
+     * Parse the log in streaming mode, in which each trace is added to the
+     * trace graph as soon as it is complete, instead of first parsing all of
+     * the log into memory.
+     */
+    @Option(AbstractOptions.streamingParseStr)
+    public boolean streamingParse = false;
+
+    /**
+     * Keep the parsed traces in a columnar store of primitive arrays while
+     * parsing. The event nodes are created before mining, since constrained
+     * invariants are mined from the trace graph. Implies streamingParse.
+     */
+    @Option(AbstractOptions.columnarTraceStoreStr)
+    public boolean columnarTraceStore = false;
+
+    /**
+     * Number of threads used to match the lines of the log against the
+     * regular expressions. Matched lines are still processed in log order.
+     */
+    @Option(AbstractOptions.parsingThreadsStr)
+    public int parsingThreads = 1;
+
+    /**
+     * Directory in which to cache the trace graphs of parsed logs, so that
+     * later runs over the same logs, with the same parser options, skip
+     * parsing.
+     */
+    @Option(AbstractOptions.traceGraphCacheDirStr)
+    public String traceGraphCacheDir = null;
     // end option group "Parser Options"
 
     // //////////////////////////////////////////////////
@@ -244,6 +303,14 @@ public class PerfumeOptions extends Options {
     @Option(AbstractOptions.showMedianStr)
     public boolean showMedian = false;
 
+    /**
+     * Whether or not the metric values of each transition are summarized by a
+     * quantile sketch with a bounded size, which keeps the min, max, and mean
+     * exact but approximates the median of transitions with many values
+     */
+    @Option(AbstractOptions.useQuantileSketchesStr)
+    public boolean useQuantileSketches = false;
+
     /**
      * Whether or not the output graphs include the common TERMINAL state, to
      * which all final trace nodes have an edge.
@@ -340,6 +407,19 @@ public class PerfumeOptions extends Options {
      */
     public final boolean useTransitiveClosureMining = false;
 
+    /**
+     * Perfume doesn't support the bit-set transitive closure backend either
+     */
+    public final boolean useBitSetTransitiveClosure = false;
+
+    /**
+     * Used to select the map-based counting backend of the chain walking
+     * invariant miner, instead of the array-based one. Both mine the same
+     * invariants.
+     */
+    @Option(AbstractOptions.useMapCountingMiningStr)
+    public boolean useMapCountingMining = false;
+
     /**
      * Perfume doesn't support the NeverConcurrentWith invariant
      */
@@ -366,6 +446,52 @@ public class PerfumeOptions extends Options {
     @Option(AbstractOptions.doBenchmarkingStr)
     public boolean doBenchmarking = false;
 
+    /**
+     * Record pipeline metrics and periodically write snapshots of them to this
+     * file. This option is <i>unpublicized</i>; it will not appear in the
+     * default usage message
+     */
+    @Option(AbstractOptions.metricsFileStr)
+    public String metricsFile = null;
+
+    /**
+     * Format of the metrics file: json or prometheus. This option is
+     * <i>unpublicized</i>; it will not appear in the default usage message
+     */
+    @Option(AbstractOptions.metricsFormatStr)
+    public String metricsFormat = "json";
+
+    /**
+     * Seconds between metrics snapshots. This option is <i>unpublicized</i>;
+     * it will not appear in the default usage message
+     */
+    @Option(AbstractOptions.metricsIntervalStr)
+    public int metricsInterval = 10;
+
+    /**
+     * Periodically write a checkpoint of the trace graph, the mined
+     * invariants, and the partitioning during refinement and coarsening to
+     * this file. This option is <i>unpublicized</i>; it will not appear in the
+     * default usage message
+     */
+    @Option(AbstractOptions.checkpointFileStr)
+    public String checkpointFile = null;
+
+    /**
+     * Seconds between refinement and coarsening checkpoints. This option is
+     * <i>unpublicized</i>; it will not appear in the default usage message
+     */
+    @Option(AbstractOptions.checkpointIntervalStr)
+    public int checkpointInterval = 600;
+
+    /**
+     * Resume from the checkpoint in the checkpoint file, without parsing the
+     * log or mining invariants. This option is <i>unpublicized</i>; it will
+     * not appear in the default usage message
+     */
+    @Option(AbstractOptions.resumeStr)
+    public boolean resume = false;
+
     /**
      * Intern commonly occurring strings, such as event types, as a memory-usage
      * optimization. This option is <i>unpublicized</i>; it will not appear in
@@ -477,6 +603,9 @@ public class PerfumeOptions extends Options {
         absOpts.stateProcessing = stateProcessing;
         absOpts.testGeneration = testGeneration;
         absOpts.ignoreIntrByInvs = ignoreIntrByInvs;
+        absOpts.incrementalModelChecking = incrementalModelChecking;
+        absOpts.refinementThreads = refinementThreads;
+        absOpts.miningThreads = miningThreads;
 
         // Parser options
 
@@ -489,6 +618,10 @@ public class PerfumeOptions extends Options {
         absOpts.recoverFromParseErrors = recoverFromParseErrors;
         absOpts.debugParse = debugParse;
         absOpts.dateFormat = dateFormat;
+        absOpts.streamingParse = streamingParse;
+        absOpts.columnarTraceStore = columnarTraceStore;
+        absOpts.parsingThreads = parsingThreads;
+        absOpts.traceGraphCacheDir = traceGraphCacheDir;
 
         // Input options
 
@@ -504,6 +637,7 @@ public class PerfumeOptions extends Options {
         AbstractOptions.dotExecutablePath = dotExecutablePath;
         absOpts.outputEdgeLabels = outputEdgeLabels;
         absOpts.showMedian = showMedian;
+        absOpts.useQuantileSketches = useQuantileSketches;
         absOpts.showTerminalNode = showTerminalNode;
         absOpts.showInitialNode = showInitialNode;
         absOpts.outputJSON = outputJSON;
@@ -521,10 +655,18 @@ public class PerfumeOptions extends Options {
         absOpts.logLvlExtraVerbose = logLvlExtraVerbose;
         AbstractOptions.ignoreInvsOverETypeSet = ignoreInvsOverETypeSet;
         absOpts.useTransitiveClosureMining = useTransitiveClosureMining;
+        absOpts.useBitSetTransitiveClosure = useBitSetTransitiveClosure;
+        absOpts.useMapCountingMining = useMapCountingMining;
         absOpts.mineNeverConcurrentWithInv = mineNeverConcurrentWithInv;
         absOpts.onlyMineInvariants = onlyMineInvariants;
         absOpts.noCoarsening = noCoarsening;
         absOpts.doBenchmarking = doBenchmarking;
+        absOpts.metricsFile = metricsFile;
+        absOpts.metricsFormat = metricsFormat;
+        absOpts.metricsInterval = metricsInterval;
+        absOpts.checkpointFile = checkpointFile;
+        absOpts.checkpointInterval = checkpointInterval;
+        absOpts.resume = resume;
         absOpts.internCommonStrings = internCommonStrings;
         absOpts.runTests = runTests;
         absOpts.runAllTests = runAllTests;
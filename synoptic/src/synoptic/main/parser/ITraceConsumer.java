@@ -0,0 +1,27 @@
+package synoptic.main.parser;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import synoptic.model.EventNode;
+import synoptic.model.Relation;
+
+/**
+ * Receives the traces parsed by a streaming {@link TraceParser}, one trace at
+ * a time, as soon as each trace is complete.
+ */
+public interface ITraceConsumer {
+    /**
+     * Consumes a completed trace.
+     *
+     * @param events
+     *            the events of the trace, in log order
+     * @param eventRelations
+     *            the relations of each of the events in events
+     * @throws ParseException
+     *             if the trace cannot be consumed
+     */
+    void addTrace(List<EventNode> events,
+            Map<EventNode, Set<Relation>> eventRelations) throws ParseException;
+}
@@ -0,0 +1,157 @@
+package synoptic.main.parser;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+import synoptic.util.InternalSynopticException;
+import synoptic.util.matching.NamedMatcher;
+import synoptic.util.matching.NamedPattern;
+
+/**
+ * Matches log lines against the line-parsing regular expressions of a
+ * {@link TraceParser}. Matching a line does not depend on any parser state, so
+ * a batch of lines is split into chunks of consecutive lines that are matched
+ * concurrently, each thread using its own matchers. The matches are returned
+ * in the order of the lines, so that the parser can process them in log order.
+ */
+class ParallelLineMatcher {
+    /** Number of consecutive lines matched by a single task. */
+    static final int chunkSize = 1024;
+
+    /**
+     * The first regular expression that matched a line, and the values of its
+     * named groups.
+     */
+    static class Match {
+        /** The index of the matching regular expression. */
+        final int parser;
+        final Map<String, String> groups;
+
+        Match(int parser, Map<String, String> groups) {
+            this.parser = parser;
+            this.groups = groups;
+        }
+    }
+
+    /**
+     * Returns a matcher for each of the patterns in parsers. Matchers are not
+     * thread-safe, and must be used by one thread only.
+     */
+    static NamedMatcher[] newMatchers(List<NamedPattern> parsers) {
+        NamedMatcher[] matchers = new NamedMatcher[parsers.size()];
+        for (int i = 0; i < matchers.length; i++) {
+            matchers[i] = parsers.get(i).matcher("");
+        }
+        return matchers;
+    }
+
+    /**
+     * Returns the match of the first of matchers, starting at index
+     * fromParser, that matches line, or null if none of them does. Only the
+     * matchers that dispatcher selects for line are tried.
+     */
+    static Match match(String line, int fromParser, NamedMatcher[] matchers,
+            PatternDispatcher dispatcher) {
+        for (int i : dispatcher.candidates(line)) {
+            if (i < fromParser || !dispatcher.canMatch(i, line)) {
+                continue;
+            }
+            NamedMatcher matcher = matchers[i].reset(line);
+            if (matcher.matches()) {
+                return new Match(i, matcher.namedGroups());
+            }
+        }
+        return null;
+    }
+
+    private final List<NamedPattern> parsers;
+    private final PatternDispatcher dispatcher;
+    private final ExecutorService executor;
+    private final ThreadLocal<NamedMatcher[]> threadMatchers;
+    private final int numThreads;
+
+    /**
+     * Creates a matcher for the patterns in parsers that uses numThreads
+     * threads.
+     */
+    ParallelLineMatcher(List<NamedPattern> parsers, int numThreads) {
+        this.parsers = new ArrayList<NamedPattern>(parsers);
+        dispatcher = new PatternDispatcher(parsers);
+        this.numThreads = numThreads;
+        executor = Executors.newFixedThreadPool(numThreads,
+                new ThreadFactory() {
+                    @Override
+                    public Thread newThread(Runnable r) {
+                        Thread t = new Thread(r, "ParallelLineMatcher");
+                        t.setDaemon(true);
+                        return t;
+                    }
+                });
+        threadMatchers = new ThreadLocal<NamedMatcher[]>() {
+            @Override
+            protected NamedMatcher[] initialValue() {
+                return newMatchers(ParallelLineMatcher.this.parsers);
+            }
+        };
+    }
+
+    /**
+     * The number of lines that should be passed to each call to
+     * {@code matchAll} to keep all threads busy.
+     */
+    int getBatchSize() {
+        return chunkSize * numThreads * 4;
+    }
+
+    /**
+     * Returns the first match of each of the lines, in the order of the lines
+     * (with null for lines that do not match any pattern).
+     */
+    List<Match> matchAll(final List<String> lines) {
+        List<Future<List<Match>>> chunks = new ArrayList<Future<List<Match>>>();
+        for (int start = 0; start < lines.size(); start += chunkSize) {
+            final List<String> chunk = lines.subList(start,
+                    Math.min(start + chunkSize, lines.size()));
+            chunks.add(executor.submit(new Callable<List<Match>>() {
+                @Override
+                public List<Match> call() {
+                    NamedMatcher[] matchers = threadMatchers.get();
+                    List<Match> matches = new ArrayList<Match>(chunk.size());
+                    for (String line : chunk) {
+                        matches.add(match(line, 0, matchers, dispatcher));
+                    }
+                    return matches;
+                }
+            }));
+        }
+
+        List<Match> matches = new ArrayList<Match>(lines.size());
+        try {
+            for (Future<List<Match>> chunk : chunks) {
+                matches.addAll(chunk.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InternalSynopticException(e);
+        } catch (ExecutionException e) {
+            throw new InternalSynopticException(e);
+        } finally {
+            for (Future<List<Match>> chunk : chunks) {
+                chunk.cancel(false);
+            }
+        }
+        return matches;
+    }
+
+    /** Stops the threads of this matcher. */
+    void close() {
+        executor.shutdownNow();
+    }
+}
@@ -0,0 +1,193 @@
+package synoptic.main.parser;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import synoptic.util.matching.NamedPattern;
+
+/**
+ * Selects the line-parsing regular expressions that can possibly match a line,
+ * so that a line is not tried against every regular expression of a
+ * {@link TraceParser}. Since lines are matched in their entirety, a regular
+ * expression that starts with literal characters (e.g., "^send (?<TYPE>)")
+ * can only match lines that start with these characters. The regular
+ * expressions are indexed by the first character of their literal prefix, and
+ * the candidates for a line are the expressions indexed by the line's first
+ * character whose prefix the line starts with, together with the expressions
+ * without a literal prefix. Candidates are returned in the order in which the
+ * expressions were added, so that the first matching expression is the same
+ * as when trying all of them.
+ */
+class PatternDispatcher {
+    private static final String metaChars = "\\^$.|?*+()[]{}";
+
+    /** The literal prefix of each pattern. */
+    private final String[] prefixes;
+    /** The patterns to try for lines starting with each ASCII character. */
+    private final int[][] asciiCandidates = new int[128][];
+    /** The patterns to try for lines starting with other characters. */
+    private final Map<Character, int[]> otherCandidates = new HashMap<Character, int[]>();
+    /**
+     * The patterns without a literal prefix, which are the only candidates for
+     * lines starting with a character that no prefix starts with.
+     */
+    private final int[] noPrefixCandidates;
+
+    PatternDispatcher(List<NamedPattern> patterns) {
+        prefixes = new String[patterns.size()];
+        List<Integer> noPrefix = new ArrayList<Integer>();
+        Map<Character, List<Integer>> byFirstChar = new HashMap<Character, List<Integer>>();
+        for (int i = 0; i < prefixes.length; i++) {
+            prefixes[i] = literalPrefix(patterns.get(i).standardPattern());
+            if (prefixes[i].isEmpty()) {
+                noPrefix.add(i);
+            } else if (!byFirstChar.containsKey(prefixes[i].charAt(0))) {
+                byFirstChar.put(prefixes[i].charAt(0), new ArrayList<Integer>());
+            }
+        }
+        noPrefixCandidates = toArray(noPrefix);
+
+        // Each character's candidates are the patterns with a prefix starting
+        // with the character and the patterns without a prefix, in order.
+        for (int i = 0; i < prefixes.length; i++) {
+            for (Map.Entry<Character, List<Integer>> e : byFirstChar.entrySet()) {
+                if (prefixes[i].isEmpty()
+                        || prefixes[i].charAt(0) == e.getKey()) {
+                    e.getValue().add(i);
+                }
+            }
+        }
+        for (Map.Entry<Character, List<Integer>> e : byFirstChar.entrySet()) {
+            char c = e.getKey();
+            if (c < asciiCandidates.length) {
+                asciiCandidates[c] = toArray(e.getValue());
+            } else {
+                otherCandidates.put(c, toArray(e.getValue()));
+            }
+        }
+    }
+
+    /**
+     * Returns the indices, in increasing order, of the patterns that line
+     * might match. The literal prefix of a returned pattern must still be
+     * checked with {@link #canMatch(int, String)}.
+     */
+    int[] candidates(String line) {
+        if (line.isEmpty()) {
+            return noPrefixCandidates;
+        }
+        char c = line.charAt(0);
+        int[] candidates;
+        if (c < asciiCandidates.length) {
+            candidates = asciiCandidates[c];
+        } else {
+            candidates = otherCandidates.get(c);
+        }
+        if (candidates == null) {
+            return noPrefixCandidates;
+        }
+        return candidates;
+    }
+
+    /**
+     * Whether or not line starts with the literal prefix of pattern i.
+     */
+    boolean canMatch(int i, String line) {
+        return line.startsWith(prefixes[i]);
+    }
+
+    /**
+     * Returns the literal characters that every string matched in its
+     * entirety by regex must start with. The returned prefix may be shorter
+     * than the longest such prefix (e.g., it is empty for regular expressions
+     * that start with a group), but never longer.
+     */
+    static String literalPrefix(String regex) {
+        if (hasTopLevelAlternation(regex)) {
+            return "";
+        }
+        StringBuilder prefix = new StringBuilder();
+        int i = 0;
+        if (regex.startsWith("^")) {
+            i++;
+        }
+        while (i < regex.length()) {
+            char c = regex.charAt(i);
+            int next = i + 1;
+            if (c == '\\') {
+                // Only escaped punctuation is a literal character; escaped
+                // letters and digits are character classes, back-references,
+                // or quotes.
+                if (next >= regex.length()
+                        || Character.isLetterOrDigit(regex.charAt(next))) {
+                    break;
+                }
+                c = regex.charAt(next);
+                next++;
+            } else if (metaChars.indexOf(c) != -1) {
+                break;
+            }
+            // A quantified character might not appear in the string.
+            if (next < regex.length() && "?*+{".indexOf(regex.charAt(next)) != -1) {
+                break;
+            }
+            prefix.append(c);
+            i = next;
+        }
+        return prefix.toString();
+    }
+
+    /**
+     * Whether or not regex contains an alternation outside of any group or
+     * character class, in which case no prefix is required by all of regex.
+     */
+    private static boolean hasTopLevelAlternation(String regex) {
+        int depth = 0;
+        boolean inClass = false;
+        for (int i = 0; i < regex.length(); i++) {
+            char c = regex.charAt(i);
+            if (c == '\\') {
+                if (i + 1 < regex.length() && regex.charAt(i + 1) == 'Q') {
+                    // Skip quoted characters.
+                    int end = regex.indexOf("\\E", i + 2);
+                    if (end == -1) {
+                        return false;
+                    }
+                    i = end + 1;
+                } else {
+                    i++;
+                }
+            } else if (inClass) {
+                if (c == ']') {
+                    inClass = false;
+                }
+            } else if (c == '[') {
+                inClass = true;
+                // A ']' directly after '[' or '[^' is a literal.
+                if (i + 1 < regex.length() && regex.charAt(i + 1) == '^') {
+                    i++;
+                }
+                if (i + 1 < regex.length() && regex.charAt(i + 1) == ']') {
+                    i++;
+                }
+            } else if (c == '(') {
+                depth++;
+            } else if (c == ')') {
+                depth--;
+            } else if (c == '|' && depth == 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static int[] toArray(List<Integer> list) {
+        int[] array = new int[list.size()];
+        for (int i = 0; i < array.length; i++) {
+            array[i] = list.get(i);
+        }
+        return array;
+    }
+}
@@ -0,0 +1,271 @@
+package synoptic.main.parser;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.logging.Logger;
+
+import synoptic.main.options.AbstractOptions;
+import synoptic.model.BinaryModelReader;
+import synoptic.model.BinaryModelWriter;
+import synoptic.model.ChainsTraceGraph;
+import synoptic.model.DAGsTraceGraph;
+import synoptic.model.EventNode;
+import synoptic.model.TraceGraph;
+
+/**
+ * A cache of the trace graphs generated from parsed logs, so that repeated
+ * runs over the same logs can skip parsing. A cached graph is stored in the
+ * binary form of {@link BinaryModelWriter}, in a file in the cache directory
+ * that is named by a hash of the contents of the log files and of the options
+ * that affect parsing (the -r, -s, and -m reg-exps, the date format, and so
+ * on). A changed log or parser option thus results in a different file, and
+ * is never served a stale graph. <br />
+ * <br />
+ * Cache files are written to a temporary file that is then atomically moved
+ * into place, and are memory-mapped when read. Graphs with event states cannot
+ * be cached.
+ */
+public class TraceGraphCache {
+    private static Logger logger = Logger.getLogger("TraceGraphCache");
+
+    private static final Charset utf8 = Charset.forName("UTF-8");
+
+    private static final int magic = 0x53594e54;
+    // Part of the key as well, so that files in an older format are ignored.
+    private static final int version = 1;
+
+    // Graph kinds.
+    private static final int chainsGraph = 0;
+    private static final int dagsGraph = 1;
+
+    private final File file;
+
+    /**
+     * Creates a cache of the graph of logFiles, as parsed with options, in
+     * the directory dir.
+     * 
+     * @throws IOException
+     *             if a log file cannot be read
+     */
+    public TraceGraphCache(File dir, AbstractOptions options,
+            List<File> logFiles) throws IOException {
+        this.file = new File(dir, computeKey(options, logFiles) + ".tgc");
+    }
+
+    /**
+     * Returns the file that holds the cached graph.
+     */
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * Returns a hash of the contents and names of logFiles, and of the
+     * options that affect how they are parsed.
+     * 
+     * @throws IOException
+     *             if a log file cannot be read
+     */
+    public static String computeKey(AbstractOptions options,
+            List<File> logFiles) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+
+        update(digest, Integer.toString(version));
+        update(digest, options.regExps == null ? null : options.regExps
+                .toString());
+        update(digest, AbstractOptions.separatorRegExp);
+        update(digest, AbstractOptions.partitionRegExp);
+        update(digest, options.dateFormat);
+        update(digest, Boolean.toString(options.ignoreNonMatchingLines));
+        update(digest, Boolean.toString(options.recoverFromParseErrors));
+        update(digest, Boolean.toString(AbstractOptions.inputDelta));
+        update(digest, Boolean.toString(AbstractOptions.keepOrder));
+
+        byte[] buffer = new byte[1 << 16];
+        for (File logFile : logFiles) {
+            // Events record the name of their file.
+            update(digest, logFile.getPath());
+            update(digest, Long.toString(logFile.length()));
+            InputStream in = new FileInputStream(logFile);
+            try {
+                int n;
+                while ((n = in.read(buffer)) != -1) {
+                    digest.update(buffer, 0, n);
+                }
+            } finally {
+                in.close();
+            }
+        }
+
+        StringBuilder key = new StringBuilder();
+        for (byte b : digest.digest()) {
+            key.append(String.format("%02x", b));
+        }
+        return key.toString();
+    }
+
+    private static void update(MessageDigest digest, String s) {
+        if (s == null) {
+            digest.update((byte) 1);
+        } else {
+            digest.update(s.getBytes(utf8));
+        }
+        digest.update((byte) 0);
+    }
+
+    /**
+     * Returns the cached graph (a ChainsTraceGraph or a DAGsTraceGraph), or
+     * null if there is none. A cache file that cannot be read is logged and
+     * treated as missing.
+     */
+    public TraceGraph<?> read() {
+        if (!file.isFile()) {
+            return null;
+        }
+        try {
+            RandomAccessFile raf = new RandomAccessFile(file, "r");
+            try {
+                FileChannel channel = raf.getChannel();
+                if (channel.size() > Integer.MAX_VALUE) {
+                    throw new IOException("Cache file is too large to map");
+                }
+                ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY,
+                        0, channel.size());
+                return read(new BinaryModelReader(new ByteBufferInputStream(
+                        buffer)));
+            } finally {
+                raf.close();
+            }
+        } catch (IOException e) {
+            logger.warning("Ignoring unreadable trace graph cache file "
+                    + file + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    private static TraceGraph<?> read(BinaryModelReader reader)
+            throws IOException {
+        if (reader.readInt() != magic) {
+            throw new IOException("Not a trace graph cache file");
+        }
+        int fileVersion = reader.readVarInt();
+        if (fileVersion != version) {
+            throw new IOException("Unsupported version " + fileVersion);
+        }
+        int kind = reader.readVarInt();
+        List<EventNode> nodes = new ArrayList<EventNode>();
+        if (kind == chainsGraph) {
+            return reader.readChainsTraceGraph(nodes);
+        } else if (kind == dagsGraph) {
+            return reader.readDAGsTraceGraph(nodes);
+        }
+        throw new IOException("Unknown graph kind " + kind);
+    }
+
+    /**
+     * Caches g, a ChainsTraceGraph or a DAGsTraceGraph, which must not have
+     * been modified since it was generated from the log. A graph that cannot
+     * be cached is logged, but does not stop the run.
+     */
+    public void write(TraceGraph<?> g) {
+        File dir = file.getParentFile();
+        File tmp = new File(file.getPath() + ".tmp");
+        try {
+            if (dir != null && !dir.isDirectory() && !dir.mkdirs()) {
+                throw new IOException("Cannot create directory " + dir);
+            }
+            OutputStream out = new BufferedOutputStream(new FileOutputStream(
+                    tmp), 1 << 16);
+            try {
+                BinaryModelWriter writer = new BinaryModelWriter(out);
+                writer.writeInt(magic);
+                writer.writeVarInt(version);
+                if (g instanceof ChainsTraceGraph) {
+                    writer.writeVarInt(chainsGraph);
+                    writer.writeChainsTraceGraph((ChainsTraceGraph) g,
+                            new HashMap<EventNode, Integer>());
+                } else if (g instanceof DAGsTraceGraph) {
+                    writer.writeVarInt(dagsGraph);
+                    writer.writeDAGsTraceGraph((DAGsTraceGraph) g,
+                            new HashMap<EventNode, Integer>());
+                } else {
+                    throw new IllegalArgumentException("Cannot cache a "
+                            + g.getClass().getSimpleName());
+                }
+                writer.flush();
+            } finally {
+                out.close();
+            }
+            Files.move(tmp.toPath(), file.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+            logger.info("Cached trace graph in " + file);
+        } catch (IOException e) {
+            tmp.delete();
+            logger.warning("Could not cache trace graph in " + file + ": "
+                    + e.getMessage());
+        } catch (IllegalArgumentException e) {
+            tmp.delete();
+            logger.warning("Could not cache trace graph in " + file + ": "
+                    + e.getMessage());
+        }
+    }
+
+    /**
+     * Reads a (memory-mapped) buffer as a stream.
+     */
+    private static class ByteBufferInputStream extends InputStream {
+        private final ByteBuffer buffer;
+
+        ByteBufferInputStream(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            if (!buffer.hasRemaining()) {
+                return -1;
+            }
+            return buffer.get() & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] bytes, int off, int len) {
+            if (len == 0) {
+                return 0;
+            }
+            if (!buffer.hasRemaining()) {
+                return -1;
+            }
+            len = Math.min(len, buffer.remaining());
+            buffer.get(bytes, off, len);
+            return len;
+        }
+
+        @Override
+        public int available() {
+            return buffer.remaining();
+        }
+    }
+}
@@ -7,12 +7,20 @@ import java.io.IOException;
 import java.io.InputStreamReader;
 import java.io.Reader;
 import java.io.StringReader;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.LinkedList;
@@ -23,6 +31,9 @@ import java.util.logging.Logger;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
+import synoptic.benchmarks.Counter;
+import synoptic.benchmarks.Histogram;
+import synoptic.benchmarks.Metrics;
 import synoptic.main.AbstractMain;
 import synoptic.main.options.AbstractOptions;
 import synoptic.main.options.Options;
@@ -57,7 +68,21 @@ public class TraceParser {
 
     private static Logger logger = Logger.getLogger("Parser Logger");
 
+    private static final Counter linesRead = Metrics.counter(
+            "synoptic_parse_lines_total", "Number of log lines read");
+    private static final Counter eventsParsed = Metrics.counter(
+            "synoptic_parse_events_total", "Number of events parsed");
+    private static final Histogram parseSeconds = Metrics.histogram(
+            "synoptic_parse_seconds",
+            "Time spent parsing each log file or string",
+            Histogram.secondsBuckets);
+
     private final List<NamedPattern> parsers;
+    // Matchers for parsers, and the index of the parsers that may match a
+    // line, used to match lines sequentially. Re-created whenever parsers
+    // changes.
+    private NamedMatcher[] lineMatchers = null;
+    private PatternDispatcher lineDispatcher = null;
     private final List<LinkedHashMap<String, NamedSubstitution>> constantFields;
     private final List<Map<String, Boolean>> incrementors;
 
@@ -143,6 +168,10 @@ public class TraceParser {
     private static final String dummyEtypeLabel = "dummy-etype-for-line-with-state"
             .intern();
 
+    // Size (in chars) of the buffers used to read log files in streaming
+    // mode.
+    private static final int streamBufferSize = 1 << 20;
+
     /**
      * Returns an un-parameterized trace parser.
      */
@@ -397,6 +426,8 @@ public class TraceParser {
             throw parseException;
         }
         parsers.add(parser);
+        lineMatchers = null;
+        lineDispatcher = null;
         // A list of all named groups i.e., fields that have no assignment.
         List<String> groups = parser.groupNames();
 
@@ -571,6 +602,8 @@ public class TraceParser {
             throw internalSynopticException;
         }
         cycle(parsers);
+        lineMatchers = null;
+        lineDispatcher = null;
         cycle(incrementors);
         cycle(constantFields);
         filter.concat(new NamedSubstitution("\\k<SEPCOUNT>"));
@@ -649,6 +682,286 @@ public class TraceParser {
         }
     }
 
+    /**
+     * Parses a trace file in streaming mode: each trace is passed to consumer
+     * as soon as it is complete, and is then dropped by the parser. The file
+     * is read through a large NIO buffer. In this mode the events of each
+     * trace must be contiguous in the file -- a trace is complete when a line
+     * of a different partition (e.g., a line after a partition separator) is
+     * parsed, or when the end of the file is reached. The memory used by the
+     * parser is therefore bounded by the largest trace rather than by the
+     * size of the file.
+     * 
+     * @param file
+     *            File to read and then parse.
+     * @param linesToRead
+     *            Bound on the number of lines to read. Negatives indicate
+     *            unbounded.
+     * @param consumer
+     *            Receives the completed traces.
+     * @return The number of parsed log events.
+     * @throws ParseException
+     *             when user supplied expressions are the problem, or when the
+     *             events of a trace are not contiguous
+     * @throws InternalSynopticException
+     *             when Synoptic code is the problem
+     */
+    public int parseTraceFileStreaming(File file, int linesToRead,
+            ITraceConsumer consumer) throws ParseException,
+            InternalSynopticException {
+        String fileName = "";
+        try {
+            fileName = file.getAbsolutePath();
+            FileChannel channel = new FileInputStream(file).getChannel();
+            // Decode like InputStreamReader does, replacing malformed input.
+            CharsetDecoder decoder = Charset.defaultCharset().newDecoder()
+                    .onMalformedInput(CodingErrorAction.REPLACE)
+                    .onUnmappableCharacter(CodingErrorAction.REPLACE);
+            Reader fileReader = Channels.newReader(channel, decoder,
+                    streamBufferSize);
+            return parseTraceStreaming(fileReader, fileName, linesToRead,
+                    consumer);
+        } catch (IOException e) {
+            String error = "Error while attempting to read log file ["
+                    + fileName + "]: " + e.getMessage();
+            logger.severe(error);
+            throw new ParseException(error);
+        }
+    }
+
+    /**
+     * Parses a string containing a log in streaming mode (see
+     * {@link #parseTraceFileStreaming(File, int, ITraceConsumer)}).
+     * 
+     * @param trace
+     *            The trace, with lines separated by newlines.
+     * @param traceName
+     *            The name for this trace -- maps to the FILE parse group.
+     * @param linesToRead
+     *            Bound on the number of lines to read. Negatives indicate
+     *            unbounded.
+     * @param consumer
+     *            Receives the completed traces.
+     * @return The number of parsed log events.
+     * @throws ParseException
+     *             when user supplied expressions are the problem, or when the
+     *             events of a trace are not contiguous
+     */
+    public int parseTraceStringStreaming(String trace, String traceName,
+            int linesToRead, ITraceConsumer consumer) throws ParseException {
+        if (trace == null) {
+            throw new ParseException("Trace string cannot be null.");
+        }
+        if (traceName == null) {
+            throw new ParseException("Trace name string cannot be null.");
+        }
+        StringReader stringReader = new StringReader(trace);
+        try {
+            return parseTraceStreaming(stringReader, traceName, linesToRead,
+                    consumer);
+        } catch (IOException e) {
+            String error = "Error while reading string [" + traceName + "]: "
+                    + e.getMessage();
+            logger.severe(error);
+            throw new ParseException(error);
+        }
+    }
+
+    /**
+     * Returns the initial incrementor context, in which every incrementor is
+     * 0.
+     */
+    private Map<String, Integer> newIncrementorContext() {
+        Map<String, Integer> context = new LinkedHashMap<String, Integer>();
+        for (Map<String, Boolean> incs : incrementors) {
+            for (String incField : incs.keySet()) {
+                context.put(incField, 0);
+            }
+        }
+        return context;
+    }
+
+    /**
+     * Receives the nodes parsed from a log, in log order.
+     */
+    private interface IParsedNodeHandler {
+        void handle(EventNode node) throws ParseException;
+    }
+
+    /**
+     * Parses the lines read from br, and passes each parsed node to handler.
+     * If the parsingThreads option is larger than 1, then batches of lines are
+     * matched against the regular expressions concurrently; the matched lines
+     * are still processed in log order, so the parsed nodes (their trace IDs,
+     * times, and so on) are the same as when parsing sequentially.
+     * 
+     * @return The number of parsed nodes.
+     */
+    private int parseLines(BufferedReader br, String tName, int linesToRead,
+            IParsedNodeHandler handler) throws ParseException, IOException,
+            InternalSynopticException {
+        long timer = Metrics.startTimer();
+        Map<String, Integer> context = newIncrementorContext();
+        int numParsed = 0;
+        int lineNum = 0;
+
+        int numThreads = AbstractMain.getInstance().options.parsingThreads;
+        if (numThreads <= 1) {
+            // Process each line in sequence.
+            String strLine = null;
+            while ((strLine = br.readLine()) != null) {
+                if (numParsed == linesToRead) {
+                    break;
+                }
+                lineNum++;
+                EventNode node = parseLine(strLine, tName, context, lineNum);
+                if (node == null) {
+                    continue;
+                }
+                numParsed++;
+                handler.handle(node);
+            }
+            recordParseMetrics(timer, lineNum, numParsed);
+            return numParsed;
+        }
+
+        ParallelLineMatcher lineMatcher = new ParallelLineMatcher(parsers,
+                numThreads);
+        try {
+            List<String> lines = new ArrayList<String>(
+                    lineMatcher.getBatchSize());
+            boolean done = false;
+            while (!done) {
+                // Read the next batch of lines.
+                lines.clear();
+                String strLine = null;
+                while (lines.size() < lineMatcher.getBatchSize()
+                        && (strLine = br.readLine()) != null) {
+                    lines.add(strLine);
+                }
+                if (lines.isEmpty()) {
+                    break;
+                }
+
+                List<ParallelLineMatcher.Match> matches = lineMatcher
+                        .matchAll(lines);
+
+                // Process the matched lines in sequence.
+                for (int j = 0; j < lines.size(); j++) {
+                    if (numParsed == linesToRead) {
+                        done = true;
+                        break;
+                    }
+                    lineNum++;
+                    EventNode node = parseLine(lines.get(j), matches.get(j),
+                            tName, context, lineNum);
+                    if (node == null) {
+                        continue;
+                    }
+                    numParsed++;
+                    handler.handle(node);
+                }
+            }
+        } finally {
+            lineMatcher.close();
+        }
+        recordParseMetrics(timer, lineNum, numParsed);
+        return numParsed;
+    }
+
+    /**
+     * Records the metrics of a parsed log file or string.
+     */
+    private static void recordParseMetrics(long timer, int numLines,
+            int numParsed) {
+        linesRead.add(numLines);
+        eventsParsed.add(numParsed);
+        parseSeconds.observeSince(timer);
+    }
+
+    /**
+     * Parses strings generated by traceReader as event instances, and passes
+     * each completed trace to consumer.
+     * 
+     * @return The number of parsed log events.
+     */
+    private int parseTraceStreaming(Reader traceReader, String traceName,
+            int linesToRead, final ITraceConsumer consumer)
+            throws ParseException, IOException, InternalSynopticException {
+        BufferedReader br = new BufferedReader(traceReader, streamBufferSize);
+
+        String tName = traceName;
+        if (AbstractMain.getInstance().options.internCommonStrings) {
+            tName = tName.intern();
+        }
+
+        lastTime = null;
+
+        // The event and state nodes of the trace that is currently open.
+        final List<EventNode> openTrace = new ArrayList<EventNode>();
+        final int[] numTraces = { 0 };
+        int numParsed;
+        try {
+            numParsed = parseLines(br, tName, linesToRead,
+                    new IParsedNodeHandler() {
+                        @Override
+                        public void handle(EventNode node)
+                                throws ParseException {
+                            if (!openTrace.isEmpty()
+                                    && openTrace.get(0).getTraceID() != node
+                                            .getTraceID()) {
+                                // The line starts a new partition, so the open
+                                // trace is complete.
+                                closeTrace(openTrace, consumer);
+                                numTraces[0]++;
+                                openTrace.clear();
+                            }
+                            openTrace.add(node);
+                        }
+                    });
+            if (!openTrace.isEmpty()) {
+                closeTrace(openTrace, consumer);
+                numTraces[0]++;
+            }
+        } finally {
+            br.close();
+        }
+
+        logger.info("Successfully parsed " + numTraces[0]
+                + " traces, containing a total of " + numParsed
+                + " events from [" + tName + "]");
+        return numParsed;
+    }
+
+    /**
+     * Post-processes the completed trace made up of the nodes in trace, passes
+     * it to consumer, and removes it from the parser's state.
+     */
+    private void closeTrace(List<EventNode> trace, ITraceConsumer consumer)
+            throws ParseException {
+        // Partitions are created in log order, and a trace is closed before
+        // the next one is opened, so the trace is the oldest open partition.
+        Iterator<ArrayList<EventNode>> iter = partitions.values().iterator();
+        List<EventNode> events = iter.next();
+        iter.remove();
+        assert events.isEmpty()
+                || events.get(0).getTraceID() == trace.get(0).getTraceID();
+
+        if (AbstractMain.getInstance().options.stateProcessing) {
+            mergeStatesWithEventNodes(trace);
+        }
+
+        if (selectedTimeGroup.equals("VTIME")) {
+            checkVectorTimes(Collections.singletonList(events));
+        }
+
+        Map<EventNode, Set<Relation>> eventRelations = new HashMap<EventNode, Set<Relation>>();
+        for (EventNode event : events) {
+            eventRelations.put(event, allEventRelations.remove(event));
+        }
+        consumer.addTrace(events, eventRelations);
+    }
+
     /**
      * Parses strings generated by traceReader as event instances.
      * 
@@ -670,16 +983,7 @@ public class TraceParser {
             IOException, InternalSynopticException {
         BufferedReader br = new BufferedReader(traceReader);
 
-        // Initialize incrementor context.
-        Map<String, Integer> context = new LinkedHashMap<String, Integer>();
-        for (Map<String, Boolean> incs : incrementors) {
-            for (String incField : incs.keySet()) {
-                context.put(incField, 0);
-            }
-        }
-
-        ArrayList<EventNode> results = new ArrayList<EventNode>();
-        String strLine = null;
+        final ArrayList<EventNode> results = new ArrayList<EventNode>();
 
         String tName = traceName;
         if (AbstractMain.getInstance().options.internCommonStrings) {
@@ -688,20 +992,16 @@ public class TraceParser {
 
         lastTime = null;
 
-        int lineNum = 0;
-        // Process each line in sequence.
-        while ((strLine = br.readLine()) != null) {
-            if (results.size() == linesToRead) {
-                break;
-            }
-            lineNum++;
-            EventNode node = parseLine(strLine, tName, context, lineNum);
-            if (node == null) {
-                continue;
-            }
-            results.add(node);
+        try {
+            parseLines(br, tName, linesToRead, new IParsedNodeHandler() {
+                @Override
+                public void handle(EventNode node) {
+                    results.add(node);
+                }
+            });
+        } finally {
+            br.close();
         }
-        br.close();
         // TODO: this is a hacky solution, should refactor the parseTrace and
         // parseLine methods so that State is separated from EventNode.
         // At this point, each node in results either represents an event or
@@ -710,11 +1010,31 @@ public class TraceParser {
             mergeStatesWithEventNodes(results);
         }
 
-        if (selectedTimeGroup.equals("VTIME") && !parsePIDs) {
+        if (selectedTimeGroup.equals("VTIME")) {
+            checkVectorTimes(partitions.values());
+        }
+
+        logger.info("Successfully parsed " + partitions.size()
+                + " traces, containing a total of " + results.size()
+                + " events from [" + tName + "]");
+        return results;
+    }
+
+    /**
+     * Infers the process IDs of the events in each group (partition) if PIDs
+     * are not parsed explicitly from the log, and otherwise checks that the
+     * events of each PID in a group are totally ordered by their vector
+     * times.
+     * 
+     * @throws ParseException
+     */
+    private void checkVectorTimes(Collection<? extends List<EventNode>> groups)
+            throws ParseException {
+        if (!parsePIDs) {
             // Infer the PID (process ID) corresponding to each of the parsed
             // events, if PIDs were not parsed explicitly from the trace.
 
-            for (List<EventNode> group : partitions.values()) {
+            for (List<EventNode> group : groups) {
                 // A list in which the list at index j is a (totally ordered)
                 // list of events that occurred at node j.
                 List<List<EventNode>> listsNodeEvents;
@@ -742,12 +1062,12 @@ public class TraceParser {
                     pid += 1;
                 }
             }
-        } else if (selectedTimeGroup.equals("VTIME") && parsePIDs) {
+        } else {
             // Check that for each partition, the set of events corresponding to
             // a PID can be totally ordered -- this is a critical property of a
             // PID.
 
-            for (List<EventNode> group : partitions.values()) {
+            for (List<EventNode> group : groups) {
                 // Determine the set of unique PIDs in this partition.
                 LinkedHashSet<String> PIDs = new LinkedHashSet<String>();
                 for (EventNode node : group) {
@@ -804,11 +1124,6 @@ public class TraceParser {
                 }
             }
         }
-
-        logger.info("Successfully parsed " + partitions.size()
-                + " traces, containing a total of " + results.size()
-                + " events from [" + tName + "]");
-        return results;
     }
 
     /**
@@ -891,22 +1206,46 @@ public class TraceParser {
     private EventNode parseLine(String line, String fileName,
             Map<String, Integer> context, int lineNum) throws ParseException,
             InternalSynopticException {
+        return parseLine(line, matchLine(line, 0), fileName, context, lineNum);
+    }
+
+    /**
+     * Returns the match of the first of parsers, starting at index fromParser,
+     * that matches line, or null if none of them does.
+     */
+    private ParallelLineMatcher.Match matchLine(String line, int fromParser) {
+        if (lineMatchers == null) {
+            lineMatchers = ParallelLineMatcher.newMatchers(parsers);
+            lineDispatcher = new PatternDispatcher(parsers);
+        }
+        return ParallelLineMatcher.match(line, fromParser, lineMatchers,
+                lineDispatcher);
+    }
+
+    /**
+     * Parse an individual line, given the first regular expression that
+     * matches it (or null if none matches).
+     */
+    private EventNode parseLine(String line,
+            ParallelLineMatcher.Match firstMatch, String fileName,
+            Map<String, Integer> context, int lineNum) throws ParseException,
+            InternalSynopticException {
 
         Event event = null;
         AbstractResource nextTime = null;
 
         AbstractMain main = AbstractMain.getInstance();
 
-        for (int i = 0; i < parsers.size(); i++) {
-            NamedMatcher matcher = parsers.get(i).matcher(line);
-            if (!matcher.matches()) {
-                continue;
-            }
+        // If the line cannot be parsed with a matching regular expression, the
+        // following regular expressions are tried as well.
+        for (ParallelLineMatcher.Match match = firstMatch; match != null; match = matchLine(
+                line, match.parser + 1)) {
+            int i = match.parser;
 
             @SuppressWarnings("unchecked")
             Map<String, NamedSubstitution> cs = (Map<String, NamedSubstitution>) constantFields
                     .get(i).clone();
-            Map<String, String> matched = matcher.toMatchResult().namedGroups();
+            Map<String, String> matched = match.groups;
 
             // Perform pre-increments.
             for (Map.Entry<String, Boolean> inc : incrementors.get(i)
@@ -1254,9 +1593,20 @@ public class TraceParser {
      * @param eventNode
      * @param pName
      */
-    private EventNode addEventNodeToPartition(Event event, String pName) {
+    private EventNode addEventNodeToPartition(Event event, String pName)
+            throws ParseException {
         EventNode eventNode = new EventNode(event);
         ArrayList<EventNode> events = partitions.get(pName);
+        if (events == null && partitionNameToTraceID.containsKey(pName)) {
+            // Only happens in streaming mode, in which partitions are removed
+            // once they are complete.
+            String error = "Partition '" + pName
+                    + "' was already complete when a new event was added to it."
+                    + " Streaming parsing requires the events of each"
+                    + " partition to be contiguous in the log.";
+            logger.severe(error);
+            throw new ParseException(error);
+        }
         if (events == null) {
             events = new ArrayList<EventNode>();
             partitions.put(pName, events);
@@ -0,0 +1,361 @@
+package synoptic.model;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import synoptic.invariants.AlwaysFollowedInvariant;
+import synoptic.invariants.AlwaysPrecedesInvariant;
+import synoptic.invariants.BinaryInvariant;
+import synoptic.invariants.InterruptedByInvariant;
+import synoptic.invariants.NeverFollowedInvariant;
+import synoptic.invariants.NeverImmediatelyFollowedInvariant;
+import synoptic.invariants.TOInitialTerminalInvariant;
+import synoptic.invariants.TemporalInvariantSet;
+import synoptic.invariants.constraints.IThresholdConstraint;
+import synoptic.invariants.constraints.LowerBoundConstraint;
+import synoptic.invariants.constraints.TempConstrainedInvariant;
+import synoptic.invariants.constraints.UpperBoundConstraint;
+import synoptic.model.event.DistEventType;
+import synoptic.model.event.Event;
+import synoptic.model.event.EventType;
+import synoptic.model.event.StringEventType;
+import synoptic.util.InvariantStatistics;
+import synoptic.util.resource.AbstractResource;
+import synoptic.util.resource.DTotalResource;
+import synoptic.util.resource.FTotalResource;
+import synoptic.util.resource.ITotalResource;
+import synoptic.util.resource.LTotalResource;
+import synoptic.util.resource.VectorTime;
+
+/**
+ * Reads the trace graphs, invariants, and values written by a
+ * {@link BinaryModelWriter}, in the order in which they were written. Throws
+ * an IOException if the input is malformed.
+ */
+public class BinaryModelReader {
+    private final DataInputStream in;
+    private final List<String> strings = new ArrayList<String>();
+    private final List<EventType> eTypes = new ArrayList<EventType>();
+
+    public BinaryModelReader(InputStream in) {
+        this.in = new DataInputStream(in);
+    }
+
+    /**
+     * Reads a graph written by
+     * {@link BinaryModelWriter#writeChainsTraceGraph(ChainsTraceGraph, java.util.Map)}
+     * . The nodes of the graph are added to nodes, so that the node with id i
+     * is nodes.get(i).
+     */
+    public ChainsTraceGraph readChainsTraceGraph(List<EventNode> nodes)
+            throws IOException {
+        ChainsTraceGraph g = new ChainsTraceGraph();
+        int firstId = nodes.size();
+        readNodesAndTransitions(g, nodes);
+        int numNodes = nodes.size() - firstId;
+
+        int numTraces = readVarInt();
+        for (int i = 0; i < numTraces; i++) {
+            Trace trace = new Trace();
+            int numInitialNodes = readVarInt();
+            for (int j = 0; j < numInitialNodes; j++) {
+                String relation = readInternedString();
+                trace.addInitialNode(relation,
+                        readNode(nodes, firstId, numNodes));
+            }
+            g.addTrace(trace);
+        }
+        return g;
+    }
+
+    /**
+     * Reads a graph written by
+     * {@link BinaryModelWriter#writeDAGsTraceGraph(DAGsTraceGraph, java.util.Map)}
+     * . The nodes of the graph are added to nodes, so that the node with id i
+     * is nodes.get(i).
+     */
+    public DAGsTraceGraph readDAGsTraceGraph(List<EventNode> nodes)
+            throws IOException {
+        DAGsTraceGraph g = new DAGsTraceGraph();
+        readNodesAndTransitions(g, nodes);
+        return g;
+    }
+
+    private void readNodesAndTransitions(TraceGraph<?> g,
+            List<EventNode> nodes) throws IOException {
+        int numNodes = readVarInt();
+        int firstId = nodes.size();
+        for (int i = 0; i < numNodes; i++) {
+            int kind = in.readByte();
+            if (kind == BinaryModelWriter.initialNode) {
+                nodes.add(g.getDummyInitialNode());
+            } else if (kind == BinaryModelWriter.terminalNode) {
+                nodes.add(g.dummyTerminalNode);
+            } else if (kind == BinaryModelWriter.eventNode) {
+                EventType eType = readEType();
+                String line = readString();
+                String fileName = readInternedString();
+                int lineNum = readVarInt();
+                Event event = new Event(eType, line, fileName, lineNum);
+                event.setTime(readResource());
+                EventNode node = new EventNode(event);
+                node.setTraceID(readVarInt());
+                g.add(node);
+                nodes.add(node);
+            } else {
+                throw new IOException("Unknown node kind " + kind);
+            }
+        }
+
+        for (int i = 0; i < numNodes; i++) {
+            EventNode src = nodes.get(firstId + i);
+            int numTransitions = readVarInt();
+            for (int j = 0; j < numTransitions; j++) {
+                EventNode target = readNode(nodes, firstId, numNodes);
+                Set<String> relations = readStringSet();
+                AbstractResource delta = readResource();
+                if (src == g.getDummyInitialNode()) {
+                    g.tagInitial(target, relations);
+                } else if (target == g.dummyTerminalNode) {
+                    g.tagTerminal(src, relations);
+                } else {
+                    src.addTransition(target, relations);
+                }
+                if (delta != null) {
+                    List<Transition<EventNode>> transitions = src
+                            .getAllTransitions();
+                    transitions.get(transitions.size() - 1).setTimeDelta(
+                            delta);
+                }
+            }
+        }
+    }
+
+    private EventNode readNode(List<EventNode> nodes, int firstId,
+            int numNodes) throws IOException {
+        int id = readVarInt();
+        if (id >= numNodes) {
+            throw new IOException("Node id out of range: " + id);
+        }
+        return nodes.get(firstId + id);
+    }
+
+    /**
+     * Reads a set of invariants written by
+     * {@link BinaryModelWriter#writeInvariants(TemporalInvariantSet)}.
+     */
+    public TemporalInvariantSet readInvariants() throws IOException {
+        TemporalInvariantSet invariants = new TemporalInvariantSet();
+        int numInvariants = readVarInt();
+        for (int i = 0; i < numInvariants; i++) {
+            invariants.add(readInvariant());
+        }
+        return invariants;
+    }
+
+    private BinaryInvariant readInvariant() throws IOException {
+        int kind = in.readByte();
+        if (kind == BinaryModelWriter.lowerBoundInv
+                || kind == BinaryModelWriter.upperBoundInv) {
+            AbstractResource threshold = readResource();
+            IThresholdConstraint constr;
+            if (kind == BinaryModelWriter.lowerBoundInv) {
+                constr = new LowerBoundConstraint(threshold);
+            } else {
+                constr = new UpperBoundConstraint(threshold);
+            }
+            BinaryInvariant inv = new TempConstrainedInvariant<BinaryInvariant>(
+                    readInvariant(), constr, false);
+            readStatistics(inv);
+            return inv;
+        }
+
+        EventType first = readEType();
+        EventType second = readEType();
+        String relation = readInternedString();
+        BinaryInvariant inv;
+        switch (kind) {
+        case BinaryModelWriter.alwaysFollowedInv:
+            inv = new AlwaysFollowedInvariant(first, second, relation);
+            break;
+        case BinaryModelWriter.alwaysPrecedesInv:
+            inv = new AlwaysPrecedesInvariant(first, second, relation);
+            break;
+        case BinaryModelWriter.neverFollowedInv:
+            inv = new NeverFollowedInvariant(first, second, relation);
+            break;
+        case BinaryModelWriter.neverImmediatelyFollowedInv:
+            inv = new NeverImmediatelyFollowedInvariant(first, second,
+                    relation);
+            break;
+        case BinaryModelWriter.interruptedByInv:
+            inv = new InterruptedByInvariant(first, second, relation);
+            break;
+        case BinaryModelWriter.initialTerminalInv:
+            inv = new TOInitialTerminalInvariant(first, second, relation);
+            break;
+        default:
+            throw new IOException("Unknown invariant kind " + kind);
+        }
+        readStatistics(inv);
+        return inv;
+    }
+
+    private void readStatistics(BinaryInvariant inv) throws IOException {
+        int supportCount = readVarInt();
+        if (supportCount > 0) {
+            inv.setStatistics(new InvariantStatistics(supportCount - 1));
+        }
+    }
+
+    /**
+     * Reads an event type.
+     */
+    public EventType readEType() throws IOException {
+        int id = readVarInt();
+        if (id < eTypes.size()) {
+            return eTypes.get(id);
+        }
+        if (id != eTypes.size()) {
+            throw new IOException("Event type id out of range: " + id);
+        }
+        int kind = in.readByte();
+        EventType eType;
+        if (kind == BinaryModelWriter.initialStringEType) {
+            eType = StringEventType.newInitialStringEventType();
+        } else if (kind == BinaryModelWriter.terminalStringEType) {
+            eType = StringEventType.newTerminalStringEventType();
+        } else if (kind == BinaryModelWriter.stringEType) {
+            eType = new StringEventType(readInternedString());
+        } else if (kind == BinaryModelWriter.initialDistEType) {
+            eType = DistEventType.newInitialDistEventType();
+        } else if (kind == BinaryModelWriter.terminalDistEType) {
+            eType = DistEventType.newTerminalDistEventType();
+        } else if (kind == BinaryModelWriter.distEType) {
+            String label = readInternedString();
+            eType = new DistEventType(label, readInternedString());
+        } else {
+            throw new IOException("Unknown event type kind " + kind);
+        }
+        eTypes.add(eType);
+        return eType;
+    }
+
+    /**
+     * Reads a resource (or null).
+     */
+    public AbstractResource readResource() throws IOException {
+        int kind = in.readByte();
+        switch (kind) {
+        case BinaryModelWriter.noResource:
+            return null;
+        case BinaryModelWriter.intResource: {
+            int value = in.readInt();
+            return new ITotalResource(value, readInternedString());
+        }
+        case BinaryModelWriter.longResource: {
+            long value = in.readLong();
+            return new LTotalResource(value, readInternedString());
+        }
+        case BinaryModelWriter.floatResource: {
+            float value = in.readFloat();
+            return new FTotalResource(value, readInternedString());
+        }
+        case BinaryModelWriter.doubleResource: {
+            double value = in.readDouble();
+            return new DTotalResource(value, readInternedString());
+        }
+        case BinaryModelWriter.vectorResource: {
+            int size = readVarInt();
+            List<Integer> vector = new ArrayList<Integer>(size);
+            for (int i = 0; i < size; i++) {
+                vector.add(in.readInt());
+            }
+            return new VectorTime(vector);
+        }
+        default:
+            throw new IOException("Unknown resource kind " + kind);
+        }
+    }
+
+    /**
+     * Reads a set of strings.
+     */
+    public Set<String> readStringSet() throws IOException {
+        int size = readVarInt();
+        Set<String> strings = new LinkedHashSet<String>();
+        for (int i = 0; i < size; i++) {
+            strings.add(readInternedString());
+        }
+        return strings;
+    }
+
+    /**
+     * Reads an interned string (or null).
+     */
+    public String readInternedString() throws IOException {
+        int id = readVarInt();
+        if (id == 0) {
+            return null;
+        }
+        if (id <= strings.size()) {
+            return strings.get(id - 1);
+        }
+        if (id != strings.size() + 1) {
+            throw new IOException("String id out of range: " + id);
+        }
+        String s = readString();
+        strings.add(s);
+        return s;
+    }
+
+    /**
+     * Reads a string (or null) that was not interned.
+     */
+    public String readString() throws IOException {
+        int length = readVarInt();
+        if (length == 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length - 1];
+        in.readFully(bytes);
+        return new String(bytes, BinaryModelWriter.utf8);
+    }
+
+    /**
+     * Reads a variable-length int.
+     */
+    public int readVarInt() throws IOException {
+        int i = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            int b = in.readByte();
+            i |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                if (i < 0) {
+                    throw new IOException("Malformed variable-length int");
+                }
+                return i;
+            }
+        }
+        throw new IOException("Malformed variable-length int");
+    }
+
+    /**
+     * Reads an int.
+     */
+    public int readInt() throws IOException {
+        return in.readInt();
+    }
+
+    /**
+     * Reads a long.
+     */
+    public long readLong() throws IOException {
+        return in.readLong();
+    }
+}
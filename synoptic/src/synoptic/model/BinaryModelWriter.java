@@ -0,0 +1,374 @@
+package synoptic.model;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import synoptic.invariants.AlwaysFollowedInvariant;
+import synoptic.invariants.AlwaysPrecedesInvariant;
+import synoptic.invariants.BinaryInvariant;
+import synoptic.invariants.ITemporalInvariant;
+import synoptic.invariants.InterruptedByInvariant;
+import synoptic.invariants.NeverFollowedInvariant;
+import synoptic.invariants.NeverImmediatelyFollowedInvariant;
+import synoptic.invariants.TOInitialTerminalInvariant;
+import synoptic.invariants.TemporalInvariantSet;
+import synoptic.invariants.constraints.IThresholdConstraint;
+import synoptic.invariants.constraints.LowerBoundConstraint;
+import synoptic.invariants.constraints.TempConstrainedInvariant;
+import synoptic.invariants.constraints.UpperBoundConstraint;
+import synoptic.model.event.DistEventType;
+import synoptic.model.event.EventType;
+import synoptic.model.event.StringEventType;
+import synoptic.util.resource.AbstractResource;
+import synoptic.util.resource.DTotalResource;
+import synoptic.util.resource.FTotalResource;
+import synoptic.util.resource.ITotalResource;
+import synoptic.util.resource.LTotalResource;
+import synoptic.util.resource.VectorTime;
+
+/**
+ * Writes trace graphs, invariants, and the values they are made of in a
+ * compact binary form that can be read back with {@link BinaryModelReader}.
+ * Integers are written as variable-length ints, and strings other than log
+ * lines (relations, file names, resource keys) as well as event types are
+ * interned: each one is written once, and then referred to by its id. A reader
+ * must therefore read the values in the same order in which they were written.
+ * <br />
+ * <br />
+ * Event types must be {@link StringEventType}s, or {@link DistEventType}s
+ * without CSight-specific event classes, and times integer, floating point,
+ * or vector resources. Writing anything else throws an
+ * IllegalArgumentException. The (non-time) resources and the states of events
+ * are not written.
+ */
+public class BinaryModelWriter {
+    static final Charset utf8 = Charset.forName("UTF-8");
+
+    // Node kinds.
+    static final int eventNode = 0;
+    static final int initialNode = 1;
+    static final int terminalNode = 2;
+
+    // Resource kinds.
+    static final int noResource = 0;
+    static final int intResource = 1;
+    static final int longResource = 2;
+    static final int floatResource = 3;
+    static final int doubleResource = 4;
+    static final int vectorResource = 5;
+
+    // Event type kinds.
+    static final int stringEType = 0;
+    static final int initialStringEType = 1;
+    static final int terminalStringEType = 2;
+    static final int distEType = 3;
+    static final int initialDistEType = 4;
+    static final int terminalDistEType = 5;
+
+    // Invariant kinds.
+    static final int alwaysFollowedInv = 0;
+    static final int alwaysPrecedesInv = 1;
+    static final int neverFollowedInv = 2;
+    static final int neverImmediatelyFollowedInv = 3;
+    static final int interruptedByInv = 4;
+    static final int initialTerminalInv = 5;
+    static final int lowerBoundInv = 6;
+    static final int upperBoundInv = 7;
+
+    private final DataOutputStream out;
+    private final Map<String, Integer> stringIds = new HashMap<String, Integer>();
+    private final Map<EventType, Integer> eTypeIds = new HashMap<EventType, Integer>();
+
+    public BinaryModelWriter(OutputStream out) {
+        this.out = new DataOutputStream(out);
+    }
+
+    /**
+     * Writes the graph, including all of its nodes, transitions, and traces.
+     * The written graph uses the given id for every node (see
+     * {@link BinaryModelReader#readChainsTraceGraph()}).
+     */
+    public void writeChainsTraceGraph(ChainsTraceGraph g,
+            Map<EventNode, Integer> nodeIds) throws IOException {
+        writeNodesAndTransitions(g, nodeIds);
+
+        writeVarInt(g.getTraces().size());
+        for (Trace trace : g.getTraces()) {
+            Map<String, EventNode> initialNodes = trace.getInitialNodes();
+            writeVarInt(initialNodes.size());
+            for (Map.Entry<String, EventNode> e : initialNodes.entrySet()) {
+                writeInternedString(e.getKey());
+                writeVarInt(nodeIds.get(e.getValue()));
+            }
+        }
+    }
+
+    /**
+     * Writes the graph, including all of its nodes and transitions. The traces
+     * of the graph are implied by the transitions from the initial node. The
+     * written graph uses the given id for every node (see
+     * {@link BinaryModelReader#readDAGsTraceGraph()}).
+     */
+    public void writeDAGsTraceGraph(DAGsTraceGraph g,
+            Map<EventNode, Integer> nodeIds) throws IOException {
+        writeNodesAndTransitions(g, nodeIds);
+    }
+
+    private void writeNodesAndTransitions(TraceGraph<?> g,
+            Map<EventNode, Integer> nodeIds) throws IOException {
+        writeVarInt(g.getNodes().size());
+        for (EventNode node : g.getNodes()) {
+            nodeIds.put(node, nodeIds.size());
+            if (node == g.getDummyInitialNode()) {
+                out.writeByte(initialNode);
+            } else if (node == g.dummyTerminalNode) {
+                out.writeByte(terminalNode);
+            } else {
+                if (node.getPreEventState() != null
+                        || node.getPostEventState() != null) {
+                    throw new IllegalArgumentException(
+                            "The states of events cannot be written");
+                }
+                out.writeByte(eventNode);
+                writeEType(node.getEType());
+                writeString(node.getEvent().getLine());
+                writeInternedString(node.getEvent().getFileName());
+                writeVarInt(node.getLineNum());
+                writeResource(node.getTime());
+                writeVarInt(node.getTraceID());
+            }
+        }
+
+        for (EventNode node : g.getNodes()) {
+            List<Transition<EventNode>> transitions = node.getAllTransitions();
+            writeVarInt(transitions.size());
+            for (Transition<EventNode> t : transitions) {
+                writeVarInt(nodeIds.get(t.getTarget()));
+                writeStringSet(t.getRelation());
+                writeResource(t.getTimeDelta());
+            }
+        }
+    }
+
+    /**
+     * Writes the invariants of the set, in iteration order.
+     */
+    public void writeInvariants(TemporalInvariantSet invariants)
+            throws IOException {
+        writeVarInt(invariants.numInvariants());
+        for (ITemporalInvariant inv : invariants) {
+            writeInvariant(inv);
+        }
+    }
+
+    private void writeInvariant(ITemporalInvariant inv) throws IOException {
+        if (inv instanceof TempConstrainedInvariant<?>) {
+            TempConstrainedInvariant<?> cInv = (TempConstrainedInvariant<?>) inv;
+            IThresholdConstraint constr = cInv.getConstraint();
+            if (constr instanceof LowerBoundConstraint) {
+                out.writeByte(lowerBoundInv);
+            } else if (constr instanceof UpperBoundConstraint) {
+                out.writeByte(upperBoundInv);
+            } else {
+                throw new IllegalArgumentException(
+                        "Cannot write invariants with constraint "
+                                + constr.getClass().getSimpleName());
+            }
+            writeResource(constr.getThreshold());
+            writeInvariant(cInv.getInv());
+            writeStatistics(cInv);
+            return;
+        }
+
+        if (inv instanceof AlwaysFollowedInvariant) {
+            out.writeByte(alwaysFollowedInv);
+        } else if (inv instanceof AlwaysPrecedesInvariant) {
+            out.writeByte(alwaysPrecedesInv);
+        } else if (inv instanceof NeverFollowedInvariant) {
+            out.writeByte(neverFollowedInv);
+        } else if (inv instanceof NeverImmediatelyFollowedInvariant) {
+            out.writeByte(neverImmediatelyFollowedInv);
+        } else if (inv instanceof InterruptedByInvariant) {
+            out.writeByte(interruptedByInv);
+        } else if (inv instanceof TOInitialTerminalInvariant) {
+            out.writeByte(initialTerminalInv);
+        } else {
+            throw new IllegalArgumentException("Cannot write invariant "
+                    + inv.getClass().getSimpleName());
+        }
+        BinaryInvariant bInv = (BinaryInvariant) inv;
+        writeEType(bInv.getFirst());
+        writeEType(bInv.getSecond());
+        writeInternedString(bInv.getRelation());
+        writeStatistics(bInv);
+    }
+
+    private void writeStatistics(BinaryInvariant inv) throws IOException {
+        if (inv.getStatistics() == null) {
+            writeVarInt(0);
+        } else {
+            // Shifted by one, so that 0 stands for no statistics.
+            writeVarInt(inv.getStatistics().supportCount + 1);
+        }
+    }
+
+    /**
+     * Writes an event type, interning it.
+     */
+    public void writeEType(EventType eType) throws IOException {
+        Integer id = eTypeIds.get(eType);
+        if (id != null) {
+            writeVarInt(id);
+            return;
+        }
+        if (eType instanceof DistEventType) {
+            DistEventType distEType = (DistEventType) eType;
+            if (distEType.isLocalEvent() || distEType.isCommEvent()) {
+                throw new IllegalArgumentException(
+                        "Cannot write CSight event types");
+            }
+        } else if (!(eType instanceof StringEventType)) {
+            throw new IllegalArgumentException("Cannot write event type "
+                    + eType.getClass().getSimpleName());
+        }
+        id = eTypeIds.size();
+        eTypeIds.put(eType, id);
+        writeVarInt(id);
+        if (eType instanceof DistEventType) {
+            if (eType.isInitialEventType()) {
+                out.writeByte(initialDistEType);
+            } else if (eType.isTerminalEventType()) {
+                out.writeByte(terminalDistEType);
+            } else {
+                out.writeByte(distEType);
+                writeInternedString(eType.getETypeLabel());
+                writeInternedString(((DistEventType) eType).getProcessName());
+            }
+        } else if (eType.isInitialEventType()) {
+            out.writeByte(initialStringEType);
+        } else if (eType.isTerminalEventType()) {
+            out.writeByte(terminalStringEType);
+        } else {
+            out.writeByte(stringEType);
+            writeInternedString(eType.getETypeLabel());
+        }
+    }
+
+    /**
+     * Writes a resource (or null).
+     */
+    public void writeResource(AbstractResource r) throws IOException {
+        if (r == null) {
+            out.writeByte(noResource);
+            return;
+        }
+        if (r instanceof ITotalResource) {
+            out.writeByte(intResource);
+            out.writeInt(((ITotalResource) r).value);
+        } else if (r instanceof LTotalResource) {
+            out.writeByte(longResource);
+            out.writeLong(((LTotalResource) r).value);
+        } else if (r instanceof FTotalResource) {
+            out.writeByte(floatResource);
+            out.writeFloat(((FTotalResource) r).value);
+        } else if (r instanceof DTotalResource) {
+            out.writeByte(doubleResource);
+            out.writeDouble(((DTotalResource) r).value);
+        } else if (r instanceof VectorTime) {
+            // Vector times have no key.
+            out.writeByte(vectorResource);
+            List<Integer> vector = ((VectorTime) r).getVector();
+            writeVarInt(vector.size());
+            for (int i : vector) {
+                out.writeInt(i);
+            }
+            return;
+        } else {
+            throw new IllegalArgumentException("Cannot write resource "
+                    + r.getClass().getSimpleName());
+        }
+        writeInternedString(r.getKey());
+    }
+
+    /**
+     * Writes a set of strings, interning each of them.
+     */
+    public void writeStringSet(Set<String> strings) throws IOException {
+        writeVarInt(strings.size());
+        for (String s : strings) {
+            writeInternedString(s);
+        }
+    }
+
+    /**
+     * Writes a string (or null), interning it.
+     */
+    public void writeInternedString(String s) throws IOException {
+        if (s == null) {
+            writeVarInt(0);
+            return;
+        }
+        // Ids are shifted by one, so that 0 stands for null.
+        Integer id = stringIds.get(s);
+        if (id != null) {
+            writeVarInt(id);
+            return;
+        }
+        id = stringIds.size() + 1;
+        stringIds.put(s, id);
+        writeVarInt(id);
+        writeString(s);
+    }
+
+    /**
+     * Writes a string (or null), without interning it.
+     */
+    public void writeString(String s) throws IOException {
+        if (s == null) {
+            writeVarInt(0);
+            return;
+        }
+        byte[] bytes = s.getBytes(utf8);
+        writeVarInt(bytes.length + 1);
+        out.write(bytes);
+    }
+
+    /**
+     * Writes a non-negative int in 1 to 5 bytes, 7 bits at a time.
+     */
+    public void writeVarInt(int i) throws IOException {
+        assert i >= 0;
+        while ((i & ~0x7F) != 0) {
+            out.writeByte((i & 0x7F) | 0x80);
+            i >>>= 7;
+        }
+        out.writeByte(i);
+    }
+
+    /**
+     * Writes an int as-is.
+     */
+    public void writeInt(int i) throws IOException {
+        out.writeInt(i);
+    }
+
+    /**
+     * Writes a long as-is.
+     */
+    public void writeLong(long l) throws IOException {
+        out.writeLong(l);
+    }
+
+    /**
+     * Flushes the underlying stream.
+     */
+    public void flush() throws IOException {
+        out.flush();
+    }
+}
@@ -1,5 +1,6 @@
 package synoptic.model;
 
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.LinkedHashMap;
@@ -87,41 +88,10 @@ public class ChainRelationPath implements IRelationPath {
         // Used for IntrBy, which needs to record order
         LinkedList<EventType> history = new LinkedList<EventType>();
 
-        Set<String> relationSet = new HashSet<String>();
-        relationSet.add(relation);
-
-        EventNode curNode = eNode;
-
-        List<? extends ITransition<EventNode>> transitions = curNode
-                .getTransitionsWithIntersectingRelations(relationSet);
-
-        while (!transitions.isEmpty() || curNode.equals(eFinal)) {
-
-            // TODO: Refactor this well formed transition test into Trace
-            // Each node we traverse must have exactly one transition with the
-            // ordering relation.
-            if (curNode.getTransitionsWithIntersectingRelations(
-                    Event.defTimeRelationSet).size() != 1) {
-                throw new InternalSynopticException(
-                        "There should be exactly one transition with an ordering relation.");
-            }
-
-            // Each node we traverse must have 1 relation with the relation.
-            if (curNode.getTransitionsWithIntersectingRelations(relationSet)
-                    .size() != 1 && !curNode.equals(eFinal)) {
-                throw new InternalSynopticException(
-                        "There should be one transition with the "
-                                + relation
-                                + " relation, but there are "
-                                + curNode.getTransitionsWithExactRelations(
-                                        relationSet).size());
-            }
-
-            // The current event is 'b', and all prior events are 'a' --
-            // this notation indicates that an 'a' always occur prior to a
-            // 'b' in the path.
-            EventType b = curNode.getEType();
-
+        // The current event is 'b', and all prior events are 'a' -- this
+        // notation indicates that an 'a' always occur prior to a 'b' in the
+        // path.
+        for (EventType b : getEventTypes()) {
             // Update the precedes counts based on the a events that
             // preceded the current b event in this path.
             for (EventType a : seen) {
@@ -195,6 +165,51 @@ public class ChainRelationPath implements IRelationPath {
             } else {
                 eventCounts.put(b, eventCounts.get(b) + 1);
             }
+        }
+
+        counted = true;
+    }
+
+    /**
+     * Walks over the tracegraph that eNode is part of and returns the event
+     * types of the nodes in this relation path, in order. Throws an error if a
+     * node has multiple transitions for a single relation (i.e., not a totally
+     * ordered relation path).
+     */
+    public List<EventType> getEventTypes() {
+        List<EventType> eTypes = new ArrayList<EventType>();
+
+        Set<String> relationSet = new HashSet<String>();
+        relationSet.add(relation);
+
+        EventNode curNode = eNode;
+
+        List<? extends ITransition<EventNode>> transitions = curNode
+                .getTransitionsWithIntersectingRelations(relationSet);
+
+        while (!transitions.isEmpty() || curNode.equals(eFinal)) {
+
+            // TODO: Refactor this well formed transition test into Trace
+            // Each node we traverse must have exactly one transition with the
+            // ordering relation.
+            if (curNode.getTransitionsWithIntersectingRelations(
+                    Event.defTimeRelationSet).size() != 1) {
+                throw new InternalSynopticException(
+                        "There should be exactly one transition with an ordering relation.");
+            }
+
+            // Each node we traverse must have 1 relation with the relation.
+            if (curNode.getTransitionsWithIntersectingRelations(relationSet)
+                    .size() != 1 && !curNode.equals(eFinal)) {
+                throw new InternalSynopticException(
+                        "There should be one transition with the "
+                                + relation
+                                + " relation, but there are "
+                                + curNode.getTransitionsWithExactRelations(
+                                        relationSet).size());
+            }
+
+            eTypes.add(curNode.getEType());
 
             // Move on to the next node in the trace.
             List<? extends ITransition<EventNode>> searchTransitions = curNode
@@ -211,7 +226,7 @@ public class ChainRelationPath implements IRelationPath {
 
         }
 
-        counted = true;
+        return eTypes;
     }
 
     public Set<EventType> getSeen() {
@@ -13,6 +13,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
+import synoptic.algorithms.BitSetTransitiveClosure;
 import synoptic.algorithms.TransitiveClosure;
 import synoptic.main.options.AbstractOptions;
 import synoptic.main.parser.ParseException;
@@ -238,6 +239,44 @@ public class ChainsTraceGraph extends TraceGraph<StringEventType> {
         return transClosure;
     }
 
+    /**
+     * Builds the same closure as {@code getTransitiveClosure}, but records
+     * each maximal chain of events connected by relations as an interval,
+     * instead of recording every reachable pair of events.
+     */
+    @Override
+    public TransitiveClosure getBitSetTransitiveClosure(Set<String> relations) {
+        assert relations != null;
+
+        BitSetTransitiveClosure transClosure = new BitSetTransitiveClosure(
+                relations);
+        List<EventNode> chain = new ArrayList<EventNode>();
+        for (EventNode firstNode : traceIdToInitNodes.values()) {
+            EventNode curNode = firstNode;
+
+            while (!curNode.isTerminal()) {
+                chain.clear();
+
+                while (curNode.getTransitionsWithExactRelations(relations)
+                        .size() == 1) {
+                    chain.add(curNode);
+                    curNode = curNode
+                            .getTransitionsWithExactRelations(relations).get(0)
+                            .getTarget();
+                }
+
+                if (!curNode.isTerminal()) {
+                    chain.add(curNode);
+
+                    assert curNode.getAllSuccessors().size() == 1;
+                    curNode = curNode.getAllSuccessors().iterator().next();
+                }
+                transClosure.addChain(chain);
+            }
+        }
+        return transClosure;
+    }
+
     // Used by tests only (so that DAGWalking invariant miner can operate on
     // ChainsTraceGraph)
     @Override
@@ -255,4 +294,12 @@ public class ChainsTraceGraph extends TraceGraph<StringEventType> {
         return Collections.unmodifiableList(traces);
     }
 
+    /**
+     * Adds a trace whose nodes and transitions have already been added to the
+     * graph (used when a graph is read back from its binary form).
+     */
+    void addTrace(Trace trace) {
+        traces.add(trace);
+    }
+
 }
@@ -0,0 +1,584 @@
+package synoptic.model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import synoptic.main.options.AbstractOptions;
+import synoptic.main.parser.ITraceConsumer;
+import synoptic.main.parser.ParseException;
+import synoptic.model.event.Event;
+import synoptic.model.event.EventType;
+import synoptic.model.state.State;
+import synoptic.util.InternalSynopticException;
+import synoptic.util.resource.AbstractResource;
+import synoptic.util.resource.DTotalResource;
+import synoptic.util.resource.FTotalResource;
+import synoptic.util.resource.ITotalResource;
+import synoptic.util.resource.LTotalResource;
+
+/**
+ * A compact store of the totally ordered traces of a log, which keeps the
+ * events in primitive columns instead of as event nodes with transitions. It
+ * holds the same traces as the {@link ChainsTraceGraph} that a log is parsed
+ * into, at a fraction of the memory: <br />
+ * <br />
+ * - events are numbered in trace order, and the events of each trace are
+ * contiguous; <br />
+ * - the event type, trace id, file name, line number, and time of each event
+ * are kept in int[] and long[] columns (times as raw int/long values or
+ * float/double bits), and its log line in a String[] column; <br />
+ * - the pre- and post-event states of the (few) events that have them are kept
+ * in maps; <br />
+ * - for each relation, an int[] column holds the event that each event has a
+ * transition with the relation to, or {@link #noSuccessor} or
+ * {@link #terminalSuccessor}; <br />
+ * - event types, file names, relations, and the relation sets of events are
+ * interned. <br />
+ * <br />
+ * The store is filled one trace at a time, like a ChainsTraceGraph, and can be
+ * passed as the consumer of a streaming {@link synoptic.main.parser.TraceParser}
+ * so that no event nodes are kept for the traces of the log. The transitions
+ * between events are computed exactly like {@code ChainsTraceGraph.addTrace}
+ * does. Resources other than time of the events are not kept. <br />
+ * <br />
+ * Event nodes are only created on demand: {@link #getEventNode(int)} creates a
+ * node without transitions for a single event, and
+ * {@link #toChainsTraceGraph()} creates the full trace graph.
+ * {@link #getRelationPathETypeIds(String)} exposes the relation paths that
+ * {@link Trace#getSingleRelationPaths(String)} would create as arrays of event
+ * type ids, which lets invariant miners run directly against the columns.
+ */
+public class ColumnarTraceGraph implements ITraceConsumer {
+    /** The successor of an event that has no transition with a relation. */
+    public static final int noSuccessor = -1;
+
+    /** The successor of the last event of a trace, for each of its relations. */
+    public static final int terminalSuccessor = -2;
+
+    private static final int initialCapacity = 1024;
+
+    /** The types of time that can be stored in the time column. */
+    private enum TimeType {
+        NONE, INT, LONG, FLOAT, DOUBLE
+    }
+
+    private int numEvents = 0;
+    private int[] eTypeIds = new int[initialCapacity];
+    private int[] traceIds = new int[initialCapacity];
+    private int[] lineNums = new int[initialCapacity];
+    private int[] fileNameIds = new int[initialCapacity];
+    private String[] logLines = new String[initialCapacity];
+    private long[] times = new long[initialCapacity];
+    private int[] relationSetIds = new int[initialCapacity];
+
+    /** The successor of each event, for each relation id. */
+    private final List<int[]> successors = new ArrayList<int[]>();
+
+    private int numTraces = 0;
+    /** The first event of each trace, followed by numEvents. */
+    private int[] traceStarts = new int[initialCapacity + 1];
+    /**
+     * For each trace, the first event of each relation id that has a
+     * transition from INITIAL (ids beyond the end of the array have none).
+     */
+    private final List<int[]> traceInitialEvents = new ArrayList<int[]>();
+
+    private final List<EventType> eTypes = new ArrayList<EventType>();
+    private final Map<EventType, Integer> eTypeToId = new HashMap<EventType, Integer>();
+    private final List<String> relations = new ArrayList<String>();
+    private final Map<String, Integer> relationToId = new HashMap<String, Integer>();
+    private final List<Set<Relation>> relationSets = new ArrayList<Set<Relation>>();
+    private final Map<Set<Relation>, Integer> relationSetToId = new HashMap<Set<Relation>, Integer>();
+    private final List<String> fileNames = new ArrayList<String>();
+    private final Map<String, Integer> fileNameToId = new HashMap<String, Integer>();
+
+    /** The pre- and post-event states of the events that have them. */
+    private final Map<Integer, State> preEventStates = new HashMap<Integer, State>();
+    private final Map<Integer, State> postEventStates = new HashMap<Integer, State>();
+
+    /** The type and key of all times in the time column. */
+    private TimeType timeType = null;
+    private String timeKey = null;
+
+    /**
+     * Adds the events of a trace to the store and computes their transitions.
+     * Sorts the events by time first, unless AbstractOptions.keepOrder is set.
+     * The list of events is not modified.
+     *
+     * @param events
+     *            the events of the trace
+     * @param eventRelations
+     *            the relations of each of the events
+     */
+    @Override
+    public void addTrace(List<EventNode> events,
+            Map<EventNode, Set<Relation>> eventRelations) throws ParseException {
+        assert events.size() > 0;
+
+        if (!AbstractOptions.keepOrder) {
+            // Sort the events in this trace according to the totally ordered
+            // time relation, as ChainsTraceGraph.addTrace does.
+            events = new ArrayList<EventNode>(events);
+            Collections.sort(events, new Comparator<EventNode>() {
+                @Override
+                public int compare(EventNode e1, EventNode e2) {
+                    return e1.getTime().compareTo(e2.getTime());
+                }
+            });
+        }
+
+        int start = numEvents;
+        ensureCapacity(numEvents + events.size());
+        Map<Integer, Integer> initials = new LinkedHashMap<Integer, Integer>();
+        Map<String, Integer> lastSeenEventForRelation = new HashMap<String, Integer>();
+
+        for (int cur = start; cur < start + events.size(); cur++) {
+            EventNode node = events.get(cur - start);
+            Set<Relation> nodeRelations = eventRelations.get(node);
+            addEvent(cur, node, nodeRelations);
+
+            // The relations of the transition from each source event (or
+            // from INITIAL, as noSuccessor) to the current event.
+            Map<Integer, Set<String>> srcToTxRelations = new LinkedHashMap<Integer, Set<String>>();
+            for (Relation relation : nodeRelations) {
+                Integer src;
+                if (relation.isClosure()) {
+                    src = lastSeenEventForRelation.get(relation.getRelation());
+                } else {
+                    src = cur > start ? cur - 1 : null;
+                }
+                if (src == null) {
+                    src = noSuccessor;
+                }
+                Set<String> txRelations = srcToTxRelations.get(src);
+                if (txRelations == null) {
+                    txRelations = new LinkedHashSet<String>();
+                    srcToTxRelations.put(src, txRelations);
+                }
+                txRelations.add(relation.getRelation());
+            }
+
+            for (Map.Entry<Integer, Set<String>> e : srcToTxRelations
+                    .entrySet()) {
+                int src = e.getKey();
+                Set<String> txRelations = e.getValue();
+                if (src == noSuccessor) {
+                    // The event is connected to INITIAL with all of its
+                    // relations.
+                    txRelations = new LinkedHashSet<String>();
+                    for (Relation relation : nodeRelations) {
+                        int r = internRelation(relation.getRelation());
+                        if (!initials.containsKey(r)) {
+                            initials.put(r, cur);
+                        }
+                        txRelations.add(relation.getRelation());
+                    }
+                } else {
+                    for (String relation : txRelations) {
+                        setSuccessor(src, internRelation(relation), cur);
+                    }
+                }
+                for (String relation : txRelations) {
+                    lastSeenEventForRelation.put(relation, cur);
+                }
+            }
+        }
+        numEvents += events.size();
+
+        // Connect the last event to TERMINAL with all of its relations.
+        int last = numEvents - 1;
+        for (Relation relation : relationSets.get(relationSetIds[last])) {
+            setSuccessor(last, internRelation(relation.getRelation()),
+                    terminalSuccessor);
+        }
+
+        int[] traceInitials = new int[relations.size()];
+        Arrays.fill(traceInitials, noSuccessor);
+        for (Map.Entry<Integer, Integer> e : initials.entrySet()) {
+            traceInitials[e.getKey()] = e.getValue();
+        }
+        traceInitialEvents.add(traceInitials);
+        if (numTraces + 2 > traceStarts.length) {
+            traceStarts = Arrays.copyOf(traceStarts, traceStarts.length * 2);
+        }
+        traceStarts[numTraces] = start;
+        numTraces++;
+        traceStarts[numTraces] = numEvents;
+    }
+
+    /**
+     * Stores the columns of node at index event.
+     */
+    private void addEvent(int event, EventNode node, Set<Relation> nodeRelations) {
+        EventType eType = node.getEType();
+        Integer eTypeId = eTypeToId.get(eType);
+        if (eTypeId == null) {
+            eTypeId = eTypes.size();
+            eTypes.add(eType);
+            eTypeToId.put(eType, eTypeId);
+        }
+        eTypeIds[event] = eTypeId;
+        traceIds[event] = node.getTraceID();
+        lineNums[event] = node.getLineNum();
+        logLines[event] = node.getEvent().getLine();
+        fileNameIds[event] = internFileName(node.getEvent().getFileName());
+        times[event] = encodeTime(node.getTime());
+        if (node.getPreEventState() != null) {
+            preEventStates.put(event, node.getPreEventState());
+        }
+        if (node.getPostEventState() != null) {
+            postEventStates.put(event, node.getPostEventState());
+        }
+
+        Integer relationSetId = relationSetToId.get(nodeRelations);
+        if (relationSetId == null) {
+            relationSetId = relationSets.size();
+            Set<Relation> relationSet = Collections
+                    .unmodifiableSet(new LinkedHashSet<Relation>(nodeRelations));
+            relationSets.add(relationSet);
+            relationSetToId.put(relationSet, relationSetId);
+            for (Relation relation : relationSet) {
+                internRelation(relation.getRelation());
+            }
+        }
+        relationSetIds[event] = relationSetId;
+    }
+
+    /**
+     * Returns the raw bits of time, which must be of the same type and key as
+     * all other times in the store.
+     */
+    private long encodeTime(AbstractResource time) {
+        TimeType type;
+        long bits;
+        if (time == null) {
+            type = TimeType.NONE;
+            bits = 0;
+        } else if (time instanceof ITotalResource) {
+            type = TimeType.INT;
+            bits = ((ITotalResource) time).value;
+        } else if (time instanceof LTotalResource) {
+            type = TimeType.LONG;
+            bits = ((LTotalResource) time).value;
+        } else if (time instanceof FTotalResource) {
+            type = TimeType.FLOAT;
+            bits = Float.floatToRawIntBits(((FTotalResource) time).value);
+        } else if (time instanceof DTotalResource) {
+            type = TimeType.DOUBLE;
+            bits = Double.doubleToRawLongBits(((DTotalResource) time).value);
+        } else {
+            throw new IllegalArgumentException(
+                    "A columnar trace graph cannot store times of type "
+                            + time.getClass().getSimpleName());
+        }
+
+        String key = time == null ? null : time.getKey();
+        if (timeType == null) {
+            timeType = type;
+            timeKey = key;
+        } else if (timeType != type
+                || (key == null ? timeKey != null : !key.equals(timeKey))) {
+            throw new IllegalArgumentException(
+                    "All events of a columnar trace graph must have times of the same type");
+        }
+        return bits;
+    }
+
+    private int internFileName(String fileName) {
+        Integer id = fileNameToId.get(fileName);
+        if (id == null) {
+            id = fileNames.size();
+            fileNames.add(fileName);
+            fileNameToId.put(fileName, id);
+        }
+        return id;
+    }
+
+    private int internRelation(String relation) {
+        Integer r = relationToId.get(relation);
+        if (r == null) {
+            r = relations.size();
+            relations.add(relation);
+            relationToId.put(relation, r);
+            int[] relationSuccessors = new int[eTypeIds.length];
+            Arrays.fill(relationSuccessors, noSuccessor);
+            successors.add(relationSuccessors);
+        }
+        return r;
+    }
+
+    private void setSuccessor(int event, int relation, int successor) {
+        int[] relationSuccessors = successors.get(relation);
+        if (relationSuccessors[event] != noSuccessor) {
+            throw new InternalSynopticException(
+                    "Multiple transitions exist for relation: "
+                            + relations.get(relation));
+        }
+        relationSuccessors[event] = successor;
+    }
+
+    /**
+     * Grows the columns to hold at least capacity events.
+     */
+    private void ensureCapacity(int capacity) {
+        if (capacity <= eTypeIds.length) {
+            return;
+        }
+        int newCapacity = Math.max(capacity, eTypeIds.length * 2);
+        eTypeIds = Arrays.copyOf(eTypeIds, newCapacity);
+        traceIds = Arrays.copyOf(traceIds, newCapacity);
+        lineNums = Arrays.copyOf(lineNums, newCapacity);
+        fileNameIds = Arrays.copyOf(fileNameIds, newCapacity);
+        logLines = Arrays.copyOf(logLines, newCapacity);
+        times = Arrays.copyOf(times, newCapacity);
+        relationSetIds = Arrays.copyOf(relationSetIds, newCapacity);
+        for (int r = 0; r < successors.size(); r++) {
+            int[] relationSuccessors = successors.get(r);
+            int oldCapacity = relationSuccessors.length;
+            relationSuccessors = Arrays.copyOf(relationSuccessors, newCapacity);
+            Arrays.fill(relationSuccessors, oldCapacity, newCapacity,
+                    noSuccessor);
+            successors.set(r, relationSuccessors);
+        }
+    }
+
+    /**
+     * Returns the number of events in the store.
+     */
+    public int getNumEvents() {
+        return numEvents;
+    }
+
+    /**
+     * Returns the number of traces in the store.
+     */
+    public int getNumTraces() {
+        return numTraces;
+    }
+
+    /**
+     * Returns the index of the first event of trace.
+     */
+    public int getTraceStart(int trace) {
+        return traceStarts[trace];
+    }
+
+    /**
+     * Returns the index after the last event of trace.
+     */
+    public int getTraceEnd(int trace) {
+        return traceStarts[trace + 1];
+    }
+
+    /**
+     * Returns the number of distinct event types in the store. Event type ids
+     * range from 0 to getNumETypes() - 1.
+     */
+    public int getNumETypes() {
+        return eTypes.size();
+    }
+
+    /**
+     * Returns the event type with the given id.
+     */
+    public EventType getETypeById(int eTypeId) {
+        return eTypes.get(eTypeId);
+    }
+
+    /**
+     * Returns the event type id of event.
+     */
+    public int getETypeId(int event) {
+        return eTypeIds[event];
+    }
+
+    /**
+     * Returns the event type of event.
+     */
+    public EventType getEType(int event) {
+        return eTypes.get(eTypeIds[event]);
+    }
+
+    /**
+     * Returns the trace id that the parser assigned to event.
+     */
+    public int getTraceID(int event) {
+        return traceIds[event];
+    }
+
+    /**
+     * Returns the line number of event.
+     */
+    public int getLineNum(int event) {
+        return lineNums[event];
+    }
+
+    /**
+     * Returns the log line of event.
+     */
+    public String getLine(int event) {
+        return logLines[event];
+    }
+
+    /**
+     * Returns the name of the file that event was parsed from.
+     */
+    public String getFileName(int event) {
+        return fileNames.get(fileNameIds[event]);
+    }
+
+    /**
+     * Returns the time of event, as a new resource.
+     */
+    public AbstractResource getTime(int event) {
+        long bits = times[event];
+        switch (timeType) {
+        case INT:
+            return new ITotalResource((int) bits, timeKey);
+        case LONG:
+            return new LTotalResource(bits, timeKey);
+        case FLOAT:
+            return new FTotalResource(Float.intBitsToFloat((int) bits),
+                    timeKey);
+        case DOUBLE:
+            return new DTotalResource(Double.longBitsToDouble(bits), timeKey);
+        default:
+            return null;
+        }
+    }
+
+    /**
+     * Returns the relations of the transitions in the store.
+     */
+    public Set<String> getRelations() {
+        return new LinkedHashSet<String>(relations);
+    }
+
+    /**
+     * Returns the event that event has a transition with relation to,
+     * {@link #terminalSuccessor} if event is the last event of its trace and
+     * has relation, or {@link #noSuccessor} otherwise.
+     */
+    public int getSuccessor(int event, String relation) {
+        Integer r = relationToId.get(relation);
+        if (r == null) {
+            return noSuccessor;
+        }
+        return successors.get(r)[event];
+    }
+
+    /**
+     * Creates a new event node for event, with its states but without any
+     * transitions. Every call creates a distinct node.
+     */
+    public EventNode getEventNode(int event) {
+        Event e = new Event(getEType(event), logLines[event],
+                getFileName(event), lineNums[event]);
+        e.setTime(getTime(event));
+        EventNode node = new EventNode(e);
+        node.setTraceID(traceIds[event]);
+        node.setPreEventState(preEventStates.get(event));
+        node.setPostEventState(postEventStates.get(event));
+        return node;
+    }
+
+    /**
+     * Creates the trace graph of the events in the store, with the same
+     * transitions and relation paths as the trace graph that the parser
+     * creates for the log.
+     */
+    public ChainsTraceGraph toChainsTraceGraph() throws ParseException {
+        ChainsTraceGraph graph = new ChainsTraceGraph();
+        for (int trace = 0; trace < numTraces; trace++) {
+            List<EventNode> events = new ArrayList<EventNode>(
+                    getTraceEnd(trace) - getTraceStart(trace));
+            Map<EventNode, Set<Relation>> eventRelations = new HashMap<EventNode, Set<Relation>>();
+            for (int event = getTraceStart(trace); event < getTraceEnd(trace); event++) {
+                EventNode node = getEventNode(event);
+                graph.add(node);
+                events.add(node);
+                eventRelations.put(node,
+                        relationSets.get(relationSetIds[event]));
+            }
+            graph.addTrace(events, eventRelations);
+        }
+        return graph;
+    }
+
+    /**
+     * Returns the event type ids of the events in each relation path of
+     * relation, in order, across all traces. The paths are the same as the
+     * ones returned by {@link Trace#getSingleRelationPaths(String)} for the
+     * traces of the corresponding trace graph.
+     */
+    public List<int[]> getRelationPathETypeIds(String relation) {
+        List<int[]> paths = new ArrayList<int[]>();
+        Integer r = relationToId.get(relation);
+        if (r == null) {
+            return paths;
+        }
+        int timeRelation = relationToId.get(Event.defTimeRelationStr);
+        int[] relationSuccessors = successors.get(r);
+        int[] timeSuccessors = successors.get(timeRelation);
+
+        for (int trace = 0; trace < numTraces; trace++) {
+            int[] traceInitials = traceInitialEvents.get(trace);
+            int pendingInitial = r < traceInitials.length ? traceInitials[r]
+                    : noSuccessor;
+            int cur = pendingInitial != noSuccessor ? pendingInitial
+                    : traceInitials[timeRelation];
+            int prev = cur;
+
+            // Walk the trace, following the relation where possible and the
+            // time relation otherwise, and record every maximal chain of
+            // events connected by the relation.
+            while (cur != terminalSuccessor) {
+                boolean hasRelation = relationSuccessors[cur] != noSuccessor;
+                if (pendingInitial != noSuccessor) {
+                    if (!hasRelation) {
+                        paths.add(getChainETypeIds(pendingInitial, cur,
+                                relationSuccessors));
+                        pendingInitial = noSuccessor;
+                    }
+                } else if (hasRelation) {
+                    pendingInitial = cur;
+                }
+                prev = cur;
+                cur = hasRelation ? relationSuccessors[cur]
+                        : timeSuccessors[cur];
+            }
+            if (pendingInitial != noSuccessor) {
+                paths.add(getChainETypeIds(pendingInitial, prev,
+                        relationSuccessors));
+            }
+        }
+        return paths;
+    }
+
+    /**
+     * Returns the event type ids of the events from first to last, following
+     * relationSuccessors.
+     */
+    private int[] getChainETypeIds(int first, int last,
+            int[] relationSuccessors) {
+        int length = 1;
+        for (int event = first; event != last; event = relationSuccessors[event]) {
+            length++;
+        }
+        int[] ids = new int[length];
+        int event = first;
+        for (int i = 0; i < length; i++) {
+            ids[i] = eTypeIds[event];
+            event = relationSuccessors[event];
+        }
+        return ids;
+    }
+}
@@ -4,6 +4,7 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.LinkedList;
@@ -11,6 +12,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
+import synoptic.algorithms.BitSetTransitiveClosure;
 import synoptic.algorithms.FloydWarshall;
 import synoptic.algorithms.TransitiveClosure;
 import synoptic.model.event.DistEventType;
@@ -101,6 +103,60 @@ public class DAGsTraceGraph extends TraceGraph<DistEventType> {
         return getTransitiveClosure(relations, true);
     }
 
+    /**
+     * Builds the same closure as {@code FloydWarshall.warshallAlg}, by
+     * visiting the events in a post-order, so that every event is visited
+     * after the events that it has transitions to, and merging the bit-sets of
+     * the children of each event into its own. Like {@code warshallAlg}, this
+     * considers the transitions of all relations and ignores special event
+     * types.
+     */
+    @Override
+    public TransitiveClosure getBitSetTransitiveClosure(Set<String> relations) {
+        BitSetTransitiveClosure transClosure = new BitSetTransitiveClosure(
+                relations);
+
+        Set<EventNode> visited = new HashSet<EventNode>();
+        // The path of the depth-first search, with the children that remain
+        // to be visited from each node on the path.
+        LinkedList<EventNode> path = new LinkedList<EventNode>();
+        LinkedList<Iterator<EventNode>> pathChildren = new LinkedList<Iterator<EventNode>>();
+
+        for (EventNode root : getNodes()) {
+            if (root.getEType().isSpecialEventType() || !visited.add(root)) {
+                continue;
+            }
+            path.push(root);
+            pathChildren.push(root.getAllSuccessors().iterator());
+
+            while (!path.isEmpty()) {
+                Iterator<EventNode> children = pathChildren.peek();
+                if (children.hasNext()) {
+                    EventNode child = children.next();
+                    if (!child.getEType().isSpecialEventType()
+                            && visited.add(child)) {
+                        path.push(child);
+                        pathChildren.push(child.getAllSuccessors().iterator());
+                    }
+                    continue;
+                }
+
+                // All children of m have been visited, so their closures are
+                // complete.
+                EventNode m = path.pop();
+                pathChildren.pop();
+                for (EventNode child : m.getAllSuccessors()) {
+                    if (child.getEType().isSpecialEventType()) {
+                        continue;
+                    }
+                    transClosure.recordTransitiveReachability(m, child);
+                    transClosure.mergeReachables(child, m);
+                }
+            }
+        }
+        return transClosure;
+    }
+
     /**
      * This function takes a collection of transitions, and a list of nodes that
      * are somehow canonically ordered. It returns a list of nodes that the
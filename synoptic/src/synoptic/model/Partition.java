@@ -27,11 +27,12 @@ import synoptic.util.resource.AbstractResource;
  * Implements a partition in a partition graph. Partitions are nodes, but they
  * do not explicitly represent their edges. Instead, they know the EventNodes
  * they contain, and generate the edges on the fly using existential
- * abstraction. The class is complicated by the fact that in the state based
- * view, each partition corresponds to possibly several transitions. The
- * implementation here can only handle state based views where a partition
- * corresponds to a set of transitions that all have the same target (but
- * possibly different sources).
+ * abstraction (or look them up in the edge index of their partition graph,
+ * which maintains the result of this abstraction). The class is complicated by
+ * the fact that in the state based view, each partition corresponds to
+ * possibly several transitions. The implementation here can only handle state
+ * based views where a partition corresponds to a set of transitions that all
+ * have the same target (but possibly different sources).
  */
 public class Partition implements INode<Partition> {
     /**
@@ -62,6 +63,14 @@ public class Partition implements INode<Partition> {
      */
     private final List<Transition<Partition>> cachedTransitionsWithInvs;
 
+    /**
+     * The index of the edges between the partitions of the partition graph
+     * that this partition belongs to, or null if the edges of this partition
+     * are not indexed. Partitions that are created from the events of indexed
+     * partitions join the index of these partitions.
+     */
+    PartitionEdgeIndex edgeIndex = null;
+
     /**
      * Creates a new partition that will contain a set of event nodes.
      * 
@@ -98,11 +107,20 @@ public class Partition implements INode<Partition> {
      *            event nodes to add
      */
     public void addEventNodes(Collection<EventNode> eNodes) {
+        if (eNodes.isEmpty()) {
+            return;
+        }
+        EventNode first = eNodes.iterator().next();
         if (!initialized) {
-            initialize(eNodes.iterator().next());
+            initialize(first);
         }
 
         events.addAll(eNodes);
+        PartitionEdgeIndex index = getEdgeIndex(first);
+        if (index != null) {
+            edgeIndex = index;
+            index.moveEvents(eNodes, this);
+        }
         for (final EventNode e : eNodes) {
             e.setParent(this);
             // A Partition is allowed to contain only EventNode instances of the
@@ -123,10 +141,28 @@ public class Partition implements INode<Partition> {
         } else {
             assert eType.equals(eNode.getEType());
         }
+        PartitionEdgeIndex index = getEdgeIndex(eNode);
+        if (index != null) {
+            edgeIndex = index;
+            index.moveEvents(Collections.singleton(eNode), this);
+        }
         eNode.setParent(this);
         events.add(eNode);
     }
 
+    /**
+     * Returns the edge index that must be updated when eNode is added to this
+     * partition -- the index of the partition that eNode currently belongs to,
+     * if any, and otherwise the index of this partition.
+     */
+    private PartitionEdgeIndex getEdgeIndex(EventNode eNode) {
+        Partition parent = eNode.getParent();
+        if (parent != null && parent.edgeIndex != null) {
+            return parent.edgeIndex;
+        }
+        return edgeIndex;
+    }
+
     /**
      * Returns the set of event nodes contained in this partition.
      */
@@ -374,9 +410,13 @@ public class Partition implements INode<Partition> {
             int totalAtSource = events.size();
             for (ITransition<Partition> tr : transitions) {
                 int numOutgoing = 0;
-                for (final EventNode event : events) {
-                    if (fulfillsStrong(event, tr)) {
-                        numOutgoing += 1;
+                if (edgeIndex != null) {
+                    numOutgoing = edgeIndex.getCount(tr);
+                } else {
+                    for (final EventNode event : events) {
+                        if (fulfillsStrong(event, tr)) {
+                            numOutgoing += 1;
+                        }
                     }
                 }
 
@@ -513,9 +553,26 @@ public class Partition implements INode<Partition> {
         }
     }
 
+    /**
+     * Whether or not the transitions of this partition can be served from its
+     * edge index. The index does not hold the time deltas of the event
+     * transitions, so transitions that carry deltas are always computed from
+     * the events.
+     */
+    private boolean useEdgeIndex() {
+        return edgeIndex != null
+                && !AbstractMain.getInstance().options.usePerformanceInfo;
+    }
+
     @Override
     public List<? extends ITransition<Partition>> getAllTransitions() {
-        // TODO: implement a transition cache optimization.
+        if (useEdgeIndex()) {
+            List<Transition<Partition>> ret = edgeIndex.getTransitions(this);
+            if (ret != null) {
+                return ret;
+            }
+        }
+
         Map<Partition, Transition<Partition>> transitions = new HashMap<Partition, Transition<Partition>>();
 
         for (EventNode e : events) {
@@ -563,6 +620,9 @@ public class Partition implements INode<Partition> {
     @Override
     public List<? extends ITransition<Partition>> getTransitionsWithExactRelations(
             Set<String> relations) {
+        if (useEdgeIndex()) {
+            return edgeIndex.getTransitionsWithExactRelations(this, relations);
+        }
 
         Map<Partition, Transition<Partition>> transitions = new HashMap<Partition, Transition<Partition>>();
 
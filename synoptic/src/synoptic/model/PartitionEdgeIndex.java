@@ -0,0 +1,230 @@
+package synoptic.model;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import synoptic.model.interfaces.ITransition;
+
+/**
+ * Maintains the inter-partition edges of a partition graph, so that the
+ * transitions of a partition do not have to be re-computed from all of its
+ * events. For every pair of partitions (P, Q) and relations r, the index holds
+ * the number of events in P that have at least one transition labeled with r
+ * to an event in Q (the same number of events that
+ * {@code Partition.getWeightedTransitions} reports as the count of the
+ * transition), both as an outgoing edge of P and as an incoming edge of Q. <br />
+ * <br />
+ * The index is updated whenever events move to another partition (see
+ * {@link Partition#addEventNodes}), which is how all of the partition graph
+ * operations change the graph. Moving an event only changes the edges of the
+ * event and of the events that precede it, so the cost of an update is
+ * proportional to the number of moved events and their transitions.
+ */
+class PartitionEdgeIndex {
+    /** The edge counts of the outgoing edges of each partition, by target. */
+    private final Map<Partition, Map<Partition, Map<Set<String>, Integer>>> outgoing = new LinkedHashMap<Partition, Map<Partition, Map<Set<String>, Integer>>>();
+
+    /** The edge counts of the incoming edges of each partition, by source. */
+    private final Map<Partition, Map<Partition, Map<Set<String>, Integer>>> incoming = new LinkedHashMap<Partition, Map<Partition, Map<Set<String>, Integer>>>();
+
+    /** The events that have a transition to each event. */
+    private final Map<EventNode, List<EventNode>> eventPredecessors = new LinkedHashMap<EventNode, List<EventNode>>();
+
+    /**
+     * Creates an index of the edges between partitions, which must contain all
+     * of the events of a trace graph, and attaches it to the partitions.
+     */
+    PartitionEdgeIndex(Collection<Partition> partitions) {
+        for (Partition p : partitions) {
+            p.edgeIndex = this;
+            for (EventNode e : p.getEventNodes()) {
+                for (EventNode eSucc : e.getAllSuccessors()) {
+                    List<EventNode> preds = eventPredecessors.get(eSucc);
+                    if (preds == null) {
+                        preds = new ArrayList<EventNode>(1);
+                        eventPredecessors.put(eSucc, preds);
+                    }
+                    preds.add(e);
+                }
+            }
+        }
+        for (Partition p : partitions) {
+            for (EventNode e : p.getEventNodes()) {
+                updateEdges(e, 1);
+            }
+        }
+    }
+
+    /**
+     * Moves eNodes to partition target, by setting their parent, and updates
+     * the edges of the events and their predecessors.
+     */
+    void moveEvents(Collection<EventNode> eNodes, Partition target) {
+        Set<EventNode> affected = new LinkedHashSet<EventNode>(eNodes);
+        for (EventNode e : eNodes) {
+            List<EventNode> preds = eventPredecessors.get(e);
+            if (preds != null) {
+                affected.addAll(preds);
+            }
+        }
+
+        for (EventNode e : affected) {
+            updateEdges(e, -1);
+        }
+        for (EventNode e : eNodes) {
+            e.setParent(target);
+        }
+        for (EventNode e : affected) {
+            updateEdges(e, 1);
+        }
+    }
+
+    /**
+     * Returns the transitions from p to each of its successor partitions, or
+     * null if p has several transitions with different relations to one
+     * partition, in which case the relation of the partition transition
+     * depends on the order of the events in p.
+     */
+    List<Transition<Partition>> getTransitions(Partition p) {
+        Map<Partition, Map<Set<String>, Integer>> targets = getEdges(outgoing,
+                p);
+        List<Transition<Partition>> ret = new ArrayList<Transition<Partition>>(
+                targets.size());
+        for (Map.Entry<Partition, Map<Set<String>, Integer>> e : targets
+                .entrySet()) {
+            if (e.getValue().size() != 1) {
+                return null;
+            }
+            ret.add(new Transition<Partition>(p, e.getKey(), e.getValue()
+                    .keySet().iterator().next()));
+        }
+        return ret;
+    }
+
+    /**
+     * Returns the transitions from p, labeled with exactly relations, to each
+     * of its successor partitions.
+     */
+    List<Transition<Partition>> getTransitionsWithExactRelations(Partition p,
+            Set<String> relations) {
+        List<Transition<Partition>> ret = new ArrayList<Transition<Partition>>();
+        for (Map.Entry<Partition, Map<Set<String>, Integer>> e : getEdges(
+                outgoing, p).entrySet()) {
+            if (e.getValue().containsKey(relations)) {
+                ret.add(new Transition<Partition>(p, e.getKey(), relations));
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * Returns the number of events in the source of tr that have a transition
+     * labeled with the relations of tr to an event in the target of tr.
+     */
+    int getCount(ITransition<Partition> tr) {
+        Map<Set<String>, Integer> counts = getEdges(outgoing, tr.getSource())
+                .get(tr.getTarget());
+        if (counts == null) {
+            return 0;
+        }
+        Integer count = counts.get(tr.getRelation());
+        return count == null ? 0 : count;
+    }
+
+    /**
+     * Returns the partitions that have a transition to p.
+     */
+    Set<Partition> getPredecessors(Partition p) {
+        return new LinkedHashSet<Partition>(getEdges(incoming, p).keySet());
+    }
+
+    private static Map<Partition, Map<Set<String>, Integer>> getEdges(
+            Map<Partition, Map<Partition, Map<Set<String>, Integer>>> edges,
+            Partition p) {
+        Map<Partition, Map<Set<String>, Integer>> ret = edges.get(p);
+        if (ret == null) {
+            return Collections.emptyMap();
+        }
+        return ret;
+    }
+
+    /**
+     * Adds (for delta 1) or removes (for delta -1) the edges of event e to the
+     * partitions of its successors, counting e once for each distinct pair of
+     * target partition and relations.
+     */
+    private void updateEdges(EventNode e, int delta) {
+        Partition source = e.getParent();
+        if (source == null) {
+            return;
+        }
+        List<Transition<EventNode>> transitions = e.getAllTransitions();
+        if (transitions.size() == 1) {
+            ITransition<EventNode> tr = transitions.get(0);
+            updateEdge(source, tr.getTarget().getParent(), tr.getRelation(),
+                    delta);
+            return;
+        }
+
+        Map<Partition, Set<Set<String>>> seen = new LinkedHashMap<Partition, Set<Set<String>>>();
+        for (ITransition<EventNode> tr : transitions) {
+            Partition target = tr.getTarget().getParent();
+            Set<Set<String>> relations = seen.get(target);
+            if (relations == null) {
+                relations = new LinkedHashSet<Set<String>>(2);
+                seen.put(target, relations);
+            }
+            if (relations.add(tr.getRelation())) {
+                updateEdge(source, target, tr.getRelation(), delta);
+            }
+        }
+    }
+
+    private void updateEdge(Partition source, Partition target,
+            Set<String> relations, int delta) {
+        if (target == null) {
+            return;
+        }
+        updateCount(outgoing, source, target, relations, delta);
+        updateCount(incoming, target, source, relations, delta);
+    }
+
+    /**
+     * Adds delta to the count of the edge from p to other, and drops the
+     * entries of edges whose count reaches zero.
+     */
+    private static void updateCount(
+            Map<Partition, Map<Partition, Map<Set<String>, Integer>>> edges,
+            Partition p, Partition other, Set<String> relations, int delta) {
+        Map<Partition, Map<Set<String>, Integer>> others = edges.get(p);
+        if (others == null) {
+            others = new LinkedHashMap<Partition, Map<Set<String>, Integer>>();
+            edges.put(p, others);
+        }
+        Map<Set<String>, Integer> counts = others.get(other);
+        if (counts == null) {
+            counts = new LinkedHashMap<Set<String>, Integer>(2);
+            others.put(other, counts);
+        }
+        Integer count = counts.get(relations);
+        int newCount = (count == null ? 0 : count) + delta;
+        assert newCount >= 0 : "negative edge count";
+        if (newCount > 0) {
+            counts.put(relations, newCount);
+            return;
+        }
+        counts.remove(relations);
+        if (counts.isEmpty()) {
+            others.remove(other);
+            if (others.isEmpty()) {
+                edges.remove(p);
+            }
+        }
+    }
+}
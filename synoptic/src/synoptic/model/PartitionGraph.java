@@ -65,9 +65,19 @@ public class PartitionGraph implements IGraph<Partition> {
     /** An ordered list of all partition splits applied to the graph so far. */
     private final LinkedList<PartitionMultiSplit> appliedSplits = new LinkedList<PartitionMultiSplit>();
 
+    /**
+     * Partitions whose adjacencies were invalidated by applied operations since
+     * the last call to {@code takeModifiedPartitions}, or null if these are not
+     * being tracked.
+     */
+    private LinkedHashSet<Partition> modifiedPartitions = null;
+
     /** Initial trace graph. */
     private ChainsTraceGraph traceGraph;
 
+    /** The edges between the partitions, maintained as events move. */
+    private PartitionEdgeIndex edgeIndex = null;
+
     // /////////////////////////////////////////////////////////////////////////
     // This part is for the purpose of test generation.
     /**
@@ -95,32 +105,59 @@ public class PartitionGraph implements IGraph<Partition> {
      */
     public PartitionGraph(ChainsTraceGraph g, boolean partitionByLabel,
             TemporalInvariantSet invariants) {
-        this(g, invariants);
+        initialize(g, invariants);
 
         if (partitionByLabel) {
             partitionByLabels(g.getNodes());
         } else {
             partitionSeparately(g.getNodes());
         }
+        edgeIndex = new PartitionEdgeIndex(partitions);
+    }
+
+    /**
+     * Construct a PartitionGraph with the given partitioning of the nodes of
+     * {@code g} (e.g., a partitioning that was saved in a checkpoint). Every
+     * node of {@code g}, including the INITIAL and TERMINAL nodes, must be in
+     * exactly one of the sets.
+     * 
+     * @param g
+     *            The initial graph
+     * @param partitioning
+     *            The events of each partition
+     */
+    public PartitionGraph(ChainsTraceGraph g,
+            Collection<? extends Set<EventNode>> partitioning,
+            TemporalInvariantSet invariants) {
+        initialize(g, invariants);
+
+        // Only the restored partitioning is built: the events are added to
+        // their partitions once, and the edge index is built once over them.
+        partitions = new LinkedHashSet<Partition>();
+        for (Set<EventNode> eNodes : partitioning) {
+            partitions.add(new Partition(eNodes));
+        }
+        edgeIndex = new PartitionEdgeIndex(partitions);
     }
 
     public PartitionGraph(ChainsTraceGraph g,
             List<LinkedHashSet<Integer>> partitioningIndexSets,
             TemporalInvariantSet invariants) {
-        this(g, invariants);
+        initialize(g, invariants);
 
         partitionByIndexSetsAndLabels(g.getNodes(), partitioningIndexSets);
+        edgeIndex = new PartitionEdgeIndex(partitions);
     }
 
     /**
-     * Creates a partition graph without any partitions. Takes care of setting
-     * up the internal initialEvents, invariants, and traceGraph data
-     * structures.
+     * Sets up the internal initialEvents, invariants, and traceGraph data
+     * structures that are shared by all constructors, without creating any
+     * partitions. Each constructor then builds just its own partitioning.
      * 
      * @param g
      * @param invariants
      */
-    private PartitionGraph(ChainsTraceGraph g, TemporalInvariantSet invariants) {
+    private void initialize(ChainsTraceGraph g, TemporalInvariantSet invariants) {
         dummyInitialNode = g.getDummyInitialNode();
         relations.addAll(g.getRelations());
 
@@ -152,6 +189,35 @@ public class PartitionGraph implements IGraph<Partition> {
         return appliedSplits.peek();
     }
 
+    /**
+     * Enables or disables the tracking of partitions that are modified by
+     * operations applied to this graph. See {@code takeModifiedPartitions}.
+     */
+    public void setTrackModifiedPartitions(boolean track) {
+        if (!track) {
+            modifiedPartitions = null;
+        } else if (modifiedPartitions == null) {
+            modifiedPartitions = new LinkedHashSet<Partition>();
+        }
+    }
+
+    /**
+     * Returns the partitions that were added to this graph, or whose set of
+     * events changed, since the last call to this method (or since tracking
+     * was enabled), and resets the tracked set. Some of the returned partitions
+     * may have been removed from the graph, and some may have been restored to
+     * their earlier events by a rewind operation. Returns an empty set if
+     * tracking is disabled.
+     */
+    public Set<Partition> takeModifiedPartitions() {
+        if (modifiedPartitions == null) {
+            return Collections.emptySet();
+        }
+        Set<Partition> ret = modifiedPartitions;
+        modifiedPartitions = new LinkedHashSet<Partition>();
+        return ret;
+    }
+
     /**
      * Returns a set of partitions that are adjacent to pNode. Uses the internal
      * transitionCache for speed.
@@ -170,6 +236,18 @@ public class PartitionGraph implements IGraph<Partition> {
         return adjPartitions;
     }
 
+    /**
+     * Returns the set of partitions that have a transition to pNode. Uses the
+     * edge index of this graph, which is kept up to date as operations are
+     * applied to the graph.
+     * 
+     * @param pNode
+     * @return set of partitions that pNode is adjacent to
+     */
+    public Set<Partition> getPredecessors(Partition pNode) {
+        return edgeIndex.getPredecessors(pNode);
+    }
+
     /**
      * All messages with identical labels are mapped to the same partition.
      * 
@@ -200,62 +278,58 @@ public class PartitionGraph implements IGraph<Partition> {
 
     private void partitionByIndexSetsAndLabels(Collection<EventNode> events,
             List<LinkedHashSet<Integer>> partitioningIndexSets) {
-        // 1. partition by labels.
-        partitionByLabels(events);
-        // 2. Map each message to a node in the system.
+        // 1. Map each message to a node in the system.
 
         // TODO: do this using the new algorithm.
         LinkedHashMap<EventNode, Integer> messageIndexMap = new LinkedHashMap<EventNode, Integer>();
 
-        LinkedHashSet<Partition> newPartitions = new LinkedHashSet<Partition>();
-
-        // 3. consider each of the label-partitions and divide these up
-        // according to each set of indices.
-        for (Partition p : partitions) {
-
-            Partition[] subPartitions = new Partition[partitioningIndexSets
-                    .size()];
-
-            for (EventNode m : p.events) {
-                Integer index = messageIndexMap.get(m);
-                if (index == null) {
-                    throw new InternalSynopticException(
-                            "Failed to map LogEvent [" + m.toString()
-                                    + "] to a node index.");
-                }
-                int i = 0;
-                boolean added = false;
-                for (LinkedHashSet<Integer> indexPartition : partitioningIndexSets) {
-                    if (indexPartition.contains(index)) {
-                        if (subPartitions[i] == null) {
-                            subPartitions[i] = new Partition(m);
-                        } else {
-                            subPartitions[i].addOneEventNode(m);
-                        }
-                        added = true;
-                        break;
-                    }
-                    i++;
-                }
-
-                if (!added) {
-                    throw new InternalSynopticException(
-                            "Unable to find index in the partitioning -- they must be complete!");
+        // 2. Group the messages by label, and divide each label group up
+        // according to each set of indices. Partitions are only created from
+        // the final groups, so that every message is added to a partition (and
+        // the edge index built) just once.
+        Map<EventType, List<Set<EventNode>>> groups = new LinkedHashMap<EventType, List<Set<EventNode>>>();
+        for (EventNode m : events) {
+            Integer index = messageIndexMap.get(m);
+            if (index == null) {
+                throw new InternalSynopticException("Failed to map LogEvent ["
+                        + m.toString() + "] to a node index.");
+            }
+            int i = 0;
+            for (LinkedHashSet<Integer> indexPartition : partitioningIndexSets) {
+                if (indexPartition.contains(index)) {
+                    break;
                 }
+                i++;
+            }
+            if (i == partitioningIndexSets.size()) {
+                throw new InternalSynopticException(
+                        "Unable to find index in the partitioning -- they must be complete!");
+            }
 
-                // TODO: consider the case where all the messages remain in the
-                // same partition -- just keep it then?
-                //
+            List<Set<EventNode>> subGroups = groups.get(m.getEType());
+            if (subGroups == null) {
+                subGroups = new ArrayList<Set<EventNode>>(
+                        Collections.<Set<EventNode>> nCopies(
+                                partitioningIndexSets.size(), null));
+                groups.put(m.getEType(), subGroups);
+            }
+            if (subGroups.get(i) == null) {
+                subGroups.set(i, new LinkedHashSet<EventNode>());
+            }
+            subGroups.get(i).add(m);
+        }
 
-                // Add the newly created partitions, if any.
-                for (Partition subPartition : subPartitions) {
-                    if (subPartition != null) {
-                        newPartitions.add(subPartition);
-                    }
+        // 3. Create a partition for each group.
+        partitions = new LinkedHashSet<Partition>();
+        for (List<Set<EventNode>> subGroups : groups.values()) {
+            for (Set<EventNode> eNodes : subGroups) {
+                if (eNodes != null) {
+                    partitions.add(new Partition(eNodes));
                 }
             }
         }
 
+        transitionCache.clear();
     }
 
     @SuppressWarnings("unused")
@@ -381,6 +455,9 @@ public class PartitionGraph implements IGraph<Partition> {
     }
 
     public void clearNodeAdjacentsCache(Partition node) {
+        if (modifiedPartitions != null) {
+            modifiedPartitions.add(node);
+        }
         transitionCache.remove(node);
         // System.out.println("Cache size: " + transitionCache.size());
         for (Iterator<Entry<Partition, Set<Partition>>> pIter = transitionCache
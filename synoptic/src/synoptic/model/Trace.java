@@ -1,5 +1,6 @@
 package synoptic.model;
 
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
@@ -34,6 +35,13 @@ public class Trace {
         relationToInitialNodes.put(relation, eNode);
     }
 
+    /**
+     * Returns the first non-INITIAL node of each relation in this trace.
+     */
+    public Map<String, EventNode> getInitialNodes() {
+        return Collections.unmodifiableMap(relationToInitialNodes);
+    }
+
     /**
      * Returns zero or more RelationPaths for every subgraph of the relation
      * type.
@@ -7,6 +7,7 @@ import java.util.Set;
 import java.util.Stack;
 import java.util.logging.Logger;
 
+import synoptic.algorithms.BitSetTransitiveClosure;
 import synoptic.algorithms.TransitiveClosure;
 import synoptic.model.event.Event;
 import synoptic.model.event.EventType;
@@ -117,6 +118,21 @@ public abstract class TraceGraph<EType extends EventType> implements
         return getTransitiveClosure(relations);
     }
 
+    /**
+     * Returns the transitive closure of the graph for the given relations,
+     * stored as per-trace bit-sets (see {@link BitSetTransitiveClosure}). The
+     * closure holds the same reachability as that returned by
+     * {@code getTransitiveClosure}.
+     */
+    public abstract TransitiveClosure getBitSetTransitiveClosure(
+            Set<String> relations);
+
+    public TransitiveClosure getBitSetTransitiveClosure(String relation) {
+        Set<String> relations = new LinkedHashSet<String>();
+        relations.add(relation);
+        return getBitSetTransitiveClosure(relations);
+    }
+
     public abstract int getNumTraces();
 
     public void tagTerminal(EventNode terminalNode, String relation) {
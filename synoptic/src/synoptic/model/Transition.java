@@ -3,10 +3,12 @@ package synoptic.model;
 import java.util.LinkedHashSet;
 import java.util.Set;
 
+import synoptic.main.AbstractMain;
 import synoptic.model.interfaces.INode;
 import synoptic.model.interfaces.ITransition;
 import synoptic.util.resource.AbstractResource;
 import synoptic.util.resource.ResourceSeries;
+import synoptic.util.resource.SketchedResourceSeries;
 
 /**
  * An implementation of a transition.
@@ -181,12 +183,20 @@ public class Transition<NodeType extends INode<NodeType>> implements ITransition
     }
 
     /**
-     * Helper method -- creates the time delta series if one does not exist.
+     * Helper method -- creates the time delta series if one does not exist. The
+     * series is a quantile sketch if the useQuantileSketches option is set.
      */
     private void createSeriesIfEmpty() {
         if (this.labels.getTimeDeltaSeries() == null) {
+            ResourceSeries<AbstractResource> series;
+            if (AbstractMain.instance != null
+                    && AbstractMain.instance.options.useQuantileSketches) {
+                series = new SketchedResourceSeries<AbstractResource>();
+            } else {
+                series = new ResourceSeries<AbstractResource>();
+            }
             this.labels.setLabel(TransitionLabelType.TIME_DELTA_SERIES_LABEL,
-                    new ResourceSeries<AbstractResource>());
+                    series);
         }
     }
 
@@ -78,7 +78,9 @@ public interface ITransition<NodeType> extends
      * Returns the series of times contained within the Transition. If there is
      * no series yet (and there is no single delta set), then an empty one will
      * be created. Cannot be called after a single delta has been successully
-     * set via the setDelta method.
+     * set via the setDelta method. If the series is a quantile sketch (see the
+     * useQuantileSketches option), its getAllDeltas only returns the deltas
+     * that the sketch retains.
      * 
      * @return the delta time series corresponding to this transition.
      * @throws IllegalStateException
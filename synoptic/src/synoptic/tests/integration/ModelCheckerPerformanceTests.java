@@ -0,0 +1,210 @@
+package synoptic.tests.integration;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.junit.runners.Parameterized.Parameters;
+
+import synoptic.invariants.AlwaysFollowedInvariant;
+import synoptic.invariants.AlwaysPrecedesInvariant;
+import synoptic.invariants.BinaryInvariant;
+import synoptic.invariants.ITemporalInvariant;
+import synoptic.invariants.NeverFollowedInvariant;
+import synoptic.invariants.fsmcheck.AFbyInvFsms;
+import synoptic.invariants.fsmcheck.APInvFsms;
+import synoptic.invariants.fsmcheck.FsmModelChecker;
+import synoptic.invariants.fsmcheck.FsmStateSet;
+import synoptic.invariants.fsmcheck.NFbyInvFsms;
+import synoptic.invariants.fsmcheck.TracingStateSet;
+import synoptic.invariants.miners.ChainWalkingTOInvMiner;
+import synoptic.main.AbstractMain;
+import synoptic.main.parser.ParseException;
+import synoptic.main.parser.TraceParser;
+import synoptic.model.ChainsTraceGraph;
+import synoptic.model.EventNode;
+import synoptic.model.Partition;
+import synoptic.model.PartitionGraph;
+import synoptic.tests.SynopticTest;
+
+/**
+ * Compares the running time of the FSM model checker engine against the
+ * original map-based implementation, on the initial partition graphs of logs
+ * in the traces/ directory. Each log is checked for all of its mined
+ * invariants with the tracing state sets (with and without early exit, as done
+ * during refinement) and with the bit-set state sets.
+ */
+@RunWith(value = Parameterized.class)
+public class ModelCheckerPerformanceTests extends SynopticTest {
+
+    boolean useWorkListChecker;
+    int numIterations;
+    String traceFile;
+    String[] regExps;
+    String separator;
+    String partitionMap;
+    String dateFormat;
+    int linesToRead;
+
+    @Parameters
+    public static Collection<Object[]> data() {
+        String tracesBasePath = File.separator + "traces" + File.separator;
+        String tracesPath = findWorkingPath(
+                Arrays.asList(new String[] { "." + tracesBasePath,
+                        ".." + tracesBasePath }), "TwoPhaseCommit"
+                        + File.separator + "2pc_3nodes_100tx.log");
+
+        Object[][] logs = new Object[][] {
+                { "AlternatingBitProtocol" + File.separator
+                        + "trace_r_complete.txt",
+                        new String[] { "^(?<TYPE>)$", "^#(?<HIDE=>true).+$" },
+                        "^--$", null, null, -1 },
+                { "TwoPhaseCommit" + File.separator + "2pc_3nodes_100tx.log",
+                        new String[] { "^(?<sender>),(?<receiver>),(?<TYPE>),(?<txId>)" },
+                        null, "\\k<txId>", null, -1 },
+                { "HTTP_Nasa_1995" + File.separator + "traces_5000.log",
+                        new String[] { "(?<ip>\\S+) - - \\[(?<DATETIME>\\S+) -.+\\] \"GET /(?<TYPE>.*) HTTP/1\\.0\".+" },
+                        null, "\\k<ip>", "dd/MMM/yyyy:HH:mm:ss", 1000 } };
+
+        Collection<Object[]> data = new LinkedList<Object[]>();
+        for (Object[] log : logs) {
+            for (boolean useWorkListChecker : new boolean[] { true, false }) {
+                data.add(new Object[] { useWorkListChecker, 3,
+                        tracesPath + log[0], log[1], log[2], log[3], log[4],
+                        log[5] });
+            }
+        }
+        return data;
+    }
+
+    public ModelCheckerPerformanceTests(boolean useWorkListChecker,
+            int numIterations, String traceFile, String[] regExps,
+            String separator, String partitionMap, String dateFormat,
+            int linesToRead) {
+        this.useWorkListChecker = useWorkListChecker;
+        this.numIterations = numIterations;
+        this.traceFile = traceFile;
+        this.regExps = regExps;
+        this.separator = separator;
+        this.partitionMap = partitionMap;
+        this.dateFormat = dateFormat;
+        this.linesToRead = linesToRead;
+    }
+
+    @Before
+    public void setUp() throws ParseException {
+        super.setUp();
+        AbstractMain main = AbstractMain.getInstance();
+        main.options.logLvlExtraVerbose = false;
+        main.options.logLvlQuiet = true;
+        main.options.ignoreNonMatchingLines = true;
+    }
+
+    public void reportTime(String checker, long msTime) {
+        System.out.println(testName.getMethodName() + ":" + "\n\tlog "
+                + traceFile + "\n\tlinesToRead " + linesToRead
+                + "\n\tengine "
+                + (useWorkListChecker ? "work-list" : "indexed") + "\n\t"
+                + checker + " ==> TIME: " + msTime + "ms (averaged over "
+                + numIterations + " iterations)\n");
+    }
+
+    private PartitionGraph genGraph() throws Exception {
+        TraceParser parser = new TraceParser();
+        for (String regExp : regExps) {
+            parser.addRegex(regExp);
+        }
+        if (separator != null) {
+            parser.addPartitionsSeparator(separator);
+        }
+        if (partitionMap != null) {
+            parser.setPartitionsMap(partitionMap);
+        }
+        if (dateFormat != null) {
+            AbstractMain.getInstance().options.dateFormat = dateFormat;
+            parser.addDateFormat(dateFormat);
+        }
+        ArrayList<EventNode> parsedEvents = parser.parseTraceFile(new File(
+                traceFile), linesToRead);
+        ChainsTraceGraph inputGraph = parser
+                .generateDirectTORelation(parsedEvents);
+        return new PartitionGraph(inputGraph, true,
+                filterIntrByInvariants(new ChainWalkingTOInvMiner()
+                        .computeInvariants(inputGraph, false, false)));
+    }
+
+    private Map<Partition, TracingStateSet<Partition>> check(
+            TracingStateSet<Partition> initial, PartitionGraph pGraph,
+            boolean earlyExit) {
+        if (useWorkListChecker) {
+            return FsmModelChecker.runWorkListChecker(initial, pGraph,
+                    earlyExit);
+        }
+        return FsmModelChecker.runChecker(initial, pGraph, earlyExit);
+    }
+
+    private void checkBitSets(FsmStateSet<Partition> initial,
+            PartitionGraph pGraph) {
+        if (useWorkListChecker) {
+            FsmModelChecker.runWorkListChecker(initial, pGraph, false);
+        } else {
+            FsmModelChecker.runChecker(initial, pGraph, false);
+        }
+    }
+
+    @Test
+    public void tracingCheckerPerfTest() throws Exception {
+        PartitionGraph pGraph = genGraph();
+        for (boolean earlyExit : new boolean[] { true, false }) {
+            long totalDelta = 0;
+            for (int iter = 0; iter < numIterations; iter++) {
+                long startTime = System.currentTimeMillis();
+                for (ITemporalInvariant inv : pGraph.getInvariants()) {
+                    check(FsmModelChecker
+                            .<Partition> newTracingStateSet((BinaryInvariant) inv),
+                            pGraph, earlyExit);
+                }
+                totalDelta += System.currentTimeMillis() - startTime;
+            }
+            reportTime("tracing sets (earlyExit " + earlyExit + ", "
+                    + pGraph.getInvariants().numInvariants() + " invariants, "
+                    + pGraph.getNodes().size() + " partitions)", totalDelta
+                    / numIterations);
+        }
+    }
+
+    @Test
+    public void bitSetCheckerPerfTest() throws Exception {
+        PartitionGraph pGraph = genGraph();
+        List<BinaryInvariant> alwaysFollowed = new ArrayList<BinaryInvariant>();
+        List<BinaryInvariant> alwaysPrecedes = new ArrayList<BinaryInvariant>();
+        List<BinaryInvariant> neverFollowed = new ArrayList<BinaryInvariant>();
+        for (ITemporalInvariant inv : pGraph.getInvariants()) {
+            if (inv instanceof AlwaysFollowedInvariant) {
+                alwaysFollowed.add((BinaryInvariant) inv);
+            } else if (inv instanceof AlwaysPrecedesInvariant) {
+                alwaysPrecedes.add((BinaryInvariant) inv);
+            } else if (inv instanceof NeverFollowedInvariant) {
+                neverFollowed.add((BinaryInvariant) inv);
+            }
+        }
+
+        long totalDelta = 0;
+        for (int iter = 0; iter < numIterations; iter++) {
+            long startTime = System.currentTimeMillis();
+            checkBitSets(new AFbyInvFsms<Partition>(alwaysFollowed), pGraph);
+            checkBitSets(new APInvFsms<Partition>(alwaysPrecedes), pGraph);
+            checkBitSets(new NFbyInvFsms<Partition>(neverFollowed), pGraph);
+            totalDelta += System.currentTimeMillis() - startTime;
+        }
+        reportTime("bit-set sets", totalDelta / numIterations);
+    }
+}
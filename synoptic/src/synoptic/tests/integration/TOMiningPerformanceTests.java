@@ -39,6 +39,7 @@ public class TOMiningPerformanceTests extends SynopticTest {
         Object[][] data = new Object[][] {
                 { new TransitiveClosureInvMiner(false), 3, 1000, 10, 50 },
                 { new TransitiveClosureInvMiner(true), 3, 1000, 10, 50 },
+                { new TransitiveClosureInvMiner(true, true), 3, 1000, 10, 50 },
                 { new ChainWalkingTOInvMiner(), 3, 10000, 10, 50 } };
         return Arrays.asList(data);
     }
@@ -0,0 +1,151 @@
+package synoptic.tests.units;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import synoptic.invariants.ITemporalInvariant;
+import synoptic.invariants.TemporalInvariantSet;
+import synoptic.invariants.miners.ArrayWalkCounts;
+import synoptic.invariants.miners.ChainWalkingTOInvMiner;
+import synoptic.invariants.miners.EventTypeInterner;
+import synoptic.model.ChainsTraceGraph;
+import synoptic.model.event.StringEventType;
+import synoptic.tests.SynopticTest;
+
+/**
+ * Tests that the array-based counting backend of ChainWalkingTOInvMiner mines
+ * the same invariants as the map-based one, with one or several threads.
+ */
+public class ArrayWalkCountsTests extends SynopticTest {
+
+    /**
+     * Mines g with both counting backends, with support counts, and checks
+     * that the results are the same.
+     */
+    private void checkSameInvariants(ChainsTraceGraph g) {
+        TemporalInvariantSet arrayInvs = new ChainWalkingTOInvMiner(true)
+                .computeInvariants(g, false, true);
+        TemporalInvariantSet mapInvs = new ChainWalkingTOInvMiner(false)
+                .computeInvariants(g, false, true);
+
+        // Invariant equality includes the support counts.
+        List<ITemporalInvariant> arrayList = new ArrayList<ITemporalInvariant>(
+                arrayInvs.getSet());
+        for (ITemporalInvariant inv : mapInvs) {
+            assertTrue("Missing " + inv, arrayList.contains(inv));
+        }
+        assertEquals(mapInvs.numInvariants(), arrayInvs.numInvariants());
+    }
+
+    /**
+     * Tests a log with repeated events, so that IntrBy invariants are mined.
+     */
+    @Test
+    public void repeatedEventsTest() throws Exception {
+        String[] log = new String[] { "a", "b", "a", "c", "a", "--", "a", "c",
+                "b", "a", "--", "b", "b", "c" };
+        checkSameInvariants(genInitialLinearGraph(log));
+    }
+
+    /**
+     * Tests random logs with more event types than fit into a single long of
+     * the bit-sets.
+     */
+    @Test
+    public void manyEventTypesTest() throws Exception {
+        Random random = new Random(0);
+        for (int iter = 0; iter < 3; iter++) {
+            List<String> log = new ArrayList<String>();
+            for (int i = 0; i < 400; i++) {
+                if (i > 0 && random.nextInt(20) == 0) {
+                    log.add("--");
+                }
+                log.add("e" + random.nextInt(80));
+            }
+            checkSameInvariants(genInitialLinearGraph(log
+                    .toArray(new String[log.size()])));
+        }
+    }
+
+    /**
+     * Tests that mining random logs with several threads produces the same
+     * invariants as sequential mining.
+     */
+    @Test
+    public void parallelMiningTest() throws Exception {
+        Random random = new Random(1);
+        List<String> log = new ArrayList<String>();
+        for (int i = 0; i < 2000; i++) {
+            if (i > 0 && random.nextInt(10) == 0) {
+                log.add("--");
+            }
+            log.add("e" + random.nextInt(30));
+        }
+        ChainsTraceGraph g = genInitialLinearGraph(log.toArray(new String[log
+                .size()]));
+
+        TemporalInvariantSet sequentialInvs = new ChainWalkingTOInvMiner(
+                true, 1).computeInvariants(g, false, true);
+        TemporalInvariantSet parallelInvs = new ChainWalkingTOInvMiner(true, 4)
+                .computeInvariants(g, false, true);
+        assertEquals(sequentialInvs.numInvariants(),
+                parallelInvs.numInvariants());
+        assertTrue(sequentialInvs.getSet().containsAll(parallelInvs.getSet()));
+    }
+
+    /**
+     * Tests that relations with more event types than array counts are used
+     * for are counted with maps, and yield the same invariants.
+     */
+    @Test
+    public void mapCountsFallbackTest() throws Exception {
+        Random random = new Random(2);
+        List<String> log = new ArrayList<String>();
+        for (int i = 0; i < 300; i++) {
+            if (i > 0 && random.nextInt(15) == 0) {
+                log.add("--");
+            }
+            log.add("e" + random.nextInt(20));
+        }
+        ChainsTraceGraph g = genInitialLinearGraph(log.toArray(new String[log
+                .size()]));
+
+        TemporalInvariantSet arrayInvs = new ChainWalkingTOInvMiner(true)
+                .computeInvariants(g, false, true);
+        for (int numThreads : new int[] { 1, 4 }) {
+            TemporalInvariantSet fallbackInvs = new ChainWalkingTOInvMiner(
+                    true, numThreads, 10).computeInvariants(g, false, true);
+            assertEquals(arrayInvs.numInvariants(),
+                    fallbackInvs.numInvariants());
+            assertTrue(arrayInvs.getSet().containsAll(fallbackInvs.getSet()));
+        }
+    }
+
+    /**
+     * Tests that array counts are not allocated for too many event types.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void tooManyEventTypesTest() {
+        new ArrayWalkCounts(50000);
+    }
+
+    /**
+     * Tests that event type ids are dense and assigned in order.
+     */
+    @Test
+    public void internerTest() {
+        EventTypeInterner interner = new EventTypeInterner();
+        assertEquals(0, interner.intern(new StringEventType("a")));
+        assertEquals(1, interner.intern(new StringEventType("b")));
+        assertEquals(0, interner.intern(new StringEventType("a")));
+        assertEquals(-1, interner.getId(new StringEventType("c")));
+        assertEquals(2, interner.size());
+        assertEquals(new StringEventType("b"), interner.getEventType(1));
+    }
+}
@@ -1,8 +1,13 @@
 package synoptic.tests.units;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
 import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
 
 import org.junit.Test;
 
@@ -10,6 +15,7 @@ import synoptic.algorithms.Bisimulation;
 import synoptic.invariants.TemporalInvariantSet;
 import synoptic.invariants.miners.ChainWalkingTOInvMiner;
 import synoptic.invariants.miners.ITOInvariantMiner;
+import synoptic.main.AbstractMain;
 import synoptic.main.parser.ParseException;
 import synoptic.main.parser.TraceParser;
 import synoptic.model.ChainsTraceGraph;
@@ -134,6 +140,88 @@ public class BisimulationTests extends SynopticTest {
         assertTrue(parsedEvents.size() == 0);
     }
 
+    /**
+     * Test that refinement with incremental model checking, which re-uses the
+     * model checker state from previous iterations, produces a graph that
+     * satisfies all of the mined invariants according to a full model check.
+     * 
+     * @throws Exception
+     */
+    @Test
+    public void incrementalModelCheckingSplitTest() throws Exception {
+        String[] traceStrArray = new String[] { "a", "x", "y", "z", "b", "--",
+                "c", "x", "y", "z", "d", "--", "a", "x", "z", "y", "x", "b",
+                "--", "c", "y", "x", "d", "--", "a", "z", "z", "b" };
+        String traceStr = concatinateWithNewlines(traceStrArray);
+
+        TraceParser defParser = genDefParser();
+        ArrayList<EventNode> parsedEvents = defParser.parseTraceString(
+                traceStr, getTestName().getMethodName(), -1);
+        ChainsTraceGraph inputGraph = defParser
+                .generateDirectTORelation(parsedEvents);
+
+        ITOInvariantMiner miner = new ChainWalkingTOInvMiner();
+        TemporalInvariantSet invariants = miner.computeInvariants(inputGraph,
+                false, false);
+
+        AbstractMain.getInstance().options.incrementalModelChecking = true;
+        PartitionGraph pGraph = new PartitionGraph(inputGraph, true, invariants);
+        Bisimulation.splitUntilAllInvsSatisfied(pGraph);
+
+        pGraph.checkSanity();
+        assertNull(invariants.getAllCounterExamples(pGraph));
+        // Tracking of modified partitions is disabled once refinement is done.
+        assertTrue(pGraph.takeModifiedPartitions().isEmpty());
+    }
+
+    /**
+     * Refines the same graph with candidate splits evaluated sequentially and
+     * concurrently, using the same random seed, and checks that both produce
+     * the same partitioning.
+     * 
+     * @throws Exception
+     */
+    @Test
+    public void parallelSplitEvaluationTest() throws Exception {
+        String[] traceStrArray = new String[] { "a", "x", "y", "z", "b", "--",
+                "c", "x", "y", "z", "d", "--", "a", "x", "z", "y", "x", "b",
+                "--", "c", "y", "x", "d", "--", "a", "z", "z", "b" };
+        String traceStr = concatinateWithNewlines(traceStrArray);
+
+        TraceParser defParser = genDefParser();
+        ArrayList<EventNode> parsedEvents = defParser.parseTraceString(
+                traceStr, getTestName().getMethodName(), -1);
+        ChainsTraceGraph inputGraph = defParser
+                .generateDirectTORelation(parsedEvents);
+
+        ITOInvariantMiner miner = new ChainWalkingTOInvMiner();
+        TemporalInvariantSet invariants = miner.computeInvariants(inputGraph,
+                false, false);
+
+        AbstractMain main = AbstractMain.getInstance();
+        Set<Set<EventNode>> expected = null;
+        for (int threads : new int[] { 1, 4 }) {
+            main.options.refinementThreads = threads;
+            main.random = new Random(0);
+            PartitionGraph pGraph = new PartitionGraph(inputGraph, true,
+                    invariants);
+            Bisimulation.splitUntilAllInvsSatisfied(pGraph);
+
+            pGraph.checkSanity();
+            assertNull(invariants.getAllCounterExamples(pGraph));
+
+            Set<Set<EventNode>> partitioning = new HashSet<Set<EventNode>>();
+            for (Partition p : pGraph.getNodes()) {
+                partitioning.add(new HashSet<EventNode>(p.getEventNodes()));
+            }
+            if (expected == null) {
+                expected = partitioning;
+            } else {
+                assertEquals(expected, partitioning);
+            }
+        }
+    }
+
     // TODO: test the single step splitPartitions version.
 
     // TODO: change mergePartitionsTest to use total order, since a partially
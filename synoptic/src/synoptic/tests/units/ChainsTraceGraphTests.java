@@ -202,6 +202,69 @@ public class ChainsTraceGraphTests extends SynopticTest {
         assertTrue(tcTrue.equals(tcGenerated.getTC()));
     }
 
+    /**
+     * Tests that the bit-set transitive closure of a chain graph holds the same
+     * reachability as the transitive closure built with sets of nodes, both
+     * before and after its chains are expanded into bit-sets.
+     */
+    @Test
+    public void bitSetTCTest() {
+        g = buildFourNodeGraph1();
+
+        TransitiveClosure tc = g.getTransitiveClosure("followed by");
+        TransitiveClosure bitSetTC = g
+                .getBitSetTransitiveClosure("followed by");
+
+        assertTrue(tc.getTC().equals(bitSetTC.getTC()));
+        assertTrue(bitSetTC.isEqual(tc));
+        assertFalse(bitSetTC.isReachable(d, a));
+        assertEquals(null, bitSetTC.getReachableNodes(d));
+
+        // Recording reachability expands the chain into bit-sets.
+        bitSetTC.recordTransitiveReachability(d, a);
+        bitSetTC.mergeReachables(a, d);
+        tc.recordTransitiveReachability(d, a);
+        tc.mergeReachables(a, d);
+
+        assertTrue(bitSetTC.isReachable(d, a));
+        assertTrue(bitSetTC.isReachable(d, c));
+        assertTrue(bitSetTC.isReachable(a, d));
+        assertFalse(bitSetTC.isReachable(b, a));
+        assertTrue(tc.getTC().equals(bitSetTC.getTC()));
+    }
+
+    /**
+     * Tests that the bit-set transitive closure of a trace with two relations
+     * along the same chain records each relation's chains separately.
+     */
+    @Test
+    public void twoRelationsBitSetTCTest() {
+        g = new ChainsTraceGraph();
+
+        // a --f--> b --a--> c --f--> d:
+        a.addTransition(new Transition<EventNode>(a, b, "followed by"));
+        b.addTransition(new Transition<EventNode>(b, c, "after"));
+        c.addTransition(new Transition<EventNode>(c, d, "followed by"));
+
+        g.add(a);
+        g.add(b);
+        g.add(c);
+        g.add(d);
+
+        g.tagInitial(b, "after");
+        g.tagInitial(a, "followed by");
+        g.tagTerminal(c, "after");
+        g.tagTerminal(d, "followed by");
+
+        for (String relation : g.getRelations()) {
+            TransitiveClosure tc = g.getTransitiveClosure(relation);
+            TransitiveClosure bitSetTC = g.getBitSetTransitiveClosure(relation);
+            assertTrue(tc.getTC().equals(bitSetTC.getTC()));
+        }
+        assertFalse(g.getBitSetTransitiveClosure("followed by").isReachable(
+                a, c));
+    }
+
     private void generateTestEvents(List<EventNode> events,
             Map<EventNode, Set<Relation>> allEventRelations) {
         // Set up the events with time information.
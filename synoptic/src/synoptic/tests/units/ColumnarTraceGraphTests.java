@@ -0,0 +1,209 @@
+package synoptic.tests.units;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import synoptic.invariants.TemporalInvariantSet;
+import synoptic.invariants.miners.ChainWalkingTOInvMiner;
+import synoptic.main.parser.ParseException;
+import synoptic.main.parser.TraceParser;
+import synoptic.model.ChainsTraceGraph;
+import synoptic.model.ColumnarTraceGraph;
+import synoptic.model.EventNode;
+import synoptic.model.event.Event;
+import synoptic.model.event.StringEventType;
+import synoptic.model.state.State;
+import synoptic.tests.SynopticTest;
+import synoptic.util.resource.ITotalResource;
+
+/**
+ * Tests for the columnar trace store, and for mining invariants directly from
+ * it.
+ */
+public class ColumnarTraceGraphTests extends SynopticTest {
+
+    private static TraceParser newParser() throws ParseException {
+        TraceParser parser = new TraceParser();
+        parser.addRegex("^(?<TIME>)(?<TYPE>)$");
+        parser.addRegex("^(?<TIME>)(?<RELATION>)(?<TYPE>)$");
+        parser.addRegex("^(?<TIME>)(?<RELATION*>)cl(?<TYPE>)$");
+        parser.addPartitionsSeparator("^--$");
+        return parser;
+    }
+
+    private static TraceParser newStateParser() throws ParseException {
+        TraceParser parser = new TraceParser();
+        parser.addRegex("^(?<TYPE>[abc])$");
+        parser.addRegex("^STATE:(?<STATE>)$");
+        parser.addPartitionsSeparator("^--$");
+        return parser;
+    }
+
+    private static ColumnarTraceGraph parseColumns(String log)
+            throws ParseException {
+        ColumnarTraceGraph columns = new ColumnarTraceGraph();
+        newParser().parseTraceStringStreaming(log, "test", -1, columns);
+        return columns;
+    }
+
+    /**
+     * Generates a random log of traces separated by "--", in which events
+     * have no relation, the relation r, or the closure relation r.
+     */
+    private static String genLog(Random rand) {
+        String[] eTypes = new String[] { "a", "b", "c", "d" };
+        List<String> lines = new ArrayList<String>();
+        int numTraces = 1 + rand.nextInt(5);
+        int time = 0;
+        for (int t = 0; t < numTraces; t++) {
+            if (t > 0) {
+                lines.add("--");
+            }
+            int length = 1 + rand.nextInt(12);
+            for (int i = 0; i < length; i++) {
+                time++;
+                String eType = eTypes[rand.nextInt(eTypes.length)];
+                switch (rand.nextInt(3)) {
+                case 0:
+                    lines.add(time + " " + eType);
+                    break;
+                case 1:
+                    lines.add(time + " r " + eType);
+                    break;
+                default:
+                    lines.add(time + " r cl " + eType);
+                    break;
+                }
+            }
+        }
+        StringBuilder log = new StringBuilder();
+        for (String line : lines) {
+            log.append(line).append("\n");
+        }
+        return log.toString();
+    }
+
+    @Test
+    public void columnsTest() throws Exception {
+        ColumnarTraceGraph columns = parseColumns("1 a\n2 r b\n3 c\n--\n4 d\n");
+        String t = Event.defTimeRelationStr;
+
+        assertEquals(4, columns.getNumEvents());
+        assertEquals(2, columns.getNumTraces());
+        assertEquals(0, columns.getTraceStart(0));
+        assertEquals(3, columns.getTraceEnd(0));
+        assertEquals(3, columns.getTraceStart(1));
+        assertEquals(4, columns.getTraceEnd(1));
+
+        assertEquals(new StringEventType("b"), columns.getEType(1));
+        assertEquals(new ITotalResource(2), columns.getTime(1));
+        assertEquals(columns.getTraceID(0), columns.getTraceID(2));
+
+        assertEquals(1, columns.getSuccessor(0, t));
+        assertEquals(2, columns.getSuccessor(1, t));
+        assertEquals(ColumnarTraceGraph.terminalSuccessor,
+                columns.getSuccessor(2, t));
+        assertEquals(ColumnarTraceGraph.terminalSuccessor,
+                columns.getSuccessor(3, t));
+        // The r transition of b is to c, the r relation of b comes from a.
+        assertEquals(1, columns.getSuccessor(0, "r"));
+        assertEquals(ColumnarTraceGraph.noSuccessor,
+                columns.getSuccessor(1, "r"));
+
+        EventNode node = columns.getEventNode(1);
+        assertEquals(new StringEventType("b"), node.getEType());
+        assertEquals(new ITotalResource(2), node.getTime());
+        assertEquals("2 r b", node.getEvent().getLine());
+        assertEquals("test", node.getEvent().getFileName());
+        assertEquals(2, node.getLineNum());
+        assertEquals(0, node.getAllTransitions().size());
+    }
+
+    /**
+     * The states of a state-annotated log are kept in the columns, and are
+     * the same as those of the events that the log is parsed into.
+     */
+    @Test
+    public void statesTest() throws Exception {
+        String log = "STATE:x=0\na\nSTATE:x=1\nb\n--\nc\nSTATE:x=2\n";
+        ColumnarTraceGraph columns = new ColumnarTraceGraph();
+        newStateParser().parseTraceStringStreaming(log, "test", -1, columns);
+
+        assertEquals(3, columns.getNumEvents());
+        EventNode a = columns.getEventNode(0);
+        EventNode b = columns.getEventNode(1);
+        EventNode c = columns.getEventNode(2);
+        assertEquals(new State("x=0"), a.getPreEventState());
+        assertEquals(new State("x=1"), a.getPostEventState());
+        assertEquals(new State("x=1"), b.getPreEventState());
+        assertNull(b.getPostEventState());
+        assertNull(c.getPreEventState());
+        assertEquals(new State("x=2"), c.getPostEventState());
+        assertEquals("b", b.getEvent().getLine());
+
+        // The trace graph created from the columns has the same states.
+        List<EventNode> events = newStateParser().parseTraceString(log,
+                "test", -1);
+        ChainsTraceGraph columnsGraph = columns.toChainsTraceGraph();
+        for (EventNode expected : events) {
+            boolean found = false;
+            for (EventNode node : columnsGraph.getNodes()) {
+                if (node.getLineNum() == expected.getLineNum()) {
+                    assertEquals(expected.getEType(), node.getEType());
+                    assertEquals(expected.getPreEventState(),
+                            node.getPreEventState());
+                    assertEquals(expected.getPostEventState(),
+                            node.getPostEventState());
+                    assertEquals(expected.getEvent().getLine(), node
+                            .getEvent().getLine());
+                    assertEquals(expected.getEvent().getFileName(), node
+                            .getEvent().getFileName());
+                    found = true;
+                }
+            }
+            assertTrue(expected.toString(), found);
+        }
+    }
+
+    /**
+     * Mining the columns directly, or the trace graph created from them,
+     * yields the same invariants as mining the trace graph of the log.
+     */
+    @Test
+    public void sameInvariantsAsTraceGraphTest() throws Exception {
+        Random rand = new Random(15);
+        for (int iter = 0; iter < 30; iter++) {
+            String log = genLog(rand);
+
+            TraceParser parser = newParser();
+            List<EventNode> events = parser.parseTraceString(log, "test", -1);
+            ChainsTraceGraph graph = parser.generateDirectTORelation(events);
+            TemporalInvariantSet expected = new ChainWalkingTOInvMiner()
+                    .computeInvariants(graph, false, false);
+
+            ColumnarTraceGraph columns = parseColumns(log);
+            assertEquals(events.size(), columns.getNumEvents());
+            for (int numThreads : new int[] { 1, 4 }) {
+                TemporalInvariantSet actual = new ChainWalkingTOInvMiner(
+                        true, numThreads).computeInvariants(columns, false);
+                assertEquals(log, expected.getSet(), actual.getSet());
+            }
+            // Relations with more than two event types are counted with maps.
+            assertEquals(log, expected.getSet(), new ChainWalkingTOInvMiner(
+                    true, 1, 2).computeInvariants(columns, false).getSet());
+
+            ChainsTraceGraph columnsGraph = columns.toChainsTraceGraph();
+            assertEquals(graph.getNodes().size(), columnsGraph.getNodes()
+                    .size());
+            assertEquals(log, expected.getSet(), new ChainWalkingTOInvMiner()
+                    .computeInvariants(columnsGraph, false, false).getSet());
+        }
+    }
+}
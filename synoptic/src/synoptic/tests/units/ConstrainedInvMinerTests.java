@@ -4,6 +4,10 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
 import org.junit.Before;
 import org.junit.Test;
 
@@ -447,4 +451,44 @@ public class ConstrainedInvMinerTests extends PynopticTest {
 
         assertEquals(aAFbyc_time, aAFbyb_time.incrBy(bAFbyc_time));
     }
+
+    /**
+     * Checks that computing the bounds of all invariants in one walk of each
+     * trace, with one or several threads, yields the same constrained
+     * invariants as walking the traces for every invariant.
+     * 
+     * @throws Exception
+     */
+    @Test
+    public void onePassBoundsSameAsWalkingTest() throws Exception {
+        Random rand = new Random(14);
+        String[] eTypes = new String[] { "a", "b", "c", "d", "e" };
+        for (int iter = 0; iter < 20; iter++) {
+            List<String> log = new ArrayList<String>();
+            int numTraces = 1 + rand.nextInt(8);
+            for (int t = 0; t < numTraces; t++) {
+                if (t > 0) {
+                    log.add("--");
+                }
+                int time = rand.nextInt(10);
+                int length = 1 + rand.nextInt(15);
+                for (int i = 0; i < length; i++) {
+                    log.add(eTypes[rand.nextInt(eTypes.length)] + " " + time);
+                    time += 1 + rand.nextInt(5);
+                }
+            }
+
+            ChainsTraceGraph inputGraph = (ChainsTraceGraph) genChainsTraceGraph(
+                    log.toArray(new String[log.size()]), genITimeParser());
+            TemporalInvariantSet invs = miner.computeInvariants(inputGraph,
+                    false, false);
+            TemporalInvariantSet expected = new ConstrainedInvMiner(false, 1)
+                    .computeInvariants(inputGraph, false, invs);
+            for (int numThreads : new int[] { 1, 4 }) {
+                TemporalInvariantSet actual = new ConstrainedInvMiner(true,
+                        numThreads).computeInvariants(inputGraph, false, invs);
+                assertEquals(expected.getSet(), actual.getSet());
+            }
+        }
+    }
 }
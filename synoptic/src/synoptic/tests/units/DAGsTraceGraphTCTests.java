@@ -164,4 +164,21 @@ public class DAGsTraceGraphTCTests extends DAGsTraceGraphBaseTest {
         assertTrue(tc2.equals(tc.getTC()));
     }
 
+    /**
+     * Tests that the bit-set TC of the DAG used in the previous test is the
+     * same as the TC built with sets of nodes.
+     */
+    @Test
+    public void bitSetTCTest() {
+        dag = buildTwoSourcesComplexDAG();
+        TransitiveClosure tc = dag.getTransitiveClosure("followed by",
+                useFloysWarshall);
+        TransitiveClosure bitSetTC = dag
+                .getBitSetTransitiveClosure("followed by");
+
+        assertTrue(tc.getTC().equals(bitSetTC.getTC()));
+        assertTrue(tc.isEqual(bitSetTC));
+        assertTrue(bitSetTC.isEqual(tc));
+    }
+
 }
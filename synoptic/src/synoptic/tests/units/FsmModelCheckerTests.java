@@ -0,0 +1,264 @@
+package synoptic.tests.units;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Queue;
+import java.util.Set;
+
+import org.junit.Test;
+
+import synoptic.invariants.BinaryInvariant;
+import synoptic.invariants.CExamplePath;
+import synoptic.invariants.ITemporalInvariant;
+import synoptic.invariants.TemporalInvariantSet;
+import synoptic.algorithms.graphops.IOperation;
+import synoptic.algorithms.graphops.PartitionSplit;
+import synoptic.invariants.fsmcheck.FsmModelChecker;
+import synoptic.invariants.fsmcheck.FsmModelChecker.DirtyRegion;
+import synoptic.invariants.fsmcheck.TracingStateSet;
+import synoptic.invariants.miners.ChainWalkingTOInvMiner;
+import synoptic.model.Partition;
+import synoptic.model.PartitionGraph;
+import synoptic.tests.SynopticTest;
+
+/**
+ * Tests for the FSM model checker engine, which is compared against the
+ * original map-based implementation.
+ */
+public class FsmModelCheckerTests extends SynopticTest {
+
+    // Traces with loops, alternatives, and events that appear in different
+    // contexts, so that the initial partition graph violates some of the
+    // mined invariants.
+    private static final String[] events = new String[] { "a", "b", "c", "d",
+            "--", "a", "c", "b", "c", "d", "--", "a", "b", "b", "e", "--",
+            "e", "a", "c", "d", "b", "--", "a", "d", "c", "c", "e" };
+
+    private PartitionGraph genGraph() throws Exception {
+        return genInitialPartitionGraph(events, genDefParser(),
+                new ChainWalkingTOInvMiner(), false);
+    }
+
+    private static void assertSameStates(
+            Map<Partition, TracingStateSet<Partition>> expected,
+            Map<Partition, TracingStateSet<Partition>> states) {
+        assertEquals(expected.size(), states.size());
+        Iterator<Entry<Partition, TracingStateSet<Partition>>> iter = states
+                .entrySet().iterator();
+        for (Entry<Partition, TracingStateSet<Partition>> e : expected
+                .entrySet()) {
+            Entry<Partition, TracingStateSet<Partition>> state = iter.next();
+            assertTrue(e.getKey() == state.getKey());
+            assertEquals(e.getValue().toString(), state.getValue().toString());
+        }
+    }
+
+    /**
+     * Check that the model checker yields the same state sets and
+     * counter-examples as the map-based implementation, with and without early
+     * exit.
+     */
+    @Test
+    public void sameStatesAsWorkListCheckerTest() throws Exception {
+        PartitionGraph pGraph = genGraph();
+        TemporalInvariantSet invs = filterIntrByInvariants(pGraph
+                .getInvariants());
+
+        int numViolated = 0;
+        for (ITemporalInvariant tinv : invs) {
+            BinaryInvariant inv = (BinaryInvariant) tinv;
+            for (boolean earlyExit : new boolean[] { false, true }) {
+                TracingStateSet<Partition> initial = FsmModelChecker
+                        .newTracingStateSet(inv);
+                Map<Partition, TracingStateSet<Partition>> expected = FsmModelChecker
+                        .runWorkListChecker(initial, pGraph, earlyExit);
+                Map<Partition, TracingStateSet<Partition>> states = FsmModelChecker
+                        .runChecker(initial, pGraph, earlyExit);
+                assertSameStates(expected, states);
+
+                CExamplePath<Partition> expectedPath = FsmModelChecker
+                        .getShortestCounterExample(inv, expected);
+                CExamplePath<Partition> path = FsmModelChecker
+                        .getShortestCounterExample(inv, states);
+                if (expectedPath == null) {
+                    assertTrue(path == null);
+                    continue;
+                }
+                assertEquals(expectedPath.path, path.path);
+                if (!earlyExit) {
+                    numViolated++;
+                }
+            }
+        }
+        // The test is only meaningful if some invariants are violated.
+        assertTrue(numViolated > 0);
+    }
+
+    /**
+     * Checks that every node inhabits the same states as expected, and that
+     * the shortest counter-examples have the same length. The states are
+     * propagated in a different order, so the paths that are recorded for the
+     * states may be different paths of the same length.
+     */
+    private static void assertSameStatesOfNodes(BinaryInvariant inv,
+            Map<Partition, TracingStateSet<Partition>> expected,
+            Map<Partition, TracingStateSet<Partition>> states) {
+        assertEquals(expected.size(), states.size());
+        for (Entry<Partition, TracingStateSet<Partition>> e : expected
+                .entrySet()) {
+            TracingStateSet<Partition> state = states.get(e.getKey());
+            assertTrue(state != null);
+            assertTrue(e.getValue().isSubset(state));
+            assertTrue(state.isSubset(e.getValue()));
+            assertEquals(e.getValue().isFail(), state.isFail());
+        }
+
+        CExamplePath<Partition> expectedPath = FsmModelChecker
+                .getShortestCounterExample(inv, expected);
+        CExamplePath<Partition> path = FsmModelChecker
+                .getShortestCounterExample(inv, states);
+        if (expectedPath == null) {
+            assertTrue(path == null);
+        } else {
+            assertEquals(expectedPath.path.size(), path.path.size());
+        }
+    }
+
+    /**
+     * Splits the first partition of pGraph that has more than one event, and
+     * returns the undo operation.
+     */
+    private static IOperation splitFirstPartition(PartitionGraph pGraph) {
+        for (Partition p : pGraph.getNodes()) {
+            if (p.size() > 1) {
+                PartitionSplit split = new PartitionSplit(p);
+                split.addEventToSplit(p.getEventNodes().iterator().next());
+                return pGraph.apply(split);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Check that re-checking an invariant incrementally after the graph was
+     * split, and after the split was undone, yields the same state sets as a
+     * check from scratch. The check is done to the fixpoint, and also with
+     * early exit, in which case resuming it to the fixpoint must yield the same
+     * state sets as well.
+     */
+    @Test
+    public void incrementalCheckMatchesRunCheckerTest() throws Exception {
+        PartitionGraph pGraph = genGraph();
+        TemporalInvariantSet invs = filterIntrByInvariants(pGraph
+                .getInvariants());
+        List<BinaryInvariant> binInvs = new ArrayList<BinaryInvariant>();
+        List<Map<Partition, TracingStateSet<Partition>>> fullStates = new ArrayList<Map<Partition, TracingStateSet<Partition>>>();
+        List<Map<Partition, TracingStateSet<Partition>>> earlyStates = new ArrayList<Map<Partition, TracingStateSet<Partition>>>();
+        List<Queue<Partition>> earlyPending = new ArrayList<Queue<Partition>>();
+        for (ITemporalInvariant tinv : invs) {
+            BinaryInvariant inv = (BinaryInvariant) tinv;
+            binInvs.add(inv);
+            fullStates.add(FsmModelChecker.runWorkListChecker(
+                    FsmModelChecker.<Partition> newTracingStateSet(inv),
+                    pGraph, new LinkedList<Partition>(), false));
+            Queue<Partition> pending = new LinkedList<Partition>();
+            earlyStates.add(FsmModelChecker.runWorkListChecker(
+                    FsmModelChecker.<Partition> newTracingStateSet(inv),
+                    pGraph, pending, true));
+            earlyPending.add(pending);
+        }
+
+        pGraph.setTrackModifiedPartitions(true);
+        IOperation rewind = null;
+        int numViolated = 0;
+        for (int step = 0; step < 2; step++) {
+            Set<Partition> oldNodes = new LinkedHashSet<Partition>(
+                    pGraph.getNodes());
+            if (step == 0) {
+                rewind = splitFirstPartition(pGraph);
+            } else {
+                pGraph.apply(rewind);
+            }
+            Set<Partition> removed = new LinkedHashSet<Partition>(oldNodes);
+            removed.removeAll(pGraph.getNodes());
+            DirtyRegion<Partition> region = FsmModelChecker.getDirtyRegion(
+                    pGraph, pGraph.takeModifiedPartitions(), removed);
+            assertTrue(region.size() > 0);
+
+            for (int i = 0; i < binInvs.size(); i++) {
+                BinaryInvariant inv = binInvs.get(i);
+                TracingStateSet<Partition> initial = FsmModelChecker
+                        .newTracingStateSet(inv);
+                Map<Partition, TracingStateSet<Partition>> expected = FsmModelChecker
+                        .runChecker(initial, pGraph, false);
+
+                FsmModelChecker.runChecker(initial, pGraph, fullStates.get(i),
+                        new LinkedList<Partition>(), region, false);
+                assertSameStatesOfNodes(inv, expected, fullStates.get(i));
+
+                // Early exit finds a counter-example iff there is one.
+                Map<Partition, TracingStateSet<Partition>> states = earlyStates
+                        .get(i);
+                FsmModelChecker.runChecker(initial, pGraph, states,
+                        earlyPending.get(i), region, true);
+                CExamplePath<Partition> expectedPath = FsmModelChecker
+                        .getShortestCounterExample(inv, expected);
+                CExamplePath<Partition> path = FsmModelChecker
+                        .getShortestCounterExample(inv, states);
+                assertEquals(expectedPath == null, path == null);
+                if (expectedPath != null) {
+                    numViolated++;
+                }
+            }
+        }
+
+        // Resuming the early-exit checks without changes reaches the fixpoint.
+        DirtyRegion<Partition> noChanges = FsmModelChecker.getDirtyRegion(
+                pGraph, Collections.<Partition> emptySet(),
+                Collections.<Partition> emptySet());
+        for (int i = 0; i < binInvs.size(); i++) {
+            TracingStateSet<Partition> initial = FsmModelChecker
+                    .newTracingStateSet(binInvs.get(i));
+            FsmModelChecker.runChecker(initial, pGraph, earlyStates.get(i),
+                    earlyPending.get(i), noChanges, false);
+            assertSameStatesOfNodes(binInvs.get(i),
+                    FsmModelChecker.runChecker(initial, pGraph, false),
+                    earlyStates.get(i));
+        }
+        pGraph.setTrackModifiedPartitions(false);
+
+        // The test is only meaningful if some invariants are violated.
+        assertTrue(numViolated > 0);
+    }
+
+    /**
+     * Check that the bit-set model checker finds exactly the invariants that
+     * have a counter-example.
+     */
+    @Test
+    public void bitSetCheckerTest() throws Exception {
+        PartitionGraph pGraph = genGraph();
+        List<BinaryInvariant> invs = new ArrayList<BinaryInvariant>();
+        for (ITemporalInvariant inv : filterIntrByInvariants(pGraph
+                .getInvariants())) {
+            invs.add((BinaryInvariant) inv);
+        }
+
+        List<BinaryInvariant> violated = FsmModelChecker.runBitSetChecker(
+                invs, pGraph);
+        for (BinaryInvariant inv : invs) {
+            boolean hasCExample = FsmModelChecker.getCounterExample(inv,
+                    pGraph) != null;
+            assertEquals(inv.toString(), hasCExample, violated.contains(inv));
+        }
+    }
+}
@@ -1,24 +1,31 @@
 package synoptic.tests.units;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
 import java.util.ArrayList;
+import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Random;
 import java.util.Set;
 
 import org.junit.Test;
 
 import synoptic.algorithms.KTails;
+import synoptic.algorithms.MergeCandidateIndex;
+import synoptic.algorithms.graphops.PartitionMerge;
 import synoptic.main.parser.ParseException;
 import synoptic.main.parser.TraceParser;
 import synoptic.model.ChainsTraceGraph;
 import synoptic.model.DAGsTraceGraph;
 import synoptic.model.EventNode;
+import synoptic.model.Partition;
 import synoptic.model.PartitionGraph;
 import synoptic.model.Transition;
 import synoptic.model.event.Event;
+import synoptic.model.event.StringEventType;
 import synoptic.tests.SynopticTest;
 import synoptic.util.InternalSynopticException;
 
@@ -91,6 +98,111 @@ public class KTailsTests extends SynopticTest {
         assertTrue(pGraph.getNodes().size() == 6);
     }
 
+    /**
+     * Checks that the candidates returned by a MergeCandidateIndex are exactly
+     * the k-equal partitions, before and after a merge.
+     */
+    private static void checkCandidates(PartitionGraph pGraph,
+            MergeCandidateIndex index, int k) {
+        for (Partition p : pGraph.getNodes()) {
+            Set<Partition> expected = new LinkedHashSet<Partition>();
+            for (Partition q : pGraph.getNodes()) {
+                if (p != q && KTails.kEquals(p, q, k)) {
+                    expected.add(q);
+                }
+            }
+            assertEquals(expected, index.getCandidates(p));
+        }
+    }
+
+    /**
+     * Tests that MergeCandidateIndex buckets partitions by k-equality, and
+     * stays up to date when partitions are merged.
+     * 
+     * @throws ParseException
+     * @throws InternalSynopticException
+     */
+    @Test
+    public void mergeCandidateIndexTest() throws InternalSynopticException,
+            ParseException {
+        String[] logArr = new String[] { "a", "b", "c", "--", "a", "b", "d",
+                "--", "a", "b", "c", "--", "x", "b", "c" };
+        ChainsTraceGraph g = (ChainsTraceGraph) genChainsTraceGraph(logArr,
+                SynopticTest.genDefParser());
+
+        for (int k = 1; k <= 3; k++) {
+            PartitionGraph pGraph = new PartitionGraph(g, false, null);
+            MergeCandidateIndex index = new MergeCandidateIndex(pGraph, k);
+            checkCandidates(pGraph, index, k);
+
+            // Merge all the b partitions, one at a time.
+            List<Partition> bParts = new ArrayList<Partition>();
+            for (Partition p : pGraph.getNodes()) {
+                if (p.getEType().equals(new StringEventType("b"))) {
+                    bParts.add(p);
+                }
+            }
+            for (int i = 1; i < bParts.size(); i++) {
+                pGraph.apply(new PartitionMerge(bParts.get(0), bParts.get(i)));
+                index.merged(bParts.get(0), bParts.get(i));
+                checkCandidates(pGraph, index, k);
+            }
+        }
+    }
+
+    /**
+     * Tests that performKTails merges exactly the partitions that are k-equal
+     * to the first partition of their group, in the order of the partitions,
+     * with and without threads. The log has enough events for the k-strings to
+     * be computed by multiple tasks.
+     * 
+     * @throws ParseException
+     * @throws InternalSynopticException
+     */
+    @Test
+    public void performKTailsSameAsPairwiseTest()
+            throws InternalSynopticException, ParseException {
+        Random rand = new Random(0);
+        List<String> logList = new ArrayList<String>();
+        for (int trace = 0; trace < 40; trace++) {
+            if (trace > 0) {
+                logList.add("--");
+            }
+            for (int i = 0; i < 12; i++) {
+                logList.add(String.valueOf((char) ('a' + rand.nextInt(3))));
+            }
+        }
+        ChainsTraceGraph g = (ChainsTraceGraph) genChainsTraceGraph(
+                logList.toArray(new String[0]), SynopticTest.genDefParser());
+
+        for (int k = 1; k <= 4; k++) {
+            // Group the partitions with the pairwise k-equality check.
+            List<Set<EventNode>> expected = new ArrayList<Set<EventNode>>();
+            List<Partition> representatives = new ArrayList<Partition>();
+            for (Partition p : new PartitionGraph(g, false, null).getNodes()) {
+                int i = 0;
+                while (i < representatives.size()
+                        && !KTails.kEquals(representatives.get(i), p, k)) {
+                    i++;
+                }
+                if (i == representatives.size()) {
+                    representatives.add(p);
+                    expected.add(new LinkedHashSet<EventNode>());
+                }
+                expected.get(i).addAll(p.getEventNodes());
+            }
+
+            for (int numThreads : new int[] { 1, 4 }) {
+                List<Set<EventNode>> groups = new ArrayList<Set<EventNode>>();
+                for (Partition p : KTails.performKTails(g, k, numThreads)
+                        .getNodes()) {
+                    groups.add(p.getEventNodes());
+                }
+                assertEquals(expected, groups);
+            }
+        }
+    }
+
     /**
      * Returns a simple trace graph with three short chains.
      * 
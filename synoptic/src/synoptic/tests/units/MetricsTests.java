@@ -0,0 +1,217 @@
+package synoptic.tests.units;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.json.simple.JSONValue;
+import org.junit.After;
+import org.junit.Test;
+
+import synoptic.algorithms.Bisimulation;
+import synoptic.benchmarks.Counter;
+import synoptic.benchmarks.Gauge;
+import synoptic.benchmarks.Histogram;
+import synoptic.benchmarks.Metrics;
+import synoptic.benchmarks.MetricsExporter;
+import synoptic.invariants.miners.ChainWalkingTOInvMiner;
+import synoptic.model.PartitionGraph;
+import synoptic.tests.SynopticTest;
+
+/**
+ * Tests for the counters, gauges, and histograms in synoptic.benchmarks, and
+ * for their export with MetricsExporter.
+ */
+public class MetricsTests extends SynopticTest {
+
+    @After
+    public void tearDown() {
+        Metrics.disable();
+        Metrics.reset();
+    }
+
+    /**
+     * Nothing is recorded while metrics are disabled.
+     */
+    @Test
+    public void disabledTest() {
+        Counter c = Metrics.counter("test_disabled_total", "test");
+        Gauge g = Metrics.gauge("test_disabled", "test");
+        Histogram h = Metrics.histogram("test_disabled_seconds", "test",
+                Histogram.secondsBuckets);
+        c.inc();
+        c.add(5);
+        g.set(3);
+        h.observe(1);
+        h.observeSince(Metrics.startTimer());
+        assertEquals(0, c.get());
+        assertEquals(0, g.get());
+        assertEquals(0, h.getCount());
+        assertEquals(0, Metrics.startTimer());
+    }
+
+    /**
+     * Recorded values are kept by the metrics and are reset by reset().
+     */
+    @Test
+    public void recordTest() {
+        Metrics.enable();
+        Counter c = Metrics.counter("test_record_total", "test");
+        Gauge g = Metrics.gauge("test_record", "test");
+        Histogram h = Metrics.histogram("test_record_size", "test",
+                new double[] { 1, 10 });
+        c.inc();
+        c.add(5);
+        g.set(3);
+        g.set(2);
+        h.observe(0.5);
+        h.observe(10);
+        h.observe(11);
+        assertEquals(6, c.get());
+        assertEquals(2, g.get());
+        assertEquals(3, h.getCount());
+        assertEquals(21.5, h.getSum(), 0.0);
+
+        // Bucket counts are cumulative, and 10 falls into the le="10" bucket.
+        String text = Metrics.toPrometheusText();
+        assertTrue(text.contains("# TYPE test_record_total counter\n"));
+        assertTrue(text.contains("test_record_total 6\n"));
+        assertTrue(text.contains("# TYPE test_record gauge\n"));
+        assertTrue(text.contains("test_record 2\n"));
+        assertTrue(text.contains("# TYPE test_record_size histogram\n"));
+        assertTrue(text.contains("test_record_size_bucket{le=\"1.0\"} 1\n"));
+        assertTrue(text.contains("test_record_size_bucket{le=\"10.0\"} 2\n"));
+        assertTrue(text.contains("test_record_size_bucket{le=\"+Inf\"} 3\n"));
+        assertTrue(text.contains("test_record_size_count 3\n"));
+
+        Metrics.reset();
+        assertEquals(0, c.get());
+        assertEquals(0, g.get());
+        assertEquals(0, h.getCount());
+    }
+
+    /**
+     * Registering a metric twice returns the same metric, unless it is
+     * registered with a different type.
+     */
+    @Test
+    public void registerTest() {
+        Counter c = Metrics.counter("test_register_total", "test");
+        assertSame(c, Metrics.counter("test_register_total", "test"));
+        try {
+            Metrics.gauge("test_register_total", "test");
+            assertTrue(false);
+        } catch (IllegalArgumentException e) {
+            // Expected.
+        }
+        try {
+            Metrics.counter("test register", "test");
+            assertTrue(false);
+        } catch (IllegalArgumentException e) {
+            // Expected.
+        }
+    }
+
+    /**
+     * The JSON lines exporter appends one parseable snapshot per line.
+     */
+    @Test
+    public void exportJSONTest() throws IOException {
+        File file = File.createTempFile("metrics", ".json");
+        file.deleteOnExit();
+        Counter c = Metrics.counter("test_json_total", "test");
+
+        MetricsExporter exporter = new MetricsExporter(file,
+                MetricsExporter.Format.JSON, 0);
+        assertTrue(Metrics.isEnabled());
+        c.add(2);
+        exporter.writeSnapshot();
+        c.inc();
+        exporter.close();
+        assertTrue(!Metrics.isEnabled());
+
+        List<String> lines = readLines(file);
+        assertEquals(2, lines.size());
+        for (int i = 0; i < 2; i++) {
+            Map<?, ?> snapshot = (Map<?, ?>) JSONValue.parse(lines.get(i));
+            assertTrue(snapshot.get("timestamp") instanceof Long);
+            Map<?, ?> values = (Map<?, ?>) snapshot.get("metrics");
+            assertEquals(Long.valueOf(2 + i), values.get("test_json_total"));
+            assertTrue((Long) values.get("synoptic_heap_used_bytes") > 0);
+        }
+    }
+
+    /**
+     * The Prometheus exporter replaces the file with the latest snapshot.
+     */
+    @Test
+    public void exportPrometheusTest() throws IOException {
+        File file = File.createTempFile("metrics", ".prom");
+        file.deleteOnExit();
+        Counter c = Metrics.counter("test_prometheus_total", "test");
+
+        MetricsExporter exporter = new MetricsExporter(file,
+                MetricsExporter.Format.parse("prometheus"), 0);
+        c.add(2);
+        exporter.writeSnapshot();
+        c.inc();
+        exporter.close();
+
+        List<String> lines = readLines(file);
+        assertTrue(lines.contains("test_prometheus_total 3"));
+        assertTrue(!lines.contains("test_prometheus_total 2"));
+    }
+
+    /**
+     * Parsing records the lines and events, and refinement records its
+     * iterations, counter-examples, and partitions.
+     */
+    @Test
+    public void pipelineMetricsTest() throws Exception {
+        String[] events = new String[] { "a", "x", "y", "z", "b", "--", "c",
+                "x", "y", "z", "d" };
+        Metrics.enable();
+        PartitionGraph pGraph = genInitialPartitionGraph(events,
+                genDefParser(), new ChainWalkingTOInvMiner(), false);
+        assertEquals(11, Metrics.counter("synoptic_parse_lines_total", "")
+                .get());
+        assertEquals(10, Metrics.counter("synoptic_parse_events_total", "")
+                .get());
+
+        Bisimulation.splitUntilAllInvsSatisfied(pGraph);
+
+        Counter iterations = Metrics.counter(
+                "synoptic_refinement_iterations_total", "");
+        Histogram counterExamples = Metrics.histogram(
+                "synoptic_refinement_counterexamples", "",
+                Histogram.sizeBuckets);
+        Gauge partitions = Metrics.gauge("synoptic_partitions", "");
+        assertTrue(iterations.get() > 0);
+        assertEquals(iterations.get(), counterExamples.getCount());
+        assertEquals(pGraph.getNodes().size(), partitions.get());
+        assertEquals(0, Metrics.gauge("synoptic_unsatisfied_invariants", "")
+                .get());
+    }
+
+    private static List<String> readLines(File file) throws IOException {
+        List<String> lines = new ArrayList<String>();
+        BufferedReader reader = new BufferedReader(new FileReader(file));
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lines.add(line);
+            }
+        } finally {
+            reader.close();
+        }
+        return lines;
+    }
+}
@@ -57,8 +57,11 @@ public class POLogInvariantMiningTests extends SynopticTest {
         Object[][] data = new Object[][] {
                 { new TransitiveClosureInvMiner(false) },
                 { new TransitiveClosureInvMiner(true) },
+                { new TransitiveClosureInvMiner(true, true) },
                 { new DAGWalkingPOInvMiner(true) },
-                { new DAGWalkingPOInvMiner(false) } };
+                { new DAGWalkingPOInvMiner(false) },
+                { new DAGWalkingPOInvMiner(true, 3) },
+                { new DAGWalkingPOInvMiner(false, 3) } };
         return Arrays.asList(data);
     }
 
@@ -500,6 +503,31 @@ public class POLogInvariantMiningTests extends SynopticTest {
         }
     }
 
+    /**
+     * Tests that walking the traces of the ticket reservation example with
+     * more than one thread mines the same invariants as walking them
+     * sequentially, including with more threads than traces.
+     * 
+     * @throws Exception
+     */
+    @Test
+    public void mineTicketReservationExampleInParallelTest() throws Exception {
+        TraceParser parser = newTraceParser();
+
+        ArrayList<EventNode> parsedEvents = parser.parseTraceString(
+                ticketReservationTrace, "ticket-reservation-example", -1);
+        DAGsTraceGraph inputGraph = parser
+                .generateDirectPORelation(parsedEvents);
+        TemporalInvariantSet seqInvs = new DAGWalkingPOInvMiner(mineNCWith)
+                .computeInvariants(inputGraph);
+
+        for (int numThreads : new int[] { 2, 3, 8 }) {
+            TemporalInvariantSet parInvs = new DAGWalkingPOInvMiner(
+                    mineNCWith, numThreads).computeInvariants(inputGraph);
+            assertTrue(seqInvs.sameInvariants(parInvs));
+        }
+    }
+
     /**
      * Tests a randomly generated trace.
      * 
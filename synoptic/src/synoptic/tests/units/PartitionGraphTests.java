@@ -4,14 +4,21 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.Random;
 import java.util.Set;
 
 import org.junit.Test;
 
 import synoptic.algorithms.graphops.IOperation;
+import synoptic.algorithms.graphops.PartitionMerge;
+import synoptic.algorithms.graphops.PartitionMultiSplit;
 import synoptic.algorithms.graphops.PartitionSplit;
 import synoptic.invariants.TemporalInvariantSet;
 import synoptic.invariants.miners.ChainWalkingTOInvMiner;
@@ -25,6 +32,7 @@ import synoptic.model.event.EventType;
 import synoptic.model.event.StringEventType;
 import synoptic.model.interfaces.IGraph;
 import synoptic.model.interfaces.INode;
+import synoptic.model.interfaces.ITransition;
 import synoptic.tests.SynopticTest;
 
 public class PartitionGraphTests extends SynopticTest {
@@ -89,6 +97,222 @@ public class PartitionGraphTests extends SynopticTest {
         assertTrue(pGraph.getNodes().size() == 3);
     }
 
+    /**
+     * Checks that the transitions, transition counts, and predecessors of all
+     * partitions in pGraph, which are maintained by the edge index of the
+     * graph, are the ones that the events of the partitions induce.
+     */
+    private static void assertEdgesMatchEvents(PartitionGraph pGraph) {
+        Set<Set<String>> allRelations = new HashSet<Set<String>>();
+        Map<Partition, Set<Partition>> preds = new HashMap<Partition, Set<Partition>>();
+        for (Partition p : pGraph.getNodes()) {
+            preds.put(p, new HashSet<Partition>());
+        }
+
+        for (Partition p : pGraph.getNodes()) {
+            // The number of events in p with a transition to each partition,
+            // by the relations of the transition.
+            Map<Partition, Map<Set<String>, Integer>> counts = new HashMap<Partition, Map<Set<String>, Integer>>();
+            for (EventNode e : p.getEventNodes()) {
+                Set<List<Object>> seen = new HashSet<List<Object>>();
+                for (ITransition<EventNode> tr : e.getAllTransitions()) {
+                    Partition target = tr.getTarget().getParent();
+                    allRelations.add(tr.getRelation());
+                    preds.get(target).add(p);
+                    if (!seen.add(Arrays.<Object> asList(target,
+                            tr.getRelation()))) {
+                        continue;
+                    }
+                    if (!counts.containsKey(target)) {
+                        counts.put(target, new HashMap<Set<String>, Integer>());
+                    }
+                    Integer count = counts.get(target).get(tr.getRelation());
+                    counts.get(target).put(tr.getRelation(),
+                            count == null ? 1 : count + 1);
+                }
+            }
+
+            List<? extends ITransition<Partition>> transitions = p
+                    .getWeightedTransitions();
+            assertEquals(counts.size(), transitions.size());
+            for (ITransition<Partition> tr : transitions) {
+                assertTrue(tr.getSource() == p);
+                Map<Set<String>, Integer> relCounts = counts
+                        .get(tr.getTarget());
+                assertTrue(relCounts.containsKey(tr.getRelation()));
+                if (!p.isInitial()) {
+                    assertEquals(relCounts.get(tr.getRelation()),
+                            tr.getCount());
+                }
+            }
+
+            for (Set<String> relations : allRelations) {
+                Set<Partition> targets = new HashSet<Partition>();
+                for (Map.Entry<Partition, Map<Set<String>, Integer>> e : counts
+                        .entrySet()) {
+                    if (e.getValue().containsKey(relations)) {
+                        targets.add(e.getKey());
+                    }
+                }
+                Set<Partition> indexedTargets = new HashSet<Partition>();
+                for (ITransition<Partition> tr : p
+                        .getTransitionsWithExactRelations(relations)) {
+                    indexedTargets.add(tr.getTarget());
+                }
+                assertEquals(targets, indexedTargets);
+            }
+        }
+
+        for (Partition p : pGraph.getNodes()) {
+            assertEquals(preds.get(p), pGraph.getPredecessors(p));
+        }
+    }
+
+    /**
+     * Applies a random sequence of splits, multi-splits, merges, and rewinds
+     * to a partition graph with multiple relations, and checks the edges of
+     * the graph after each operation.
+     */
+    @Test
+    public void edgeIndexMaintainedByOperationsTest() throws Exception {
+        String[] events = new String[] { "1 a", "2 r b", "3 c", "4 r cl a",
+                "5 b", "--", "1 a", "2 b", "3 r a", "4 c", "5 b", "--",
+                "1 r b", "2 a", "3 r cl b", "4 c", "5 a", "--", "1 c", "2 a",
+                "3 a", "4 r b", "5 c" };
+        TraceParser parser = new TraceParser();
+        parser.addRegex("^(?<TIME>)(?<TYPE>)$");
+        parser.addRegex("^(?<TIME>)(?<RELATION>)(?<TYPE>)$");
+        parser.addRegex("^(?<TIME>)(?<RELATION*>)cl(?<TYPE>)$");
+        parser.addPartitionsSeparator("^--$");
+        PartitionGraph pGraph = genInitialPartitionGraph(events, parser,
+                new ChainWalkingTOInvMiner(), false);
+        assertEdgesMatchEvents(pGraph);
+
+        Random rand = new Random(0);
+        LinkedList<IOperation> rewinds = new LinkedList<IOperation>();
+        for (int i = 0; i < 100; i++) {
+            List<Partition> partitions = new ArrayList<Partition>(
+                    pGraph.getNodes());
+            Collections.shuffle(partitions, rand);
+            int choice = rand.nextInt(4);
+
+            if (choice == 0 && !rewinds.isEmpty()) {
+                pGraph.apply(rewinds.pop());
+            } else if (choice == 1) {
+                // Merge two partitions of the same type.
+                for (Partition p1 : partitions) {
+                    for (Partition p2 : partitions) {
+                        if (p1 != p2 && p1.getEType().equals(p2.getEType())) {
+                            pGraph.apply(new PartitionMerge(p1, p2));
+                            rewinds.clear();
+                            break;
+                        }
+                    }
+                    if (pGraph.getNodes().size() < partitions.size()) {
+                        break;
+                    }
+                }
+            } else {
+                for (Partition p : partitions) {
+                    if (p.size() < 2) {
+                        continue;
+                    }
+                    PartitionSplit split = newRandomSplit(p, rand);
+                    if (choice == 2) {
+                        rewinds.push(pGraph.apply(split));
+                    } else {
+                        PartitionMultiSplit multiSplit = split
+                                .incorporate(newRandomSplit(p, rand));
+                        pGraph.apply(multiSplit);
+                        rewinds.clear();
+                    }
+                    break;
+                }
+            }
+            assertEdgesMatchEvents(pGraph);
+        }
+    }
+
+    /**
+     * Checks that a partition graph that is constructed with a given
+     * partitioning (as when it is restored from a checkpoint) has exactly the
+     * given partitions, and edges that match their events.
+     */
+    @Test
+    public void restorePartitioningTest() throws Exception {
+        String[] events = new String[] { "a", "b", "c", "--", "a", "c", "b",
+                "--", "b", "a", "c" };
+        PartitionGraph pGraph = genInitialPartitionGraph(events,
+                genDefParser(), new ChainWalkingTOInvMiner(), false);
+
+        // Split the partition of the first event of type a.
+        Partition aPartition = null;
+        for (Partition p : pGraph.getNodes()) {
+            if (p.getEType().equals(new StringEventType("a"))) {
+                aPartition = p;
+            }
+        }
+        PartitionSplit split = new PartitionSplit(aPartition);
+        split.addEventToSplit(aPartition.getEventNodes().iterator().next());
+        pGraph.apply(split);
+
+        List<Set<EventNode>> partitioning = new ArrayList<Set<EventNode>>();
+        for (Partition p : pGraph.getNodes()) {
+            partitioning.add(new HashSet<EventNode>(p.getEventNodes()));
+        }
+
+        PartitionGraph restored = new PartitionGraph(pGraph.getTraceGraph(),
+                partitioning, pGraph.getInvariants());
+        Set<Set<EventNode>> restoredPartitioning = new HashSet<Set<EventNode>>();
+        for (Partition p : restored.getNodes()) {
+            restoredPartitioning.add(new HashSet<EventNode>(p
+                    .getEventNodes()));
+            for (EventNode e : p.getEventNodes()) {
+                assertTrue(e.getParent() == p);
+            }
+        }
+        assertEquals(partitioning.size(), restored.getNodes().size());
+        assertEquals(new HashSet<Set<EventNode>>(partitioning),
+                restoredPartitioning);
+        assertEdgesMatchEvents(restored);
+    }
+
+    /**
+     * Checks that adding no events to a partition leaves the partition and the
+     * edges of the graph unchanged.
+     */
+    @Test
+    public void addNoEventNodesTest() throws Exception {
+        String[] events = new String[] { "a", "b", "--", "a", "c" };
+        PartitionGraph pGraph = genInitialPartitionGraph(events,
+                genDefParser(), new ChainWalkingTOInvMiner(), false);
+
+        for (Partition p : pGraph.getNodes()) {
+            int size = p.size();
+            p.addEventNodes(Collections.<EventNode> emptySet());
+            assertEquals(size, p.size());
+        }
+        assertEdgesMatchEvents(pGraph);
+    }
+
+    /**
+     * Returns a valid split of a random subset of the events of p.
+     */
+    private static PartitionSplit newRandomSplit(Partition p, Random rand) {
+        PartitionSplit split = new PartitionSplit(p);
+        List<EventNode> events = new ArrayList<EventNode>(p.getEventNodes());
+        // Never split out the last event, so that the split is valid.
+        for (int i = 0; i < events.size() - 1; i++) {
+            if (rand.nextBoolean() || (i == 0 && events.size() == 2)) {
+                split.addEventToSplit(events.get(i));
+            }
+        }
+        if (split.getSplitEvents().isEmpty()) {
+            split.addEventToSplit(events.get(0));
+        }
+        return split;
+    }
+
     // TODO: Test the multi-split operation.
 
     // TODO: Test merge operation as a primary operation (not as a rewind).
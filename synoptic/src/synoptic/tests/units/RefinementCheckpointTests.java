@@ -0,0 +1,199 @@
+package synoptic.tests.units;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Test;
+
+import synoptic.algorithms.Bisimulation;
+import synoptic.algorithms.RefinementCheckpoint;
+import synoptic.invariants.TemporalInvariantSet;
+import synoptic.invariants.miners.ChainWalkingTOInvMiner;
+import synoptic.invariants.miners.ConstrainedInvMiner;
+import synoptic.main.AbstractMain;
+import synoptic.main.parser.TraceParser;
+import synoptic.model.ChainsTraceGraph;
+import synoptic.model.EventNode;
+import synoptic.model.Partition;
+import synoptic.model.PartitionGraph;
+import synoptic.model.Transition;
+import synoptic.tests.SynopticTest;
+
+/**
+ * Tests writing refinement checkpoints and resuming from them.
+ */
+public class RefinementCheckpointTests extends SynopticTest {
+
+    private static final String[] log = new String[] { "a 1", "x 3", "y 4",
+            "z 8", "b 9", "--", "c 1", "x 2", "y 5", "z 6", "d 7", "--",
+            "a 2", "x 4", "z 5", "y 7", "x 8", "b 10", "--", "c 3", "y 4",
+            "x 6", "d 9", "--", "a 0", "z 2", "z 3", "b 5" };
+
+    private ChainsTraceGraph genTraceGraph() throws Exception {
+        TraceParser parser = genITimeParser();
+        ArrayList<EventNode> parsedEvents = parser.parseTraceString(
+                concatinateWithNewlines(log), getTestName().getMethodName(), -1);
+        return parser.generateDirectTORelation(parsedEvents);
+    }
+
+    private File checkpointFile() throws IOException {
+        File file = File.createTempFile(getTestName().getMethodName(),
+                ".ckpt");
+        file.deleteOnExit();
+        return file;
+    }
+
+    /**
+     * Returns the partitioning of pGraph, with every event identified by its
+     * trace and line, so that partitionings of different (restored) trace
+     * graphs can be compared.
+     */
+    private static Set<Set<String>> getPartitioning(PartitionGraph pGraph) {
+        Set<Set<String>> partitioning = new HashSet<Set<String>>();
+        for (Partition p : pGraph.getNodes()) {
+            Set<String> events = new HashSet<String>();
+            for (EventNode e : p.getEventNodes()) {
+                events.add(e.getEType() + "@" + e.getTraceID() + ":"
+                        + e.getLineNum());
+            }
+            partitioning.add(events);
+        }
+        return partitioning;
+    }
+
+    /**
+     * Returns the transitions of the trace graph of pGraph, with their time
+     * deltas.
+     */
+    private static Set<String> getTransitions(PartitionGraph pGraph) {
+        Set<String> transitions = new HashSet<String>();
+        for (EventNode e : pGraph.getTraceGraph().getNodes()) {
+            for (Transition<EventNode> t : e.getAllTransitions()) {
+                transitions.add(e.getEType() + "@" + e.getTraceID() + ":"
+                        + e.getLineNum() + " -" + t.getRelation() + "-> "
+                        + t.getTarget().getEType() + ":"
+                        + t.getTarget().getLineNum() + " " + t.getTimeDelta());
+            }
+        }
+        return transitions;
+    }
+
+    /**
+     * Checks that a checkpoint of a graph with constrained invariants restores
+     * the same events, transitions, invariants, and partitioning.
+     */
+    @Test
+    public void roundTripTest() throws Exception {
+        ChainsTraceGraph inputGraph = genTraceGraph();
+        TemporalInvariantSet invariants = new ConstrainedInvMiner()
+                .computeInvariants(new ChainWalkingTOInvMiner(), inputGraph,
+                        false);
+        assertTrue(invariants.numInvariants() > 0);
+
+        PartitionGraph pGraph = new PartitionGraph(inputGraph, true,
+                invariants);
+
+        File file = checkpointFile();
+        RefinementCheckpoint.write(file, pGraph,
+                RefinementCheckpoint.Stage.COARSENING);
+        RefinementCheckpoint checkpoint = RefinementCheckpoint.read(file);
+        PartitionGraph restored = checkpoint.getPartitionGraph();
+
+        assertEquals(RefinementCheckpoint.Stage.COARSENING,
+                checkpoint.getStage());
+        restored.checkSanity();
+        assertTrue(invariants.sameInvariants(restored.getInvariants()));
+        assertEquals(getTransitions(pGraph), getTransitions(restored));
+        assertEquals(getPartitioning(pGraph), getPartitioning(restored));
+        assertEquals(inputGraph.getNumTraces(), restored.getTraceGraph()
+                .getNumTraces());
+    }
+
+    /**
+     * Resumes refinement from a checkpoint of the initial graph, and checks
+     * that it produces the same partitioning as refining the initial graph.
+     */
+    @Test
+    public void resumeRefinementTest() throws Exception {
+        ChainsTraceGraph inputGraph = genTraceGraph();
+        TemporalInvariantSet invariants = new ChainWalkingTOInvMiner()
+                .computeInvariants(inputGraph, false, false);
+
+        AbstractMain main = AbstractMain.getInstance();
+        main.random = new Random(0);
+        PartitionGraph pGraph = new PartitionGraph(inputGraph, true,
+                invariants);
+        File file = checkpointFile();
+        RefinementCheckpoint.write(file, pGraph,
+                RefinementCheckpoint.Stage.REFINEMENT);
+        Bisimulation.splitUntilAllInvsSatisfied(pGraph);
+
+        RefinementCheckpoint checkpoint = RefinementCheckpoint.read(file);
+        assertEquals(RefinementCheckpoint.Stage.REFINEMENT,
+                checkpoint.getStage());
+        PartitionGraph resumed = checkpoint.getPartitionGraph();
+        main.random = new Random(0);
+        Bisimulation.splitUntilAllInvsSatisfied(resumed);
+
+        resumed.checkSanity();
+        assertNull(resumed.getInvariants().getAllCounterExamples(resumed));
+        assertEquals(getPartitioning(pGraph), getPartitioning(resumed));
+    }
+
+    /**
+     * Checks that refinement with a checkpoint file leaves a checkpoint of the
+     * refined graph, from which coarsening can be resumed.
+     */
+    @Test
+    public void refinementWritesCheckpointTest() throws Exception {
+        ChainsTraceGraph inputGraph = genTraceGraph();
+        TemporalInvariantSet invariants = new ChainWalkingTOInvMiner()
+                .computeInvariants(inputGraph, false, false);
+
+        File file = checkpointFile();
+        AbstractMain main = AbstractMain.getInstance();
+        main.options.checkpointFile = file.getPath();
+        main.options.checkpointInterval = 0;
+
+        PartitionGraph pGraph = new PartitionGraph(inputGraph, true,
+                invariants);
+        Bisimulation.splitUntilAllInvsSatisfied(pGraph);
+
+        RefinementCheckpoint checkpoint = RefinementCheckpoint.read(file);
+        assertEquals(RefinementCheckpoint.Stage.COARSENING,
+                checkpoint.getStage());
+        PartitionGraph resumed = checkpoint.getPartitionGraph();
+        assertEquals(getPartitioning(pGraph), getPartitioning(resumed));
+
+        Bisimulation.mergePartitions(pGraph);
+        Bisimulation.mergePartitions(resumed);
+        assertEquals(getPartitioning(pGraph), getPartitioning(resumed));
+    }
+
+    /**
+     * Checks that a file that is not a checkpoint is rejected.
+     */
+    @Test
+    public void invalidCheckpointTest() throws Exception {
+        File file = checkpointFile();
+        FileOutputStream out = new FileOutputStream(file);
+        out.write(new byte[] { 1, 2, 3, 4 });
+        out.close();
+        try {
+            RefinementCheckpoint.read(file);
+            fail("Expected an IOException");
+        } catch (IOException e) {
+            // Expected.
+        }
+    }
+}
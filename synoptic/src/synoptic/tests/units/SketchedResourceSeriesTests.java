@@ -0,0 +1,229 @@
+package synoptic.tests.units;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import synoptic.main.AbstractMain;
+import synoptic.model.EventNode;
+import synoptic.model.Transition;
+import synoptic.model.event.Event;
+import synoptic.tests.SynopticTest;
+import synoptic.util.resource.ITotalResource;
+import synoptic.util.resource.ResourceSeries;
+import synoptic.util.resource.SketchedResourceSeries;
+import synoptic.util.resource.WrongResourceTypeException;
+
+/**
+ * Tests for the quantile sketch of SketchedResourceSeries, against the exact
+ * statistics of ResourceSeries.
+ */
+public class SketchedResourceSeriesTests extends SynopticTest {
+
+    private static final double[] quantiles = { 0, 0.01, 0.1, 0.25, 0.5,
+            0.75, 0.9, 0.99, 1 };
+
+    /**
+     * Returns the values 0 to n-1 in a random order, so that the rank of each
+     * value is the value itself.
+     */
+    private static List<Integer> shuffledRange(int n, Random rand) {
+        List<Integer> values = new ArrayList<Integer>(n);
+        for (int i = 0; i < n; i++) {
+            values.add(i);
+        }
+        Collections.shuffle(values, rand);
+        return values;
+    }
+
+    /**
+     * Checks that every quantile of sketch, which summarizes a permutation of
+     * 0 to n-1, is within the documented rank error bound.
+     */
+    private static void assertQuantilesWithinBound(
+            SketchedResourceSeries<ITotalResource> sketch, int n, int capacity) {
+        double ratio = (double) n / capacity;
+        double bound = ratio * (Math.log(ratio) / Math.log(2) + 1);
+        for (double q : quantiles) {
+            long rank = (long) Math.floor(q * (n - 1));
+            int value = sketch.computeQuantile(q).value;
+            assertTrue("quantile " + q + " is " + value + ", expected rank "
+                    + rank, Math.abs(value - rank) <= bound);
+        }
+    }
+
+    @Test
+    public void emptySketchTest() {
+        SketchedResourceSeries<ITotalResource> sketch = new SketchedResourceSeries<ITotalResource>();
+        assertEquals(0, sketch.getCount());
+        assertNull(sketch.computeMedian());
+        assertNull(sketch.computeMean());
+        assertNull(sketch.computeMin());
+        assertNull(sketch.computeMax());
+        assertNull(sketch.computeMode());
+        assertNull(sketch.computeQuantile(0.5));
+    }
+
+    @Test(expected = WrongResourceTypeException.class)
+    public void wrongKeyTest() {
+        SketchedResourceSeries<ITotalResource> sketch = new SketchedResourceSeries<ITotalResource>(
+                "key");
+        sketch.addDelta(new ITotalResource(1, "other"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void oddCapacityTest() {
+        new SketchedResourceSeries<ITotalResource>("", 63);
+    }
+
+    @Test
+    public void exactQuantileTest() {
+        ResourceSeries<ITotalResource> series = new ResourceSeries<ITotalResource>();
+        for (int value : shuffledRange(101, new Random(1))) {
+            series.addDelta(new ITotalResource(value));
+        }
+        assertEquals(new ITotalResource(0), series.computeQuantile(0));
+        assertEquals(new ITotalResource(25), series.computeQuantile(0.25));
+        assertEquals(new ITotalResource(50), series.computeQuantile(0.5));
+        assertEquals(new ITotalResource(100), series.computeQuantile(1));
+    }
+
+    /**
+     * While fewer resources than the capacity were added, the sketch computes
+     * the same statistics as a list series.
+     */
+    @Test
+    public void sameAsListSeriesBelowCapacityTest() {
+        Random rand = new Random(2);
+        for (int n : new int[] { 1, 2, 7, 100, 1023 }) {
+            ResourceSeries<ITotalResource> series = new ResourceSeries<ITotalResource>();
+            SketchedResourceSeries<ITotalResource> sketch = new SketchedResourceSeries<ITotalResource>();
+            for (int i = 0; i < n; i++) {
+                ITotalResource r = new ITotalResource(rand.nextInt(50));
+                series.addDelta(r);
+                sketch.addDelta(r);
+            }
+            assertTrue(sketch.isExact());
+            assertEquals(n, sketch.getCount());
+            // The mode breaks ties by the order of the resources, which
+            // computing the median of the list series changes.
+            assertEquals(series.computeMode(), sketch.computeMode());
+            assertEquals(series.computeMedian(), sketch.computeMedian());
+            assertEquals(series.computeMean(), sketch.computeMean());
+            assertEquals(series.computeMin(), sketch.computeMin());
+            assertEquals(series.computeMax(), sketch.computeMax());
+            for (double q : quantiles) {
+                assertEquals(series.computeQuantile(q),
+                        sketch.computeQuantile(q));
+            }
+        }
+    }
+
+    /**
+     * The quantiles of a sketch that was compacted many times are within the
+     * error bound, while the count, mean, min, and max remain exact.
+     */
+    @Test
+    public void quantileErrorBoundTest() {
+        // Small enough for the sum of the resources to fit in an int.
+        int n = 60000;
+        int capacity = 64;
+        SketchedResourceSeries<ITotalResource> sketch = new SketchedResourceSeries<ITotalResource>(
+                "", capacity);
+        for (int value : shuffledRange(n, new Random(3))) {
+            sketch.addDelta(new ITotalResource(value));
+        }
+        assertFalse(sketch.isExact());
+        assertEquals(n, sketch.getCount());
+        assertEquals(new ITotalResource(0), sketch.computeMin());
+        assertEquals(new ITotalResource(n - 1), sketch.computeMax());
+        assertEquals(new ITotalResource((n - 1) / 2), sketch.computeMean());
+        assertQuantilesWithinBound(sketch, n, capacity);
+    }
+
+    /**
+     * getAllDeltas returns all of the added resources while the sketch is
+     * exact, and otherwise the retained resources in sorted order.
+     */
+    @Test
+    public void getAllDeltasTest() {
+        int capacity = 8;
+        SketchedResourceSeries<ITotalResource> sketch = new SketchedResourceSeries<ITotalResource>(
+                "", capacity);
+        List<ITotalResource> added = new ArrayList<ITotalResource>();
+        for (int value : shuffledRange(capacity - 1, new Random(5))) {
+            ITotalResource r = new ITotalResource(value);
+            added.add(r);
+            sketch.addDelta(r);
+        }
+        assertEquals(added, sketch.getAllDeltas());
+
+        int n = 1000;
+        for (int value : shuffledRange(n, new Random(6))) {
+            sketch.addDelta(new ITotalResource(value));
+        }
+        assertFalse(sketch.isExact());
+        List<ITotalResource> retained = sketch.getAllDeltas();
+        assertTrue(retained.size() < sketch.getCount());
+        List<ITotalResource> sorted = new ArrayList<ITotalResource>(retained);
+        Collections.sort(sorted);
+        assertEquals(sorted, retained);
+        for (ITotalResource r : retained) {
+            assertTrue(r.value >= 0 && r.value < n);
+        }
+    }
+
+    /**
+     * Merging two sketches summarizes all of the resources of both.
+     */
+    @Test
+    public void mergeWithTest() {
+        int n = 50000;
+        int capacity = 64;
+        SketchedResourceSeries<ITotalResource> sketch1 = new SketchedResourceSeries<ITotalResource>(
+                "", capacity);
+        SketchedResourceSeries<ITotalResource> sketch2 = new SketchedResourceSeries<ITotalResource>(
+                "", capacity);
+        List<Integer> values = shuffledRange(n, new Random(4));
+        for (int i = 0; i < n; i++) {
+            (i < n / 3 ? sketch1 : sketch2).addDelta(new ITotalResource(
+                    values.get(i)));
+        }
+        sketch1.mergeWith(sketch2);
+        assertEquals(n, sketch1.getCount());
+        assertEquals(new ITotalResource(0), sketch1.computeMin());
+        assertEquals(new ITotalResource(n - 1), sketch1.computeMax());
+        assertEquals(new ITotalResource((n - 1) / 2), sketch1.computeMean());
+        assertQuantilesWithinBound(sketch1, n, capacity);
+    }
+
+    /**
+     * Transitions keep their time deltas in a sketch when the
+     * useQuantileSketches option is set.
+     */
+    @Test
+    public void transitionUsesSketchTest() {
+        AbstractMain main = AbstractMain.getInstance();
+        boolean useQuantileSketches = main.options.useQuantileSketches;
+        try {
+            main.options.useQuantileSketches = true;
+            Transition<EventNode> tr = new Transition<EventNode>(
+                    new EventNode(new Event("a")), new EventNode(new Event(
+                            "b")), Event.defTimeRelationSet);
+            tr.addTimeDeltaToSeries(new ITotalResource(5));
+            assertTrue(tr.getDeltaSeries() instanceof SketchedResourceSeries);
+            assertEquals(new ITotalResource(5), tr.getDeltaSeries()
+                    .computeMedian());
+        } finally {
+            main.options.useQuantileSketches = useQuantileSketches;
+        }
+    }
+}
@@ -53,7 +53,10 @@ public class TOLogInvariantMiningTests extends SynopticTest {
         Object[][] data = new Object[][] {
                 { new TransitiveClosureInvMiner(false) },
                 { new TransitiveClosureInvMiner(true) },
+                { new TransitiveClosureInvMiner(true, true) },
                 { new ChainWalkingTOInvMiner() },
+                { new ChainWalkingTOInvMiner(false) },
+                { new ChainWalkingTOInvMiner(true, 4) },
                 { new DAGWalkingPOInvMiner() } };
         return Arrays.asList(data);
     }
@@ -0,0 +1,184 @@
+package synoptic.tests.units;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.Test;
+
+import synoptic.invariants.TemporalInvariantSet;
+import synoptic.invariants.miners.ChainWalkingTOInvMiner;
+import synoptic.invariants.miners.DAGWalkingPOInvMiner;
+import synoptic.main.AbstractMain;
+import synoptic.main.options.AbstractOptions;
+import synoptic.main.parser.TraceGraphCache;
+import synoptic.main.parser.TraceParser;
+import synoptic.model.ChainsTraceGraph;
+import synoptic.model.DAGsTraceGraph;
+import synoptic.model.EventNode;
+import synoptic.model.TraceGraph;
+import synoptic.model.Transition;
+import synoptic.tests.SynopticTest;
+
+/**
+ * Tests caching the trace graphs of parsed logs.
+ */
+public class TraceGraphCacheTests extends SynopticTest {
+
+    private File writeLog(String[] lines) throws IOException {
+        File file = File.createTempFile(getTestName().getMethodName(), ".log");
+        file.deleteOnExit();
+        FileWriter writer = new FileWriter(file);
+        try {
+            writer.write(concatinateWithNewlines(lines));
+        } finally {
+            writer.close();
+        }
+        return file;
+    }
+
+    private File cacheDir() throws IOException {
+        File dir = File.createTempFile(getTestName().getMethodName(), "");
+        dir.delete();
+        dir.mkdir();
+        dir.deleteOnExit();
+        return dir;
+    }
+
+    private TraceGraphCache newCache(File dir, File log) throws IOException {
+        TraceGraphCache cache = new TraceGraphCache(dir,
+                AbstractMain.getInstance().options,
+                Collections.singletonList(log));
+        cache.getFile().deleteOnExit();
+        return cache;
+    }
+
+    /**
+     * Returns the events and transitions of g, with every event identified by
+     * its type, trace, line, and time, so that graphs with different event
+     * nodes can be compared.
+     */
+    private static Set<String> getTransitions(TraceGraph<?> g) {
+        Set<String> transitions = new HashSet<String>();
+        for (EventNode e : g.getNodes()) {
+            transitions.add(toString(e));
+            for (Transition<EventNode> t : e.getAllTransitions()) {
+                transitions.add(toString(e) + " -" + t.getRelation() + "-> "
+                        + toString(t.getTarget()) + " " + t.getTimeDelta());
+            }
+        }
+        return transitions;
+    }
+
+    private static String toString(EventNode e) {
+        return e.getEType() + "@" + e.getTraceID() + ":" + e.getLineNum()
+                + ":" + e.getTime() + ":" + e.getEvent().getLine() + ":"
+                + e.getEvent().getFileName();
+    }
+
+    /**
+     * Caches the graph of a totally ordered log, and checks that the cached
+     * graph has the same events, transitions, traces, and invariants.
+     */
+    @Test
+    public void chainsTraceGraphTest() throws Exception {
+        File log = writeLog(new String[] { "a 1", "x 3", "y 4", "b 9", "--",
+                "c 1", "x 2", "y 5", "d 7", "--", "a 2", "y 4", "x 8", "b 10" });
+        TraceParser parser = genITimeParser();
+        ChainsTraceGraph g = parser.generateDirectTORelation(parser
+                .parseTraceFile(log, -1));
+
+        TraceGraphCache cache = newCache(cacheDir(), log);
+        assertNull(cache.read());
+        cache.write(g);
+        TraceGraph<?> cached = cache.read();
+
+        assertTrue(cached instanceof ChainsTraceGraph);
+        assertEquals(getTransitions(g), getTransitions(cached));
+        assertEquals(g.getNumTraces(), cached.getNumTraces());
+        assertEquals(g.getTraces().size(),
+                ((ChainsTraceGraph) cached).getTraces().size());
+
+        TemporalInvariantSet invs = new ChainWalkingTOInvMiner()
+                .computeInvariants(g, false, false);
+        TemporalInvariantSet cachedInvs = new ChainWalkingTOInvMiner()
+                .computeInvariants((ChainsTraceGraph) cached, false, false);
+        assertTrue(invs.sameInvariants(cachedInvs));
+    }
+
+    /**
+     * Caches the graph of a partially ordered log, and checks that the cached
+     * graph has the same events, transitions, traces, and invariants.
+     */
+    @Test
+    public void dagsTraceGraphTest() throws Exception {
+        File log = writeLog(new String[] { "1,0 0 a", "0,1 1 b", "2,1 0 c",
+                "--", "1,0 0 a", "1,1 1 b", "2,1 0 c" });
+        TraceParser parser = new TraceParser();
+        parser.addRegex("^(?<VTIME>)(?<PID>)(?<TYPE>)$");
+        parser.addPartitionsSeparator("^--$");
+        DAGsTraceGraph g = parser.generateDirectPORelation(parser
+                .parseTraceFile(log, -1));
+
+        TraceGraphCache cache = newCache(cacheDir(), log);
+        cache.write(g);
+        TraceGraph<?> cached = cache.read();
+
+        assertTrue(cached instanceof DAGsTraceGraph);
+        assertEquals(getTransitions(g), getTransitions(cached));
+        assertEquals(g.getNumTraces(), cached.getNumTraces());
+
+        TemporalInvariantSet invs = new DAGWalkingPOInvMiner(true)
+                .computeInvariants(g);
+        TemporalInvariantSet cachedInvs = new DAGWalkingPOInvMiner(true)
+                .computeInvariants((DAGsTraceGraph) cached);
+        assertTrue(invs.sameInvariants(cachedInvs));
+    }
+
+    /**
+     * Checks that the key depends on the contents of the logs and on the
+     * parser options.
+     */
+    @Test
+    public void keyTest() throws Exception {
+        AbstractOptions options = AbstractMain.getInstance().options;
+        File log = writeLog(new String[] { "a", "b" });
+        List<File> logs = Collections.singletonList(log);
+        String key = TraceGraphCache.computeKey(options, logs);
+        assertEquals(key, TraceGraphCache.computeKey(options, logs));
+
+        options.regExps = new ArrayList<String>();
+        options.regExps.add("^(?<TYPE>)$");
+        String regExpKey = TraceGraphCache.computeKey(options, logs);
+        assertFalse(key.equals(regExpKey));
+
+        FileWriter writer = new FileWriter(log, true);
+        writer.write("\nc");
+        writer.close();
+        assertFalse(regExpKey.equals(TraceGraphCache
+                .computeKey(options, logs)));
+    }
+
+    /**
+     * Checks that a corrupt cache file is treated as missing.
+     */
+    @Test
+    public void corruptCacheFileTest() throws Exception {
+        File log = writeLog(new String[] { "a", "b" });
+        TraceGraphCache cache = newCache(cacheDir(), log);
+        FileWriter writer = new FileWriter(cache.getFile());
+        writer.write("not a trace graph");
+        writer.close();
+        assertNull(cache.read());
+    }
+}
@@ -14,7 +14,9 @@ import java.util.Comparator;
 import java.util.Date;
 import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Random;
+import java.util.Set;
 
 import org.junit.Test;
 
@@ -22,10 +24,12 @@ import junit.framework.Assert;
 
 import synoptic.main.AbstractMain;
 import synoptic.main.options.AbstractOptions;
+import synoptic.main.parser.ITraceConsumer;
 import synoptic.main.parser.ParseException;
 import synoptic.main.parser.TraceParser;
 import synoptic.model.ChainsTraceGraph;
 import synoptic.model.EventNode;
+import synoptic.model.Relation;
 import synoptic.model.event.Event;
 import synoptic.model.event.EventType;
 import synoptic.model.event.StringEventType;
@@ -701,6 +705,260 @@ public class TraceParserTests extends SynopticTest {
                 }));
     }
 
+    /**
+     * A trace consumer that adds the streamed traces to a trace graph, and
+     * records the streamed traces.
+     */
+    private static class TraceGraphConsumer implements ITraceConsumer {
+        ChainsTraceGraph graph = new ChainsTraceGraph();
+        ArrayList<EventNode> events = new ArrayList<EventNode>();
+        List<List<EventNode>> traces = new ArrayList<List<EventNode>>();
+
+        @Override
+        public void addTrace(List<EventNode> trace,
+                Map<EventNode, Set<Relation>> eventRelations)
+                throws ParseException {
+            traces.add(new ArrayList<EventNode>(trace));
+            for (EventNode event : trace) {
+                assertTrue(eventRelations.containsKey(event));
+                graph.add(event);
+                events.add(event);
+            }
+            graph.addTrace(trace, eventRelations);
+        }
+    }
+
+    /**
+     * Check that parsing a log with partition separators in streaming mode
+     * emits one trace per partition, and builds the same graph as parsing the
+     * whole log.
+     * 
+     * @throws ParseException
+     */
+    @Test
+    public void parseStreamingWithSplitPartitionsTest() throws ParseException {
+        String traceStr = "1 a\n2 b\n3 c\n--\n1 c\n2 b\n3 a\n";
+        parser.addRegex("^(?<TIME>)(?<TYPE>)$");
+        parser.addPartitionsSeparator("^--$");
+        TraceGraphConsumer consumer = new TraceGraphConsumer();
+        assertEquals(6, parser.parseTraceStringStreaming(traceStr, "test", -1,
+                consumer));
+
+        assertEquals(2, consumer.traces.size());
+        assertEquals(new StringEventType("a"), consumer.traces.get(0).get(0)
+                .getEType());
+        assertEquals(new StringEventType("c"), consumer.traces.get(1).get(0)
+                .getEType());
+        assertEquals(2, consumer.graph.getNumTraces());
+
+        ChainsTraceGraph expectedGraph = genExpectedGraphForTotalOrder(consumer.events);
+        assertTrue(expectedGraph.equalsWith(consumer.graph,
+                new IBoolBinary<EventNode, EventNode>() {
+                    @Override
+                    public boolean eval(EventNode a, EventNode b) {
+                        return (a.getEvent().equals(b.getEvent()));
+                    }
+                }));
+    }
+
+    /**
+     * Check that parsing a log with contiguous mapped partitions in streaming
+     * mode emits one trace per partition.
+     * 
+     * @throws ParseException
+     */
+    @Test
+    public void parseStreamingWithMappedPartitionsTest() throws ParseException {
+        String traceStr = "1 a\n1 b\n1 c\n2 c\n2 b\n3 a\n";
+        parser.addRegex("^(?<PARTITION>)(?<TYPE>)$");
+        parser.setPartitionsMap("\\k<PARTITION>");
+        TraceGraphConsumer consumer = new TraceGraphConsumer();
+        parser.parseTraceStringStreaming(traceStr, "test", -1, consumer);
+
+        assertEquals(3, consumer.traces.size());
+        assertEquals(3, consumer.traces.get(0).size());
+        assertEquals(2, consumer.traces.get(1).size());
+        assertEquals(1, consumer.traces.get(2).size());
+        for (int i = 0; i < 3; i++) {
+            for (EventNode event : consumer.traces.get(i)) {
+                assertEquals(i, event.getTraceID());
+            }
+        }
+    }
+
+    /**
+     * Parse a log whose partitions are not contiguous in streaming mode --
+     * expect a ParseException.
+     * 
+     * @throws ParseException
+     */
+    @Test(expected = ParseException.class)
+    public void parseStreamingNonContiguousPartitionsExceptionTest()
+            throws ParseException {
+        String traceStr = "1 a\n2 b\n1 c\n";
+        parser.addRegex("^(?<PARTITION>)(?<TYPE>)$");
+        parser.setPartitionsMap("\\k<PARTITION>");
+        parser.parseTraceStringStreaming(traceStr, "test", -1,
+                new TraceGraphConsumer());
+    }
+
+    /**
+     * Generates a log of numLines lines, with a partition separator after
+     * every 7 events, and some lines that must be matched by the second
+     * regular expression of the log.
+     */
+    private static String genParallelParsingLog(int numLines) {
+        StringBuilder log = new StringBuilder();
+        for (int i = 0; i < numLines; i++) {
+            if (i % 8 == 7) {
+                log.append("--\n");
+            } else if (i % 5 == 0) {
+                log.append(i + "x " + (char) ('a' + i % 3) + "\n");
+            } else {
+                log.append(i + " " + (char) ('a' + i % 4) + "\n");
+            }
+        }
+        return log.toString();
+    }
+
+    private static void addParallelParsingRegexes(TraceParser p)
+            throws ParseException {
+        p.addRegex("^(?<TIME>\\d+) (?<TYPE>)$");
+        p.addRegex("^(?<TIME>\\d+)x (?<TYPE>)$");
+        p.addPartitionsSeparator("^--$");
+    }
+
+    /**
+     * Check that matching the lines of a log with multiple threads yields the
+     * same events, times, and traces, in the same order, as matching the lines
+     * sequentially.
+     * 
+     * @throws ParseException
+     */
+    @Test
+    public void parseParallelSameAsSequentialTest() throws ParseException {
+        // More lines than are matched in a single batch.
+        String traceStr = genParallelParsingLog(50000);
+
+        addParallelParsingRegexes(parser);
+        ArrayList<EventNode> expected = parser.parseTraceString(traceStr,
+                "test", -1);
+
+        AbstractMain.getInstance().options.parsingThreads = 4;
+        try {
+            TraceParser parallelParser = new TraceParser();
+            addParallelParsingRegexes(parallelParser);
+            ArrayList<EventNode> parsed = parallelParser.parseTraceString(
+                    traceStr, "test", -1);
+
+            assertEquals(expected.size(), parsed.size());
+            for (int i = 0; i < expected.size(); i++) {
+                EventNode e = expected.get(i);
+                EventNode p = parsed.get(i);
+                assertEquals(e.getEType(), p.getEType());
+                assertEquals(e.getTime(), p.getTime());
+                assertEquals(e.getLineNum(), p.getLineNum());
+                assertEquals(
+                        e.getTraceID() - expected.get(0).getTraceID(),
+                        p.getTraceID() - parsed.get(0).getTraceID());
+            }
+
+            // Parsing only a prefix of the log stops at the same line.
+            TraceParser prefixParser = new TraceParser();
+            addParallelParsingRegexes(prefixParser);
+            ArrayList<EventNode> prefix = prefixParser.parseTraceString(
+                    traceStr, "test", 10000);
+            assertEquals(10000, prefix.size());
+            assertEquals(expected.get(9999).getLineNum(), prefix.get(9999)
+                    .getLineNum());
+        } finally {
+            AbstractMain.getInstance().options.parsingThreads = 1;
+        }
+    }
+
+    /**
+     * Check that matching the lines of a log with multiple threads in
+     * streaming mode emits the same traces as parsing the log sequentially.
+     * 
+     * @throws ParseException
+     */
+    @Test
+    public void parseParallelStreamingTest() throws ParseException {
+        String traceStr = genParallelParsingLog(50000);
+
+        addParallelParsingRegexes(parser);
+        TraceGraphConsumer expected = new TraceGraphConsumer();
+        parser.parseTraceStringStreaming(traceStr, "test", -1, expected);
+
+        AbstractMain.getInstance().options.parsingThreads = 4;
+        try {
+            TraceParser parallelParser = new TraceParser();
+            addParallelParsingRegexes(parallelParser);
+            TraceGraphConsumer consumer = new TraceGraphConsumer();
+            parallelParser.parseTraceStringStreaming(traceStr, "test", -1,
+                    consumer);
+
+            assertEquals(expected.traces.size(), consumer.traces.size());
+            for (int i = 0; i < expected.traces.size(); i++) {
+                List<EventNode> e = expected.traces.get(i);
+                List<EventNode> p = consumer.traces.get(i);
+                assertEquals(e.size(), p.size());
+                for (int j = 0; j < e.size(); j++) {
+                    assertEquals(e.get(j).getEvent(), p.get(j).getEvent());
+                    assertEquals(e.get(j).getLineNum(), p.get(j).getLineNum());
+                }
+            }
+        } finally {
+            AbstractMain.getInstance().options.parsingThreads = 1;
+        }
+    }
+
+    /**
+     * Check that lines are matched by the first regular expression that
+     * matches them, when the regular expressions start with overlapping
+     * literal prefixes, quantified or escaped characters, or no literal
+     * prefix.
+     * 
+     * @throws ParseException
+     */
+    @Test
+    public void parseFirstMatchingRegexWithPrefixesTest() throws ParseException {
+        String traceStr = "ac x\nabc y\nsend.z\nsendz\nabd\n.t\ntail\n";
+        parser.addRegex("^ab?c (?<TYPE>)$");
+        parser.addRegex("^send\\.(?<TYPE>)$");
+        parser.addRegex("^s(?<TYPE>)$");
+        parser.addRegex("^\\.(?<TYPE>)$");
+        parser.addRegex("^(?<TYPE>.+)$");
+        ArrayList<EventNode> events = parser.parseTraceString(traceStr,
+                "test", -1);
+
+        String[] expected = { "x", "y", "z", "endz", "abd", "t", "tail" };
+        assertEquals(expected.length, events.size());
+        for (int i = 0; i < expected.length; i++) {
+            assertEquals(new StringEventType(expected[i]), events.get(i)
+                    .getEType());
+        }
+    }
+
+    /**
+     * Check that a regular expression with an alternation of different
+     * literal prefixes matches lines starting with either prefix.
+     * 
+     * @throws ParseException
+     */
+    @Test
+    public void parseRegexWithAlternationTest() throws ParseException {
+        String traceStr = "get a\nput b\n";
+        parser.addRegex("get \\w(?<TYPE=>access)|put \\w");
+        parser.addRegex("^(?<TYPE>.+)$");
+        ArrayList<EventNode> events = parser.parseTraceString(traceStr,
+                "test", -1);
+
+        assertEquals(2, events.size());
+        assertEquals(new StringEventType("access"), events.get(0).getEType());
+        assertEquals(new StringEventType("access"), events.get(1).getEType());
+    }
+
     // ////////////////////////////
     // Multiple relations parsing
 
@@ -1448,6 +1706,30 @@ public class TraceParserTests extends SynopticTest {
                 new State[] { null, null }, new State[] { state, null });
     }
 
+    /**
+     * Parse a string containing 2 traces in streaming mode. A state should not
+     * be merged to an event of different trace.
+     * 
+     * @throws ParseException
+     */
+    @Test
+    public void parseStreamingStateWithSplitPartitionsTest()
+            throws ParseException {
+        String traceStr = "a\nSTATE:connected=true\n--\nb\n";
+        parser.addRegex("^(?<TYPE>[abc])$");
+        parser.addRegex("^STATE:(?<STATE>)$");
+        parser.addPartitionsSeparator("^--$");
+        // State processing is enabled when the first state is parsed, which
+        // happens before the first trace is complete.
+        TraceGraphConsumer consumer = new TraceGraphConsumer();
+        parser.parseTraceStringStreaming(traceStr, "test", -1, consumer);
+        EventType a = new StringEventType("a");
+        EventType b = new StringEventType("b");
+        State state = new State("connected=true");
+        checkEventTypesAndStates(consumer.events, new EventType[] { a, b },
+                new State[] { null, null }, new State[] { state, null });
+    }
+
     /**
      * Parse 2 consecutive states of same the trace -- expect parse exception.
      * 
@@ -97,6 +97,25 @@ public class ResourceSeries<ResourceType extends AbstractResource> implements
                 .incrBy(resources.get(middle)).divBy(2);
     }
 
+    /**
+     * @param q
+     *            the quantile to compute, between 0 and 1
+     * @return the q-quantile delta resource for transition -- the resource at
+     *         position floor(q * (n - 1)) of the n sorted resources -- or null
+     *         if transition has zero delta resources.
+     */
+    public ResourceType computeQuantile(double q) {
+        if (q < 0 || q > 1) {
+            throw new IllegalArgumentException("Quantile must be in [0, 1]");
+        }
+        if (resources.isEmpty()) {
+            return null;
+        }
+
+        sort();
+        return resources.get((int) Math.floor(q * (resources.size() - 1)));
+    }
+
     /**
      * @return mean delta resource for transition, null if transition has zero
      *         delta resources.
@@ -229,6 +248,11 @@ public class ResourceSeries<ResourceType extends AbstractResource> implements
         resources.addAll(deltas);
     }
 
+    /**
+     * @return the resources in the series. A {@link SketchedResourceSeries}
+     *         only returns the resources that its sketch retains, which are
+     *         all of the added resources only while it is exact.
+     */
     public List<ResourceType> getAllDeltas() {
         return resources;
     }
@@ -0,0 +1,381 @@
+package synoptic.util.resource;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A resource series that does not keep every added resource. The count, sum,
+ * minimum, and maximum of the resources are exact, while the median, quantiles,
+ * and mode are computed from a mergeable quantile sketch that retains a
+ * bounded number of the resources. <br />
+ * <br />
+ * The sketch is a hierarchy of compactors: level h holds resources that each
+ * stand for 2^h added resources. Resources are added to level 0, and whenever
+ * a level holds capacity resources, it is sorted and every other resource is
+ * promoted to the next level (alternating between the odd and even positions
+ * on every compaction of the level), halving its size. Two sketches are
+ * merged by concatenating their levels and compacting them in the same way.
+ * The sketch retains at most capacity * (log2(n / capacity) + 2) resources
+ * after n additions. <br />
+ * <br />
+ * Error bound: a compaction at level h changes the number of retained
+ * resources (weighted by 2^h) below any value by at most 2^h, and level h is
+ * compacted at most n / (capacity * 2^h) times. For any q, the rank of the
+ * resource returned by {@code computeQuantile(q)} therefore differs from q * n
+ * by at most (n / capacity) * (log2(n / capacity) + 1). With the default
+ * capacity of 1024, this is about 1% of n for a million resources. As long as
+ * fewer than capacity resources were added, no compaction happened, and all
+ * results are the same as those of {@link ResourceSeries} (except for
+ * {@code computeMed}, which is the same as {@code computeMedian} here).
+ */
+public class SketchedResourceSeries<ResourceType extends AbstractResource>
+        extends ResourceSeries<ResourceType> {
+    /** The default number of resources that a level of the sketch holds. */
+    public static final int defaultCapacity = 1024;
+
+    private final int capacity;
+
+    /** The retained resources at each level, level h weighing 2^h each. */
+    private final List<List<ResourceType>> levels = new ArrayList<List<ResourceType>>();
+
+    /** Whether the next compaction of each level keeps the odd positions. */
+    private final List<Boolean> keepOdd = new ArrayList<Boolean>();
+
+    private long count = 0;
+    private ResourceType sum = null;
+    private ResourceType min = null;
+    private ResourceType max = null;
+
+    public SketchedResourceSeries() {
+        this("", defaultCapacity);
+    }
+
+    public SketchedResourceSeries(String key) {
+        this(key, defaultCapacity);
+    }
+
+    /**
+     * @param key
+     *            the key of the resources in the series
+     * @param capacity
+     *            the number of resources that a level of the sketch holds
+     *            before it is compacted, an even number of at least 2
+     */
+    public SketchedResourceSeries(String key, int capacity) {
+        super(key);
+        if (capacity < 2 || capacity % 2 != 0) {
+            throw new IllegalArgumentException(
+                    "Sketch capacity must be an even number of at least 2");
+        }
+        this.capacity = capacity;
+    }
+
+    /**
+     * @return the number of resources added to the series
+     */
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * @return whether or not the series still retains all added resources, in
+     *         which case all of its statistics are exact
+     */
+    public boolean isExact() {
+        return levels.size() <= 1;
+    }
+
+    @Override
+    public void addDelta(ResourceType r) {
+        assert r != null;
+        if (!r.key.equals(getKey())) {
+            throw new WrongResourceTypeException(getKey(), r);
+        }
+        updateSummary(r);
+        getLevel(0).add(r);
+        compactFrom(0);
+    }
+
+    @Override
+    public void addAllDeltas(Collection<ResourceType> deltas) {
+        assert deltas != null;
+        for (ResourceType delta : deltas) {
+            addDelta(delta);
+        }
+    }
+
+    /**
+     * Adds all of the resources summarized by other, which must have the same
+     * key and capacity, to this series.
+     */
+    @SuppressWarnings("unchecked")
+    public void mergeWith(SketchedResourceSeries<ResourceType> other) {
+        if (!other.getKey().equals(getKey()) || other.capacity != capacity) {
+            throw new IllegalArgumentException(
+                    "Merged sketches must have the same key and capacity");
+        }
+        if (other.count == 0) {
+            return;
+        }
+        if (count == 0) {
+            sum = other.sum;
+            min = other.min;
+            max = other.max;
+        } else {
+            sum = (ResourceType) sum.incrBy(other.sum);
+            if (other.min.lessThan(min)) {
+                min = other.min;
+            }
+            if (max.lessThan(other.max)) {
+                max = other.max;
+            }
+        }
+        count += other.count;
+
+        for (int h = 0; h < other.levels.size(); h++) {
+            getLevel(h).addAll(other.levels.get(h));
+        }
+        for (int h = 0; h < levels.size(); h++) {
+            compactFrom(h);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void updateSummary(ResourceType r) {
+        if (count == 0) {
+            sum = r;
+            min = r;
+            max = r;
+        } else {
+            sum = (ResourceType) sum.incrBy(r);
+            if (r.lessThan(min)) {
+                min = r;
+            }
+            if (max.lessThan(r)) {
+                max = r;
+            }
+        }
+        count++;
+    }
+
+    private List<ResourceType> getLevel(int h) {
+        while (levels.size() <= h) {
+            levels.add(new ArrayList<ResourceType>(capacity));
+            keepOdd.add(false);
+        }
+        return levels.get(h);
+    }
+
+    /**
+     * Compacts level h, and the levels above it, while they hold at least
+     * capacity resources.
+     */
+    private void compactFrom(int h) {
+        while (h < levels.size() && levels.get(h).size() >= capacity) {
+            List<ResourceType> level = levels.get(h);
+            Collections.sort(level);
+
+            // With an odd number of resources, the largest one stays behind.
+            int n = level.size() - level.size() % 2;
+            List<ResourceType> next = getLevel(h + 1);
+            for (int i = keepOdd.get(h) ? 1 : 0; i < n; i += 2) {
+                next.add(level.get(i));
+            }
+            keepOdd.set(h, !keepOdd.get(h));
+
+            List<ResourceType> rest = new ArrayList<ResourceType>(capacity);
+            rest.addAll(level.subList(n, level.size()));
+            levels.set(h, rest);
+            h++;
+        }
+    }
+
+    /**
+     * Returns the retained resources in sorted order, and adds the number of
+     * added resources that each of them stands for to weights.
+     */
+    private List<ResourceType> getSortedRetained(List<Long> weights) {
+        List<ResourceType> sorted = new ArrayList<ResourceType>();
+        for (List<ResourceType> level : levels) {
+            sorted.addAll(level);
+        }
+        Collections.sort(sorted);
+
+        // Resources with the same value stand for the same added resources, so
+        // only the total weight of each value matters.
+        Map<ResourceType, Long> valueWeights = new HashMap<ResourceType, Long>();
+        for (int h = 0; h < levels.size(); h++) {
+            for (ResourceType r : levels.get(h)) {
+                Long w = valueWeights.get(r);
+                valueWeights.put(r, (w == null ? 0 : w) + (1L << h));
+            }
+        }
+        List<ResourceType> ret = new ArrayList<ResourceType>(sorted.size());
+        for (ResourceType r : sorted) {
+            if (!ret.isEmpty() && ret.get(ret.size() - 1).equals(r)) {
+                continue;
+            }
+            ret.add(r);
+            weights.add(valueWeights.get(r));
+        }
+        return ret;
+    }
+
+    /**
+     * @return the q-quantile (0 <= q <= 1) of the added resources -- the
+     *         resource at position floor(q * (n - 1)) of the sorted resources,
+     *         within the error bound of the sketch -- or null if the series is
+     *         empty.
+     */
+    @Override
+    public ResourceType computeQuantile(double q) {
+        if (q < 0 || q > 1) {
+            throw new IllegalArgumentException("Quantile must be in [0, 1]");
+        }
+        if (count == 0) {
+            return null;
+        }
+        List<Long> weights = new ArrayList<Long>();
+        List<ResourceType> sorted = getSortedRetained(weights);
+        long rank = (long) Math.floor(q * (count - 1));
+        long seen = 0;
+        for (int i = 0; i < sorted.size(); i++) {
+            seen += weights.get(i);
+            if (seen > rank) {
+                return sorted.get(i);
+            }
+        }
+        return sorted.get(sorted.size() - 1);
+    }
+
+    /**
+     * @return median delta resource for transition, null if transition has zero
+     *         delta resources. The median of an even number of resources is the
+     *         mean of the two middle ones while the series is exact, and the
+     *         lower of the two otherwise.
+     */
+    @SuppressWarnings("unchecked")
+    @Override
+    public ResourceType computeMedian() {
+        if (count == 0) {
+            return null;
+        }
+        if (!isExact() || count % 2 == 1) {
+            return computeQuantile(0.5);
+        }
+        List<ResourceType> sorted = new ArrayList<ResourceType>(levels.get(0));
+        Collections.sort(sorted);
+        int middle = sorted.size() / 2;
+        return (ResourceType) sorted.get(middle - 1)
+                .incrBy(sorted.get(middle)).divBy(2);
+    }
+
+    @Override
+    public ResourceType computeMed() {
+        return computeMedian();
+    }
+
+    /**
+     * @return exact mean delta resource for transition, null if transition has
+     *         zero delta resources.
+     */
+    @SuppressWarnings("unchecked")
+    @Override
+    public ResourceType computeMean() {
+        if (count == 0) {
+            return null;
+        }
+        return (ResourceType) sum.divBy((int) count);
+    }
+
+    @Override
+    public ResourceType computeMin() {
+        return min;
+    }
+
+    @Override
+    public ResourceType computeMax() {
+        return max;
+    }
+
+    /**
+     * @return mode delta resource for transition, null if transition has zero
+     *         delta resources. Once the series is no longer exact, this is the
+     *         retained resource that stands for the most added resources.
+     */
+    @Override
+    public ResourceType computeMode() {
+        if (count == 0) {
+            return null;
+        }
+        Map<ResourceType, Long> counts = new HashMap<ResourceType, Long>();
+        ResourceType mostCommon = null;
+        long maxCount = 0;
+        // While the series is exact, level 0 holds the resources in the order
+        // in which they were added, which decides between equally common
+        // resources as in ResourceSeries.
+        for (int h = 0; h < levels.size(); h++) {
+            for (ResourceType r : levels.get(h)) {
+                Long c = counts.get(r);
+                c = (c == null ? 0 : c) + (1L << h);
+                if (c > maxCount) {
+                    mostCommon = r;
+                    maxCount = c;
+                }
+                counts.put(r, c);
+            }
+        }
+        return mostCommon;
+    }
+
+    /**
+     * @return a copy of the resources retained by the sketch. While the series
+     *         is exact, these are all of the added resources, in the order in
+     *         which they were added. Otherwise, they are the compacted samples
+     *         of all levels in sorted order, each of which stands for 2^h added
+     *         resources at level h, so the list is shorter than getCount() and
+     *         its statistics are only approximate.
+     */
+    @Override
+    public List<ResourceType> getAllDeltas() {
+        List<ResourceType> retained = new ArrayList<ResourceType>();
+        for (List<ResourceType> level : levels) {
+            retained.addAll(level);
+        }
+        if (!isExact()) {
+            Collections.sort(retained);
+        }
+        return retained;
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public int compareTo(ResourceSeries<ResourceType> o) {
+        if (!(o instanceof SketchedResourceSeries)) {
+            throw new IllegalArgumentException(
+                    "Cannot compare a sketched series with a list series");
+        }
+        SketchedResourceSeries<ResourceType> other = (SketchedResourceSeries<ResourceType>) o;
+        int cmp = Long.valueOf(count).compareTo(other.count);
+        if (cmp != 0) {
+            return cmp;
+        }
+
+        List<Long> weights = new ArrayList<Long>();
+        List<Long> otherWeights = new ArrayList<Long>();
+        List<ResourceType> sorted = getSortedRetained(weights);
+        List<ResourceType> otherSorted = other.getSortedRetained(otherWeights);
+        cmp = Integer.valueOf(sorted.size()).compareTo(otherSorted.size());
+        for (int i = 0; cmp == 0 && i < sorted.size(); i++) {
+            cmp = sorted.get(i).compareTo(otherSorted.get(i));
+            if (cmp == 0) {
+                cmp = weights.get(i).compareTo(otherWeights.get(i));
+            }
+        }
+        return cmp;
+    }
+}
@@ -1,6 +1,7 @@
 package synoptic.util.resource;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.LinkedList;
 import java.util.List;
 
@@ -179,6 +180,13 @@ public class VectorTime extends AbstractResource {
         return sawOne;
     }
 
+    /**
+     * @return The clocks of the vector, which must not be modified
+     */
+    public List<Integer> getVector() {
+        return Collections.unmodifiableList(vector);
+    }
+
     /**
      * @return Whether or not the vector is of length 1
      */
@@ -11,6 +11,7 @@ import synopticgwt.shared.GWTEdge;
 import synopticgwt.shared.GWTGraph;
 import synopticgwt.shared.GWTGraphDelta;
 import synopticgwt.shared.GWTInvariantSet;
+import synopticgwt.shared.GWTJobStatus;
 import synopticgwt.shared.GWTPair;
 import synopticgwt.shared.GWTSynOpts;
 import synopticgwt.shared.LogLine;
@@ -75,6 +76,28 @@ public interface ISynopticService extends RemoteService {
      */
     GWTGraph getFinalModel() throws Exception;
 
+    /**
+     * Submits a job that refines or coarsens the cached model in the
+     * background, and returns its status without waiting for it to finish.
+     * 
+     * @return the status of the job, which carries its result if the job
+     *         already finished
+     * @throws Exception
+     *             if the server is busy, or if there is no cached model
+     */
+    GWTJobStatus submitJob(GWTJobStatus.Kind kind) throws Exception;
+
+    /**
+     * Returns the status of a job that was submitted with submitJob(). Once
+     * the job is done, the status carries its result and the job is
+     * forgotten.
+     * 
+     * @return
+     * @throws Exception
+     *             the exception thrown by the job, if it failed
+     */
+    GWTJobStatus getJobStatus(int jobID) throws Exception;
+
     /**
      * Find the requested partition and returns a list of log lines, each in the
      * form [line #, line, filename]
@@ -10,6 +10,7 @@ import synopticgwt.shared.GWTEdge;
 import synopticgwt.shared.GWTGraph;
 import synopticgwt.shared.GWTGraphDelta;
 import synopticgwt.shared.GWTInvariantSet;
+import synopticgwt.shared.GWTJobStatus;
 import synopticgwt.shared.GWTPair;
 import synopticgwt.shared.GWTSynOpts;
 import synopticgwt.shared.LogLine;
@@ -39,6 +40,12 @@ public interface ISynopticServiceAsync {
 
     void getFinalModel(AsyncCallback<GWTGraph> callback) throws Exception;
 
+    void submitJob(GWTJobStatus.Kind kind, AsyncCallback<GWTJobStatus> callback)
+            throws Exception;
+
+    void getJobStatus(int jobID, AsyncCallback<GWTJobStatus> callback)
+            throws Exception;
+
     void handleLogRequest(int nodeID, AsyncCallback<List<LogLine>> callback)
             throws Exception;
 
@@ -26,10 +26,12 @@ import synopticgwt.client.Tab;
 import synopticgwt.client.model.JSGraph.EdgeLabelType;
 import synopticgwt.client.util.ErrorReportingAsyncCallback;
 import synopticgwt.client.util.FlowLayoutPanel;
+import synopticgwt.client.util.JobPoller;
 import synopticgwt.client.util.ProgressWheel;
 import synopticgwt.client.util.TooltipListener;
 import synopticgwt.shared.GWTGraph;
 import synopticgwt.shared.GWTGraphDelta;
+import synopticgwt.shared.GWTJobStatus;
 import synopticgwt.shared.LogLine;
 
 /**
@@ -496,33 +498,29 @@ public class ModelTab extends Tab<DockLayoutPanel> {
     }
 
     /**
-     * Generates a call to Synoptic service to refine the model by a single
-     * step.
+     * Submits a job to Synoptic service to refine the model by a single step,
+     * and polls the job until it is done.
      */
     public void refineButtonClick(ClickEvent event) {
         modelRefineButton.setEnabled(false);
 
         // ////////////////////// Call to remote service.
-        try {
-            synopticService
-                    .refineOneStep(new ErrorReportingAsyncCallback<GWTGraphDelta>(
-                            pWheel, "refineOneStep call") {
-                        @SuppressWarnings("synthetic-access")
-                        @Override
-                        public void onFailure(Throwable caught) {
-                            super.onFailure(caught);
-                            modelRefineButton.setEnabled(true);
-                        }
-
-                        @Override
-                        public void onSuccess(GWTGraphDelta graph) {
-                            super.onSuccess(graph);
-                            refineOneStepSuccess(graph);
-                        }
-                    });
-        } catch (Exception ex) {
-            // Exceptions are handled by callback.
-        }
+        new JobPoller(synopticService,
+                new ErrorReportingAsyncCallback<GWTJobStatus>(pWheel,
+                        "refineOneStep call") {
+                    @SuppressWarnings("synthetic-access")
+                    @Override
+                    public void onFailure(Throwable caught) {
+                        super.onFailure(caught);
+                        modelRefineButton.setEnabled(true);
+                    }
+
+                    @Override
+                    public void onSuccess(GWTJobStatus status) {
+                        super.onSuccess(status);
+                        refineOneStepSuccess(status.getGraphDelta());
+                    }
+                }).submit(GWTJobStatus.Kind.REFINE_ONE_STEP);
         // //////////////////////
     }
 
@@ -554,7 +552,8 @@ public class ModelTab extends Tab<DockLayoutPanel> {
     }
 
     /**
-     * Generates a call to Synoptic service to coarsen the model.
+     * Submits a job to Synoptic service to coarsen the model, and polls the
+     * job until it is done.
      * 
      * <pre>
      * TODO: What we really need is a coarsenOneStep counter-part to refineOneStep.
@@ -563,44 +562,39 @@ public class ModelTab extends Tab<DockLayoutPanel> {
     public void coarsenModelButtonClick(ClickEvent event) {
         // ////////////////////// Call to remote service.
         modelCoarsenButton.setEnabled(false);
-        try {
-            synopticService
-                    .coarsenCompletely(new ErrorReportingAsyncCallback<GWTGraph>(
-                            pWheel, "coarsenOneStep call") {
-                        @SuppressWarnings("synthetic-access")
-                        @Override
-                        public void onSuccess(GWTGraph graph) {
-                            super.onSuccess(graph);
-                            showGraph(graph);
-                            disableManualControlButtons();
-                        }
-                    });
-        } catch (Exception ex) {
-            // Exceptions are handled by callback.
-        }
+        new JobPoller(synopticService,
+                new ErrorReportingAsyncCallback<GWTJobStatus>(pWheel,
+                        "coarsenOneStep call") {
+                    @SuppressWarnings("synthetic-access")
+                    @Override
+                    public void onSuccess(GWTJobStatus status) {
+                        super.onSuccess(status);
+                        showGraph(status.getGraph());
+                        disableManualControlButtons();
+                    }
+                }).submit(GWTJobStatus.Kind.COARSEN_COMPLETELY);
         // //////////////////////
     }
 
-    /** Generates a call to Synoptic service to retrieve the final model. */
+    /**
+     * Submits a job to Synoptic service to retrieve the final model, and polls
+     * the job until it is done.
+     */
     public void getFinalModelButtonClick(ClickEvent event) {
         disableManualControlButtons();
 
         // ////////////////////// Call to remote service.
-        try {
-            synopticService
-                    .getFinalModel(new ErrorReportingAsyncCallback<GWTGraph>(
-                            pWheel, "getFinalModel call") {
-
-                        @Override
-                        public void onSuccess(GWTGraph graph) {
-                            super.onSuccess(graph);
-                            showGraph(graph);
-                            disableManualControlButtons();
-                        }
-                    });
-        } catch (Exception ex) {
-            // Exceptions are handled by callback.
-        }
+        new JobPoller(synopticService,
+                new ErrorReportingAsyncCallback<GWTJobStatus>(pWheel,
+                        "getFinalModel call") {
+
+                    @Override
+                    public void onSuccess(GWTJobStatus status) {
+                        super.onSuccess(status);
+                        showGraph(status.getGraph());
+                        disableManualControlButtons();
+                    }
+                }).submit(GWTJobStatus.Kind.FINAL_MODEL);
         // //////////////////////
     }
 
@@ -0,0 +1,82 @@
+package synopticgwt.client.util;
+
+import com.google.gwt.user.client.Timer;
+import com.google.gwt.user.client.rpc.AsyncCallback;
+
+import synopticgwt.client.ISynopticServiceAsync;
+import synopticgwt.shared.GWTJobStatus;
+
+/**
+ * Submits a refinement or coarsening job to the Synoptic service, and polls the
+ * status of the job until it is done, at which point the final status (which
+ * carries the result of the job) is passed to a callback. Failures to submit
+ * or poll the job, and failures of the job itself, are passed to the onFailure
+ * method of the callback.
+ *
+ * <pre>
+ * NOTE: the callback should be created right before the job is submitted, so
+ * that its progress wheel animates until the job is done.
+ * </pre>
+ */
+public class JobPoller {
+    /** Milliseconds between two polls of the status of a job. */
+    private static final int pollIntervalMillis = 500;
+
+    private final ISynopticServiceAsync synopticService;
+
+    private final AsyncCallback<GWTJobStatus> callback;
+
+    public JobPoller(ISynopticServiceAsync synopticService,
+            AsyncCallback<GWTJobStatus> callback) {
+        this.synopticService = synopticService;
+        this.callback = callback;
+    }
+
+    /**
+     * Submits a job of the given kind, and polls its status until it is done.
+     */
+    public void submit(GWTJobStatus.Kind kind) {
+        try {
+            synopticService.submitJob(kind, new StatusCallback());
+        } catch (Exception ex) {
+            callback.onFailure(ex);
+        }
+    }
+
+    private void poll(int jobID) {
+        try {
+            synopticService.getJobStatus(jobID, new StatusCallback());
+        } catch (Exception ex) {
+            callback.onFailure(ex);
+        }
+    }
+
+    /**
+     * Schedules the next poll of a job until the job is done.
+     */
+    private class StatusCallback implements AsyncCallback<GWTJobStatus> {
+        @SuppressWarnings("synthetic-access")
+        @Override
+        public void onFailure(Throwable caught) {
+            callback.onFailure(caught);
+        }
+
+        @SuppressWarnings("synthetic-access")
+        @Override
+        public void onSuccess(GWTJobStatus status) {
+            if (status.isDone()) {
+                callback.onSuccess(status);
+                return;
+            }
+
+            final int jobID = status.getJobID();
+            Timer timer = new Timer() {
+                @Override
+                public void run() {
+                    poll(jobID);
+                }
+            };
+            timer.schedule(pollIntervalMillis);
+        }
+    }
+}
@@ -66,6 +66,36 @@ public class AppConfiguration {
      */
     public int vID;
 
+    /**
+     * Number of threads that run the refinement and coarsening jobs of all
+     * sessions.
+     */
+    public final int jobThreads;
+
+    /**
+     * Maximum number of jobs that may be queued or running at once, over all
+     * sessions. Jobs submitted beyond this limit are rejected.
+     */
+    public final int maxPendingJobs;
+
+    /**
+     * Maximum number of jobs that a single session may have queued or running
+     * at once.
+     */
+    public final int maxSessionJobs;
+
+    /**
+     * Fraction of the maximum heap size above which the models of idle
+     * sessions are evicted from memory.
+     */
+    public final double evictionHeapFraction;
+
+    /**
+     * Number of seconds that a session must be idle before its model may be
+     * evicted from memory.
+     */
+    public final int minIdleSecondsBeforeEviction;
+
     /**
      * Private constructor prevents instantiation from other classes
      * 
@@ -122,6 +152,15 @@ public class AppConfiguration {
             }
         }
 
+        jobThreads = Integer.getInteger("jobThreads", Runtime.getRuntime()
+                .availableProcessors());
+        maxPendingJobs = Integer.getInteger("maxPendingJobs", 64);
+        maxSessionJobs = Integer.getInteger("maxSessionJobs", 4);
+        evictionHeapFraction = Double.parseDouble(System.getProperty(
+                "evictionHeapFraction", "0.75"));
+        minIdleSecondsBeforeEviction = Integer.getInteger(
+                "minIdleSecondsBeforeEviction", 300);
+
         this.synopticGWTChangesetID = synopticGWTChangesetID;
 
         try {
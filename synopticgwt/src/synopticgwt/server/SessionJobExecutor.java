@@ -0,0 +1,366 @@
+package synopticgwt.server;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+
+import synopticgwt.shared.GWTJobStatus;
+import synopticgwt.shared.GWTServerException;
+
+/**
+ * Runs the refinement and coarsening jobs of sessions in the background, on a
+ * fixed number of threads, so that large models do not tie up the threads that
+ * serve requests, and so that the number of models that are refined at once is
+ * bounded. <br />
+ * <br />
+ * The jobs of a session share the model of the session, and so run one at a
+ * time, in the order in which they were submitted: only the oldest pending job
+ * of a session is handed to the thread pool, and the next one is handed over
+ * when it finishes. A job is only admitted if fewer than maxPendingJobs jobs
+ * are pending (queued or running) over all sessions, and fewer than
+ * maxSessionJobs jobs are pending for its session. <br />
+ * <br />
+ * A finished job is kept until its result is collected, or until it has been
+ * finished for finishedJobTimeoutMillis.
+ */
+public class SessionJobExecutor {
+    public static Logger logger = Logger.getLogger("SessionJobExecutor");
+
+    /**
+     * Time after which finished jobs whose results were never collected are
+     * dropped.
+     */
+    static final long finishedJobTimeoutMillis = 10 * 60 * 1000;
+
+    /**
+     * The work done by a job.
+     */
+    public interface Work {
+        /**
+         * Does the work of job and returns its result.
+         */
+        Object run(Job job) throws Exception;
+    }
+
+    /**
+     * A job of a session, which does some work in the background.
+     */
+    public class Job implements Runnable {
+        private final int id;
+        private final String sessionID;
+        private final GWTJobStatus.Kind kind;
+        private final Work work;
+        private final CountDownLatch done = new CountDownLatch(1);
+
+        private volatile GWTJobStatus.State state = GWTJobStatus.State.QUEUED;
+        private volatile String progress = "Waiting to run";
+        private Object result = null;
+        private Exception failure = null;
+        private long finishTime;
+
+        Job(int id, String sessionID, GWTJobStatus.Kind kind, Work work) {
+            this.id = id;
+            this.sessionID = sessionID;
+            this.kind = kind;
+            this.work = work;
+        }
+
+        @Override
+        public void run() {
+            state = GWTJobStatus.State.RUNNING;
+            progress = "Running";
+            try {
+                result = work.run(this);
+            } catch (Exception e) {
+                logger.info("Job " + id + " of session " + sessionID
+                        + " failed: " + e.toString());
+                failure = e;
+            } catch (Throwable t) {
+                // E.g., an OutOfMemoryError, which must not kill the thread
+                // without finishing the job.
+                logger.info("Job " + id + " of session " + sessionID
+                        + " failed: " + t.toString());
+                failure = new Exception(t.toString(), t);
+            } finally {
+                finish();
+            }
+        }
+
+        /**
+         * Marks the job as done, and hands the next job of the session to the
+         * pool. The job stops counting as pending before its waiters wake up,
+         * so that they can submit the next job right away.
+         */
+        private void finish() {
+            finishTime = System.currentTimeMillis();
+            state = GWTJobStatus.State.DONE;
+            progress = "Done";
+            jobFinished(this);
+            done.countDown();
+        }
+
+        public int getID() {
+            return id;
+        }
+
+        public String getSessionID() {
+            return sessionID;
+        }
+
+        public GWTJobStatus.Kind getKind() {
+            return kind;
+        }
+
+        public GWTJobStatus.State getState() {
+            return state;
+        }
+
+        public String getProgress() {
+            return progress;
+        }
+
+        /**
+         * Sets the description of what the job is doing, which is reported to
+         * clients that poll the job.
+         */
+        public void setProgress(String progress) {
+            this.progress = progress;
+        }
+    }
+
+    private final ThreadPoolExecutor pool;
+    private final int maxPendingJobs;
+    private final int maxSessionJobs;
+    private final AtomicInteger nextJobID = new AtomicInteger(1);
+
+    /** All jobs that are pending, or finished and not yet collected. */
+    private final Map<Integer, Job> jobs = new HashMap<Integer, Job>();
+
+    /**
+     * Pending jobs of each session, in the order in which they run. Only the
+     * first job of a session has been handed to the pool.
+     */
+    private final Map<String, LinkedList<Job>> sessionQueues = new HashMap<String, LinkedList<Job>>();
+
+    private int numPending = 0;
+
+    /**
+     * @param numThreads
+     *            number of threads that run jobs
+     * @param maxPendingJobs
+     *            maximum number of pending jobs over all sessions
+     * @param maxSessionJobs
+     *            maximum number of pending jobs of a session
+     */
+    public SessionJobExecutor(int numThreads, int maxPendingJobs,
+            int maxSessionJobs) {
+        if (numThreads < 1 || maxPendingJobs < 1 || maxSessionJobs < 1) {
+            throw new IllegalArgumentException(
+                    "Number of threads and job limits must be positive");
+        }
+        this.maxPendingJobs = maxPendingJobs;
+        this.maxSessionJobs = maxSessionJobs;
+        this.pool = new ThreadPoolExecutor(numThreads, numThreads, 0L,
+                TimeUnit.MILLISECONDS, new LinkedBlockingQueue<Runnable>(),
+                new ThreadFactory() {
+                    private final AtomicInteger nextThreadID = new AtomicInteger(
+                            1);
+
+                    @Override
+                    public Thread newThread(Runnable r) {
+                        Thread t = new Thread(r, "synoptic-job-"
+                                + nextThreadID.getAndIncrement());
+                        t.setDaemon(true);
+                        return t;
+                    }
+                });
+        logger.info("Running jobs on " + numThreads + " threads, at most "
+                + maxPendingJobs + " pending jobs, " + maxSessionJobs
+                + " per session");
+    }
+
+    /**
+     * Submits a job that does work for a session.
+     *
+     * @throws GWTServerException
+     *             if the job is not admitted because too many jobs are pending
+     */
+    public synchronized Job submit(String sessionID, GWTJobStatus.Kind kind,
+            Work work) throws GWTServerException {
+        dropUncollectedJobs(System.currentTimeMillis());
+
+        if (numPending >= maxPendingJobs) {
+            throw new GWTServerException(
+                    "The server is busy, please try again later.", null, null);
+        }
+        LinkedList<Job> queue = sessionQueues.get(sessionID);
+        if (queue == null) {
+            queue = new LinkedList<Job>();
+            sessionQueues.put(sessionID, queue);
+        } else if (queue.size() >= maxSessionJobs) {
+            throw new GWTServerException(
+                    "Too many pending jobs, please wait for the current jobs to finish.",
+                    null, null);
+        }
+
+        Job job = new Job(nextJobID.getAndIncrement(), sessionID, kind, work);
+        jobs.put(job.id, job);
+        queue.add(job);
+        numPending++;
+        if (queue.size() == 1) {
+            pool.execute(job);
+        }
+        return job;
+    }
+
+    /**
+     * Removes a finished job from the queue of its session, and hands the next
+     * job of the session to the pool.
+     */
+    private synchronized void jobFinished(Job job) {
+        LinkedList<Job> queue = sessionQueues.get(job.sessionID);
+        if (queue == null || !queue.remove(job)) {
+            // The job was cancelled.
+            return;
+        }
+        numPending--;
+        if (queue.isEmpty()) {
+            sessionQueues.remove(job.sessionID);
+        } else {
+            pool.execute(queue.getFirst());
+        }
+    }
+
+    /**
+     * Drops the finished jobs that have not been collected for
+     * finishedJobTimeoutMillis.
+     */
+    private void dropUncollectedJobs(long now) {
+        Iterator<Job> iter = jobs.values().iterator();
+        while (iter.hasNext()) {
+            Job job = iter.next();
+            if (job.state == GWTJobStatus.State.DONE
+                    && now - job.finishTime > finishedJobTimeoutMillis) {
+                iter.remove();
+            }
+        }
+    }
+
+    /**
+     * Returns the job with the given id, or null if there is no such job of the
+     * session.
+     */
+    public synchronized Job getJob(String sessionID, int jobID) {
+        Job job = jobs.get(jobID);
+        if (job == null || !job.sessionID.equals(sessionID)) {
+            return null;
+        }
+        return job;
+    }
+
+    /**
+     * Returns the number of jobs that will run before job, or -1 if job is not
+     * queued.
+     */
+    public synchronized int getQueuePosition(Job job) {
+        if (job.state != GWTJobStatus.State.QUEUED) {
+            return -1;
+        }
+        LinkedList<Job> queue = sessionQueues.get(job.sessionID);
+        if (queue == null) {
+            return -1;
+        }
+        // Jobs ahead of the first job of the session in the pool, and then the
+        // jobs of the session ahead of job.
+        Job first = queue.getFirst();
+        int position = queue.indexOf(job);
+        if (first.state == GWTJobStatus.State.QUEUED) {
+            for (Runnable r : pool.getQueue()) {
+                if (r == first) {
+                    break;
+                }
+                position++;
+            }
+            // Jobs running on the threads.
+            position += pool.getActiveCount();
+        }
+        return position;
+    }
+
+    /**
+     * Returns whether the session has pending jobs.
+     */
+    public synchronized boolean hasJobs(String sessionID) {
+        return sessionQueues.containsKey(sessionID);
+    }
+
+    /**
+     * Returns the result of a finished job and forgets the job.
+     *
+     * @throws Exception
+     *             the exception thrown by the work of the job
+     */
+    public Object collect(Job job) throws Exception {
+        if (job.state != GWTJobStatus.State.DONE) {
+            throw new IllegalStateException("Job " + job.id
+                    + " is not done yet");
+        }
+        synchronized (this) {
+            jobs.remove(job.id);
+        }
+        if (job.failure != null) {
+            throw job.failure;
+        }
+        return job.result;
+    }
+
+    /**
+     * Waits for job to finish, and then collects its result.
+     *
+     * @throws Exception
+     *             the exception thrown by the work of the job
+     */
+    public Object await(Job job) throws Exception {
+        job.done.await();
+        return collect(job);
+    }
+
+    /**
+     * Cancels the pending jobs of a session that have not been handed to the
+     * pool, e.g., because the session was invalidated.
+     */
+    public void cancelSession(String sessionID) {
+        LinkedList<Job> cancelled = new LinkedList<Job>();
+        synchronized (this) {
+            LinkedList<Job> queue = sessionQueues.get(sessionID);
+            if (queue == null) {
+                return;
+            }
+            while (queue.size() > 1) {
+                Job job = queue.removeLast();
+                numPending--;
+                cancelled.add(job);
+            }
+        }
+        for (Job job : cancelled) {
+            job.failure = new GWTServerException("The job was cancelled.",
+                    null, null);
+            job.finish();
+        }
+    }
+
+    /**
+     * Stops the threads that run jobs.
+     */
+    public void shutdown() {
+        pool.shutdownNow();
+    }
+}
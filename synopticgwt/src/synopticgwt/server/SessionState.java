@@ -0,0 +1,95 @@
+package synopticgwt.server;
+
+import java.util.List;
+import java.util.Set;
+
+import synoptic.invariants.CExamplePath;
+import synoptic.invariants.ITemporalInvariant;
+import synoptic.invariants.TemporalInvariantSet;
+import synoptic.model.ChainsTraceGraph;
+import synoptic.model.Partition;
+import synoptic.model.PartitionGraph;
+
+/**
+ * The Synoptic state of a session: the trace graph of the parsed log, the
+ * invariants, and the partition graph that is being refined. The state is kept
+ * in server memory by a {@link SessionStateStore}. Its fields are accessed by
+ * request threads and by background jobs, which must synchronize on the state.
+ */
+public class SessionState {
+    /**
+     * Rough number of bytes used by the state per event of the log, which is
+     * used to estimate how much memory is freed by evicting a state.
+     */
+    static final long bytesPerEvent = 1024;
+
+    final String sessionID;
+
+    PartitionGraph pGraph;
+    Integer numSplitSteps;
+    Set<ITemporalInvariant> unsatInvs;
+    TemporalInvariantSet minedInvs;
+    Set<ITemporalInvariant> activeInvs;
+    List<CExamplePath<Partition>> counterExampleTraces;
+    ChainsTraceGraph traceGraph;
+
+    /** Time at which the state was last used by a request or a job. */
+    volatile long lastAccessTime;
+
+    /** Whether the graphs of the state were evicted from memory. */
+    boolean evicted = false;
+
+    SessionState(String sessionID) {
+        this.sessionID = sessionID;
+        this.lastAccessTime = System.currentTimeMillis();
+    }
+
+    /**
+     * Records that the state was just used.
+     */
+    void touch() {
+        lastAccessTime = System.currentTimeMillis();
+    }
+
+    /**
+     * Returns whether the state holds a model that can be refined and
+     * coarsened.
+     */
+    boolean hasModel() {
+        return pGraph != null;
+    }
+
+    /**
+     * Returns a rough estimate of the number of bytes used by the state.
+     */
+    long estimateBytes() {
+        if (traceGraph == null) {
+            return 0;
+        }
+        return traceGraph.getNodes().size() * bytesPerEvent;
+    }
+
+    /**
+     * Drops the graphs and invariants of the state, e.g., before a new log is
+     * parsed.
+     */
+    void clear() {
+        pGraph = null;
+        numSplitSteps = null;
+        unsatInvs = null;
+        minedInvs = null;
+        activeInvs = null;
+        counterExampleTraces = null;
+        traceGraph = null;
+        evicted = false;
+    }
+
+    /**
+     * Drops the graphs and invariants of the state, so that they can be
+     * garbage-collected, and records that they were evicted.
+     */
+    void evict() {
+        clear();
+        evicted = true;
+    }
+}
@@ -0,0 +1,186 @@
+package synopticgwt.server;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Logger;
+
+import javax.servlet.http.HttpSession;
+import javax.servlet.http.HttpSessionBindingEvent;
+import javax.servlet.http.HttpSessionBindingListener;
+
+/**
+ * Keeps the {@link SessionState} of every session in server memory, instead of
+ * in attributes of the HTTP session, so that the state is not looked up and
+ * re-stored on every request. The state of a session is dropped when the HTTP
+ * session is invalidated or times out. <br />
+ * <br />
+ * When the used heap exceeds a fraction of the maximum heap size, the graphs of
+ * idle sessions (that have not been used for a while, and have no queued or
+ * running jobs) are evicted, least recently used first, until the estimated
+ * size of the evicted graphs brings the heap usage back under that fraction.
+ * Requests for the model of an evicted session fail with a message that asks
+ * the user to parse the log again.
+ */
+public class SessionStateStore {
+    public static Logger logger = Logger.getLogger("SessionStateStore");
+
+    /** Name of the session attribute that drops the state of the session. */
+    static final String bindingSessionAttribute = "synopticStateBinding";
+
+    private final Map<String, SessionState> states = new HashMap<String, SessionState>();
+
+    private final SessionJobExecutor executor;
+    private final double evictionHeapFraction;
+    private final long minIdleMillis;
+
+    /**
+     * @param executor
+     *            executor that runs the jobs of the sessions, or null
+     * @param evictionHeapFraction
+     *            fraction of the maximum heap size above which the graphs of
+     *            idle sessions are evicted
+     * @param minIdleSeconds
+     *            seconds that a session must be idle for its graphs to be
+     *            evicted
+     */
+    public SessionStateStore(SessionJobExecutor executor,
+            double evictionHeapFraction, int minIdleSeconds) {
+        this.executor = executor;
+        this.evictionHeapFraction = evictionHeapFraction;
+        this.minIdleMillis = minIdleSeconds * 1000L;
+    }
+
+    /**
+     * Returns the state of session, creating an empty state if the session
+     * has none.
+     */
+    public SessionState getOrCreate(HttpSession session) {
+        String id = session.getId();
+        SessionState state;
+        synchronized (this) {
+            state = states.get(id);
+            if (state == null) {
+                state = new SessionState(id);
+                states.put(id, state);
+            }
+        }
+        if (session.getAttribute(bindingSessionAttribute) == null) {
+            session.setAttribute(bindingSessionAttribute, new Binding(this));
+        }
+        state.touch();
+        return state;
+    }
+
+    /**
+     * Returns the state of the session with the given id, or null if it has
+     * none.
+     */
+    public synchronized SessionState get(String sessionID) {
+        return states.get(sessionID);
+    }
+
+    /**
+     * Drops the state of the session with the given id, and cancels its
+     * queued jobs.
+     */
+    public void remove(String sessionID) {
+        synchronized (this) {
+            states.remove(sessionID);
+        }
+        if (executor != null) {
+            executor.cancelSession(sessionID);
+        }
+    }
+
+    /**
+     * Returns the number of sessions with a state.
+     */
+    public synchronized int size() {
+        return states.size();
+    }
+
+    /**
+     * Evicts the graphs of idle sessions if the used heap exceeds the
+     * eviction fraction of the maximum heap size. Sessions with queued or
+     * running jobs are never evicted.
+     * 
+     * @return the number of sessions whose graphs were evicted
+     */
+    public int evictIdleSessions() {
+        Runtime runtime = Runtime.getRuntime();
+        long used = runtime.totalMemory() - runtime.freeMemory();
+        long limit = (long) (evictionHeapFraction * runtime.maxMemory());
+        if (used <= limit) {
+            return 0;
+        }
+        return evictIdleSessions(used - limit, System.currentTimeMillis());
+    }
+
+    /**
+     * Evicts the graphs of the least recently used idle sessions (as of now),
+     * until their estimated size exceeds bytesToFree, or there are no more
+     * idle sessions.
+     */
+    int evictIdleSessions(long bytesToFree, long now) {
+        List<SessionState> idle = new ArrayList<SessionState>();
+        synchronized (this) {
+            for (SessionState state : states.values()) {
+                if (!state.evicted && now - state.lastAccessTime >= minIdleMillis
+                        && (executor == null || !executor
+                                .hasJobs(state.sessionID))) {
+                    idle.add(state);
+                }
+            }
+        }
+        Collections.sort(idle, new Comparator<SessionState>() {
+            @Override
+            public int compare(SessionState s1, SessionState s2) {
+                return Long.compare(s1.lastAccessTime, s2.lastAccessTime);
+            }
+        });
+
+        int numEvicted = 0;
+        long freed = 0;
+        for (SessionState state : idle) {
+            if (freed >= bytesToFree) {
+                break;
+            }
+            synchronized (state) {
+                // The session may have been used since it was found idle.
+                if (state.evicted || now - state.lastAccessTime < minIdleMillis) {
+                    continue;
+                }
+                freed += state.estimateBytes();
+                state.evict();
+            }
+            numEvicted++;
+            logger.info("Evicted the model of idle session " + state.sessionID);
+        }
+        return numEvicted;
+    }
+
+    /**
+     * Drops the state of a session when the session is invalidated.
+     */
+    static class Binding implements HttpSessionBindingListener {
+        private final SessionStateStore store;
+
+        Binding(SessionStateStore store) {
+            this.store = store;
+        }
+
+        @Override
+        public void valueBound(HttpSessionBindingEvent event) {
+            // Nothing to do.
+        }
+
+        @Override
+        public void valueUnbound(HttpSessionBindingEvent event) {
+            store.remove(event.getSession().getId());
+        }
+    }
+}
@@ -53,6 +53,7 @@ import synopticgwt.shared.GWTGraph;
 import synopticgwt.shared.GWTGraphDelta;
 import synopticgwt.shared.GWTInvariant;
 import synopticgwt.shared.GWTInvariantSet;
+import synopticgwt.shared.GWTJobStatus;
 import synopticgwt.shared.GWTNode;
 import synopticgwt.shared.GWTPair;
 import synopticgwt.shared.GWTParseException;
@@ -68,6 +69,12 @@ import synopticgwt.shared.LogLine;
  * - Model refinement
  * - Model coarsening
  * </pre>
+ * 
+ * The Synoptic state of each session is kept in a {@link SessionStateStore}.
+ * Refinement and coarsening run as jobs on a {@link SessionJobExecutor},
+ * which bounds the number of models that are refined at once. Clients can
+ * submit these jobs and poll for their status, or use the synchronous methods
+ * that wait for the jobs to finish.
  */
 public class SynopticService extends RemoteServiceServlet implements
         ISynopticService {
@@ -80,17 +87,10 @@ public class SynopticService extends RemoteServiceServlet implements
     static final String logFileSessionAttribute = "logFilePath";
 
     static AppConfiguration config = null;
-    HttpSession session;
-
-    // Variables corresponding to session state.
-    private PartitionGraph pGraph;
-    private Integer numSplitSteps;
-    private Set<ITemporalInvariant> unsatInvs;
-    private TemporalInvariantSet minedInvs;
-    private Set<ITemporalInvariant> activeInvs;
-    private List<CExamplePath<Partition>> counterExampleTraces;
-    private ChainsTraceGraph traceGraph;
-    private int vID;
+
+    // Shared by all sessions, and created along with config.
+    static SessionJobExecutor jobExecutor = null;
+    static SessionStateStore stateStore = null;
 
     // //////////////////////////////////////////////////////////////////////////////
     // Helper methods.
@@ -100,136 +100,105 @@ public class SynopticService extends RemoteServiceServlet implements
     }
 
     /**
-     * Initializes the server state.
+     * Initializes the refinement state of a session. The caller must hold the
+     * lock of state.
      */
-    private void initializeRefinementState(TemporalInvariantSet invs) {
-        pGraph = new PartitionGraph(traceGraph, true, invs);
-        numSplitSteps = 0;
+    private void initializeRefinementState(SessionState state,
+            TemporalInvariantSet invs) {
+        state.pGraph = new PartitionGraph(state.traceGraph, true, invs);
+        state.numSplitSteps = 0;
 
-        unsatInvs = new LinkedHashSet<ITemporalInvariant>();
-        unsatInvs.addAll(pGraph.getInvariants().getSet());
+        state.unsatInvs = new LinkedHashSet<ITemporalInvariant>();
+        state.unsatInvs.addAll(state.pGraph.getInvariants().getSet());
 
-        counterExampleTraces = new TemporalInvariantSet(unsatInvs)
-                .getAllCounterExamples(pGraph);
+        state.counterExampleTraces = new TemporalInvariantSet(state.unsatInvs)
+                .getAllCounterExamples(state.pGraph);
 
-        unsatInvs.clear();
-        if (counterExampleTraces != null) {
+        state.unsatInvs.clear();
+        if (state.counterExampleTraces != null) {
             logger.info("counterExampleTraces : "
-                    + counterExampleTraces.toString());
-            for (CExamplePath<Partition> relPath : counterExampleTraces) {
-                unsatInvs.add(relPath.invariant);
+                    + state.counterExampleTraces.toString());
+            for (CExamplePath<Partition> relPath : state.counterExampleTraces) {
+                state.unsatInvs.add(relPath.invariant);
             }
         } else {
             logger.info("counterExampleTraces : NONE");
         }
 
-        activeInvs = new LinkedHashSet<ITemporalInvariant>();
-        activeInvs.addAll(pGraph.getInvariants().getSet());
-    }
-
-    /**
-     * Save server state into the global session object. This function assumes
-     * that this session is set appropriate.
-     */
-    private void storeSessionState() {
-        storeSessionState(session);
-    }
-
-    /**
-     * Save server state into an explicitly given session object.
-     */
-    private void storeSessionState(HttpSession dstSession) {
-        if (dstSession == null) {
-            return;
-        }
-
-        dstSession.setAttribute("partitionGraph", pGraph);
-        dstSession.setAttribute("numSplitSteps", 0);
-        dstSession.setAttribute("unsatInvs", unsatInvs);
-        dstSession.setAttribute("minedInvs", minedInvs);
-        dstSession.setAttribute("activeInvs", activeInvs);
-        dstSession.setAttribute("traceGraph", traceGraph);
-        dstSession.setAttribute("counterExampleTraces", counterExampleTraces);
+        state.activeInvs = new LinkedHashSet<ITemporalInvariant>();
+        state.activeInvs.addAll(state.pGraph.getInvariants().getSet());
     }
 
     /**
-     * Sets up AppConfiguration file and sets variables for DerbyDB.
+     * Sets up AppConfiguration, the job executor, and the state store, and
+     * returns the state of the session of the current request. Evicts the
+     * models of idle sessions if the server is low on memory.
      */
-    private void retrieveSessionState() throws Exception {
+    private SessionState retrieveSessionState() throws Exception {
         ServletContext context = getServletConfig().getServletContext();
-        if (config == null) {
-            config = AppConfiguration.getInstance(context);
+        synchronized (SynopticService.class) {
+            if (config == null) {
+                config = AppConfiguration.getInstance(context);
+            }
+            if (jobExecutor == null) {
+                jobExecutor = new SessionJobExecutor(config.jobThreads,
+                        config.maxPendingJobs, config.maxSessionJobs);
+                stateStore = new SessionStateStore(jobExecutor,
+                        config.evictionHeapFraction,
+                        config.minIdleSecondsBeforeEviction);
+            }
         }
 
         // Retrieve HTTP session to access storage.
         HttpServletRequest request = getThreadLocalRequest();
-        session = request.getSession();
+        HttpSession session = request.getSession();
 
         if (session.getAttribute("vID") == null) {
             logger.info("Derby support disabled");
-        } else {
-            vID = (Integer) session.getAttribute("vID");
         }
+
+        stateStore.evictIdleSessions();
+        return stateStore.getOrCreate(session);
     }
 
     /**
-     * Retrieves session state and sets/reconstructs the local variables.
+     * Returns the state of the session of the current request, and checks that
+     * it holds a model that can be refined and coarsened.
      */
-    @SuppressWarnings("unchecked")
-    private void retrieveSynopticSessionState() throws Exception {
-        retrieveSessionState();
-
-        // Retrieve HTTP session to access storage.
-        HttpServletRequest request = getThreadLocalRequest();
-        session = request.getSession();
-
-        // Retrieve stuff from storage, and if we can't find something then we
-        // throw an error since we can't continue with refinement.
-
-        if (session.getAttribute("partitionGraph") == null) {
-            throw new Exception("session attribute 'partitionGraph' missing");
-        }
-        pGraph = (PartitionGraph) session.getAttribute("partitionGraph");
-
-        if (session.getAttribute("numSplitSteps") == null) {
-            throw new Exception("session attribute 'numSplitSteps' missing");
+    private SessionState retrieveSynopticSessionState() throws Exception {
+        SessionState state = retrieveSessionState();
+        synchronized (state) {
+            checkModel(state);
         }
-        numSplitSteps = (Integer) session.getAttribute("numSplitSteps");
-
-        if (session.getAttribute("unsatInvs") == null) {
-            throw new Exception("session attribute 'unsatInvs' missing");
-        }
-        unsatInvs = (Set<ITemporalInvariant>) session.getAttribute("unsatInvs");
+        return state;
+    }
 
-        if (session.getAttribute("minedInvs") == null) {
-            throw new Exception("session attribute 'minedInvs' missing");
+    /**
+     * Checks that state holds a model. The caller must hold the lock of state.
+     */
+    private static void checkModel(SessionState state) throws Exception {
+        if (state.evicted) {
+            throw new Exception(
+                    "The model of this session was evicted from server memory, please parse the log again");
         }
-        minedInvs = (TemporalInvariantSet) session.getAttribute("minedInvs");
-
-        if (session.getAttribute("activeInvs") == null) {
-            throw new Exception("session attribute 'activeInvs' missing");
+        // NOTE: counterExampleTraces is allowed to be null.
+        if (!state.hasModel()) {
+            throw new Exception("session state 'partitionGraph' missing");
         }
-        activeInvs = (Set<ITemporalInvariant>) session
-                .getAttribute("activeInvs");
+    }
 
-        if (session.getAttribute("traceGraph") == null) {
-            throw new Exception("session attribute 'traceGraph' missing");
+    /**
+     * Checks that the session has no queued or running jobs. A job holds the
+     * lock of the state for as long as it refines or coarsens the model, so
+     * requests that only read the model call this before taking the lock, and
+     * fail instead of tying up a request thread until the jobs are done. (A job
+     * that is submitted right after the check still makes the request wait.)
+     */
+    private void checkNoJobs(SessionState state) throws Exception {
+        if (jobExecutor.hasJobs(state.sessionID)) {
+            throw new Exception(
+                    "The model of this session is being refined or coarsened, please try again when the current job is done");
         }
-        traceGraph = (ChainsTraceGraph) session.getAttribute("traceGraph");
-
-        // NOTE: counterExampleTraces is allowed to be null.
-
-        // TODO: create the ability to detect when counterExampleTraces state
-        // has not been initialized.
-
-        // if (session.getAttribute("counterExampleTraces") == null) {
-        // TODO: throw appropriate exception
-        // throw new Exception();
-        // }
-        counterExampleTraces = (List<CExamplePath<Partition>>) session
-                .getAttribute("counterExampleTraces");
-
-        return;
     }
 
     /**
@@ -371,6 +340,22 @@ public class SynopticService extends RemoteServiceServlet implements
         super.doUnexpectedFailure(t);
     }
 
+    /**
+     * Stops the threads that run jobs when the servlet is taken out of
+     * service.
+     */
+    @Override
+    public void destroy() {
+        synchronized (SynopticService.class) {
+            if (jobExecutor != null) {
+                jobExecutor.shutdown();
+                jobExecutor = null;
+                stateStore = null;
+            }
+        }
+        super.destroy();
+    }
+
     // //////////////////////////////////////////////////////////////////////////////
 
     /**
@@ -384,7 +369,7 @@ public class SynopticService extends RemoteServiceServlet implements
     public GWTPair<GWTInvariantSet, GWTGraph> parseLog(GWTSynOpts synOpts)
             throws Exception {
 
-        retrieveSessionState();
+        SessionState state = retrieveSessionState();
 
         if (AbstractMain.instance == null) {
             // Set up some static variables in Main that are necessary to use
@@ -425,6 +410,8 @@ public class SynopticService extends RemoteServiceServlet implements
         GWTGraph graph = null;
 
         int miningTime = (int) System.currentTimeMillis();
+        ChainsTraceGraph traceGraph = null;
+        TemporalInvariantSet minedInvs;
         if (parser.logTimeTypeIsTotallyOrdered()) {
             traceGraph = parser.generateDirectTORelation(parsedEvents);
             minedInvs = SynopticMain.getInstance().mineTOInvariants(false,
@@ -433,9 +420,13 @@ public class SynopticService extends RemoteServiceServlet implements
             if (!synOpts.onlyMineInvs) {
                 // In the TO case then we also initialize/store refinement
                 // state.
-                initializeRefinementState(minedInvs);
-                storeSessionState(getThreadLocalRequest().getSession());
-                graph = PGraphToGWTGraph(pGraph);
+                synchronized (state) {
+                    state.clear();
+                    state.traceGraph = traceGraph;
+                    state.minedInvs = minedInvs;
+                    initializeRefinementState(state, minedInvs);
+                    graph = PGraphToGWTGraph(state.pGraph);
+                }
             }
         } else {
             // TODO: expose to the user the option of using another kind of
@@ -456,6 +447,9 @@ public class SynopticService extends RemoteServiceServlet implements
          * Write user information to Derby DB if the database is open.
          */
         if (config.derbyDB != null) {
+            Object vIDAttribute = getThreadLocalRequest().getSession()
+                    .getAttribute("vID");
+            int vID = (vIDAttribute == null) ? 0 : (Integer) vIDAttribute;
             config.derbyDB.writeUserParsingInfo(vID, synOpts, graph,
                     traceGraph, parsedEvents, minedInvs, invs, miningTime);
         }
@@ -474,11 +468,10 @@ public class SynopticService extends RemoteServiceServlet implements
     public GWTPair<GWTInvariantSet, GWTGraph> parseUploadedLog(
             GWTSynOpts synOpts) throws Exception {
         // Set up state.
-        retrieveSynopticSessionState();
+        retrieveSessionState();
 
         // Retrieve HTTP session to access location of recent log file uploaded.
-        // HttpServletRequest request = getThreadLocalRequest();
-        // HttpSession session = request.getSession();
+        HttpSession session = getThreadLocalRequest().getSession();
 
         // This session state attribute set from LogFileUploadServlet and
         // contains
@@ -528,64 +521,159 @@ public class SynopticService extends RemoteServiceServlet implements
     public GWTGraph commitInvariants(Set<Integer> activeInvsHashes)
             throws Exception {
         // Set up current state.
-        retrieveSynopticSessionState();
-
-        activeInvs.clear();
-        // Get the actual set of invariants to be removed.
-        for (ITemporalInvariant inv : minedInvs) {
-            if (activeInvsHashes.contains(inv.hashCode())) {
-                activeInvs.add(inv);
+        SessionState state = retrieveSynopticSessionState();
+
+        synchronized (state) {
+            checkModel(state);
+            state.activeInvs.clear();
+            // Get the actual set of invariants to be removed.
+            for (ITemporalInvariant inv : state.minedInvs) {
+                if (activeInvsHashes.contains(inv.hashCode())) {
+                    state.activeInvs.add(inv);
+                }
             }
-        }
 
-        initializeRefinementState(new TemporalInvariantSet(activeInvs));
-        storeSessionState();
+            initializeRefinementState(state, new TemporalInvariantSet(
+                    state.activeInvs));
 
-        return PGraphToGWTGraph(pGraph);
+            return PGraphToGWTGraph(state.pGraph);
+        }
     }
 
     /**
-     * Performs a single step of refinement on the cached model.
-     * 
-     * @throws Exception
+     * Performs a single step of refinement on the model of a session. The
+     * caller must hold the lock of state.
      */
-    @Override
-    public GWTGraphDelta refineOneStep() throws Exception {
-        // Set up state.
-        retrieveSynopticSessionState();
-
-        if (counterExampleTraces == null) {
+    private GWTGraphDelta refineOneStep(SessionState state) {
+        if (state.counterExampleTraces == null) {
             // We do not need to perform refinement.
             return null;
         }
-        assert (counterExampleTraces.size() > 0);
+        assert (state.counterExampleTraces.size() > 0);
 
         // Perform a single refinement step.
-        numSplitSteps = Bisimulation.performSplits(numSplitSteps, pGraph,
-                counterExampleTraces);
+        state.numSplitSteps = Bisimulation.performSplits(state.numSplitSteps,
+                state.pGraph, state.counterExampleTraces);
 
         // Recompute the counter-examples for the unsatisfied invariants.
-        counterExampleTraces = new TemporalInvariantSet(unsatInvs)
-                .getAllCounterExamples(pGraph);
+        state.counterExampleTraces = new TemporalInvariantSet(state.unsatInvs)
+                .getAllCounterExamples(state.pGraph);
 
-        unsatInvs.clear();
-        if (counterExampleTraces != null) {
-            for (CExamplePath<Partition> relPath : counterExampleTraces) {
-                unsatInvs.add(relPath.invariant);
+        state.unsatInvs.clear();
+        if (state.counterExampleTraces != null) {
+            for (CExamplePath<Partition> relPath : state.counterExampleTraces) {
+                state.unsatInvs.add(relPath.invariant);
             }
         }
-        PartitionMultiSplit last = pGraph.getMostRecentSplit();
+        PartitionMultiSplit last = state.pGraph.getMostRecentSplit();
 
         GWTNode refinedNode = gwtNodeFromPartition(last.getPartition());
 
-        // Because we've created new objects on top of older objects we need to
-        // store the state explicitly.
-        storeSessionState();
-
         // Return the new model.
-        return new GWTGraphDelta(PGraphToGWTGraph(pGraph), refinedNode,
-                TemporalInvariantSetToGWTInvariants(unsatInvs));
+        return new GWTGraphDelta(PGraphToGWTGraph(state.pGraph), refinedNode,
+                TemporalInvariantSetToGWTInvariants(state.unsatInvs));
+    }
 
+    /**
+     * Coarsens the completely refined model of a session, or returns null if
+     * the model is not completely refined. The caller must hold the lock of
+     * state.
+     */
+    private GWTGraph coarsenCompletely(SessionState state) {
+        if (state.unsatInvs.size() != 0) {
+            return null;
+        }
+
+        Bisimulation.mergePartitions(state.pGraph);
+        return PGraphToGWTGraph(state.pGraph);
+    }
+
+    /**
+     * Completes the refinement of the model of a session and then coarsens it.
+     * The caller must hold the lock of state.
+     */
+    private GWTGraph getFinalModel(SessionState state,
+            SessionJobExecutor.Job job) {
+        // Refine.
+        job.setProgress("Refining");
+        Bisimulation.splitUntilAllInvsSatisfied(state.pGraph);
+        state.unsatInvs.clear();
+
+        // Coarsen.
+        job.setProgress("Coarsening");
+        Bisimulation.mergePartitions(state.pGraph);
+        return PGraphToGWTGraph(state.pGraph);
+    }
+
+    /**
+     * Submits a job of the given kind for the model of a session.
+     */
+    private SessionJobExecutor.Job submit(final SessionState state,
+            final GWTJobStatus.Kind kind) throws Exception {
+        return jobExecutor.submit(state.sessionID, kind,
+                new SessionJobExecutor.Work() {
+                    @Override
+                    public Object run(SessionJobExecutor.Job job)
+                            throws Exception {
+                        synchronized (state) {
+                            // The model may have been evicted, or the log
+                            // re-parsed, since the job was submitted.
+                            checkModel(state);
+                            state.touch();
+                            switch (kind) {
+                            case REFINE_ONE_STEP:
+                                job.setProgress("Refining");
+                                return refineOneStep(state);
+                            case COARSEN_COMPLETELY:
+                                job.setProgress("Coarsening");
+                                return coarsenCompletely(state);
+                            case FINAL_MODEL:
+                                return getFinalModel(state, job);
+                            default:
+                                throw new IllegalArgumentException(
+                                        "Unknown job kind " + kind);
+                            }
+                        }
+                    }
+                });
+    }
+
+    /**
+     * Returns the status of a job. Collects the result of the job if it is
+     * done, after which the job is forgotten.
+     */
+    private GWTJobStatus jobStatus(SessionJobExecutor.Job job)
+            throws Exception {
+        if (job.getState() != GWTJobStatus.State.DONE) {
+            return new GWTJobStatus(job.getID(), job.getKind(),
+                    job.getState(), jobExecutor.getQueuePosition(job),
+                    job.getProgress(), null, null);
+        }
+
+        Object result = jobExecutor.collect(job);
+        GWTGraph graph = null;
+        GWTGraphDelta graphDelta = null;
+        if (job.getKind() == GWTJobStatus.Kind.REFINE_ONE_STEP) {
+            graphDelta = (GWTGraphDelta) result;
+        } else {
+            graph = (GWTGraph) result;
+        }
+        return new GWTJobStatus(job.getID(), job.getKind(),
+                GWTJobStatus.State.DONE, -1, job.getProgress(), graph,
+                graphDelta);
+    }
+
+    /**
+     * Performs a single step of refinement on the cached model.
+     * 
+     * @throws Exception
+     */
+    @Override
+    public GWTGraphDelta refineOneStep() throws Exception {
+        // Set up state.
+        SessionState state = retrieveSynopticSessionState();
+        return (GWTGraphDelta) jobExecutor.await(submit(state,
+                GWTJobStatus.Kind.REFINE_ONE_STEP));
     }
 
     /**
@@ -594,14 +682,9 @@ public class SynopticService extends RemoteServiceServlet implements
     @Override
     public GWTGraph coarsenCompletely() throws Exception {
         // Set up state.
-        retrieveSynopticSessionState();
-
-        if (unsatInvs.size() != 0) {
-            return null;
-        }
-
-        Bisimulation.mergePartitions(pGraph);
-        return PGraphToGWTGraph(pGraph);
+        SessionState state = retrieveSynopticSessionState();
+        return (GWTGraph) jobExecutor.await(submit(state,
+                GWTJobStatus.Kind.COARSEN_COMPLETELY));
     }
 
     /**
@@ -611,15 +694,36 @@ public class SynopticService extends RemoteServiceServlet implements
     @Override
     public GWTGraph getFinalModel() throws Exception {
         // Set up state.
-        retrieveSynopticSessionState();
+        SessionState state = retrieveSynopticSessionState();
+        return (GWTGraph) jobExecutor.await(submit(state,
+                GWTJobStatus.Kind.FINAL_MODEL));
+    }
 
-        // Refine.
-        Bisimulation.splitUntilAllInvsSatisfied(pGraph);
-        unsatInvs.clear();
+    /**
+     * Submits a refinement or coarsening job for the cached model, and returns
+     * its status without waiting for it to finish.
+     */
+    @Override
+    public GWTJobStatus submitJob(GWTJobStatus.Kind kind) throws Exception {
+        // Set up state.
+        SessionState state = retrieveSynopticSessionState();
+        return jobStatus(submit(state, kind));
+    }
 
-        // Coarsen.
-        Bisimulation.mergePartitions(pGraph);
-        return PGraphToGWTGraph(pGraph);
+    /**
+     * Returns the status of a job that was submitted by this session. Once the
+     * job is done, returns its result (or throws the exception that it threw)
+     * and forgets the job.
+     */
+    @Override
+    public GWTJobStatus getJobStatus(int jobID) throws Exception {
+        SessionState state = retrieveSessionState();
+        SessionJobExecutor.Job job = jobExecutor.getJob(state.sessionID,
+                jobID);
+        if (job == null) {
+            throw new Exception("Unknown job " + jobID);
+        }
+        return jobStatus(job);
     }
 
     /**
@@ -629,23 +733,28 @@ public class SynopticService extends RemoteServiceServlet implements
     @Override
     public List<LogLine> handleLogRequest(int nodeID) throws Exception {
         // Set up state.
-        retrieveSynopticSessionState();
-
-        // Find partition
-        Partition requested = null;
-        for (Partition p : pGraph.getNodes()) {
-            if (p.hashCode() == nodeID) {
-                requested = p;
-                break;
-            }
-        }
+        SessionState state = retrieveSynopticSessionState();
+        checkNoJobs(state);
 
-        // Fetch log lines
         List<LogLine> validLines = new ArrayList<LogLine>();
-        if (requested != null) {
-            for (EventNode event : requested.getEventNodes()) {
-                validLines.add(new LogLine(event.getLineNum(), event.getLine(),
-                        event.getShortFileName()));
+        synchronized (state) {
+            checkModel(state);
+
+            // Find partition
+            Partition requested = null;
+            for (Partition p : state.pGraph.getNodes()) {
+                if (p.hashCode() == nodeID) {
+                    requested = p;
+                    break;
+                }
+            }
+
+            // Fetch log lines
+            if (requested != null) {
+                for (EventNode event : requested.getEventNodes()) {
+                    validLines.add(new LogLine(event.getLineNum(), event
+                            .getLine(), event.getShortFileName()));
+                }
             }
         }
 
@@ -658,9 +767,12 @@ public class SynopticService extends RemoteServiceServlet implements
      */
     @Override
     public String exportDot() throws Exception {
-        retrieveSessionState();
+        SessionState state = retrieveSessionState();
+        checkNoJobs(state);
         StringWriter sWriter = new StringWriter();
-        GraphExporter.exportGraph(sWriter, pGraph, true);
+        synchronized (state) {
+            GraphExporter.exportGraph(sWriter, state.pGraph, true);
+        }
         return sWriter.toString();
     }
 
@@ -670,14 +782,17 @@ public class SynopticService extends RemoteServiceServlet implements
      */
     @Override
     public String exportPng() throws Exception {
-        retrieveSessionState();
+        SessionState state = retrieveSessionState();
+        checkNoJobs(state);
 
         // First, export the model to a dot file fileName.
         Calendar now = Calendar.getInstance();
         // Naming convention for the file can be improved
         String fileName = now.getTimeInMillis() + ".model.dot";
         String filePath = config.modelExportsDir + fileName;
-        GraphExporter.exportGraph(filePath, pGraph, true);
+        synchronized (state) {
+            GraphExporter.exportGraph(filePath, state.pGraph, true);
+        }
 
         GraphExporter.generatePngFileFromDotFile(config.modelExportsDir
                 + fileName);
@@ -693,7 +808,8 @@ public class SynopticService extends RemoteServiceServlet implements
      */
     public Map<List<GWTEdge>, Set<Integer>> getPathsThroughPartitionIDs(
             Set<Integer> selectedNodeIDs) throws Exception {
-        retrieveSynopticSessionState();
+        SessionState state = retrieveSynopticSessionState();
+        checkNoJobs(state);
 
         Map<List<GWTEdge>, Set<Integer>> gwtPaths = new HashMap<List<GWTEdge>, Set<Integer>>();
 
@@ -701,17 +817,21 @@ public class SynopticService extends RemoteServiceServlet implements
             return gwtPaths;
         }
 
-        // Take the node IDs and create a set of partitions from them.
-        Set<INode<Partition>> selectedNodes = new HashSet<INode<Partition>>();
-        for (Integer id : selectedNodeIDs) {
-            Partition p = pGraph.getNodeByID(id);
-            // Mandate that each node ID maps to a valid Partition.
-            assert (p != null);
-            selectedNodes.add(p);
-        }
+        Map<Integer, List<Partition>> paths;
+        synchronized (state) {
+            checkModel(state);
+
+            // Take the node IDs and create a set of partitions from them.
+            Set<INode<Partition>> selectedNodes = new HashSet<INode<Partition>>();
+            for (Integer id : selectedNodeIDs) {
+                Partition p = state.pGraph.getNodeByID(id);
+                // Mandate that each node ID maps to a valid Partition.
+                assert (p != null);
+                selectedNodes.add(p);
+            }
 
-        Map<Integer, List<Partition>> paths = pGraph
-                .getPathsThroughPartitions(selectedNodes);
+            paths = state.pGraph.getPathsThroughPartitions(selectedNodes);
+        }
 
         // Convert an ITransition-centric map to a GWTEdge-centric map.
         for (Integer id : paths.keySet()) {
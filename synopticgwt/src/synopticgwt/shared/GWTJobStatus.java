@@ -0,0 +1,99 @@
+package synopticgwt.shared;
+
+import java.io.Serializable;
+
+/**
+ * Represents the status of a job that refines or coarsens the model of a
+ * session in the background on the server. A client submits a job, and then
+ * polls for its status until the job is done, at which point the status
+ * carries the result of the job.
+ */
+public class GWTJobStatus implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    /** The kinds of jobs that can be submitted. */
+    public enum Kind {
+        /** A single step of refinement, with a graph delta as its result. */
+        REFINE_ONE_STEP,
+
+        /** Coarsening of the completely refined model, with a graph result. */
+        COARSEN_COMPLETELY,
+
+        /** Complete refinement and then coarsening, with a graph result. */
+        FINAL_MODEL
+    }
+
+    /** The states of a job. */
+    public enum State {
+        QUEUED, RUNNING, DONE
+    }
+
+    private int jobID;
+
+    private Kind kind;
+
+    private State state;
+
+    /**
+     * Number of jobs that will run before this one, or -1 if the job is not
+     * queued.
+     */
+    private int queuePosition;
+
+    /** A description of what the job is doing. */
+    private String progress;
+
+    /** Result of a COARSEN_COMPLETELY or a FINAL_MODEL job that is done. */
+    private GWTGraph graph;
+
+    /** Result of a REFINE_ONE_STEP job that is done. */
+    private GWTGraphDelta graphDelta;
+
+    public GWTJobStatus() {
+        // Empty constructor to avoid SerializationException.
+    }
+
+    public GWTJobStatus(int jobID, Kind kind, State state, int queuePosition,
+            String progress, GWTGraph graph, GWTGraphDelta graphDelta) {
+        this.jobID = jobID;
+        this.kind = kind;
+        this.state = state;
+        this.queuePosition = queuePosition;
+        this.progress = progress;
+        this.graph = graph;
+        this.graphDelta = graphDelta;
+    }
+
+    public int getJobID() {
+        return jobID;
+    }
+
+    public Kind getKind() {
+        return kind;
+    }
+
+    public State getState() {
+        return state;
+    }
+
+    public boolean isDone() {
+        return state == State.DONE;
+    }
+
+    public int getQueuePosition() {
+        return queuePosition;
+    }
+
+    public String getProgress() {
+        return progress;
+    }
+
+    public GWTGraph getGraph() {
+        return graph;
+    }
+
+    public GWTGraphDelta getGraphDelta() {
+        return graphDelta;
+    }
+}
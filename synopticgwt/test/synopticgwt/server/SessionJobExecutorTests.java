@@ -0,0 +1,278 @@
+package synopticgwt.server;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Test;
+
+import synopticgwt.shared.GWTJobStatus;
+import synopticgwt.shared.GWTServerException;
+
+/**
+ * Tests the ordering, admission limits, and cancellation of the jobs run by a
+ * SessionJobExecutor.
+ */
+public class SessionJobExecutorTests {
+    SessionJobExecutor executor = null;
+
+    @After
+    public void tearDown() {
+        if (executor != null) {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Returns work that waits for gate to open, and then returns the id of its
+     * job.
+     */
+    static SessionJobExecutor.Work blockingWork(final CountDownLatch gate) {
+        return new SessionJobExecutor.Work() {
+            @Override
+            public Object run(SessionJobExecutor.Job job) throws Exception {
+                if (!gate.await(10, TimeUnit.SECONDS)) {
+                    throw new Exception("Gate was never opened");
+                }
+                return job.getID();
+            }
+        };
+    }
+
+    /**
+     * Waits for job to start running.
+     */
+    static void awaitRunning(SessionJobExecutor.Job job) throws Exception {
+        while (job.getState() == GWTJobStatus.State.QUEUED) {
+            Thread.sleep(5);
+        }
+    }
+
+    /**
+     * Submits work for a session and returns its job.
+     */
+    SessionJobExecutor.Job submit(String sessionID, SessionJobExecutor.Work work)
+            throws GWTServerException {
+        return executor.submit(sessionID, GWTJobStatus.Kind.REFINE_ONE_STEP,
+                work);
+    }
+
+    /**
+     * Tests that the jobs of a session run one at a time, in the order in
+     * which they were submitted, even with more threads than sessions.
+     */
+    @Test
+    public void sessionJobsRunInOrderTest() throws Exception {
+        executor = new SessionJobExecutor(4, 20, 20);
+
+        final List<Integer> order = Collections
+                .synchronizedList(new ArrayList<Integer>());
+        final AtomicInteger running = new AtomicInteger(0);
+        final AtomicInteger maxRunning = new AtomicInteger(0);
+        SessionJobExecutor.Work work = new SessionJobExecutor.Work() {
+            @Override
+            public Object run(SessionJobExecutor.Job job) throws Exception {
+                int r = running.incrementAndGet();
+                if (r > maxRunning.get()) {
+                    maxRunning.set(r);
+                }
+                Thread.sleep(10);
+                order.add(job.getID());
+                running.decrementAndGet();
+                return job.getID();
+            }
+        };
+
+        List<SessionJobExecutor.Job> jobs = new ArrayList<SessionJobExecutor.Job>();
+        List<Integer> ids = new ArrayList<Integer>();
+        for (int i = 0; i < 10; i++) {
+            SessionJobExecutor.Job job = submit("s", work);
+            jobs.add(job);
+            ids.add(job.getID());
+        }
+        for (SessionJobExecutor.Job job : jobs) {
+            assertEquals(job.getID(), executor.await(job));
+        }
+
+        assertEquals(ids, order);
+        assertEquals(1, maxRunning.get());
+        assertFalse(executor.hasJobs("s"));
+    }
+
+    /**
+     * Tests that the job of a session runs while the job of another session
+     * is blocked, and that queued jobs report their position.
+     */
+    @Test
+    public void sessionsRunInParallelTest() throws Exception {
+        executor = new SessionJobExecutor(2, 10, 10);
+        CountDownLatch gate = new CountDownLatch(1);
+
+        SessionJobExecutor.Job blocked = submit("s1", blockingWork(gate));
+        SessionJobExecutor.Job queued = submit("s1", blockingWork(gate));
+        SessionJobExecutor.Job other = submit("s2", blockingWork(
+                new CountDownLatch(0)));
+
+        assertEquals(other.getID(), executor.await(other));
+        awaitRunning(blocked);
+        assertEquals(GWTJobStatus.State.QUEUED, queued.getState());
+        assertEquals(1, executor.getQueuePosition(queued));
+        assertTrue(executor.hasJobs("s1"));
+        assertFalse(executor.hasJobs("s2"));
+
+        gate.countDown();
+        assertEquals(blocked.getID(), executor.await(blocked));
+        assertEquals(queued.getID(), executor.await(queued));
+        assertFalse(executor.hasJobs("s1"));
+    }
+
+    /**
+     * Tests that a job is rejected when maxPendingJobs jobs are pending over
+     * all sessions, and admitted again once a job is done.
+     */
+    @Test
+    public void maxPendingJobsTest() throws Exception {
+        executor = new SessionJobExecutor(1, 2, 10);
+        CountDownLatch gate = new CountDownLatch(1);
+
+        SessionJobExecutor.Job j1 = submit("s1", blockingWork(gate));
+        SessionJobExecutor.Job j2 = submit("s2", blockingWork(gate));
+        try {
+            submit("s3", blockingWork(gate));
+            fail("A job beyond maxPendingJobs was admitted");
+        } catch (GWTServerException e) {
+            // Expected.
+        }
+
+        gate.countDown();
+        executor.await(j1);
+        executor.await(j2);
+        SessionJobExecutor.Job j3 = submit("s3", blockingWork(gate));
+        assertEquals(j3.getID(), executor.await(j3));
+    }
+
+    /**
+     * Tests that a job is rejected when maxSessionJobs jobs are pending for its
+     * session, while the jobs of other sessions are still admitted.
+     */
+    @Test
+    public void maxSessionJobsTest() throws Exception {
+        executor = new SessionJobExecutor(1, 10, 2);
+        CountDownLatch gate = new CountDownLatch(1);
+
+        SessionJobExecutor.Job j1 = submit("s1", blockingWork(gate));
+        SessionJobExecutor.Job j2 = submit("s1", blockingWork(gate));
+        try {
+            submit("s1", blockingWork(gate));
+            fail("A job beyond maxSessionJobs was admitted");
+        } catch (GWTServerException e) {
+            // Expected.
+        }
+        SessionJobExecutor.Job j3 = submit("s2", blockingWork(gate));
+
+        gate.countDown();
+        for (SessionJobExecutor.Job job : Arrays.asList(j1, j2, j3)) {
+            assertEquals(job.getID(), executor.await(job));
+        }
+    }
+
+    /**
+     * Tests that cancelling a session fails its queued jobs, lets its running
+     * job finish, and frees the slots of the cancelled jobs.
+     */
+    @Test
+    public void cancelSessionTest() throws Exception {
+        executor = new SessionJobExecutor(1, 3, 3);
+        CountDownLatch gate = new CountDownLatch(1);
+
+        SessionJobExecutor.Job running = submit("s", blockingWork(gate));
+        SessionJobExecutor.Job queued1 = submit("s", blockingWork(gate));
+        SessionJobExecutor.Job queued2 = submit("s", blockingWork(gate));
+
+        executor.cancelSession("s");
+        for (SessionJobExecutor.Job job : Arrays.asList(queued1, queued2)) {
+            assertEquals(GWTJobStatus.State.DONE, job.getState());
+            try {
+                executor.await(job);
+                fail("A cancelled job returned a result");
+            } catch (GWTServerException e) {
+                // Expected.
+            }
+        }
+        // The running job is not cancelled.
+        assertTrue(executor.hasJobs("s"));
+
+        // The cancelled jobs no longer count towards maxPendingJobs.
+        SessionJobExecutor.Job other = submit("s2", blockingWork(gate));
+
+        gate.countDown();
+        assertEquals(running.getID(), executor.await(running));
+        assertEquals(other.getID(), executor.await(other));
+        assertFalse(executor.hasJobs("s"));
+    }
+
+    /**
+     * Tests that collecting a failed job throws the exception of its work,
+     * forgets the job, and that the next job of the session still runs.
+     */
+    @Test
+    public void collectAfterFailureTest() throws Exception {
+        executor = new SessionJobExecutor(1, 10, 10);
+        final Exception failure = new Exception("Refinement failed");
+        CountDownLatch gate = new CountDownLatch(1);
+
+        SessionJobExecutor.Job failing = submit("s",
+                new SessionJobExecutor.Work() {
+                    @Override
+                    public Object run(SessionJobExecutor.Job job)
+                            throws Exception {
+                        throw failure;
+                    }
+                });
+        SessionJobExecutor.Job next = submit("s", blockingWork(gate));
+
+        try {
+            executor.collect(next);
+            fail("A job that is not done was collected");
+        } catch (IllegalStateException e) {
+            // Expected.
+        }
+
+        try {
+            executor.await(failing);
+            fail("A failed job returned a result");
+        } catch (Exception e) {
+            assertSame(failure, e);
+        }
+        assertEquals(null, executor.getJob("s", failing.getID()));
+
+        gate.countDown();
+        assertEquals(next.getID(), executor.await(next));
+        assertEquals(null, executor.getJob("s", next.getID()));
+    }
+
+    /**
+     * Tests that a job can only be looked up by the session that submitted it.
+     */
+    @Test
+    public void getJobOfOtherSessionTest() throws Exception {
+        executor = new SessionJobExecutor(1, 10, 10);
+        SessionJobExecutor.Job job = submit("s1", blockingWork(
+                new CountDownLatch(0)));
+
+        assertSame(job, executor.getJob("s1", job.getID()));
+        assertEquals(null, executor.getJob("s2", job.getID()));
+        executor.await(job);
+    }
+}
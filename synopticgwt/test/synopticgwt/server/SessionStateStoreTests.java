@@ -0,0 +1,181 @@
+package synopticgwt.server;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+
+import javax.servlet.http.HttpSession;
+
+import org.junit.After;
+import org.junit.Test;
+
+import synoptic.model.ChainsTraceGraph;
+import synoptic.model.EventNode;
+import synoptic.model.event.Event;
+import synopticgwt.shared.GWTJobStatus;
+
+/**
+ * Tests that a SessionStateStore evicts the graphs of idle sessions least
+ * recently used first, and never evicts sessions with pending jobs.
+ */
+public class SessionStateStoreTests {
+    static final long now = 1000 * 1000;
+    static final int minIdleSeconds = 60;
+
+    SessionJobExecutor executor = null;
+
+    @After
+    public void tearDown() {
+        if (executor != null) {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Returns an HTTP session with the given id, which only supports getId()
+     * and session attributes.
+     */
+    static HttpSession newSession(final String id) {
+        final Map<String, Object> attributes = new HashMap<String, Object>();
+        return (HttpSession) Proxy.newProxyInstance(
+                HttpSession.class.getClassLoader(),
+                new Class<?>[] { HttpSession.class }, new InvocationHandler() {
+                    @Override
+                    public Object invoke(Object proxy, Method method,
+                            Object[] args) {
+                        String name = method.getName();
+                        if (name.equals("getId")) {
+                            return id;
+                        } else if (name.equals("getAttribute")) {
+                            return attributes.get(args[0]);
+                        } else if (name.equals("setAttribute")) {
+                            attributes.put((String) args[0], args[1]);
+                            return null;
+                        }
+                        throw new UnsupportedOperationException(name);
+                    }
+                });
+    }
+
+    /**
+     * Creates the state of a session with a model of numEvents events, which
+     * was last used at lastAccessTime.
+     */
+    static SessionState addState(SessionStateStore store, String id,
+            int numEvents, long lastAccessTime) {
+        SessionState state = store.getOrCreate(newSession(id));
+        ChainsTraceGraph traceGraph = new ChainsTraceGraph();
+        for (int i = 0; i < numEvents; i++) {
+            traceGraph.add(new EventNode(new Event("e" + i)));
+        }
+        state.traceGraph = traceGraph;
+        state.lastAccessTime = lastAccessTime;
+        return state;
+    }
+
+    /**
+     * Tests that the least recently used idle sessions are evicted first, and
+     * only until enough bytes are freed.
+     */
+    @Test
+    public void evictLeastRecentlyUsedTest() {
+        SessionStateStore store = new SessionStateStore(null, 0.5,
+                minIdleSeconds);
+        SessionState s2 = addState(store, "s2", 1, now - 200 * 1000);
+        SessionState s1 = addState(store, "s1", 1, now - 300 * 1000);
+        SessionState s3 = addState(store, "s3", 1, now - 100 * 1000);
+
+        // Freeing more than the size of one session evicts the two oldest.
+        assertEquals(2,
+                store.evictIdleSessions(s1.estimateBytes() + 1, now));
+        assertTrue(s1.evicted);
+        assertTrue(s2.evicted);
+        assertFalse(s3.evicted);
+        assertEquals(null, s1.traceGraph);
+
+        // Evicted sessions keep their state, and are not evicted again.
+        assertEquals(3, store.size());
+        assertEquals(1, store.evictIdleSessions(Long.MAX_VALUE, now));
+        assertTrue(s3.evicted);
+    }
+
+    /**
+     * Tests that sessions that were used recently are not evicted.
+     */
+    @Test
+    public void evictOnlyIdleSessionsTest() {
+        SessionStateStore store = new SessionStateStore(null, 0.5,
+                minIdleSeconds);
+        SessionState idle = addState(store, "idle", 1, now
+                - minIdleSeconds * 1000L);
+        SessionState busy = addState(store, "busy", 1, now - 1000);
+
+        assertEquals(1, store.evictIdleSessions(Long.MAX_VALUE, now));
+        assertTrue(idle.evicted);
+        assertFalse(busy.evicted);
+    }
+
+    /**
+     * Tests that sessions with queued or running jobs are not evicted, however
+     * long they have been idle.
+     */
+    @Test
+    public void evictSkipsSessionsWithJobsTest() throws Exception {
+        executor = new SessionJobExecutor(1, 10, 10);
+        SessionStateStore store = new SessionStateStore(executor, 0.5,
+                minIdleSeconds);
+        SessionState withJob = addState(store, "withJob", 1, 0);
+        SessionState withoutJob = addState(store, "withoutJob", 1, 1);
+
+        CountDownLatch gate = new CountDownLatch(1);
+        SessionJobExecutor.Job job = executor.submit("withJob",
+                GWTJobStatus.Kind.FINAL_MODEL,
+                SessionJobExecutorTests.blockingWork(gate));
+
+        assertEquals(1, store.evictIdleSessions(Long.MAX_VALUE, now));
+        assertFalse(withJob.evicted);
+        assertTrue(withoutJob.evicted);
+
+        gate.countDown();
+        executor.await(job);
+        assertEquals(1, store.evictIdleSessions(Long.MAX_VALUE, now));
+        assertTrue(withJob.evicted);
+    }
+
+    /**
+     * Tests that removing the state of a session cancels its queued jobs.
+     */
+    @Test
+    public void removeCancelsQueuedJobsTest() throws Exception {
+        executor = new SessionJobExecutor(1, 10, 10);
+        SessionStateStore store = new SessionStateStore(executor, 0.5,
+                minIdleSeconds);
+        SessionState state = addState(store, "s", 1, now);
+        assertSame(state, store.get("s"));
+
+        CountDownLatch gate = new CountDownLatch(1);
+        SessionJobExecutor.Job running = executor.submit("s",
+                GWTJobStatus.Kind.REFINE_ONE_STEP,
+                SessionJobExecutorTests.blockingWork(gate));
+        SessionJobExecutor.Job queued = executor.submit("s",
+                GWTJobStatus.Kind.REFINE_ONE_STEP,
+                SessionJobExecutorTests.blockingWork(gate));
+
+        store.remove("s");
+        assertEquals(null, store.get("s"));
+        assertEquals(0, store.size());
+        assertEquals(GWTJobStatus.State.DONE, queued.getState());
+
+        gate.countDown();
+        executor.await(running);
+        assertFalse(executor.hasJobs("s"));
+    }
+}
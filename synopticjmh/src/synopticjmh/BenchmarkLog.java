@@ -0,0 +1,351 @@
+package synopticjmh;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+
+import synoptic.invariants.ITemporalInvariant;
+import synoptic.invariants.TemporalInvariantSet;
+import synoptic.invariants.miners.ChainWalkingTOInvMiner;
+import synoptic.main.AbstractMain;
+import synoptic.main.SynopticMain;
+import synoptic.main.options.AbstractOptions;
+import synoptic.main.options.SynopticOptions;
+import synoptic.main.parser.ParseException;
+import synoptic.main.parser.TraceParser;
+import synoptic.model.ChainsTraceGraph;
+import synoptic.model.ColumnarTraceGraph;
+import synoptic.model.DAGsTraceGraph;
+import synoptic.model.EventNode;
+import synoptic.model.PartitionGraph;
+import synoptic.model.export.DotExportFormatter;
+
+/**
+ * A log that the benchmarks run on, together with the regular expressions that
+ * parse it. A log is identified by a spec, which is the value of the
+ * {@code log} parameter of the benchmarks:
+ *
+ * <pre>
+ *   gen/EVENTS/TRACES/TYPES     a generated totally ordered log
+ *   genpo/EVENTS/TRACES/TYPES   a generated partially ordered log of 3 hosts
+ *   abp, twopc                  totally ordered logs in the traces/ corpora
+ *   abp-po, peterson, tcp       partially ordered logs in the traces/ corpora
+ * </pre>
+ *
+ * Generated logs have EVENTS events in total, split evenly among TRACES
+ * traces, with event types drawn from TYPES types. Every type is followed by
+ * one of a few fixed types, so that the logs satisfy a non-trivial set of
+ * invariants. The logs are generated from a fixed seed, so a spec always
+ * denotes the same log. The corpora are read from the directory given by the
+ * {@code synoptic.traces} system property (../traces by default). <br />
+ * <br />
+ * The text of the log is loaded once, so that the parsing benchmarks do not
+ * measure disk reads.
+ */
+public class BenchmarkLog {
+    /** The system property with the location of the traces/ directory. */
+    public static final String tracesDirProperty = "synoptic.traces";
+
+    private static final String tracesDirDefault = ".." + File.separator
+            + "traces";
+
+    /** The number of types that can follow each type in generated logs. */
+    private static final int numFollowers = 3;
+
+    /** The number of hosts of generated partially ordered logs. */
+    private static final int numHosts = 3;
+
+    private static final long seed = 20110905;
+
+    private final String spec;
+    private final List<String> regExps;
+    private final String partitionRegExp;
+    private final String separatorRegExp;
+    private final boolean totallyOrdered;
+
+    /** The names of the files of the log, which the FILE group maps to. */
+    private final List<String> names = new ArrayList<String>();
+    private final List<String> texts = new ArrayList<String>();
+
+    private BenchmarkLog(String spec, List<String> regExps,
+            String partitionRegExp, String separatorRegExp,
+            boolean totallyOrdered) {
+        this.spec = spec;
+        this.regExps = regExps;
+        this.partitionRegExp = partitionRegExp;
+        this.separatorRegExp = separatorRegExp;
+        this.totallyOrdered = totallyOrdered;
+    }
+
+    /**
+     * Returns the log identified by spec.
+     *
+     * @throws IllegalArgumentException
+     *             if spec is not a known log
+     * @throws IOException
+     *             if a corpus cannot be read
+     */
+    public static BenchmarkLog load(String spec) throws IOException {
+        if (spec.startsWith("gen/") || spec.startsWith("genpo/")) {
+            String[] parts = spec.split("/");
+            if (parts.length != 4) {
+                throw new IllegalArgumentException("Malformed log spec " + spec
+                        + ", expected gen/EVENTS/TRACES/TYPES");
+            }
+            int numEvents = Integer.parseInt(parts[1]);
+            int numTraces = Integer.parseInt(parts[2]);
+            int numTypes = Integer.parseInt(parts[3]);
+            if (parts[0].equals("gen")) {
+                BenchmarkLog log = new BenchmarkLog(spec,
+                        Arrays.asList("^(?<TYPE>)$"),
+                        AbstractOptions.partitionRegExpDefault, "^--$", true);
+                log.add(spec, generate(numEvents, numTraces, numTypes, false));
+                return log;
+            }
+            BenchmarkLog log = new BenchmarkLog(spec,
+                    Arrays.asList("^(?<VTIME>)(?<TYPE>)$"),
+                    AbstractOptions.partitionRegExpDefault, "^--$", false);
+            log.add(spec, generate(numEvents, numTraces, numTypes, true));
+            return log;
+        }
+
+        BenchmarkLog log;
+        if (spec.equals("abp")) {
+            log = new BenchmarkLog(spec, Arrays.asList("^(?<TYPE>)$",
+                    "^#(?<HIDE=>true).+$"),
+                    AbstractOptions.partitionRegExpDefault, "^--$", true);
+            log.addCorpus("AlternatingBitProtocol", "trace_r_complete.txt",
+                    null);
+        } else if (spec.equals("twopc")) {
+            log = new BenchmarkLog(spec,
+                    Arrays.asList("^(?<sender>),(?<receiver>),(?<TYPE>),(?<txId>)"),
+                    "\\k<txId>", null, true);
+            log.addCorpus("TwoPhaseCommit", "2pc_3nodes_100tx.log", null);
+        } else if (spec.equals("abp-po")) {
+            log = new BenchmarkLog(spec, Arrays.asList("^#(?<HIDE=>true).+$",
+                    "^(?<VTIME>)(?<TYPE>)$"),
+                    AbstractOptions.partitionRegExpDefault, "^--$", false);
+            log.addCorpus("AlternatingBitProtocol", "trace_po_long.txt", null);
+        } else if (spec.equals("peterson")) {
+            log = new BenchmarkLog(
+                    spec,
+                    Arrays.asList(
+                            "^(?:#.*|\\s*|.*round-done.*)(?<HIDE=>true)$",
+                            "(?<nodename>)(?<VTIME>)(?<TYPE>)(?:(?<mtype>)(?:(?<roundId>)(?:(?<payload>)(?:(?<id>))?)?)?)?"),
+                    "\\k<FILE>\\k<nodename>", null, false);
+            // Only the traces generated by gen.sh, since some of the other
+            // files hold the usage message of the generator.
+            log.addCorpus("PetersonLeaderElection", "generated_traces",
+                    "peterson_trace-n5-");
+        } else if (spec.equals("tcp")) {
+            log = new BenchmarkLog(spec, Arrays.asList("^#(?<HIDE=>true).*$",
+                    "^(?<HIDE=>true)$", "^(?<VTIME>)(?<TYPE>)$",
+                    "^(?<VTIME>)(?<TYPE>) #.*$"),
+                    AbstractOptions.partitionRegExpDefault, "^--$", false);
+            log.addCorpus("Tcp", "po_tcp_log.txt", null);
+        } else {
+            throw new IllegalArgumentException("Unknown log spec " + spec);
+        }
+        return log;
+    }
+
+    /**
+     * Creates the Synoptic singleton that the parser and the algorithms read
+     * their options from, with default options, quiet logging, and a fixed
+     * random seed. Replaces the singleton of a previous benchmark.
+     */
+    public static AbstractMain initSynoptic() {
+        AbstractMain.instance = null;
+        AbstractOptions options = new SynopticOptions().toAbstractOptions();
+        options.logLvlQuiet = true;
+        options.randomSeed = seed;
+        return new SynopticMain(options, new DotExportFormatter());
+    }
+
+    public String getSpec() {
+        return spec;
+    }
+
+    public boolean isTotallyOrdered() {
+        return totallyOrdered;
+    }
+
+    /**
+     * Returns a new parser for the log. Parsers are stateful, so every parse
+     * of the log needs a new one.
+     */
+    public TraceParser newParser() throws ParseException {
+        return new TraceParser(regExps, partitionRegExp, separatorRegExp,
+                null);
+    }
+
+    /**
+     * Parses the log with parser into a list of events.
+     */
+    public List<EventNode> parse(TraceParser parser) throws ParseException {
+        List<EventNode> events = new ArrayList<EventNode>();
+        for (int i = 0; i < texts.size(); i++) {
+            events.addAll(parser.parseTraceString(texts.get(i), names.get(i),
+                    -1));
+        }
+        return events;
+    }
+
+    /**
+     * Parses the log, which must be totally ordered, into a trace graph.
+     */
+    public ChainsTraceGraph parseChainsTraceGraph() throws ParseException {
+        checkTotallyOrdered(true);
+        TraceParser parser = newParser();
+        return parser.generateDirectTORelation(parse(parser));
+    }
+
+    /**
+     * Parses the log, which must be partially ordered, into a trace graph.
+     */
+    public DAGsTraceGraph parseDAGsTraceGraph() throws ParseException {
+        checkTotallyOrdered(false);
+        TraceParser parser = newParser();
+        return parser.generateDirectPORelation(parse(parser));
+    }
+
+    /**
+     * Parses the log, which must be totally ordered, in streaming mode into a
+     * columnar trace store.
+     */
+    public ColumnarTraceGraph parseColumnarTraceGraph() throws ParseException {
+        checkTotallyOrdered(true);
+        TraceParser parser = newParser();
+        ColumnarTraceGraph columns = new ColumnarTraceGraph();
+        for (int i = 0; i < texts.size(); i++) {
+            parser.parseTraceStringStreaming(texts.get(i), names.get(i), -1,
+                    columns);
+        }
+        return columns;
+    }
+
+    /**
+     * Parses the log, which must be totally ordered, mines its invariants with
+     * the default miner, and returns its initial partition graph, in which
+     * every event type is one partition. As in {@code AbstractMain}, the
+     * graph does not include the IntrBy invariants, which refinement cannot
+     * satisfy.
+     */
+    public PartitionGraph newInitialPartitionGraph() throws ParseException {
+        ChainsTraceGraph traceGraph = parseChainsTraceGraph();
+        TemporalInvariantSet invariants = new ChainWalkingTOInvMiner()
+                .computeInvariants(traceGraph, false, false);
+        for (Iterator<ITemporalInvariant> it = invariants.iterator(); it
+                .hasNext();) {
+            if (it.next().getShortName().equals("IntrBy")) {
+                it.remove();
+            }
+        }
+        return new PartitionGraph(traceGraph, true, invariants);
+    }
+
+    private void checkTotallyOrdered(boolean expected) {
+        if (totallyOrdered != expected) {
+            throw new IllegalArgumentException("The benchmark needs a "
+                    + (expected ? "totally" : "partially")
+                    + " ordered log, but " + spec + " is not");
+        }
+    }
+
+    private void add(String name, String text) {
+        names.add(name);
+        texts.add(text);
+    }
+
+    /**
+     * Adds the file path of the corpus dir, or all files in the directory path
+     * whose names start with filePrefix (or all files if it is null).
+     */
+    private void addCorpus(String dir, String path, String filePrefix)
+            throws IOException {
+        File tracesDir = new File(System.getProperty(tracesDirProperty,
+                tracesDirDefault));
+        File file = new File(new File(tracesDir, dir), path);
+        List<File> files = new ArrayList<File>();
+        if (file.isDirectory()) {
+            for (File f : file.listFiles()) {
+                if (filePrefix == null || f.getName().startsWith(filePrefix)) {
+                    files.add(f);
+                }
+            }
+            Collections.sort(files);
+        } else {
+            files.add(file);
+        }
+        if (files.isEmpty() || !files.get(0).exists()) {
+            throw new IOException("Cannot find the " + spec + " corpus at "
+                    + file.getAbsolutePath() + ", set -D" + tracesDirProperty
+                    + " to the traces/ directory");
+        }
+        for (File f : files) {
+            add(f.getAbsolutePath(),
+                    new String(Files.readAllBytes(f.toPath()), Charset
+                            .forName("UTF-8")));
+        }
+    }
+
+    /**
+     * Generates the text of a log of numEvents events in numTraces traces. A
+     * partially ordered log spreads the events of each trace among numHosts
+     * hosts, and every event on a host after the first one receives a message
+     * from another host, whose vector time it merges.
+     */
+    private static String generate(int numEvents, int numTraces,
+            int numTypes, boolean partiallyOrdered) {
+        if (numEvents <= 0 || numTraces <= 0 || numTypes <= 0) {
+            throw new IllegalArgumentException(
+                    "Generated logs need a positive number of events, traces, and types");
+        }
+        Random random = new Random(seed);
+        int[][] followers = new int[numTypes][numFollowers];
+        for (int t = 0; t < numTypes; t++) {
+            for (int i = 0; i < numFollowers; i++) {
+                followers[t][i] = random.nextInt(numTypes);
+            }
+        }
+
+        StringBuilder sb = new StringBuilder();
+        int perTrace = Math.max(numEvents / numTraces, 1);
+        for (int trace = 0; trace < numTraces; trace++) {
+            if (trace > 0) {
+                sb.append("--\n");
+            }
+            int[][] clocks = new int[numHosts][numHosts];
+            int type = random.nextInt(numTypes);
+            for (int i = 0; i < perTrace; i++) {
+                if (partiallyOrdered) {
+                    int host = random.nextInt(numHosts);
+                    int other = random.nextInt(numHosts);
+                    if (other != host && clocks[other][other] > 0) {
+                        for (int h = 0; h < numHosts; h++) {
+                            clocks[host][h] = Math.max(clocks[host][h],
+                                    clocks[other][h]);
+                        }
+                    }
+                    clocks[host][host]++;
+                    for (int h = 0; h < numHosts; h++) {
+                        sb.append(h == 0 ? "" : ",").append(clocks[host][h]);
+                    }
+                    sb.append(" h").append(host).append("-e").append(type)
+                            .append('\n');
+                } else {
+                    sb.append('e').append(type).append('\n');
+                }
+                type = followers[type][random.nextInt(numFollowers)];
+            }
+        }
+        return sb.toString();
+    }
+}
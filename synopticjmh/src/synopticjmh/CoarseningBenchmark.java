@@ -0,0 +1,57 @@
+package synopticjmh;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import synoptic.algorithms.Bisimulation;
+import synoptic.model.PartitionGraph;
+
+/**
+ * Measures {@code Bisimulation} coarsening (merging the k-equal partitions
+ * without unsatisfying any invariant) of the refined partition graph of a
+ * totally ordered log. Coarsening changes the graph, so every iteration
+ * refines a new graph (outside of the measurement) and coarsens it once.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 20)
+@Fork(2)
+public class CoarseningBenchmark {
+    @Param({ "gen/300/10/10", "gen/1000/50/5", "abp", "twopc" })
+    public String log;
+
+    private BenchmarkLog benchmarkLog;
+    private PartitionGraph pGraph;
+
+    @Setup(Level.Trial)
+    public void setUpTrial() throws Exception {
+        BenchmarkLog.initSynoptic();
+        benchmarkLog = BenchmarkLog.load(log);
+    }
+
+    @Setup(Level.Iteration)
+    public void setUpIteration() throws Exception {
+        pGraph = benchmarkLog.newInitialPartitionGraph();
+        Bisimulation.splitUntilAllInvsSatisfied(pGraph);
+    }
+
+    @Benchmark
+    public PartitionGraph coarsen() {
+        Bisimulation.mergePartitions(pGraph);
+        return pGraph;
+    }
+}
@@ -0,0 +1,46 @@
+package synopticjmh;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import synoptic.model.ColumnarTraceGraph;
+
+/**
+ * Measures parsing a totally ordered log in streaming mode into a columnar
+ * trace store (see the columnarTraceStore option), to compare with
+ * {@link ParserBenchmark#parseTraceGraph}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(2)
+public class ColumnarParserBenchmark {
+    @Param({ "gen/10000/100/20", "gen/100000/1000/50", "abp", "twopc" })
+    public String log;
+
+    private BenchmarkLog benchmarkLog;
+
+    @Setup
+    public void setUp() throws Exception {
+        benchmarkLog = BenchmarkLog.load(log);
+        BenchmarkLog.initSynoptic();
+    }
+
+    @Benchmark
+    public ColumnarTraceGraph parseColumnarTraceGraph() throws Exception {
+        return benchmarkLog.parseColumnarTraceGraph();
+    }
+}
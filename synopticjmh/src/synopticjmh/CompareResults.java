@@ -0,0 +1,163 @@
+package synopticjmh;
+
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+import org.json.simple.parser.JSONParser;
+import org.json.simple.parser.ParseException;
+
+/**
+ * Compares the results of a benchmark run against the results of a baseline
+ * run, both in the JSON format of JMH ({@code -rf json}), and reports the
+ * benchmarks that regressed. A benchmark regressed when its score is worse
+ * than the baseline score by more than the threshold (a fraction of the
+ * baseline score), and by more than the sum of the errors of the two scores,
+ * so that differences within the noise of the measurements are not reported.
+ * A higher score is better for throughput benchmarks, and a lower score is
+ * better for all other modes. <br />
+ * <br />
+ * Usage: {@code CompareResults baseline.json results.json [threshold]}, where
+ * threshold defaults to 0.1. Exits with status 1 if a benchmark regressed.
+ */
+public class CompareResults {
+    private static final double defaultThreshold = 0.1;
+
+    /** The result of a benchmark with particular parameters. */
+    private static class Result {
+        final String mode;
+        final double score;
+        final double error;
+        final String unit;
+
+        Result(String mode, double score, double error, String unit) {
+            this.mode = mode;
+            this.score = score;
+            this.error = error;
+            this.unit = unit;
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 2 || args.length > 3) {
+            System.err
+                    .println("Usage: CompareResults baseline.json results.json [threshold]");
+            System.exit(2);
+        }
+        double threshold = args.length == 3 ? Double.parseDouble(args[2])
+                : defaultThreshold;
+        Map<String, Result> baseline = readResults(args[0]);
+        Map<String, Result> results = readResults(args[1]);
+        int numRegressed = compare(baseline, results, threshold);
+        if (numRegressed > 0) {
+            System.out.println(numRegressed
+                    + " benchmark(s) regressed by more than "
+                    + Math.round(threshold * 100) + "%");
+            System.exit(1);
+        }
+        System.out.println("No benchmark regressed by more than "
+                + Math.round(threshold * 100) + "%");
+    }
+
+    /**
+     * Prints the change of every benchmark in results from baseline, and
+     * returns the number of benchmarks that regressed.
+     */
+    static int compare(Map<String, Result> baseline,
+            Map<String, Result> results, double threshold) {
+        int numRegressed = 0;
+        for (Map.Entry<String, Result> e : results.entrySet()) {
+            Result base = baseline.get(e.getKey());
+            Result cur = e.getValue();
+            if (base == null) {
+                System.out.println("NEW        " + e.getKey() + ": "
+                        + format(cur));
+                continue;
+            }
+            if (!base.mode.equals(cur.mode) || !base.unit.equals(cur.unit)) {
+                System.out.println("CHANGED    " + e.getKey() + ": "
+                        + format(base) + " -> " + format(cur)
+                        + " (different mode or unit, not compared)");
+                continue;
+            }
+            // The change in the score, positive when the score got worse.
+            double worse = cur.mode.equals("thrpt") ? base.score - cur.score
+                    : cur.score - base.score;
+            double errors = (Double.isNaN(base.error) ? 0 : base.error)
+                    + (Double.isNaN(cur.error) ? 0 : cur.error);
+            String change = String.format("%+.1f%%", 100
+                    * (cur.score - base.score) / base.score);
+            String status;
+            if (worse > threshold * base.score && worse > errors) {
+                status = "REGRESSED  ";
+                numRegressed++;
+            } else if (-worse > threshold * base.score && -worse > errors) {
+                status = "IMPROVED   ";
+            } else {
+                status = "SAME       ";
+            }
+            System.out.println(status + e.getKey() + ": " + format(base)
+                    + " -> " + format(cur) + " (" + change + ")");
+        }
+        for (String key : baseline.keySet()) {
+            if (!results.containsKey(key)) {
+                System.out.println("MISSING    " + key + ": "
+                        + format(baseline.get(key)));
+            }
+        }
+        return numRegressed;
+    }
+
+    private static String format(Result r) {
+        return String.format("%.3f +/- %.3f %s", r.score, r.error, r.unit);
+    }
+
+    /**
+     * Reads the results in a JMH JSON results file, keyed by the name of the
+     * benchmark and its parameters.
+     */
+    static Map<String, Result> readResults(String filename) throws IOException,
+            ParseException {
+        Map<String, Result> results = new LinkedHashMap<String, Result>();
+        Reader reader = new FileReader(filename);
+        try {
+            JSONArray runs = (JSONArray) new JSONParser().parse(reader);
+            for (Object o : runs) {
+                JSONObject run = (JSONObject) o;
+                StringBuilder key = new StringBuilder(
+                        (String) run.get("benchmark"));
+                JSONObject params = (JSONObject) run.get("params");
+                if (params != null) {
+                    // Sort the parameters, so that keys do not depend on the
+                    // order of the parameters in the file.
+                    Map<String, Object> sorted = new TreeMap<String, Object>();
+                    for (Object param : params.keySet()) {
+                        sorted.put((String) param, params.get(param));
+                    }
+                    key.append(sorted);
+                }
+                JSONObject metric = (JSONObject) run.get("primaryMetric");
+                results.put(key.toString(), new Result((String) run.get("mode"),
+                        toDouble(metric.get("score")),
+                        toDouble(metric.get("scoreError")),
+                        (String) metric.get("scoreUnit")));
+            }
+        } finally {
+            reader.close();
+        }
+        return results;
+    }
+
+    /** JMH writes NaN scores (e.g., the error of a single run) as strings. */
+    private static double toDouble(Object value) {
+        if (value instanceof Number) {
+            return ((Number) value).doubleValue();
+        }
+        return Double.parseDouble((String) value);
+    }
+}
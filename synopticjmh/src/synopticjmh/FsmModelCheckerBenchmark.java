@@ -0,0 +1,90 @@
+package synopticjmh;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import synoptic.invariants.BinaryInvariant;
+import synoptic.invariants.ITemporalInvariant;
+import synoptic.invariants.fsmcheck.FsmModelChecker;
+import synoptic.invariants.fsmcheck.TracingStateSet;
+import synoptic.model.Partition;
+import synoptic.model.PartitionGraph;
+
+/**
+ * Measures checking the mined invariants of a totally ordered log against its
+ * initial partition graph (in which every event type is one partition, so
+ * that most invariants have counter-examples) with {@code FsmModelChecker}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(2)
+public class FsmModelCheckerBenchmark {
+    @Param({ "gen/10000/100/20", "gen/100000/1000/50", "abp", "twopc" })
+    public String log;
+
+    /**
+     * The engine that finds the violated invariants: the indexed engine of
+     * {@code runChecker} or the reference {@code runWorkListChecker}, which
+     * find the shortest counter-example of every invariant as refinement does,
+     * or {@code runBitSetChecker}, which checks all of the invariants at once
+     * without finding counter-examples.
+     */
+    @Param({ "indexed", "worklist", "bitset" })
+    public String engine;
+
+    private PartitionGraph pGraph;
+    private List<BinaryInvariant> invariants;
+
+    @Setup
+    public void setUp() throws Exception {
+        BenchmarkLog.initSynoptic();
+        pGraph = BenchmarkLog.load(log).newInitialPartitionGraph();
+        invariants = new ArrayList<BinaryInvariant>();
+        for (ITemporalInvariant inv : pGraph.getInvariants()) {
+            invariants.add((BinaryInvariant) inv);
+        }
+    }
+
+    /**
+     * Returns the number of violated invariants.
+     */
+    @Benchmark
+    public int check() {
+        if (engine.equals("bitset")) {
+            return FsmModelChecker.runBitSetChecker(invariants, pGraph).size();
+        }
+        int numViolated = 0;
+        for (BinaryInvariant inv : invariants) {
+            TracingStateSet<Partition> initial = FsmModelChecker
+                    .newTracingStateSet(inv);
+            Map<Partition, TracingStateSet<Partition>> states;
+            if (engine.equals("worklist")) {
+                states = FsmModelChecker.runWorkListChecker(initial, pGraph,
+                        true);
+            } else {
+                states = FsmModelChecker.runChecker(initial, pGraph, true);
+            }
+            if (FsmModelChecker.getShortestCounterExample(inv, states) != null) {
+                numViolated++;
+            }
+        }
+        return numViolated;
+    }
+}
@@ -0,0 +1,61 @@
+package synopticjmh;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import synoptic.algorithms.KTails;
+import synoptic.model.ChainsTraceGraph;
+import synoptic.model.PartitionGraph;
+
+/**
+ * Measures {@code KTails} on the trace graph of a totally ordered log. KTails
+ * assigns the events of the trace graph to the partitions of the graph it
+ * creates, so every iteration runs on a newly parsed trace graph.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 20)
+@Fork(2)
+public class KTailsBenchmark {
+    @Param({ "gen/10000/100/20", "gen/100000/1000/50", "abp", "twopc" })
+    public String log;
+
+    @Param({ "1", "2" })
+    public int k;
+
+    @Param({ "1" })
+    public int threads;
+
+    private BenchmarkLog benchmarkLog;
+    private ChainsTraceGraph traceGraph;
+
+    @Setup(Level.Trial)
+    public void setUpTrial() throws Exception {
+        BenchmarkLog.initSynoptic();
+        benchmarkLog = BenchmarkLog.load(log);
+    }
+
+    @Setup(Level.Iteration)
+    public void setUpIteration() throws Exception {
+        traceGraph = benchmarkLog.parseChainsTraceGraph();
+    }
+
+    @Benchmark
+    public PartitionGraph kTails() {
+        return KTails.performKTails(traceGraph, k, threads);
+    }
+}
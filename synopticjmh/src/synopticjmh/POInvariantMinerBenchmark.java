@@ -0,0 +1,62 @@
+package synopticjmh;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import synoptic.invariants.TemporalInvariantSet;
+import synoptic.invariants.miners.DAGWalkingPOInvMiner;
+import synoptic.invariants.miners.IPOInvariantMiner;
+import synoptic.invariants.miners.TransitiveClosureInvMiner;
+import synoptic.model.DAGsTraceGraph;
+
+/**
+ * Measures mining the invariants of a partially ordered log with each
+ * {@code IPOInvariantMiner}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(2)
+public class POInvariantMinerBenchmark {
+    @Param({ "genpo/10000/100/20", "abp-po", "peterson", "tcp" })
+    public String log;
+
+    @Param({ "DAGWalking", "DAGWalkingNoNCWith", "TransitiveClosure" })
+    public String miner;
+
+    private DAGsTraceGraph traceGraph;
+    private IPOInvariantMiner invMiner;
+
+    @Setup
+    public void setUp() throws Exception {
+        BenchmarkLog.initSynoptic();
+        traceGraph = BenchmarkLog.load(log).parseDAGsTraceGraph();
+        if (miner.equals("DAGWalking")) {
+            invMiner = new DAGWalkingPOInvMiner(true);
+        } else if (miner.equals("DAGWalkingNoNCWith")) {
+            invMiner = new DAGWalkingPOInvMiner(false);
+        } else if (miner.equals("TransitiveClosure")) {
+            invMiner = new TransitiveClosureInvMiner(true);
+        } else {
+            throw new IllegalArgumentException("Unknown miner " + miner);
+        }
+    }
+
+    @Benchmark
+    public TemporalInvariantSet computeInvariants() {
+        return invMiner.computeInvariants(traceGraph);
+    }
+}
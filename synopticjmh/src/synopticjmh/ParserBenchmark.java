@@ -0,0 +1,59 @@
+package synopticjmh;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import synoptic.main.parser.TraceParser;
+import synoptic.model.EventNode;
+import synoptic.model.TraceGraph;
+
+/**
+ * Measures parsing a log with {@code TraceParser}, on its own and together with
+ * the construction of the trace graph of the log.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(2)
+public class ParserBenchmark {
+    @Param({ "gen/10000/100/20", "gen/100000/1000/50", "genpo/10000/100/20",
+            "abp", "twopc", "abp-po", "peterson" })
+    public String log;
+
+    /** The parsingThreads option. */
+    @Param({ "1" })
+    public int threads;
+
+    private BenchmarkLog benchmarkLog;
+
+    @Setup
+    public void setUp() throws Exception {
+        benchmarkLog = BenchmarkLog.load(log);
+        BenchmarkLog.initSynoptic().options.parsingThreads = threads;
+    }
+
+    @Benchmark
+    public List<EventNode> parse() throws Exception {
+        return benchmarkLog.parse(benchmarkLog.newParser());
+    }
+
+    @Benchmark
+    public TraceGraph<?> parseTraceGraph() throws Exception {
+        TraceParser parser = benchmarkLog.newParser();
+        return parser.generateDefaultOrderRelation(benchmarkLog.parse(parser));
+    }
+}
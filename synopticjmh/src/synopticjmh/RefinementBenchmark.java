@@ -0,0 +1,66 @@
+package synopticjmh;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import synoptic.algorithms.Bisimulation;
+import synoptic.main.AbstractMain;
+import synoptic.model.PartitionGraph;
+
+/**
+ * Measures {@code Bisimulation} refinement of the initial partition graph of a
+ * totally ordered log until all of its invariants are satisfied. Refinement
+ * changes the graph, so every iteration refines a new graph once.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 20)
+@Fork(2)
+public class RefinementBenchmark {
+    @Param({ "gen/300/10/10", "gen/1000/50/5", "abp", "twopc" })
+    public String log;
+
+    /** The refinementThreads option. */
+    @Param({ "1" })
+    public int threads;
+
+    /** The incrementalModelChecking option. */
+    @Param({ "false" })
+    public boolean incremental;
+
+    private BenchmarkLog benchmarkLog;
+    private PartitionGraph pGraph;
+
+    @Setup(Level.Trial)
+    public void setUpTrial() throws Exception {
+        AbstractMain main = BenchmarkLog.initSynoptic();
+        main.options.refinementThreads = threads;
+        main.options.incrementalModelChecking = incremental;
+        benchmarkLog = BenchmarkLog.load(log);
+    }
+
+    @Setup(Level.Iteration)
+    public void setUpIteration() throws Exception {
+        pGraph = benchmarkLog.newInitialPartitionGraph();
+    }
+
+    @Benchmark
+    public PartitionGraph refine() {
+        Bisimulation.splitUntilAllInvsSatisfied(pGraph);
+        return pGraph;
+    }
+}
@@ -0,0 +1,86 @@
+package synopticjmh;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import synoptic.invariants.TemporalInvariantSet;
+import synoptic.invariants.miners.ChainWalkingTOInvMiner;
+import synoptic.invariants.miners.DAGWalkingPOInvMiner;
+import synoptic.invariants.miners.ITOInvariantMiner;
+import synoptic.invariants.miners.KTailInvariantMiner;
+import synoptic.invariants.miners.TransitiveClosureInvMiner;
+import synoptic.model.ChainsTraceGraph;
+
+/**
+ * Measures mining the invariants of a totally ordered log with each
+ * {@code ITOInvariantMiner}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(2)
+public class TOInvariantMinerBenchmark {
+    @Param({ "gen/10000/100/20", "gen/100000/1000/50", "abp", "twopc" })
+    public String log;
+
+    @Param({ "ChainWalking", "ChainWalkingMaps", "TransitiveClosure",
+            "TransitiveClosureWarshall", "TransitiveClosureBitSet",
+            "DAGWalking", "KTail2" })
+    public String miner;
+
+    /** The miningThreads option, used by the ChainWalking miner. */
+    @Param({ "1" })
+    public int threads;
+
+    private ChainsTraceGraph traceGraph;
+    private ITOInvariantMiner invMiner;
+
+    @Setup
+    public void setUp() throws Exception {
+        BenchmarkLog.initSynoptic().options.miningThreads = threads;
+        traceGraph = BenchmarkLog.load(log).parseChainsTraceGraph();
+        invMiner = newMiner(miner, threads);
+    }
+
+    /**
+     * Returns the miner named name, with the options of the corresponding
+     * command line mining options.
+     */
+    static ITOInvariantMiner newMiner(String name, int threads) {
+        if (name.equals("ChainWalking")) {
+            return new ChainWalkingTOInvMiner(true, threads);
+        } else if (name.equals("ChainWalkingMaps")) {
+            return new ChainWalkingTOInvMiner(false);
+        } else if (name.equals("TransitiveClosure")) {
+            return new TransitiveClosureInvMiner(false);
+        } else if (name.equals("TransitiveClosureWarshall")) {
+            return new TransitiveClosureInvMiner(true);
+        } else if (name.equals("TransitiveClosureBitSet")) {
+            return new TransitiveClosureInvMiner(true, true);
+        } else if (name.equals("DAGWalking")) {
+            return new DAGWalkingPOInvMiner();
+        } else if (name.startsWith("KTail")) {
+            return new KTailInvariantMiner(Integer.parseInt(name
+                    .substring("KTail".length())));
+        }
+        throw new IllegalArgumentException("Unknown miner " + name);
+    }
+
+    @Benchmark
+    public TemporalInvariantSet computeInvariants() {
+        return invMiner.computeInvariants(traceGraph, false, false);
+    }
+}